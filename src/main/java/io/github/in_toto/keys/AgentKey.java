@@ -0,0 +1,125 @@
+package io.github.in_toto.keys;
+
+import io.github.in_toto.lib.SigningAgent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+
+/**
+ * A key held by a {@link SigningAgent}.
+ *
+ * Signing sends the payload to the agent, so the private portion of the key
+ * never leaves it; {@link #getPrivate} always returns null. The public
+ * portion is fetched from the agent when the key is connected, and is used
+ * for the keyid, for verification and to write the key.
+ */
+public class AgentKey
+    extends Key
+    implements Closeable
+{
+    private final SigningAgent.Client client;
+    private final RSAKey publicKey;
+
+    private AgentKey(SigningAgent.Client client, String keyid) throws IOException {
+        this.client = client;
+        this.keyid = keyid;
+        this.publicKey = RSAKey.readPemBuffer(new StringReader(client.getPublicPem(keyid)));
+        if (!keyid.equals(this.publicKey.computeKeyId()))
+            throw new IOException("Signing agent returned the wrong key for " + keyid);
+    }
+
+    /**
+     * Connects to an agent and selects one of its keys.
+     *
+     * @param connectionFile the connection file written by the agent
+     * @param keyid the keyid, or a prefix of the keyid, of the key to sign
+     * with; may be null if the agent serves a single key
+     *
+     * @return the agent key
+     *
+     * @throws java.io.IOException if the agent can't be reached
+     * @throws IllegalArgumentException if no key, or more than one key,
+     * matches the keyid
+     */
+    public static AgentKey connect(Path connectionFile, String keyid) throws IOException {
+        SigningAgent.Client client = SigningAgent.Client.connect(connectionFile);
+        try {
+            List<String> matches = new ArrayList<>();
+            for (String candidate : client.getKeyIds()) {
+                if (keyid == null || candidate.startsWith(keyid))
+                    matches.add(candidate);
+            }
+            if (matches.size() != 1)
+                throw new IllegalArgumentException((matches.isEmpty() ? "No" : "More than one")
+                        + " key matching " + (keyid == null ? "*" : keyid) + " in the signing agent");
+            return new AgentKey(client, matches.get(0));
+        } catch (IOException | RuntimeException e) {
+            client.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the connection to the agent.
+     *
+     * @throws java.io.IOException if the connection can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.client.close();
+    }
+
+    /**
+     * The private portion of the key is held by the agent.
+     *
+     * @return null
+     */
+    public AsymmetricKeyParameter getPrivate() {
+        return null;
+    }
+
+    public AsymmetricKeyParameter getPublic() throws IOException {
+        return this.publicKey.getPublic();
+    }
+
+    public String computeKeyId() {
+        return this.keyid;
+    }
+
+    /**
+     * Serializes the public portion of this key as a PEM
+     *
+     * @param filename the filename to where the key will be written to.
+     */
+    public void write(String filename) {
+        this.publicKey.write(filename);
+    }
+
+    public Signer getSigner() {
+        return this.publicKey.getSigner();
+    }
+
+    @Override
+    public Signer getPooledSigner() {
+        return this.publicKey.getPooledSigner();
+    }
+
+    /**
+     * Signs a payload with the agent. The payload is buffered before being
+     * sent, as the agent signs whole requests.
+     */
+    @Override
+    public String sign(Payload payload) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        payload.writeTo(buffer);
+        return this.client.sign(this.keyid, buffer.toByteArray());
+    }
+}
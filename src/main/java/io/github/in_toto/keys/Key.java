@@ -2,9 +2,15 @@ package io.github.in_toto.keys;
 
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
 
+import org.bouncycastle.crypto.CryptoException;
+import org.bouncycastle.crypto.io.SignerOutputStream;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
 import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.util.encoders.Hex;
 
 /**
  * Public class representing an in-toto key. 
@@ -15,8 +21,25 @@ import org.bouncycastle.crypto.Signer;
  */
 public abstract class Key
 {
+    /**
+     * Source of the signature salts, shared so that each signature doesn't
+     * seed a new generator, and created on first use so that processes
+     * which only verify don't seed one at all.
+     */
+    private static class Salts {
+        static final SecureRandom random = new SecureRandom();
+    }
+
     String keyid;
 
+    /**
+     * A payload to be signed, written out on demand so that it doesn't need
+     * to be held in memory.
+     */
+    public interface Payload {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
     public static Key read(String filename) {
         throw new RuntimeException("Can't instantiate an abstract Key!");
     }
@@ -25,4 +48,46 @@ public abstract class Key
     public abstract String computeKeyId();
     public abstract void write(String filename) throws FileNotFoundException, IOException;
     public abstract Signer getSigner();
+
+    /**
+     * Returns a signer to sign or verify a payload right away. Unlike the one
+     * of {@link #getSigner()}, it may be reused by the next call on the same
+     * thread, so it must be initialized before use, and neither be kept
+     * around nor shared with other threads.
+     *
+     * @return an uninitialized Signer instance
+     */
+    public Signer getPooledSigner() {
+        return getSigner();
+    }
+
+    /**
+     * Signs a payload with the private portion of this key.
+     *
+     * Keys whose private portion isn't available locally (e.g., keys held
+     * by a signing agent) override this method.
+     *
+     * @param payload the payload to sign
+     *
+     * @return the hex-encoded signature, or null if this key can't sign
+     * (e.g., it is a public key)
+     *
+     * @throws java.io.IOException if the payload can't be written or signed
+     */
+    public String sign(Payload payload) throws IOException {
+        AsymmetricKeyParameter keyParameters = getPrivate();
+        if (keyParameters == null || !keyParameters.isPrivate())
+            return null;
+
+        Signer signer = getPooledSigner();
+        signer.init(true, new ParametersWithRandom(keyParameters, Salts.random));
+        SignerOutputStream out = new SignerOutputStream(signer);
+        payload.writeTo(out);
+        out.flush();
+        try {
+            return Hex.toHexString(signer.generateSignature());
+        } catch (CryptoException e) {
+            throw new IOException("Couldn't sign payload", e);
+        }
+    }
 }
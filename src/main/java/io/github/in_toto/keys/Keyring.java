@@ -0,0 +1,469 @@
+package io.github.in_toto.keys;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A set of keys read from a directory of PEM files, indexed by keyid.
+ *
+ * Each file may hold several keys (a bundle), public or private. Keys are
+ * looked up by their keyid, e.g., {@link Signature#getKeyId()}, or by a
+ * unique prefix of it, and are parsed on first use and then cached.
+ *
+ * Computing a keyid requires parsing the key, so loading a directory only
+ * lists its files, and they are parsed as keys are looked up: a lookup by
+ * keyid parses files until one holds the key, while listing the keyids or
+ * looking up a prefix parses all the remaining files, in parallel. The
+ * keyids can be persisted to an index file (see {@link #load(Path, Path)}),
+ * so that later loads only stat the files and parse the new or modified
+ * ones, and the keys of unchanged files aren't parsed until they are used.
+ *
+ * Files that can't be read, or that hold anything else than RSA keys, don't
+ * contribute any key and are reported by {@link #getErrors()}.
+ */
+public class Keyring
+{
+    private static final int INDEX_VERSION = 2;
+
+    /**
+     * Where a key is stored: its file, and the position of the key in the
+     * file.
+     */
+    private static class Entry {
+        final String file;
+        final int position;
+
+        Entry(String file, int position) {
+            this.file = file;
+            this.position = position;
+        }
+    }
+
+    /**
+     * A parsed file: the size and modification time it had when parsed, and
+     * the keyids of its keys, in order. Files without any key are recorded
+     * too, so that an index doesn't need to parse them again, as are files
+     * that couldn't be parsed, along with the reason.
+     */
+    private static class ScannedFile {
+        final String name;
+        final long size;
+        final long modified;
+        final List<String> keyids;
+        final String error;
+
+        ScannedFile(String name, long size, long modified, List<String> keyids,
+                String error) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.keyids = keyids;
+            this.error = error;
+        }
+    }
+
+    private final Path directory;
+
+    // guarded by this
+    private final NavigableMap<String, Entry> entries = new TreeMap<>();
+    private final Map<String, ScannedFile> files = new TreeMap<>();
+    private final Deque<Path> pending = new ArrayDeque<>();
+
+    private final Map<String, Key> loaded = new ConcurrentHashMap<>();
+
+    private Keyring(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Lists a directory of PEM files, which are parsed as their keys are
+     * looked up
+     *
+     * @param directory the directory holding the keys; files ending in
+     * .pem or .pub are read
+     *
+     * @return the keyring
+     *
+     * @throws java.io.IOException if the directory can't be read
+     */
+    public static Keyring load(Path directory) throws IOException {
+        return load(directory, null);
+    }
+
+    /**
+     * Scans a directory of PEM files, reusing and updating an index of the
+     * keyids found in a previous scan.
+     *
+     * Files whose size and modification time didn't change since the index
+     * was written aren't read. The index is rewritten if it is missing or
+     * out of date.
+     *
+     * @param directory the directory holding the keys; files ending in
+     * .pem or .pub are read
+     * @param indexFile the index file, or null to parse the files as their
+     * keys are looked up
+     *
+     * @return the keyring
+     *
+     * @throws java.io.IOException if the directory or the index can't be read
+     */
+    public static Keyring load(Path directory, Path indexFile) throws IOException {
+        Map<String, ScannedFile> indexed =
+            indexFile == null ? Collections.emptyMap() : readIndex(indexFile);
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(Keyring::isKeyFile).sorted().collect(Collectors.toList());
+        }
+
+        Keyring keyring = new Keyring(directory);
+        List<Path> changed = new ArrayList<>();
+        for (Path file : files) {
+            ScannedFile previous = indexed.get(file.getFileName().toString());
+            BasicFileAttributes attributes = previous == null ? null
+                : Files.readAttributes(file, BasicFileAttributes.class);
+            if (previous != null && previous.size == attributes.size()
+                    && previous.modified == attributes.lastModifiedTime().toMillis())
+                keyring.add(previous);
+            else
+                changed.add(file);
+        }
+
+        if (indexFile == null) {
+            keyring.pending.addAll(changed);
+            return keyring;
+        }
+
+        // the index must list every file, parse the new and modified ones
+        keyring.scan(changed);
+        if (indexed.size() != files.size() || !changed.isEmpty())
+            keyring.writeIndex(indexFile);
+        return keyring;
+    }
+
+    private static boolean isKeyFile(Path file) {
+        String name = file.getFileName().toString();
+        return (name.endsWith(".pem") || name.endsWith(".pub")) && Files.isRegularFile(file);
+    }
+
+    private synchronized void add(ScannedFile file) {
+        this.files.put(file.name, file);
+        for (int i = 0; i < file.keyids.size(); i++)
+            this.entries.put(file.keyids.get(i), new Entry(file.name, i));
+    }
+
+    /**
+     * Parses files concurrently, as each one takes a full key parse and
+     * keyid computation, and adds their keys
+     */
+    private synchronized void scan(Collection<Path> paths) {
+        Map<String, Key> parsed = new ConcurrentHashMap<>();
+        List<ScannedFile> scanned = paths.parallelStream()
+            .map(file -> scan(file, parsed))
+            .collect(Collectors.toList());
+        for (ScannedFile file : scanned)
+            add(file);
+        this.loaded.putAll(parsed);
+    }
+
+    /**
+     * Parses the files that weren't parsed yet
+     */
+    private synchronized void scanPending() {
+        if (this.pending.isEmpty())
+            return;
+        scan(this.pending);
+        this.pending.clear();
+    }
+
+    /**
+     * Parses a file. A file that can't be read or parsed is recorded without
+     * keys, and if its attributes can't be read either, with a size that
+     * never matches so that an index doesn't skip it.
+     */
+    private static ScannedFile scan(Path file, Map<String, Key> parsed) {
+        String name = file.getFileName().toString();
+        long size = -1;
+        long modified = -1;
+        try {
+            BasicFileAttributes attributes =
+                Files.readAttributes(file, BasicFileAttributes.class);
+            size = attributes.size();
+            modified = attributes.lastModifiedTime().toMillis();
+            List<String> keyids = new ArrayList<>();
+            Map<String, Key> keys = new HashMap<>();
+            for (RSAKey key : readKeys(file)) {
+                String keyid = key.computeKeyId();
+                keyids.add(keyid);
+                keys.put(keyid, key);
+            }
+            parsed.putAll(keys);
+            return new ScannedFile(name, size, modified, keyids, null);
+        } catch (IOException | RuntimeException e) {
+            return new ScannedFile(name, size, modified, Collections.emptyList(),
+                    "Couldn't read keys from " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Reads all the keys of a PEM file, in order
+     */
+    private static List<RSAKey> readKeys(Path file) throws IOException {
+        List<RSAKey> keys = new ArrayList<>();
+        try (PEMParser parser = new PEMParser(Files.newBufferedReader(file, StandardCharsets.US_ASCII))) {
+            Object pem;
+            while ((pem = parser.readObject()) != null) {
+                if (pem instanceof PEMKeyPair)
+                    keys.add(new RSAKey((PEMKeyPair)pem));
+                else if (pem instanceof SubjectPublicKeyInfo)
+                    keys.add(new RSAKey(new PEMKeyPair((SubjectPublicKeyInfo)pem, null)));
+                else
+                    throw new IOException("Unsupported PEM object in " + file + ": "
+                            + pem.getClass().getSimpleName());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns a key by keyid, parsing it on first use
+     *
+     * @param keyid the full keyid
+     *
+     * @return the key, or null if the keyring doesn't hold it
+     *
+     * @throws RuntimeException if the key file can't be read, or doesn't
+     * hold the indexed key anymore
+     */
+    public Key get(String keyid) {
+        if (keyid == null || !contains(keyid))
+            return null;
+        return this.loaded.computeIfAbsent(keyid, this::parse);
+    }
+
+    /**
+     * @return true if the keyring holds a key, parsing the files that
+     * weren't parsed yet one at a time until one holds it
+     */
+    private synchronized boolean contains(String keyid) {
+        while (!this.entries.containsKey(keyid) && !this.pending.isEmpty())
+            scan(Collections.singletonList(this.pending.poll()));
+        return this.entries.containsKey(keyid);
+    }
+
+    private Key parse(String keyid) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(keyid);
+        }
+        Path file = this.directory.resolve(entry.file);
+        try {
+            List<RSAKey> keys = readKeys(file);
+            if (entry.position < keys.size()
+                    && keyid.equals(keys.get(entry.position).computeKeyId()))
+                return keys.get(entry.position);
+        } catch (NoSuchFileException e) {
+            // reported below
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read key " + keyid + " from " + file + ": " + e);
+        }
+        throw new RuntimeException("Key " + keyid + " is no longer in " + file);
+    }
+
+    /**
+     * Returns a key by keyid or by a unique prefix of its keyid
+     *
+     * @param prefix the keyid, or a prefix of it
+     *
+     * @return the key, or null if no key matches
+     *
+     * @throws IllegalArgumentException if more than one key matches
+     */
+    public Key find(String prefix) {
+        String keyid;
+        synchronized (this) {
+            scanPending();
+            keyid = this.entries.ceilingKey(prefix);
+            if (keyid == null || !keyid.startsWith(prefix))
+                return null;
+            String next = this.entries.higherKey(keyid);
+            if (next != null && next.startsWith(prefix) && !keyid.equals(prefix))
+                throw new IllegalArgumentException("Ambiguous keyid prefix " + prefix);
+        }
+        return get(keyid);
+    }
+
+    /**
+     * @param signature a signature
+     *
+     * @return the key that made the signature, or null if the keyring
+     * doesn't hold it
+     */
+    public Key get(Signature signature) {
+        return get(signature.getKeyId());
+    }
+
+    /**
+     * @return the keyids of the keys in the keyring, sorted
+     */
+    public synchronized Set<String> getKeyIds() {
+        scanPending();
+        return Collections.unmodifiableSet(new TreeSet<>(this.entries.keySet()));
+    }
+
+    public synchronized int size() {
+        scanPending();
+        return this.entries.size();
+    }
+
+    /**
+     * Lists the files that couldn't be read, or hold anything else than RSA
+     * keys, parsing the files that weren't parsed yet
+     *
+     * @return the reasons, by file name
+     */
+    public synchronized Map<String, String> getErrors() {
+        scanPending();
+        Map<String, String> errors = new TreeMap<>();
+        for (ScannedFile file : this.files.values()) {
+            if (file.error != null)
+                errors.put(file.name, file.error);
+        }
+        return errors;
+    }
+
+    /**
+     * @return the number of keys parsed so far
+     */
+    public int getLoadedCount() {
+        return this.loaded.size();
+    }
+
+    /**
+     * Writes the index of this keyring, see {@link #load(Path, Path)}. The
+     * index is replaced atomically, so that concurrent loads never read a
+     * partial index.
+     *
+     * @param indexFile the index file
+     *
+     * @throws java.io.IOException if the index can't be written
+     */
+    public synchronized void writeIndex(Path indexFile) throws IOException {
+        scanPending();
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            JsonWriter json = new JsonWriter(writer);
+            json.beginObject();
+            json.name("version").value(INDEX_VERSION);
+            json.name("files").beginArray();
+            for (ScannedFile file : this.files.values()) {
+                json.beginObject();
+                json.name("file").value(file.name);
+                json.name("size").value(file.size);
+                json.name("modified").value(file.modified);
+                json.name("keys").beginArray();
+                for (String keyid : file.keyids)
+                    json.value(keyid);
+                json.endArray();
+                if (file.error != null)
+                    json.name("error").value(file.error);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+            json.flush();
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads an index, by file name. A missing or unreadable index is
+     * treated as empty, so that the directory is scanned again.
+     */
+    private static Map<String, ScannedFile> readIndex(Path indexFile) {
+        Map<String, ScannedFile> files = new HashMap<>();
+        try (Reader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            JsonReader json = new JsonReader(reader);
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (name.equals("version")) {
+                    if (json.nextInt() != INDEX_VERSION)
+                        return Collections.emptyMap();
+                } else if (name.equals("files")) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        ScannedFile file = readIndexEntry(json);
+                        files.put(file.name, file);
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (IOException | RuntimeException e) {
+            return Collections.emptyMap();
+        }
+        return files;
+    }
+
+    private static ScannedFile readIndexEntry(JsonReader json) throws IOException {
+        String file = null;
+        long size = -1;
+        long modified = -1;
+        List<String> keyids = null;
+        String error = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "file": file = json.nextString(); break;
+                case "size": size = json.nextLong(); break;
+                case "modified": modified = json.nextLong(); break;
+                case "keys":
+                    keyids = new ArrayList<>();
+                    json.beginArray();
+                    while (json.hasNext())
+                        keyids.add(json.nextString());
+                    json.endArray();
+                    break;
+                case "error": error = json.nextString(); break;
+                default: json.skipValue();
+            }
+        }
+        json.endObject();
+        if (file == null || keyids == null)
+            throw new IOException("Malformed index entry");
+        return new ScannedFile(file, size, modified, keyids, error);
+    }
+}
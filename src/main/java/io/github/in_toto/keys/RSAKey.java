@@ -1,5 +1,6 @@
 package io.github.in_toto.keys;
 
+import io.github.in_toto.lib.CryptoProvider;
 import io.github.in_toto.lib.JSONEncoder;
 
 import java.io.IOException;
@@ -18,13 +19,11 @@ import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.MiscPEMGenerator;
 import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
 import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.crypto.Digest;
 import org.bouncycastle.crypto.Signer;
 import org.bouncycastle.crypto.util.PrivateKeyFactory;
 import org.bouncycastle.crypto.util.PublicKeyFactory;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
-import org.bouncycastle.crypto.digests.SHA256Digest;
-import org.bouncycastle.crypto.signers.PSSSigner;
-import org.bouncycastle.crypto.engines.RSAEngine;
 
 
 
@@ -37,7 +36,10 @@ public class RSAKey
     implements JSONEncoder
 {
 
-    PEMKeyPair kpr;
+    /**
+     * Transient, as it must never be part of the keyid computation.
+     */
+    transient PEMKeyPair kpr;
 
     /**
      *
@@ -63,6 +65,14 @@ public class RSAKey
      */
     private HashMap<String,String> keyval;
 
+    /**
+     * Lazily populated caches of the parsed key material and the keyid, so
+     * that signing repeatedly with the same key doesn't re-parse it.
+     */
+    private transient volatile AsymmetricKeyParameter privateParams;
+    private transient volatile AsymmetricKeyParameter publicParams;
+    private transient volatile String keyidCache;
+
     /**
      * Default constructor for the RSAKey.
      *
@@ -139,7 +149,9 @@ public class RSAKey
             return null;
         if (this.kpr.getPrivateKeyInfo() == null)
             return null;
-        return PrivateKeyFactory.createKey(this.kpr.getPrivateKeyInfo());
+        if (this.privateParams == null)
+            this.privateParams = PrivateKeyFactory.createKey(this.kpr.getPrivateKeyInfo());
+        return this.privateParams;
     }
 
     /**
@@ -150,7 +162,9 @@ public class RSAKey
     public AsymmetricKeyParameter getPublic() throws IOException {
         if (this.kpr == null)
             return null;
-        return PublicKeyFactory.createKey(this.kpr.getPublicKeyInfo());
+        if (this.publicParams == null)
+            this.publicParams = PublicKeyFactory.createKey(this.kpr.getPublicKeyInfo());
+        return this.publicParams;
     }
     
     /**
@@ -167,23 +181,40 @@ public class RSAKey
             }
     }
 
+    /**
+     * Convenience method to obtain the public portion of the key as a PEM
+     *
+     * @return the PEM-encoded public key, as stored in the keyval
+     */
+    public String getPublicPem() {
+        return this.keyval.get("public");
+    }
+
     /**
      * Convenience method to obtain the keyid for this key
      *
      * @return the keyid for this key (Sha256 is baked in, for the time being)
      */
     public String computeKeyId() {
-        if (this.kpr == null)
-            return null;
-
-        byte[] JSONrepr = getJSONEncodeableFields();
-
-        // initialize digest
-        SHA256Digest digest =  new SHA256Digest();
-        byte[] result = new byte[digest.getDigestSize()];
-        digest.update(JSONrepr, 0, JSONrepr.length);
-        digest.doFinal(result, 0);
-        return Hex.toHexString(result);
+        if (this.keyidCache != null)
+            return this.keyidCache;
+
+        // getJSONEncodeableFields temporarily strips the private portion of
+        // the keyval, so concurrent first calls must not interleave
+        synchronized (this) {
+            if (this.kpr == null)
+                return null;
+
+            byte[] JSONrepr = getJSONEncodeableFields();
+
+            // initialize digest
+            Digest digest = CryptoProvider.pooledDigest("sha256");
+            byte[] result = new byte[digest.getDigestSize()];
+            digest.update(JSONrepr, 0, JSONrepr.length);
+            digest.doFinal(result, 0);
+            this.keyidCache = Hex.toHexString(result);
+        }
+        return this.keyidCache;
     }
 
     private byte[] getJSONEncodeableFields() {
@@ -195,20 +226,11 @@ public class RSAKey
             this.keyval.remove("private");
         }
 
-        PEMKeyPair keyPairBackup = null;
-        if (this.kpr != null ) {
-            keyPairBackup = this.kpr;
-            this.kpr = null;
-        }
-
         byte[] JSONrepr = this.JSONEncodeCanonical(false).getBytes();
 
         if (privateBackup != null)
             this.keyval.put("private", privateBackup);
 
-        if (keyPairBackup != null)
-            this.kpr = keyPairBackup;
-
         return JSONrepr;
     }
 
@@ -244,17 +266,22 @@ public class RSAKey
     /**
      * Returns the signer associated with the signing method for this key
      *
-     * @return a Signer instance that can be used to sign or verify using
-     * RSASSA-PSS
+     * The signer is created by the configured signature provider, see
+     * {@link io.github.in_toto.lib.CryptoProvider}.
+     *
+     * @return an uninitialized Signer instance that can be used to sign or
+     * verify using RSASSA-PSS
      */
     public Signer getSigner() {
-        RSAEngine engine = new RSAEngine();
-        try {
-            engine.init(false, getPrivate());
-        } catch (IOException e) {
-            throw new RuntimeException(e.toString());
-        }
-        SHA256Digest digest = new SHA256Digest();
-        return new PSSSigner(engine, digest, digest.getDigestSize());
+        return CryptoProvider.signer(this.scheme);
+    }
+
+    /**
+     * Returns a signer owned by the calling thread and reused across calls,
+     * see {@link io.github.in_toto.lib.CryptoProvider#pooledSigner}
+     */
+    @Override
+    public Signer getPooledSigner() {
+        return CryptoProvider.pooledSigner(this.scheme);
     }
 }
@@ -24,4 +24,8 @@ public class Signature
     public String getKeyId() {
         return this.keyid;
     }
+
+    public String getSig() {
+        return this.sig;
+    }
 }
@@ -1,47 +1,549 @@
 package io.github.in_toto.lib;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.io.File;
-import java.io.IOException;
+import java.util.stream.Stream;
 
-import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.keys.AgentKey;
 import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.Keyring;
+import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.keys.Signature;
+import io.github.in_toto.models.ArtifactShard;
+import io.github.in_toto.models.HashScheduler;
 import io.github.in_toto.models.Link;
-import io.github.in_toto.models.Artifact;
-import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.models.RecordingJournal;
+import io.github.in_toto.models.ShardedRecording;
+import io.github.in_toto.models.SpooledLink;
 
 /**
- * Hello world!
+ * Command line entry point.
+ *
+ * <pre>
+ *  record NAME [KEY] [--materials PATH...] [--products PATH...]
+ *         [--exclude PATTERN] [--journal FILE] [--output LINK]
+ *         [-- COMMAND...]
+ *  sign LINK KEY [--output LINK]
+ *  dump LINK
+ *  verify LINK... (--key PEM... | --keyring DIRECTORY)
+ *  batch MANIFEST [--threads N]
+ *  agent CONNECTION_FILE --key PEM...
+ *  shard SHARD SHARDS PARTIAL [--materials PATH...] [--products PATH...]
+ *        [--exclude PATTERN] [SPOOL]
+ *  merge NAME LINK PARTIAL... [KEY] [SPOOL]
+ * </pre>
  *
+ * where KEY is either {@code --key PEM} or {@code --agent CONNECTION_FILE
+ * [--keyid KEYID]}, to sign with a {@link SigningAgent}. Directories passed
+ * as materials or products are walked recursively. If a command is given,
+ * the materials are recorded before it runs and the products after it.
+ * With {@code --journal}, the hashed artifacts are journaled, so that running
+ * the same record command again after it was interrupted only hashes the
+ * files it didn't get to or that changed since (see
+ * {@link RecordingJournal}); the journal is deleted once the link is written.
+ *
+ * See {@link Batch} for the batch mode, which processes many links in a
+ * single process. The agent command runs a {@link SigningAgent} serving the
+ * given keys until the process is terminated.
+ *
+ * The shard and merge commands record a step in several processes: each
+ * shard records the artifacts it owns to a partial file (see
+ * {@link ArtifactShard}), and merge checks the partials and merges them into
+ * a single link (see {@link ShardedRecording}). SPOOL is {@code [--spool
+ * DIRECTORY] [--spool-entries N]}: the artifacts are spilled to the spool
+ * directory, the temporary directory by default, from N artifacts of each
+ * kind on, which defaults to a share of the heap.
+ *
+ * The exit status is 0 on success, 1 if a link doesn't verify or a batch job
+ * fails (or the exit status of the recorded command, if it failed), and 2
+ * on usage errors.
  */
-public class App 
+public class App
 {
-    public static void main( String[] args )
-    {
-        Key thiskey = RSAKey.read("src/test/resources/somekey.pem");
+    static final int OK = 0;
+    static final int FAILED = 1;
+    static final int USAGE = 2;
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    App(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.exit(new App(System.out, System.err).run(args));
+    }
+
+    /**
+     * Runs a command
+     *
+     * @param args the command line
+     *
+     * @return the exit status
+     */
+    int run(String[] args) {
+        if (args.length == 0)
+            return usage("missing command");
+
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (UsageException e) {
+            return usage(e.getMessage());
+        }
+
+        try {
+            switch (args[0]) {
+                case "record":
+                    return record(options);
+                case "sign":
+                    return sign(options);
+                case "dump":
+                    return dump(options);
+                case "verify":
+                    return verify(options);
+                case "batch":
+                    return batch(options);
+                case "agent":
+                    return agent(options);
+                case "shard":
+                    return shard(options);
+                case "merge":
+                    return merge(options);
+                default:
+                    return usage("unknown command " + args[0]);
+            }
+        } catch (UsageException e) {
+            return usage(e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            this.err.println("in-toto: " + e.getMessage());
+            return FAILED;
+        }
+    }
+
+    private int usage(String message) {
+        this.err.println("in-toto: " + message);
+        this.err.println("usage: record NAME [KEY] [--materials PATH...] [--products PATH...]");
+        this.err.println("              [--exclude PATTERN] [--journal FILE] [--output LINK]");
+        this.err.println("              [-- COMMAND...]");
+        this.err.println("       sign LINK KEY [--output LINK]");
+        this.err.println("       dump LINK");
+        this.err.println("       verify LINK... (--key PEM... | --keyring DIRECTORY)");
+        this.err.println("       batch MANIFEST [--threads N]");
+        this.err.println("       agent CONNECTION_FILE --key PEM...");
+        this.err.println("       shard SHARD SHARDS PARTIAL [--materials PATH...]");
+        this.err.println("             [--products PATH...] [--exclude PATTERN] [SPOOL]");
+        this.err.println("       merge NAME LINK PARTIAL... [KEY] [SPOOL]");
+        this.err.println("where KEY is --key PEM or --agent CONNECTION_FILE [--keyid KEYID]");
+        this.err.println("  and SPOOL is [--spool DIRECTORY] [--spool-entries N]");
+        return USAGE;
+    }
+
+    /**
+     * A malformed command line, as opposed to the failures of the commands
+     * themselves
+     */
+    private static class UsageException extends RuntimeException {
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Command line options: positional arguments, and options each taking
+     * all the arguments up to the next option.
+     */
+    static class Options {
+        final List<String> positional = new ArrayList<>();
+        final HashMap<String, List<String>> values = new HashMap<>();
+        final List<String> command = new ArrayList<>();
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            List<String> current = options.positional;
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--")) {
+                    for (i++; i < args.length; i++)
+                        options.command.add(args[i]);
+                } else if (arg.startsWith("--")) {
+                    current = options.values.computeIfAbsent(arg, k -> new ArrayList<>());
+                } else {
+                    current.add(arg);
+                }
+            }
+            return options;
+        }
+
+        List<String> getAll(String option) {
+            List<String> all = this.values.get(option);
+            return all == null ? new ArrayList<>() : all;
+        }
+
+        String get(String option) {
+            List<String> all = this.values.get(option);
+            if (all == null)
+                return null;
+            if (all.size() != 1)
+                throw new UsageException(option + " takes a single value");
+            return all.get(0);
+        }
+
+        String positional(int count, String what) {
+            if (this.positional.size() != count)
+                throw new UsageException("expected " + what);
+            return this.positional.get(0);
+        }
+
+        int getCount(String option, int defaultValue) {
+            String value = get(option);
+            if (value == null)
+                return defaultValue;
+            try {
+                int count = Integer.parseInt(value);
+                if (count >= 1)
+                    return count;
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+            throw new UsageException("invalid " + option + " " + value);
+        }
+    }
+
+    /**
+     * Reads the signing key given by --key or --agent
+     */
+    private static Key readKey(Options options) throws IOException {
+        String pem = options.get("--key");
+        String agent = options.get("--agent");
+        if (pem != null && agent == null)
+            return keyArgument(pem);
+        if (agent != null && pem == null)
+            return AgentKey.connect(Paths.get(agent), options.get("--keyid"));
+        if (agent != null)
+            throw new UsageException("--key and --agent are exclusive");
+        return null;
+    }
+
+    /**
+     * @return the connection to close once done with a key, if it is held
+     * by a signing agent
+     */
+    static Closeable connectionOf(Key key) {
+        return key instanceof AgentKey ? (AgentKey)key : null;
+    }
+
+    /**
+     * Reads a key given on the command line
+     */
+    private static Key keyArgument(String pem) {
+        if (!Files.isReadable(Paths.get(pem)))
+            throw new UsageException("can't read key " + pem);
+        return readKey(pem);
+    }
+
+    static Key readKey(String pem) {
+        if (!Files.isReadable(Paths.get(pem)))
+            throw new IllegalArgumentException("can't read key " + pem);
+        return RSAKey.read(pem);
+    }
+
+    static Link readLink(String path) throws IOException {
+        Link link = Link.read(new String(Files.readAllBytes(Paths.get(path)),
+                    StandardCharsets.UTF_8));
+        if (link == null)
+            throw new IOException(path + " is empty");
+        return link;
+    }
 
+    /**
+     * Signs a link, failing if the key can't sign
+     */
+    static void sign(Link link, Key key) {
+        int signatures = link.getSignatures().size();
+        link.sign(key);
+        if (link.getSignatures().size() == signatures)
+            throw new RuntimeException("Couldn't sign " + link.getName()
+                    + " with key " + key.computeKeyId());
+    }
+
+    /**
+     * Records the artifacts of a step, running its command if any
+     *
+     * @return the exit status of the command, or 0 if there is none
+     */
+    static int record(Link link, List<String> materials, List<String> products,
+            String exclude, List<String> command) throws IOException {
+        HashScheduler scheduler = new HashScheduler();
+        link.addMaterials(walk(materials), exclude, scheduler);
+
+        int status = 0;
+        if (!command.isEmpty()) {
+            link.setCommand(new ArrayList<>(command));
+            Process process = new ProcessBuilder(command).inheritIO().start();
+            try {
+                status = process.waitFor();
+            } catch (InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while running " + command.get(0));
+            }
+            HashMap<String, Object> byproducts = new HashMap<>();
+            byproducts.put("return-value", status);
+            link.setByproducts(byproducts);
+        }
+
+        link.addProducts(walk(products), exclude, scheduler);
+        return status;
+    }
+
+    private static List<String> walk(List<String> paths) throws IOException {
+        List<String> files = new ArrayList<>();
+        for (String path : paths)
+            files.addAll(walk(path));
+        return files;
+    }
+
+    private static List<String> walk(String path) throws IOException {
+        Path root = Paths.get(path);
+        List<String> files = new ArrayList<>();
+        if (Files.isDirectory(root)) {
+            try (Stream<Path> walk = Files.walk(root)) {
+                walk.filter(Files::isRegularFile).sorted().forEach(
+                        file -> files.add(file.toString().replace(File.separatorChar, '/')));
+            }
+        } else {
+            files.add(path);
+        }
+        return files;
+    }
+
+    /**
+     * Verifies a link against keys: every key must have signed the link
+     * if keys are given, or else every signature must be made by a key of
+     * the keyring.
+     *
+     * @return null if the link verifies, or the reason it doesn't
+     */
+    static String verify(Link link, List<Key> keys, Keyring keyring) {
+        if (keys != null && !keys.isEmpty()) {
+            for (Key key : keys) {
+                if (!link.verify(key))
+                    return "no valid signature by " + key.computeKeyId();
+            }
+            return null;
+        }
+
+        if (link.getSignatures().isEmpty())
+            return "not signed";
+        for (Signature signature : link.getSignatures()) {
+            Key key = keyring.get(signature);
+            if (key == null) {
+                // the lookup parsed every file, the errors are all known
+                Map<String, String> errors = keyring.getErrors();
+                return "unknown key " + signature.getKeyId() + (errors.isEmpty() ? ""
+                        : ", unreadable key files: " + String.join(", ", errors.keySet()));
+            }
+            if (!link.verify(key))
+                return "invalid signature by " + signature.getKeyId();
+        }
+        return null;
+    }
+
+    private int record(Options options) throws IOException {
+        String name = options.positional(1, "a step name");
+        Key key = readKey(options);
+
+        try (Closeable connection = connectionOf(key)) {
+            Link link = new Link(null, null, name, null, null, null);
+            String journal = options.get("--journal");
+            int status;
+            if (journal == null) {
+                status = record(link, options.getAll("--materials"),
+                        options.getAll("--products"), options.get("--exclude"),
+                        options.command);
+            } else {
+                try (RecordingJournal recordingJournal =
+                        RecordingJournal.open(Paths.get(journal))) {
+                    link.setJournal(recordingJournal);
+                    status = record(link, options.getAll("--materials"),
+                            options.getAll("--products"), options.get("--exclude"),
+                            options.command);
+                }
+            }
+            if (key != null)
+                sign(link, key);
+
+            String output = options.get("--output");
+            link.dump(output != null ? output : link.getFullName());
+            // the link is written, there's nothing left to resume
+            if (journal != null)
+                Files.delete(Paths.get(journal));
+            return status;
+        }
+    }
+
+    private int sign(Options options) throws IOException {
+        String path = options.positional(1, "a link");
+        Key key = readKey(options);
+        if (key == null)
+            throw new UsageException("missing --key or --agent");
+
+        try (Closeable connection = connectionOf(key)) {
+            Link link = readLink(path);
+            sign(link, key);
+            String output = options.get("--output");
+            link.dump(output != null ? output : path);
+        }
+        return OK;
+    }
 
-        Link link = new Link(null, null, "test", null, null, null);
+    private int dump(Options options) throws IOException {
+        this.out.println(readLink(options.positional(1, "a link")).dumpString());
+        return OK;
+    }
+
+    private int verify(Options options) throws IOException {
+        if (options.positional.isEmpty())
+            throw new UsageException("expected links to verify");
+
+        List<Key> keys = new ArrayList<>();
+        for (String pem : options.getAll("--key"))
+            keys.add(keyArgument(pem));
+        String directory = options.get("--keyring");
+        if (keys.isEmpty() == (directory == null))
+            throw new UsageException("expected either --key or --keyring");
+        Keyring keyring = directory == null ? null : Keyring.load(Paths.get(directory));
+
+        int status = OK;
+        for (String path : options.positional) {
+            String failure = verify(readLink(path), keys, keyring);
+            if (failure == null) {
+                this.out.println(path + ": verified");
+            } else {
+                this.out.println(path + ": " + failure);
+                status = FAILED;
+            }
+        }
+        return status;
+    }
+
+    private int batch(Options options) throws IOException {
+        String manifest = options.positional(1, "a manifest");
+        int count = options.getCount("--threads", Runtime.getRuntime().availableProcessors());
+
+        return Batch.read(Paths.get(manifest)).run(count, this.out) ? OK : FAILED;
+    }
+
+    private int agent(Options options) throws IOException {
+        String connection = options.positional(1, "a connection file");
+        List<Key> keys = new ArrayList<>();
+        for (String pem : options.getAll("--key"))
+            keys.add(keyArgument(pem));
+        if (keys.isEmpty())
+            throw new UsageException("missing --key");
+
+        SigningAgent agent;
+        try {
+            agent = new SigningAgent(keys, Paths.get(connection));
+        } catch (FileAlreadyExistsException e) {
+            this.err.println("in-toto: " + connection + " exists, is another agent running?");
+            return FAILED;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(agent::close));
+        for (String keyid : agent.getKeyIds())
+            this.out.println("Serving key " + keyid);
         try {
-            
-        System.out.println("Loaded key ID: " + thiskey.computeKeyId());
-        
-        File fl = new File("alice");
-        fl.createNewFile(); 
-                
-            } catch (IOException e) {
-            System.out.println("Working Directory = " +
-                               System.getProperty("user.dir"));
-            throw new RuntimeException("The file alice couldn't be created");
+            agent.awaitClose();
+        } catch (InterruptedException e) {
+            agent.close();
+            Thread.currentThread().interrupt();
         }
-        
-        link.addMaterial("alice");
-        System.out.println("dumping file...");
-        link.sign(thiskey);
-        link.dump("somelink.link");
+        return OK;
+    }
+
+    /**
+     * The spool directory given by --spool, or the temporary directory
+     */
+    private static Path spoolDirectory(Options options) {
+        String spool = options.get("--spool");
+        return Paths.get(spool != null ? spool : System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * The number of artifacts of each kind held in memory before spilling
+     * them, given by --spool-entries, or by default about a tenth of the
+     * heap at a kilobyte per artifact
+     */
+    private static int spoolEntries(Options options) {
+        long share = Runtime.getRuntime().maxMemory() / 10 / 1024;
+        return options.getCount("--spool-entries", (int)Math.max(1000,
+                    Math.min(Integer.MAX_VALUE, share)));
+    }
+
+    private int shard(Options options) throws IOException {
+        if (options.positional.size() != 3)
+            throw new UsageException("expected a shard, a shard count and a partial");
+        int index;
+        int count;
+        try {
+            index = Integer.parseInt(options.positional.get(0));
+            count = Integer.parseInt(options.positional.get(1));
+        } catch (NumberFormatException e) {
+            throw new UsageException("invalid shard " + options.positional.get(0)
+                    + "/" + options.positional.get(1));
+        }
+        if (count < 1 || index < 0 || index >= count)
+            throw new UsageException("invalid shard " + index + "/" + count);
+        String exclude = options.get("--exclude");
 
+        try (ArtifactShard shard = new ArtifactShard(index, count, spoolDirectory(options),
+                    spoolEntries(options))) {
+            for (String material : options.getAll("--materials"))
+                for (String file : walk(material))
+                    shard.addMaterial(file, exclude);
+            for (String product : options.getAll("--products"))
+                for (String file : walk(product))
+                    shard.addProduct(file, exclude);
+            shard.write(Paths.get(options.positional.get(2)));
+        }
+        return OK;
     }
 
+    private int merge(Options options) throws IOException {
+        if (options.positional.size() < 3)
+            throw new UsageException("expected a step name, a link and partials");
+        String name = options.positional.get(0);
+        List<Path> partials = new ArrayList<>();
+        for (String partial : options.positional.subList(2, options.positional.size()))
+            partials.add(Paths.get(partial));
+
+        Key key = readKey(options);
+        try (Closeable connection = connectionOf(key);
+                SpooledLink link = new SpooledLink(name, spoolDirectory(options),
+                    spoolEntries(options))) {
+            ShardedRecording.merge(partials, link);
+            if (key != null) {
+                link.sign(key);
+                if (link.getSignatures().isEmpty())
+                    throw new RuntimeException("Couldn't sign " + name
+                            + " with key " + key.computeKeyId());
+            }
+            link.dump(options.positional.get(1));
+        }
+        return OK;
+    }
 }
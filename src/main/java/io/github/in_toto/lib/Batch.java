@@ -0,0 +1,274 @@
+package io.github.in_toto.lib;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import io.github.in_toto.keys.AgentKey;
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.Keyring;
+import io.github.in_toto.models.Link;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+/**
+ * Batch mode of the command line: runs the jobs of a manifest concurrently
+ * in a single process, on a shared thread pool, so that hundreds of links
+ * don't each pay for starting a JVM and reading keys.
+ *
+ * The manifest is a json object naming the keys used by the jobs, and
+ * listing the jobs:
+ *
+ * <pre>
+ * {
+ *   "keys": {
+ *     "builder": {"path": "keys/builder.pem"},
+ *     "agent": {"agent": "/run/in-toto/agent", "keyid": "2f89b9"}
+ *   },
+ *   "keyring": "keys/",
+ *   "jobs": [
+ *     {"op": "record", "name": "compile", "key": "builder",
+ *      "materials": ["src"], "products": ["target"], "exclude": "*.log",
+ *      "command": ["make"], "output": "compile.link"},
+ *     {"op": "sign", "link": "package.link", "key": "agent", "output": "signed.link"},
+ *     {"op": "verify", "link": "test.link", "keys": ["builder"]},
+ *     {"op": "verify", "link": "deploy.link"}
+ *   ]
+ * }
+ * </pre>
+ *
+ * Each key is read (or its agent connected) once, on first use, and is
+ * shared by all the jobs. Verify jobs without keys check every signature
+ * against the keyring. Jobs are independent and run in any order; the
+ * outcome of each job is printed in manifest order.
+ */
+public class Batch
+{
+    private final JsonObject keySpecs;
+    private final String keyringDirectory;
+    private final List<JsonObject> jobs;
+
+    private final Map<String, Key> keys = new ConcurrentHashMap<>();
+    private Keyring keyring;
+
+    private Batch(JsonObject keySpecs, String keyringDirectory, List<JsonObject> jobs) {
+        this.keySpecs = keySpecs;
+        this.keyringDirectory = keyringDirectory;
+        this.jobs = jobs;
+    }
+
+    /**
+     * Reads a batch manifest
+     *
+     * @param manifest the manifest file
+     *
+     * @return the batch
+     *
+     * @throws java.io.IOException if the manifest can't be read or is
+     * malformed
+     */
+    public static Batch read(Path manifest) throws IOException {
+        try (Reader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            JsonObject root = new JsonParser().parse(reader).getAsJsonObject();
+
+            JsonObject keySpecs = root.has("keys") ? root.getAsJsonObject("keys") : new JsonObject();
+            for (Map.Entry<String, JsonElement> spec : keySpecs.entrySet()) {
+                JsonObject key = spec.getValue().getAsJsonObject();
+                if (key.has("path") == key.has("agent"))
+                    throw new IOException("Key " + spec.getKey()
+                            + " needs either a path or an agent");
+                JsonElement location = key.has("path") ? key.get("path") : key.get("agent");
+                if (!location.isJsonPrimitive() || !location.getAsJsonPrimitive().isString())
+                    throw new IOException("The path or agent of key " + spec.getKey()
+                            + " isn't a string");
+            }
+
+            String keyring = root.has("keyring") ? root.get("keyring").getAsString() : null;
+            List<JsonObject> jobs = new ArrayList<>();
+            for (JsonElement element : root.getAsJsonArray("jobs")) {
+                JsonObject job = element.getAsJsonObject();
+                String op = string(job, "op");
+                for (String alias : job.has("keys") ? strings(job, "keys")
+                        : job.has("key") ? Collections.singletonList(string(job, "key"))
+                        : Collections.<String>emptyList()) {
+                    if (!keySpecs.has(alias))
+                        throw new IOException("Unknown key " + alias + " in " + op + " job");
+                }
+                if (op.equals("verify") && strings(job, "keys").isEmpty() && keyring == null)
+                    throw new IOException("Verify job without keys, and no keyring");
+                if (op.equals("sign") && !job.has("key"))
+                    throw new IOException("Sign job without a key");
+                if (!op.equals("record") && !op.equals("sign") && !op.equals("verify"))
+                    throw new IOException("Unknown job " + op);
+                jobs.add(job);
+            }
+            return new Batch(keySpecs, keyring, jobs);
+        } catch (JsonParseException | IllegalStateException | NullPointerException
+                | ClassCastException e) {
+            throw new IOException("Malformed manifest " + manifest + ": " + e.getMessage());
+        }
+    }
+
+    private static String string(JsonObject job, String field) {
+        JsonElement value = job.get(field);
+        return value == null ? null : value.getAsString();
+    }
+
+    private static List<String> strings(JsonObject job, String field) {
+        List<String> values = new ArrayList<>();
+        JsonArray array = job.getAsJsonArray(field);
+        if (array != null) {
+            for (JsonElement value : array)
+                values.add(value.getAsString());
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of jobs in the manifest
+     */
+    public int size() {
+        return this.jobs.size();
+    }
+
+    /**
+     * Runs all the jobs
+     *
+     * @param threads the number of jobs run concurrently
+     * @param out where the outcome of each job is printed
+     *
+     * @return true if every job succeeded
+     */
+    public boolean run(int threads, PrintStream out) {
+        ExecutorService executor = Platform.newBlockingExecutor(threads, "in-toto-batch");
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (JsonObject job : this.jobs)
+                results.add(executor.submit(callable(job)));
+
+            boolean success = true;
+            for (int i = 0; i < results.size(); i++) {
+                String description = describe(this.jobs.get(i));
+                try {
+                    out.println("ok     " + description + results.get(i).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    out.println("FAILED " + description + ": " + (cause.getMessage() != null
+                                ? cause.getMessage() : cause.toString()));
+                    success = false;
+                }
+            }
+            return success;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+            closeAgents();
+        }
+    }
+
+    private static String describe(JsonObject job) {
+        String op = string(job, "op");
+        return op + " " + (op.equals("record") ? string(job, "name") : string(job, "link"));
+    }
+
+    /**
+     * @return a job, whose result is appended to the outcome of the job
+     */
+    private Callable<String> callable(JsonObject job) {
+        switch (string(job, "op")) {
+            case "record":
+                return () -> {
+                    Link link = new Link(null, null, string(job, "name"), null, null, null);
+                    int status = App.record(link, strings(job, "materials"),
+                            strings(job, "products"), string(job, "exclude"),
+                            strings(job, "command"));
+                    return write(job, link, null, status);
+                };
+            case "sign":
+                return () -> {
+                    String path = string(job, "link");
+                    return write(job, App.readLink(path), path, 0);
+                };
+            default:
+                return () -> {
+                    Link link = App.readLink(string(job, "link"));
+                    List<Key> keys = new ArrayList<>();
+                    for (String alias : strings(job, "keys"))
+                        keys.add(key(alias));
+                    String failure = App.verify(link, keys,
+                            keys.isEmpty() ? getKeyring() : null);
+                    if (failure != null)
+                        throw new RuntimeException(failure);
+                    return "";
+                };
+        }
+    }
+
+    /**
+     * Signs a recorded or read link if the job has a key, and writes it
+     */
+    private String write(JsonObject job, Link link, String path, int status) {
+        String alias = string(job, "key");
+        if (alias != null)
+            App.sign(link, key(alias));
+        String output = string(job, "output");
+        if (output == null)
+            output = path != null ? path : link.getFullName();
+        link.dump(output);
+        if (status != 0)
+            throw new RuntimeException("command exited with " + status
+                    + ", link written to " + output);
+        return " -> " + output;
+    }
+
+    private Key key(String alias) {
+        return this.keys.computeIfAbsent(alias, a -> {
+            JsonObject spec = this.keySpecs.getAsJsonObject(a);
+            if (spec.has("path"))
+                return App.readKey(string(spec, "path"));
+            try {
+                return AgentKey.connect(Paths.get(string(spec, "agent")), string(spec, "keyid"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private synchronized Keyring getKeyring() throws IOException {
+        if (this.keyring == null)
+            this.keyring = Keyring.load(Paths.get(this.keyringDirectory));
+        return this.keyring;
+    }
+
+    private void closeAgents() {
+        for (Key key : this.keys.values()) {
+            if (key instanceof AgentKey) {
+                try {
+                    ((AgentKey)key).close();
+                } catch (IOException e) {
+                    // the agent went away
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package io.github.in_toto.lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.bouncycastle.crypto.ExtendedDigest;
+
+/**
+ * Pure-java implementation of the BLAKE3 hash function, with a 256 bit
+ * output, see https://github.com/BLAKE3-team/BLAKE3-specs.
+ *
+ * BLAKE3 splits its input into 1 KiB chunks, which are the leaves of a
+ * binary tree. Unlike SHA-2, the chunks can be hashed independently, which
+ * {@link #digest(Path, ExecutorService)} uses to hash a single large file on
+ * all cores: the file is split into segments that are hashed concurrently
+ * into the roots of their subtrees, which are then joined in order.
+ */
+public class Blake3Digest
+    implements ExtendedDigest
+{
+    public static final int DIGEST_LENGTH = 32;
+
+    private static final int BLOCK_LEN = 64;
+    private static final int CHUNK_LEN = 1024;
+
+    /**
+     * The size of the segments of a file hashed concurrently, a power of two
+     * number of chunks.
+     */
+    static final int SEGMENT_LEN = 1024 * CHUNK_LEN;
+
+    private static final int CHUNK_START = 1;
+    private static final int CHUNK_END = 2;
+    private static final int PARENT = 4;
+    private static final int ROOT = 8;
+
+    private static final int[] IV = {
+        0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A,
+        0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19,
+    };
+
+    private static final int[] PERMUTATION = {
+        2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8,
+    };
+
+    /**
+     * The message word indices used by each round, i.e., the permutation
+     * applied round times.
+     */
+    private static final int[][] SCHEDULE = new int[7][16];
+
+    static {
+        for (int i = 0; i < 16; i++)
+            SCHEDULE[0][i] = i;
+        for (int round = 1; round < 7; round++) {
+            for (int i = 0; i < 16; i++)
+                SCHEDULE[round][i] = SCHEDULE[round - 1][PERMUTATION[i]];
+        }
+    }
+
+    // state of the current chunk
+    private final int[] cv = new int[8];
+    private final byte[] block = new byte[BLOCK_LEN];
+    private int blockLen;
+    private int blocksCompressed;
+    private long chunkCounter;
+
+    // chaining values of the completed subtrees, one per bit set in the
+    // number of completed chunks
+    private final int[][] stack = new int[54][8];
+    private int stackSize;
+
+    // scratch space, to avoid allocating per block
+    private final int[] words = new int[16];
+    private final int[] state = new int[16];
+    private final byte[] single = new byte[1];
+
+    public Blake3Digest() {
+        reset();
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return "BLAKE3";
+    }
+
+    @Override
+    public int getDigestSize() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    public int getByteLength() {
+        return BLOCK_LEN;
+    }
+
+    @Override
+    public void update(byte in) {
+        this.single[0] = in;
+        update(this.single, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] in, int inOff, int len) {
+        while (len > 0) {
+            // a full chunk is only completed once more input arrives, as the
+            // last chunk is finalized differently
+            if (chunkLength() == CHUNK_LEN) {
+                int[] chunkCv = new int[8];
+                chunkOutput(chunkCv);
+                pushSubtree(chunkCv, this.chunkCounter + 1, 1);
+                startChunk(this.chunkCounter + 1);
+            }
+
+            // a full block is only compressed once more input arrives, as
+            // the last block of a chunk is flagged as such
+            if (this.blockLen == BLOCK_LEN) {
+                toWords(this.block, BLOCK_LEN, this.words);
+                compress(this.cv, this.words, this.chunkCounter, BLOCK_LEN,
+                        startFlag(), this.state);
+                System.arraycopy(this.state, 0, this.cv, 0, 8);
+                this.blocksCompressed++;
+                this.blockLen = 0;
+            }
+
+            int take = Math.min(BLOCK_LEN - this.blockLen, len);
+            System.arraycopy(in, inOff, this.block, this.blockLen, take);
+            this.blockLen += take;
+            inOff += take;
+            len -= take;
+        }
+    }
+
+    @Override
+    public int doFinal(byte[] out, int outOff) {
+        int[] output = new int[8];
+        int[] blockWords = new int[16];
+        toWords(this.block, this.blockLen, blockWords);
+        int[] inputCv = this.cv.clone();
+        long counter = this.chunkCounter;
+        int length = this.blockLen;
+        int flags = startFlag() | CHUNK_END;
+
+        // join the last chunk with the completed subtrees, from the most
+        // recent one, the last join being the root
+        for (int i = this.stackSize - 1; i >= 0; i--) {
+            compress(inputCv, blockWords, counter, length, flags, this.state);
+            System.arraycopy(this.stack[i], 0, blockWords, 0, 8);
+            System.arraycopy(this.state, 0, blockWords, 8, 8);
+            System.arraycopy(IV, 0, inputCv, 0, 8);
+            counter = 0;
+            length = BLOCK_LEN;
+            flags = PARENT;
+        }
+        compress(inputCv, blockWords, counter, length, flags | ROOT, this.state);
+        System.arraycopy(this.state, 0, output, 0, 8);
+        for (int i = 0; i < 8; i++) {
+            int word = output[i];
+            out[outOff + 4 * i] = (byte)word;
+            out[outOff + 4 * i + 1] = (byte)(word >>> 8);
+            out[outOff + 4 * i + 2] = (byte)(word >>> 16);
+            out[outOff + 4 * i + 3] = (byte)(word >>> 24);
+        }
+        reset();
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    public void reset() {
+        this.stackSize = 0;
+        startChunk(0);
+    }
+
+    private void startChunk(long counter) {
+        System.arraycopy(IV, 0, this.cv, 0, 8);
+        this.chunkCounter = counter;
+        this.blockLen = 0;
+        this.blocksCompressed = 0;
+    }
+
+    private int chunkLength() {
+        return this.blocksCompressed * BLOCK_LEN + this.blockLen;
+    }
+
+    private int startFlag() {
+        return this.blocksCompressed == 0 ? CHUNK_START : 0;
+    }
+
+    /**
+     * Computes the chaining value of the current, complete chunk
+     */
+    private void chunkOutput(int[] result) {
+        toWords(this.block, this.blockLen, this.words);
+        compress(this.cv, this.words, this.chunkCounter, this.blockLen,
+                startFlag() | CHUNK_END, this.state);
+        System.arraycopy(this.state, 0, result, 0, 8);
+    }
+
+    /**
+     * Adds the chaining value of a complete subtree of {@code chunks} chunks,
+     * joining it with the previous subtrees of the same size.
+     *
+     * @param subtreeCv the chaining value of the subtree
+     * @param totalChunks the number of chunks hashed so far, this subtree
+     * included
+     * @param chunks the number of chunks of the subtree, a power of two that
+     * divides totalChunks
+     */
+    private void pushSubtree(int[] subtreeCv, long totalChunks, long chunks) {
+        int[] joined = subtreeCv.clone();
+        long total = totalChunks / chunks;
+        while ((total & 1) == 0) {
+            parent(this.stack[--this.stackSize], joined, joined);
+            total >>= 1;
+        }
+        System.arraycopy(joined, 0, this.stack[this.stackSize++], 0, 8);
+    }
+
+    /**
+     * Computes the chaining value of a parent node
+     */
+    private static void parent(int[] left, int[] right, int[] result) {
+        int[] blockWords = new int[16];
+        System.arraycopy(left, 0, blockWords, 0, 8);
+        System.arraycopy(right, 0, blockWords, 8, 8);
+        int[] state = new int[16];
+        compress(IV, blockWords, 0, BLOCK_LEN, PARENT, state);
+        System.arraycopy(state, 0, result, 0, 8);
+    }
+
+    /**
+     * Computes the chaining value of a subtree of complete chunks, which
+     * must be a power of two number of chunks
+     *
+     * @param data the contents of the subtree
+     * @param length the length of the contents, a power of two multiple of
+     * the chunk length
+     * @param firstChunk the index of the first chunk of the subtree in the
+     * whole input
+     *
+     * @return the chaining value of the subtree root
+     */
+    static int[] subtree(byte[] data, int length, long firstChunk) {
+        Blake3Digest digest = new Blake3Digest();
+        int chunks = length / CHUNK_LEN;
+        for (int i = 0; i < chunks; i++) {
+            digest.startChunk(firstChunk + i);
+            digest.update(data, i * CHUNK_LEN, CHUNK_LEN);
+            int[] chunkCv = new int[8];
+            digest.chunkOutput(chunkCv);
+            // the stack only ever holds this subtree's nodes
+            digest.pushSubtree(chunkCv, i + 1, 1);
+        }
+        int[] result = digest.stack[0];
+        return result.clone();
+    }
+
+    /**
+     * Hashes a file, hashing segments of large files concurrently
+     *
+     * @param file the file to hash
+     * @param executor the executor hashing the segments
+     *
+     * @return the digest
+     *
+     * @throws IOException if the file can't be read
+     */
+    public static byte[] digest(Path file, ExecutorService executor) throws IOException {
+        Blake3Digest digest = new Blake3Digest();
+        long size = Files.size(file);
+
+        // the segments hashed concurrently, the remaining bytes (at least
+        // one, holding the root) are hashed sequentially
+        long segments = size == 0 ? 0 : (size - 1) / SEGMENT_LEN;
+        long offset = 0;
+        if (segments > 1) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                List<Future<int[]>> results = new ArrayList<>();
+                for (long i = 0; i < segments; i++) {
+                    long start = i * SEGMENT_LEN;
+                    results.add(executor.submit(() -> {
+                        byte[] data = new byte[SEGMENT_LEN];
+                        readFully(channel, ByteBuffer.wrap(data), start);
+                        return subtree(data, SEGMENT_LEN, start / CHUNK_LEN);
+                    }));
+                }
+                long chunksPerSegment = SEGMENT_LEN / CHUNK_LEN;
+                try {
+                    for (int i = 0; i < results.size(); i++)
+                        digest.pushSubtree(results.get(i).get(),
+                                (i + 1) * chunksPerSegment, chunksPerSegment);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while hashing " + file);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException)e.getCause()
+                        : new IOException("Couldn't hash " + file, e.getCause());
+                } finally {
+                    for (Future<int[]> result : results)
+                        result.cancel(true);
+                }
+                offset = segments * SEGMENT_LEN;
+                digest.startChunk(offset / CHUNK_LEN);
+
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                while (offset < size) {
+                    buffer.clear();
+                    int read = channel.read(buffer, offset);
+                    if (read < 0)
+                        break;
+                    digest.update(buffer.array(), 0, read);
+                    offset += read;
+                }
+            }
+        } else {
+            Platform.readFile(file, new byte[64 * 1024],
+                    (buffer, length) -> digest.update(buffer, 0, length));
+        }
+
+        byte[] result = new byte[DIGEST_LENGTH];
+        digest.doFinal(result, 0);
+        return result;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new IOException("Unexpected end of file");
+        }
+    }
+
+    private static void toWords(byte[] bytes, int length, int[] words) {
+        for (int i = 0; i < 16; i++) {
+            int word = 0;
+            for (int j = 3; j >= 0; j--) {
+                int index = 4 * i + j;
+                word = (word << 8) | (index < length ? bytes[index] & 0xff : 0);
+            }
+            words[i] = word;
+        }
+    }
+
+    /**
+     * The BLAKE3 compression function, writing the 16 output words to
+     * {@code out}
+     */
+    private static void compress(int[] cv, int[] m, long counter, int blockLen,
+            int flags, int[] out) {
+        int s0 = cv[0], s1 = cv[1], s2 = cv[2], s3 = cv[3];
+        int s4 = cv[4], s5 = cv[5], s6 = cv[6], s7 = cv[7];
+        int s8 = IV[0], s9 = IV[1], s10 = IV[2], s11 = IV[3];
+        int s12 = (int)counter, s13 = (int)(counter >>> 32), s14 = blockLen, s15 = flags;
+
+        for (int round = 0; round < 7; round++) {
+            int[] w = SCHEDULE[round];
+            // columns
+            s0 += s4 + m[w[0]]; s12 = Integer.rotateRight(s12 ^ s0, 16);
+            s8 += s12; s4 = Integer.rotateRight(s4 ^ s8, 12);
+            s0 += s4 + m[w[1]]; s12 = Integer.rotateRight(s12 ^ s0, 8);
+            s8 += s12; s4 = Integer.rotateRight(s4 ^ s8, 7);
+
+            s1 += s5 + m[w[2]]; s13 = Integer.rotateRight(s13 ^ s1, 16);
+            s9 += s13; s5 = Integer.rotateRight(s5 ^ s9, 12);
+            s1 += s5 + m[w[3]]; s13 = Integer.rotateRight(s13 ^ s1, 8);
+            s9 += s13; s5 = Integer.rotateRight(s5 ^ s9, 7);
+
+            s2 += s6 + m[w[4]]; s14 = Integer.rotateRight(s14 ^ s2, 16);
+            s10 += s14; s6 = Integer.rotateRight(s6 ^ s10, 12);
+            s2 += s6 + m[w[5]]; s14 = Integer.rotateRight(s14 ^ s2, 8);
+            s10 += s14; s6 = Integer.rotateRight(s6 ^ s10, 7);
+
+            s3 += s7 + m[w[6]]; s15 = Integer.rotateRight(s15 ^ s3, 16);
+            s11 += s15; s7 = Integer.rotateRight(s7 ^ s11, 12);
+            s3 += s7 + m[w[7]]; s15 = Integer.rotateRight(s15 ^ s3, 8);
+            s11 += s15; s7 = Integer.rotateRight(s7 ^ s11, 7);
+
+            // diagonals
+            s0 += s5 + m[w[8]]; s15 = Integer.rotateRight(s15 ^ s0, 16);
+            s10 += s15; s5 = Integer.rotateRight(s5 ^ s10, 12);
+            s0 += s5 + m[w[9]]; s15 = Integer.rotateRight(s15 ^ s0, 8);
+            s10 += s15; s5 = Integer.rotateRight(s5 ^ s10, 7);
+
+            s1 += s6 + m[w[10]]; s12 = Integer.rotateRight(s12 ^ s1, 16);
+            s11 += s12; s6 = Integer.rotateRight(s6 ^ s11, 12);
+            s1 += s6 + m[w[11]]; s12 = Integer.rotateRight(s12 ^ s1, 8);
+            s11 += s12; s6 = Integer.rotateRight(s6 ^ s11, 7);
+
+            s2 += s7 + m[w[12]]; s13 = Integer.rotateRight(s13 ^ s2, 16);
+            s8 += s13; s7 = Integer.rotateRight(s7 ^ s8, 12);
+            s2 += s7 + m[w[13]]; s13 = Integer.rotateRight(s13 ^ s2, 8);
+            s8 += s13; s7 = Integer.rotateRight(s7 ^ s8, 7);
+
+            s3 += s4 + m[w[14]]; s14 = Integer.rotateRight(s14 ^ s3, 16);
+            s9 += s14; s4 = Integer.rotateRight(s4 ^ s9, 12);
+            s3 += s4 + m[w[15]]; s14 = Integer.rotateRight(s14 ^ s3, 8);
+            s9 += s14; s4 = Integer.rotateRight(s4 ^ s9, 7);
+        }
+
+        out[0] = s0 ^ s8; out[1] = s1 ^ s9; out[2] = s2 ^ s10; out[3] = s3 ^ s11;
+        out[4] = s4 ^ s12; out[5] = s5 ^ s13; out[6] = s6 ^ s14; out[7] = s7 ^ s15;
+        out[8] = s8 ^ cv[0]; out[9] = s9 ^ cv[1]; out[10] = s10 ^ cv[2]; out[11] = s11 ^ cv[3];
+        out[12] = s12 ^ cv[4]; out[13] = s13 ^ cv[5]; out[14] = s14 ^ cv[6];
+        out[15] = s15 ^ cv[7];
+    }
+}
@@ -0,0 +1,61 @@
+package io.github.in_toto.lib;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.digests.SHA512Digest;
+import org.bouncycastle.crypto.engines.RSAEngine;
+import org.bouncycastle.crypto.signers.PSSSigner;
+
+/**
+ * CryptoProvider backed by the pure-java BouncyCastle lightweight API.
+ *
+ * This is the reference backend: its output does not depend on the JDK in
+ * use.
+ */
+public class BouncyCastleCryptoProvider
+    extends CryptoProvider
+{
+    @Override
+    public String getName() {
+        return BOUNCYCASTLE;
+    }
+
+    @Override
+    public Digest getDigest(String algorithm) {
+        if ("sha256".equals(algorithm))
+            return new SHA256Digest();
+        if ("sha512".equals(algorithm))
+            return new SHA512Digest();
+        return blakeDigest(algorithm);
+    }
+
+    /**
+     * Creates the digests of the BLAKE family, which the JCA doesn't provide
+     *
+     * @param algorithm "blake2b" (512 bit), "blake2b-256" or "blake3"
+     *
+     * @return a fresh Digest for the algorithm
+     *
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    static Digest blakeDigest(String algorithm) {
+        if ("blake2b".equals(algorithm))
+            return new Blake2bDigest(512);
+        if ("blake2b-256".equals(algorithm))
+            return new Blake2bDigest(256);
+        if ("blake3".equals(algorithm))
+            return new Blake3Digest();
+        throw new IllegalArgumentException("Unsupported hash algorithm: " + algorithm);
+    }
+
+    @Override
+    public Signer getSigner(String scheme) {
+        if ("rsassa-pss-sha256".equals(scheme)) {
+            SHA256Digest digest = new SHA256Digest();
+            return new PSSSigner(new RSAEngine(), digest, digest.getDigestSize());
+        }
+        throw new IllegalArgumentException("Unsupported signing scheme: " + scheme);
+    }
+}
@@ -0,0 +1,717 @@
+package io.github.in_toto.lib;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Writes the canonical json encoding of values to a character stream.
+ *
+ * This is the streaming counterpart of {@link JSONEncoder#canonicalize}, and
+ * produces exactly the same output. It allows callers to emit documents that
+ * are too large to be held in memory (e.g., links with millions of
+ * artifacts) piece by piece: the caller is responsible for emitting object
+ * members in canonical order when using the structural methods directly.
+ */
+public class CanonicalJSONWriter
+{
+    /**
+     * Canonical ordering of object keys: by unicode code point, as done by
+     * the reference implementation. This differs from the natural ordering
+     * of java Strings (by UTF-16 code unit) for characters outside of the
+     * basic multilingual plane.
+     */
+    public static final Comparator<String> KEY_ORDER = CanonicalJSONWriter::compareKeys;
+
+    private final Writer out;
+
+    /**
+     * @param out the writer to which the canonical encoding is written
+     */
+    public CanonicalJSONWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * An array or object being written by {@link #write(JsonElement)}.
+     */
+    private static class ElementFrame {
+        final Iterator<JsonElement> elements;
+        final Iterator<Map.Entry<String, JsonElement>> members;
+        boolean first = true;
+
+        ElementFrame(Iterator<JsonElement> elements,
+                Iterator<Map.Entry<String, JsonElement>> members) {
+            this.elements = elements;
+            this.members = members;
+        }
+
+        boolean hasNext() {
+            return this.members != null ? this.members.hasNext() : this.elements.hasNext();
+        }
+    }
+
+    /**
+     * Writes the canonical encoding of a json element
+     *
+     * Nested arrays and objects are tracked on an explicit stack rather than
+     * by recursion, so that deeply nested input can't overflow the thread
+     * stack.
+     *
+     * @param src the element to encode
+     *
+     * @return this writer
+     *
+     * @throws IOException if the underlying writer fails
+     */
+    public CanonicalJSONWriter write(JsonElement src) throws IOException {
+        Deque<ElementFrame> stack = new ArrayDeque<>();
+        JsonElement next = src;
+        while (true) {
+            if (next instanceof JsonArray) {
+                beginArray();
+                stack.push(new ElementFrame(((JsonArray)next).iterator(), null));
+
+            } else if (next instanceof JsonObject) {
+                JsonObject obj = (JsonObject)next;
+                Collection<Map.Entry<String, JsonElement>> members = obj.entrySet();
+
+                // Objects built from sorted maps (e.g., a Link's artifacts) are
+                // already in canonical order, only sort the ones that aren't
+                if (!isSorted(obj)) {
+                    List<Map.Entry<String, JsonElement>> sorted = new ArrayList<>(members);
+                    sorted.sort((a, b) -> compareKeys(a.getKey(), b.getKey()));
+                    members = sorted;
+                }
+                beginObject();
+                stack.push(new ElementFrame(null, members.iterator()));
+
+            } else if (next instanceof JsonNull) {
+                this.out.write("null");
+
+            } else if (next instanceof JsonPrimitive) {
+                JsonPrimitive primitive = (JsonPrimitive) next;
+
+                if (primitive.isNumber()) {
+                    // exact, as the literals of parsed payloads are (see
+                    // TokenSink#number), so that both encode the same
+                    this.out.write(integer(primitive.getAsString()));
+
+                } else if (primitive.isBoolean()) {
+                    this.out.write(primitive.getAsString());
+
+                } else if (primitive.isString()) {
+                    string(primitive.getAsString());
+                }
+            }
+
+            // move on to the next value, closing the containers that are done
+            next = null;
+            while (next == null) {
+                ElementFrame frame = stack.peek();
+                if (frame == null)
+                    return this;
+                if (!frame.hasNext()) {
+                    stack.pop();
+                    if (frame.members != null)
+                        endObject();
+                    else
+                        endArray();
+                    continue;
+                }
+                if (!frame.first)
+                    separator();
+                frame.first = false;
+                if (frame.members != null) {
+                    Map.Entry<String, JsonElement> member = frame.members.next();
+                    name(member.getKey());
+                    next = member.getValue();
+                } else {
+                    next = frame.elements.next();
+                }
+                if (next == null)
+                    next = JsonNull.INSTANCE;
+            }
+        }
+    }
+
+    /**
+     * Reads the next value from a json token stream and writes its canonical
+     * encoding, without building an intermediate JsonElement tree (see
+     * {@link TokenSink}).
+     *
+     * Number literals are copied as they are read rather than going through
+     * a floating point representation. Canonical json only allows integers,
+     * so numbers with a fraction are rejected. Like {@link #write(JsonElement)},
+     * this doesn't recurse on nested values.
+     *
+     * @param reader the reader positioned before the value to encode
+     *
+     * @return this writer
+     *
+     * @throws IOException if the reader or the underlying writer fails
+     * @throws JsonParseException if the value can't be canonicalized
+     */
+    public CanonicalJSONWriter write(JsonReader reader) throws IOException {
+        TokenSink sink = tokens();
+        do {
+            JsonToken token = reader.peek();
+            switch (token) {
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    sink.beginArray();
+                    break;
+
+                case END_ARRAY:
+                    reader.endArray();
+                    sink.endArray();
+                    break;
+
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    sink.beginObject();
+                    break;
+
+                case END_OBJECT:
+                    reader.endObject();
+                    sink.endObject();
+                    break;
+
+                case NAME:
+                    sink.name(reader.nextName());
+                    break;
+
+                case STRING:
+                    sink.value(reader.nextString());
+                    break;
+
+                case NUMBER:
+                    sink.number(reader.nextString());
+                    break;
+
+                case BOOLEAN:
+                    sink.value(reader.nextBoolean());
+                    break;
+
+                case NULL:
+                    reader.nextNull();
+                    sink.nullValue();
+                    break;
+
+                default:
+                    throw new JsonParseException("Unexpected token: " + token);
+            }
+        } while (!sink.isComplete());
+        return this;
+    }
+
+    /**
+     * @return a sink that writes the canonical encoding of the single value
+     * whose tokens it receives to this writer
+     */
+    public TokenSink tokens() {
+        return new TokenSink(this);
+    }
+
+    /**
+     * Receives the tokens of a single json value in the order they are read,
+     * e.g., from a JsonReader, and writes its canonical encoding once the
+     * value is complete.
+     *
+     * The value is encoded into a buffer as read. Objects whose members
+     * aren't in canonical order are only recorded as such, with the offsets
+     * of their members, and reordered when the buffer is written out: each
+     * character is copied once, however deeply the unordered objects are
+     * nested, so the cost is linear in the size of the value (plus sorting
+     * the members of each unordered object).
+     */
+    public static final class TokenSink {
+        private final CanonicalJSONWriter target;
+        private final StringWriter text = new StringWriter();
+        private final CanonicalJSONWriter buffer = new CanonicalJSONWriter(this.text);
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        // the outermost objects to reorder, in the order of the text
+        private final List<Reordered> reordered = new ArrayList<>();
+        private boolean complete;
+
+        private TokenSink(CanonicalJSONWriter target) {
+            this.target = target;
+        }
+
+        /**
+         * @return true once the value was written to the target writer
+         */
+        public boolean isComplete() {
+            return this.complete;
+        }
+
+        /**
+         * @return true if the next token must be the name of an object
+         * member
+         */
+        public boolean expectsName() {
+            Frame frame = this.stack.peek();
+            return frame != null && frame.object && !frame.named;
+        }
+
+        public TokenSink beginObject() throws IOException {
+            beforeValue();
+            this.stack.push(new Frame(true, length()));
+            this.buffer.beginObject();
+            return this;
+        }
+
+        public TokenSink endObject() throws IOException {
+            Frame frame = this.stack.peek();
+            if (frame == null || !frame.object || frame.named)
+                throw new IllegalStateException("Unexpected end of object");
+            this.stack.pop();
+            if (!frame.first)
+                frame.ends.add(length());
+            this.buffer.endObject();
+
+            if (!frame.sorted || frame.children != null)
+                parentChildren().add(new Reordered(frame, length()));
+            afterValue();
+            return this;
+        }
+
+        public TokenSink beginArray() throws IOException {
+            beforeValue();
+            this.stack.push(new Frame(false, length()));
+            this.buffer.beginArray();
+            return this;
+        }
+
+        public TokenSink endArray() throws IOException {
+            Frame frame = this.stack.peek();
+            if (frame == null || frame.object)
+                throw new IllegalStateException("Unexpected end of array");
+            this.stack.pop();
+            this.buffer.endArray();
+
+            // an array isn't reordered, but the objects in it may be
+            if (frame.children != null)
+                parentChildren().addAll(frame.children);
+            afterValue();
+            return this;
+        }
+
+        public TokenSink name(String key) throws IOException {
+            if (!expectsName())
+                throw new IllegalStateException("Unexpected name: " + key);
+            Frame frame = this.stack.peek();
+            if (!frame.first) {
+                frame.ends.add(length());
+                this.buffer.separator();
+            }
+            frame.first = false;
+            if (frame.sorted && !frame.keys.isEmpty()
+                    && compareKeys(frame.keys.get(frame.keys.size() - 1), key) > 0)
+                frame.sorted = false;
+            frame.keys.add(key);
+            frame.starts.add(length());
+            frame.named = true;
+            this.buffer.name(key);
+            return this;
+        }
+
+        public TokenSink value(String value) throws IOException {
+            beforeValue();
+            this.buffer.string(value);
+            afterValue();
+            return this;
+        }
+
+        /**
+         * @param literal a number as it was read, which must be an integer
+         *
+         * @throws JsonParseException if the number isn't an integer
+         */
+        public TokenSink number(String literal) throws IOException {
+            String integer = integer(literal);
+            beforeValue();
+            this.text.write(integer);
+            afterValue();
+            return this;
+        }
+
+        public TokenSink value(boolean value) throws IOException {
+            beforeValue();
+            this.text.write(value ? "true" : "false");
+            afterValue();
+            return this;
+        }
+
+        public TokenSink nullValue() throws IOException {
+            beforeValue();
+            this.text.write("null");
+            afterValue();
+            return this;
+        }
+
+        private int length() {
+            return this.text.getBuffer().length();
+        }
+
+        private List<Reordered> parentChildren() {
+            Frame parent = this.stack.peek();
+            if (parent == null)
+                return this.reordered;
+            if (parent.children == null)
+                parent.children = new ArrayList<>();
+            return parent.children;
+        }
+
+        private void beforeValue() throws IOException {
+            if (this.complete)
+                throw new IllegalStateException("Value already complete");
+            Frame frame = this.stack.peek();
+            if (frame == null)
+                return;
+            if (frame.object) {
+                if (!frame.named)
+                    throw new IllegalStateException("Expected a name");
+                frame.named = false;
+            } else {
+                if (!frame.first)
+                    this.buffer.separator();
+                frame.first = false;
+            }
+        }
+
+        private void afterValue() throws IOException {
+            if (!this.stack.isEmpty())
+                return;
+            this.complete = true;
+            StringBuffer encoded = this.text.getBuffer();
+            if (this.reordered.isEmpty())
+                this.target.out.write(encoded.toString());
+            else
+                reorder(encoded, this.target.out);
+        }
+
+        /**
+         * Writes the buffer, with the members of the recorded objects in
+         * canonical order. Nested objects are tracked on an explicit stack.
+         */
+        private void reorder(StringBuffer encoded, Writer out) throws IOException {
+            Deque<Object> work = new ArrayDeque<>();
+            work.push(new Region(0, encoded.length(), this.reordered));
+            while (!work.isEmpty()) {
+                Object item = work.peek();
+                if (item instanceof Region) {
+                    Region region = (Region)item;
+                    if (region.child < region.children.size()) {
+                        Reordered object = region.children.get(region.child++);
+                        out.append(encoded, region.position, object.start);
+                        region.position = object.end;
+                        work.push(object.members());
+                    } else {
+                        out.append(encoded, region.position, region.end);
+                        work.pop();
+                    }
+                } else {
+                    Members members = (Members)item;
+                    if (members.next == 0)
+                        out.write('{');
+                    if (members.next < members.order.length) {
+                        if (members.next > 0)
+                            out.write(',');
+                        work.push(members.regions[members.order[members.next++]]);
+                    } else {
+                        out.write('}');
+                        work.pop();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * An array or object being read by a {@link TokenSink}
+     */
+    private static final class Frame {
+        final boolean object;
+        final int start;
+        boolean first = true;
+        // the objects to reorder in the container, in the order of the text
+        List<Reordered> children;
+
+        // objects only: the keys of the members, and the offsets of their
+        // text, from the start of the key to the end of the value
+        final List<String> keys;
+        final Offsets starts;
+        final Offsets ends;
+        boolean sorted = true;
+        boolean named;
+
+        Frame(boolean object, int start) {
+            this.object = object;
+            this.start = start;
+            this.keys = object ? new ArrayList<>() : null;
+            this.starts = object ? new Offsets() : null;
+            this.ends = object ? new Offsets() : null;
+        }
+    }
+
+    /**
+     * A growable array of text offsets
+     */
+    private static final class Offsets {
+        int[] values = new int[8];
+        int size;
+
+        void add(int value) {
+            if (this.size == this.values.length)
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            this.values[this.size++] = value;
+        }
+    }
+
+    /**
+     * An object whose members aren't in canonical order, or that holds such
+     * an object
+     */
+    private static final class Reordered {
+        final int start;
+        final int end;
+        final String[] keys;
+        final int[] starts;
+        final int[] ends;
+        final boolean sorted;
+        final List<Reordered> children;
+
+        Reordered(Frame frame, int end) {
+            this.start = frame.start;
+            this.end = end;
+            this.keys = frame.keys.toArray(new String[0]);
+            this.starts = Arrays.copyOf(frame.starts.values, frame.starts.size);
+            this.ends = Arrays.copyOf(frame.ends.values, frame.ends.size);
+            this.sorted = frame.sorted;
+            this.children = frame.children != null
+                ? frame.children : Collections.<Reordered>emptyList();
+        }
+
+        /**
+         * @return the members of the object, to be written in canonical order
+         */
+        Members members() {
+            Integer[] order = new Integer[this.keys.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            if (!this.sorted)
+                Arrays.sort(order, (a, b) -> compareKeys(this.keys[a], this.keys[b]));
+
+            // the nested objects to reorder, by member
+            Region[] regions = new Region[this.keys.length];
+            int child = 0;
+            for (int i = 0; i < regions.length; i++) {
+                int first = child;
+                while (child < this.children.size()
+                        && this.children.get(child).start < this.ends[i])
+                    child++;
+                regions[i] = new Region(this.starts[i], this.ends[i],
+                        this.children.subList(first, child));
+            }
+            return new Members(order, regions);
+        }
+    }
+
+    /**
+     * Text of the buffer being written, with the objects to reorder in it
+     */
+    private static final class Region {
+        int position;
+        final int end;
+        final List<Reordered> children;
+        int child;
+
+        Region(int position, int end, List<Reordered> children) {
+            this.position = position;
+            this.end = end;
+            this.children = children;
+        }
+    }
+
+    /**
+     * The members of an object being written in canonical order
+     */
+    private static final class Members {
+        final Integer[] order;
+        final Region[] regions;
+        int next;
+
+        Members(Integer[] order, Region[] regions) {
+            this.order = order;
+            this.regions = regions;
+        }
+    }
+
+    private static String integer(String literal) {
+        boolean plain = !literal.isEmpty();
+        for (int i = 0; i < literal.length() && plain; i++) {
+            char c = literal.charAt(i);
+            plain = (c >= '0' && c <= '9') || (i == 0 && c == '-' && literal.length() > 1);
+        }
+        if (plain)
+            return literal;
+
+        // e.g., "1.0" or "1e3", as written by some serializers
+        try {
+            return new BigDecimal(literal).toBigIntegerExact().toString();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new JsonParseException("Canonical json doesn't allow " + literal);
+        }
+    }
+
+    private static boolean isSorted(JsonObject obj) {
+        String previous = null;
+        for (Map.Entry<String, JsonElement> member : obj.entrySet()) {
+            if (previous != null && compareKeys(previous, member.getKey()) > 0)
+                return false;
+            previous = member.getKey();
+        }
+        return true;
+    }
+
+    /**
+     * Compares two strings by unicode code point.
+     *
+     * @param a the first string
+     * @param b the second string
+     *
+     * @return a negative integer, zero, or a positive integer as the first
+     * string sorts before, equal to, or after the second one.
+     */
+    public static int compareKeys(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(i);
+            if (ca != cb) {
+                // Surrogates (0xD800-0xDFFF) encode code points above 0xFFFF,
+                // so they must sort after any other UTF-16 code unit
+                boolean sa = Character.isSurrogate(ca);
+                boolean sb = Character.isSurrogate(cb);
+                if (sa != sb)
+                    return sa ? 1 : -1;
+                return ca - cb;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * Writes a string value, escaping only the double quote and backslash
+     * characters as mandated by canonical json.
+     *
+     * @param value the string to write
+     *
+     * @return this writer
+     *
+     * @throws IOException if the underlying writer fails
+     */
+    public CanonicalJSONWriter string(String value) throws IOException {
+        this.out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                this.out.write(value, start, i - start);
+                this.out.write('\\');
+                start = i;
+            }
+        }
+        this.out.write(value, start, value.length() - start);
+        this.out.write('"');
+        return this;
+    }
+
+    /**
+     * Writes an object member name followed by the name separator
+     *
+     * @param key the member name
+     *
+     * @return this writer
+     *
+     * @throws IOException if the underlying writer fails
+     */
+    public CanonicalJSONWriter name(String key) throws IOException {
+        string(key);
+        this.out.write(':');
+        return this;
+    }
+
+    public CanonicalJSONWriter beginObject() throws IOException {
+        this.out.write('{');
+        return this;
+    }
+
+    public CanonicalJSONWriter endObject() throws IOException {
+        this.out.write('}');
+        return this;
+    }
+
+    public CanonicalJSONWriter beginArray() throws IOException {
+        this.out.write('[');
+        return this;
+    }
+
+    public CanonicalJSONWriter endArray() throws IOException {
+        this.out.write(']');
+        return this;
+    }
+
+    /**
+     * Writes the separator between array elements or object members
+     *
+     * @return this writer
+     *
+     * @throws IOException if the underlying writer fails
+     */
+    public CanonicalJSONWriter separator() throws IOException {
+        this.out.write(',');
+        return this;
+    }
+
+    /**
+     * Writes an already canonical encoded fragment as is, e.g., a cached
+     * encoding of an object member (see
+     * {@link io.github.in_toto.models.ArtifactMap})
+     *
+     * @param canonical the fragment
+     *
+     * @return this writer
+     *
+     * @throws IOException if the underlying writer fails
+     */
+    public CanonicalJSONWriter fragment(String canonical) throws IOException {
+        this.out.write(canonical);
+        return this;
+    }
+
+    public void flush() throws IOException {
+        this.out.flush();
+    }
+}
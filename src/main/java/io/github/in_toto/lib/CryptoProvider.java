@@ -0,0 +1,261 @@
+package io.github.in_toto.lib;
+
+import java.util.HashMap;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.Signer;
+
+/**
+ * Abstract factory for the cryptographic primitives used by the library.
+ *
+ * Digests (used to hash artifacts and to compute keyids) and signers (used
+ * to sign and verify metadata) are obtained through the provider configured
+ * for each kind of operation, so that, e.g., artifacts can be hashed using the
+ * JDK's intrinsified SHA implementations while signatures are still computed
+ * by BouncyCastle.
+ *
+ * The default providers can be chosen using the {@code in_toto.crypto.digest}
+ * and {@code in_toto.crypto.signature} system properties, which accept either
+ * {@value #BOUNCYCASTLE} or {@value #JCA}. If unset, the JCA is used whenever
+ * it supports the required algorithms.
+ *
+ * Regardless of the backend, algorithms are referred to using the names
+ * defined by the in-toto specification (e.g., "sha256" or
+ * "rsassa-pss-sha256").
+ */
+public abstract class CryptoProvider
+{
+    /**
+     * Name of the BouncyCastle lightweight API backend.
+     */
+    public static final String BOUNCYCASTLE = "bc";
+
+    /**
+     * Name of the Java Cryptography Architecture backend.
+     */
+    public static final String JCA = "jca";
+
+    /**
+     * The default providers are chosen on first use rather than when this
+     * class is initialized, as probing the JCA loads the security providers:
+     * hashing artifacts doesn't need to pay for probing RSASSA-PSS support.
+     */
+    private static volatile CryptoProvider digestProvider;
+    private static volatile CryptoProvider signatureProvider;
+
+    /**
+     * Per-thread instances handed out by {@link #getPooledDigest} and
+     * {@link #getPooledSigner}, keyed by algorithm or scheme name.
+     */
+    private final ThreadLocal<HashMap<String, Digest>> digestPool =
+        ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<HashMap<String, Signer>> signerPool =
+        ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * @return the name of this backend, either {@value #BOUNCYCASTLE} or
+     * {@value #JCA}
+     */
+    public abstract String getName();
+
+    /**
+     * Creates a new digest instance.
+     *
+     * @param algorithm the in-toto name of the hash algorithm (e.g., "sha256")
+     *
+     * @return a fresh Digest for the algorithm
+     *
+     * @throws IllegalArgumentException if the algorithm is not supported
+     */
+    public abstract Digest getDigest(String algorithm);
+
+    /**
+     * Creates a new signer instance.
+     *
+     * @param scheme the in-toto name of the signing scheme (e.g.,
+     * "rsassa-pss-sha256")
+     *
+     * @return a fresh, uninitialized Signer for the scheme
+     *
+     * @throws IllegalArgumentException if the scheme is not supported
+     */
+    public abstract Signer getSigner(String scheme);
+
+    /**
+     * Returns a digest owned by the calling thread, reset and ready to use.
+     *
+     * Repeated calls on the same thread return the same instance, so the
+     * digest must not be kept around nor used after the next call for the
+     * same algorithm.
+     *
+     * @param algorithm the in-toto name of the hash algorithm
+     *
+     * @return a reset, thread-confined Digest for the algorithm
+     */
+    public Digest getPooledDigest(String algorithm) {
+        HashMap<String, Digest> pool = this.digestPool.get();
+        Digest digest = pool.get(algorithm);
+        if (digest == null) {
+            digest = getDigest(algorithm);
+            pool.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    /**
+     * Returns a signer owned by the calling thread.
+     *
+     * Like {@link #getPooledDigest}, the instance is reused by subsequent
+     * calls on the same thread. It must be initialized by the caller before
+     * use.
+     *
+     * @param scheme the in-toto name of the signing scheme
+     *
+     * @return a thread-confined Signer for the scheme
+     */
+    public Signer getPooledSigner(String scheme) {
+        HashMap<String, Signer> pool = this.signerPool.get();
+        Signer signer = pool.get(scheme);
+        if (signer == null) {
+            signer = getSigner(scheme);
+            pool.put(scheme, signer);
+        }
+        return signer;
+    }
+
+    /**
+     * @return the provider used for hashing operations
+     */
+    public static CryptoProvider getDigestProvider() {
+        CryptoProvider provider = digestProvider;
+        if (provider == null) {
+            synchronized (CryptoProvider.class) {
+                if (digestProvider == null)
+                    digestProvider = fromProperty("in_toto.crypto.digest", "sha256");
+                provider = digestProvider;
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Sets the provider used for hashing operations
+     *
+     * @param provider the provider to use from now on
+     */
+    public static void setDigestProvider(CryptoProvider provider) {
+        if (provider == null)
+            throw new IllegalArgumentException("provider can't be null");
+        digestProvider = provider;
+    }
+
+    /**
+     * @return the provider used for signing and verification operations
+     */
+    public static CryptoProvider getSignatureProvider() {
+        CryptoProvider provider = signatureProvider;
+        if (provider == null) {
+            synchronized (CryptoProvider.class) {
+                if (signatureProvider == null)
+                    signatureProvider = fromProperty("in_toto.crypto.signature",
+                            "rsassa-pss-sha256");
+                provider = signatureProvider;
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Sets the provider used for signing and verification operations
+     *
+     * @param provider the provider to use from now on
+     */
+    public static void setSignatureProvider(CryptoProvider provider) {
+        if (provider == null)
+            throw new IllegalArgumentException("provider can't be null");
+        signatureProvider = provider;
+    }
+
+    /**
+     * Convenience method to obtain a digest from the current digest provider.
+     *
+     * @param algorithm the in-toto name of the hash algorithm
+     *
+     * @return a Digest for the algorithm
+     */
+    public static Digest digest(String algorithm) {
+        return getDigestProvider().getDigest(algorithm);
+    }
+
+    /**
+     * Convenience method to obtain a signer from the current signature
+     * provider.
+     *
+     * @param scheme the in-toto name of the signing scheme
+     *
+     * @return a Signer for the scheme
+     */
+    public static Signer signer(String scheme) {
+        return getSignatureProvider().getSigner(scheme);
+    }
+
+    /**
+     * Convenience method to obtain a thread-confined digest from the current
+     * digest provider, see {@link #getPooledDigest}.
+     *
+     * @param algorithm the in-toto name of the hash algorithm
+     *
+     * @return a reset Digest for the algorithm
+     */
+    public static Digest pooledDigest(String algorithm) {
+        return getDigestProvider().getPooledDigest(algorithm);
+    }
+
+    /**
+     * Convenience method to obtain a thread-confined signer from the current
+     * signature provider, see {@link #getPooledSigner}.
+     *
+     * @param scheme the in-toto name of the signing scheme
+     *
+     * @return a Signer for the scheme
+     */
+    public static Signer pooledSigner(String scheme) {
+        return getSignatureProvider().getPooledSigner(scheme);
+    }
+
+    /**
+     * Looks up a backend by name.
+     *
+     * @param name either {@value #BOUNCYCASTLE} or {@value #JCA}
+     *
+     * @return a provider instance for the named backend
+     */
+    public static CryptoProvider forName(String name) {
+        if (BOUNCYCASTLE.equals(name))
+            return new BouncyCastleCryptoProvider();
+        if (JCA.equals(name))
+            return new JCACryptoProvider();
+        throw new IllegalArgumentException("Unknown crypto provider: " + name);
+    }
+
+    private static CryptoProvider fromProperty(String property, String probe) {
+        String name = System.getProperty(property);
+        if (name != null)
+            return forName(name);
+
+        // Prefer the JCA, but only if it can actually do the job on this
+        // runtime (e.g., RSASSA-PSS is missing on older JDKs)
+        CryptoProvider jca = new JCACryptoProvider();
+        try {
+            if (probe.startsWith("rsassa"))
+                jca.getSigner(probe);
+            else
+                jca.getDigest(probe);
+            return jca;
+        } catch (IllegalArgumentException e) {
+            return new BouncyCastleCryptoProvider();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.in_toto.lib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Runtime-specific implementation of {@link Platform#readFile}.
+ *
+ * This is the Java 8 implementation, which Java 21 uses too. Like
+ * {@link Platform}, the multi-release jar holds a version of this class for
+ * newer runtimes, which on Java 22 reads large files through memory
+ * mappings.
+ */
+final class FileReads
+{
+    private FileReads() {
+    }
+
+    static void readFile(Path file, byte[] buffer, ObjIntConsumer<byte[]> block)
+        throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            int length;
+            while ((length = in.read(buffer)) != -1)
+                block.accept(buffer, length);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.in_toto.lib;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+import org.bouncycastle.crypto.Digest;
+
+/**
+ * Adapter exposing a JCA MessageDigest through the BouncyCastle Digest
+ * interface used by the rest of the library.
+ */
+class JCADigest
+    implements Digest
+{
+    private final String algorithm;
+    private final MessageDigest digest;
+
+    JCADigest(String algorithm, MessageDigest digest) {
+        this.algorithm = algorithm;
+        this.digest = digest;
+    }
+
+    @Override
+    public String getAlgorithmName() {
+        return this.algorithm;
+    }
+
+    @Override
+    public int getDigestSize() {
+        return this.digest.getDigestLength();
+    }
+
+    @Override
+    public void update(byte in) {
+        this.digest.update(in);
+    }
+
+    @Override
+    public void update(byte[] in, int inOff, int len) {
+        this.digest.update(in, inOff, len);
+    }
+
+    @Override
+    public int doFinal(byte[] out, int outOff) {
+        try {
+            return this.digest.digest(out, outOff, getDigestSize());
+        } catch (DigestException e) {
+            throw new RuntimeException(e.toString());
+        }
+    }
+
+    @Override
+    public void reset() {
+        this.digest.reset();
+    }
+}
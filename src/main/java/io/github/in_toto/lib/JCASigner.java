@@ -0,0 +1,159 @@
+package io.github.in_toto.lib;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.security.spec.PSSParameterSpec;
+import java.security.spec.RSAPrivateCrtKeySpec;
+import java.security.spec.RSAPrivateKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+
+import org.bouncycastle.crypto.CipherParameters;
+import org.bouncycastle.crypto.CryptoException;
+import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.crypto.params.ParametersWithRandom;
+import org.bouncycastle.crypto.params.RSAKeyParameters;
+import org.bouncycastle.crypto.params.RSAPrivateCrtKeyParameters;
+
+/**
+ * Adapter exposing a JCA Signature through the BouncyCastle Signer
+ * interface used by the rest of the library.
+ *
+ * Keys are passed in as BouncyCastle parameters (as returned by
+ * {@link io.github.in_toto.keys.Key#getPrivate()}) and converted to their JCA
+ * counterparts on initialization.
+ */
+class JCASigner
+    implements Signer
+{
+    private final java.security.Signature signature;
+    private final PSSParameterSpec spec;
+    private boolean forSigning;
+    private java.security.Key key;
+
+    /**
+     * The parameters the current key was converted from, so that
+     * re-initializing with the same key doesn't go through the KeyFactory.
+     */
+    private RSAKeyParameters keyParams;
+    private SecureRandom random;
+
+    JCASigner(java.security.Signature signature, PSSParameterSpec spec) {
+        this.signature = signature;
+        this.spec = spec;
+    }
+
+    @Override
+    public void init(boolean forSigning, CipherParameters param) {
+        this.random = null;
+        if (param instanceof ParametersWithRandom) {
+            this.random = ((ParametersWithRandom)param).getRandom();
+            param = ((ParametersWithRandom)param).getParameters();
+        }
+
+        if (!(param instanceof RSAKeyParameters))
+            throw new IllegalArgumentException("Not an RSA key");
+
+        RSAKeyParameters rsaParams = (RSAKeyParameters)param;
+        try {
+            if (rsaParams == this.keyParams && forSigning == this.forSigning) {
+                initSignature();
+                return;
+            }
+            this.forSigning = forSigning;
+            this.keyParams = null;
+            KeyFactory factory = KeyFactory.getInstance("RSA");
+            if (forSigning)
+                this.key = toPrivateKey(factory, rsaParams);
+            else
+                this.key = factory.generatePublic(new RSAPublicKeySpec(
+                        rsaParams.getModulus(), rsaParams.getExponent()));
+            this.keyParams = rsaParams;
+            initSignature();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Couldn't initialize signer: " + e.toString());
+        }
+    }
+
+    private void initSignature() throws GeneralSecurityException {
+        if (this.forSigning && this.random != null)
+            this.signature.initSign((PrivateKey)this.key, this.random);
+        else if (this.forSigning)
+            this.signature.initSign((PrivateKey)this.key);
+        else
+            this.signature.initVerify((PublicKey)this.key);
+        this.signature.setParameter(this.spec);
+    }
+
+    private static PrivateKey toPrivateKey(KeyFactory factory,
+            RSAKeyParameters params) throws GeneralSecurityException {
+        if (!params.isPrivate())
+            throw new IllegalArgumentException("Can't sign with a public key!");
+
+        if (params instanceof RSAPrivateCrtKeyParameters) {
+            RSAPrivateCrtKeyParameters crt = (RSAPrivateCrtKeyParameters)params;
+            return factory.generatePrivate(new RSAPrivateCrtKeySpec(
+                    crt.getModulus(), crt.getPublicExponent(),
+                    crt.getExponent(), crt.getP(), crt.getQ(), crt.getDP(),
+                    crt.getDQ(), crt.getQInv()));
+        }
+        return factory.generatePrivate(new RSAPrivateKeySpec(
+                params.getModulus(), params.getExponent()));
+    }
+
+    @Override
+    public void update(byte b) {
+        try {
+            this.signature.update(b);
+        } catch (SignatureException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    @Override
+    public void update(byte[] in, int off, int len) {
+        try {
+            this.signature.update(in, off, len);
+        } catch (SignatureException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+
+    @Override
+    public byte[] generateSignature() throws CryptoException {
+        if (!this.forSigning)
+            throw new IllegalStateException("Signer not initialized for signing");
+        try {
+            return this.signature.sign();
+        } catch (SignatureException e) {
+            throw new CryptoException(e.toString(), e);
+        }
+    }
+
+    @Override
+    public boolean verifySignature(byte[] signature) {
+        if (this.forSigning)
+            throw new IllegalStateException("Signer not initialized for verification");
+        try {
+            return this.signature.verify(signature);
+        } catch (SignatureException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void reset() {
+        // A JCA Signature can only discard pending data by being
+        // initialized again
+        if (this.key == null)
+            return;
+        try {
+            initSignature();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e.toString());
+        }
+    }
+}
@@ -13,8 +13,9 @@ import com.google.gson.JsonSerializer;
 import com.google.gson.JsonSerializationContext;
 
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.TreeSet;
 import java.util.Map;
 import java.lang.reflect.Type;
 
@@ -54,68 +55,14 @@ public interface JSONEncoder
      * @return A canonical json encoded string of the passed JsonElement.
      */
     static String canonicalize(JsonElement src) {
-        String result =  new String();
-        if (src instanceof JsonArray) {
-            // Canonicalize each element of the array
-            result += "[";
-            JsonArray array = (JsonArray) src;
-            for (int i = 0; i < array.size(); i++) {
-                result += canonicalize(array.get(i));
-
-                if (i < array.size() - 1) {
-                  result += ",";
-                }
-            }
-            result += "]";
-
-        } else if (src instanceof JsonObject) {
-            result += "{";
-
-            JsonObject obj = (JsonObject)src;
-            // Create an ordered list of the JsonObject's keys
-            TreeSet<String> keys = new TreeSet<>();
-            for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
-                keys.add(entry.getKey());
-            }
-
-            // Canonicalize json object
-            int i = 0;
-            for (String key : keys) {
-                // NOTE: It is okay to only call `canonicalizeString` (instead
-                // of `canonicalize` like in the reference implementation)
-                // because we know that the keys are always strings.
-                result += canonicalizeString(key);
-                result += ":";
-                result += canonicalize(obj.get(key));
-
-                if (i < keys.size() - 1) {
-                    result += ",";
-                }
-                i++;
-            }
-            result += "}";
-
-        } else if (src instanceof JsonNull) {
-            result += "null";
-
-        } else if (src instanceof JsonPrimitive) {
-            JsonPrimitive primitive = (JsonPrimitive) src;
-
-            if (primitive.isNumber()) {
-                result += String.format("%d", primitive.getAsInt());
-
-            } else if (primitive.isBoolean()) {
-                result += primitive.getAsString();
-
-            } else if (primitive.isString()) {
-                String decodedPrimitive = new GsonBuilder()
-                        .disableHtmlEscaping()
-                        .create()
-                        .fromJson(primitive, String.class);
-                result += canonicalizeString(decodedPrimitive);
-            }
+        StringWriter result = new StringWriter();
+        try {
+            new CanonicalJSONWriter(result).write(src);
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new RuntimeException(e.toString());
         }
-        return result;
+        return result.toString();
     }
 
     /**
@@ -0,0 +1,72 @@
+package io.github.in_toto.lib;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Runtime-specific implementations of the blocking I/O primitives.
+ *
+ * This is the Java 8 implementation. The jar is a multi-release jar: when
+ * built on a newer JDK, it also holds a version of this class that Java 21
+ * and later load instead (see the jdk21 profile of the pom), using virtual
+ * threads, and a version of {@link FileReads} for Java 22 (see the jdk22
+ * profile). All versions have the same API, and callers don't need to know
+ * which one they run with.
+ */
+public final class Platform
+{
+    private Platform() {
+    }
+
+    /**
+     * @return true if the executors of {@link #newBlockingExecutor} run
+     * their tasks on virtual threads, in which case blocked tasks don't hold
+     * a platform thread and many more of them may be run concurrently
+     */
+    public static boolean usesVirtualThreads() {
+        return false;
+    }
+
+    /**
+     * Creates an executor for tasks that mostly block on file I/O, e.g.,
+     * hashing artifacts or loading links. The executor runs at most the
+     * passed number of tasks at once. Depending on the runtime, tasks may
+     * or may not share threads, so they shouldn't rely on state cached per
+     * thread.
+     *
+     * @param threads the maximum number of tasks run concurrently
+     * @param name the prefix of the thread names
+     *
+     * @return the executor, which must be shut down by the caller
+     */
+    public static ExecutorService newBlockingExecutor(int threads, String name) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(threads, factory);
+    }
+
+    /**
+     * Reads a file block by block
+     *
+     * @param file the file to read
+     * @param buffer the buffer the blocks are read into
+     * @param block called with the buffer and the length of each block,
+     * which starts at offset 0
+     *
+     * @throws IOException if the file can't be read, or is truncated while
+     * being read
+     */
+    public static void readFile(Path file, byte[] buffer, ObjIntConsumer<byte[]> block)
+        throws IOException {
+        FileReads.readFile(file, buffer, block);
+    }
+}
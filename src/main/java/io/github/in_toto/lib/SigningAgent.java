@@ -0,0 +1,567 @@
+package io.github.in_toto.lib;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * A long-running local agent that keeps keys loaded and signs payloads on
+ * behalf of other processes, so that short-lived build steps don't read and
+ * parse the key file every time they sign a link. Clients use
+ * {@link io.github.in_toto.keys.AgentKey} in place of the key.
+ *
+ * The agent listens on a loopback port. Its port and a random token are
+ * written to a connection file readable only by its owner, and clients must
+ * present the token before sending any request, so that only processes of
+ * the same user can sign with the agent's keys.
+ *
+ * Connections are persistent and carry a sequence of requests:
+ *
+ * <pre>
+ *  KEYIDS                       -&gt; count, keyid...
+ *  SIGN keyid length payload    -&gt; signature
+ *  PUBLIC keyid                 -&gt; public key PEM
+ * </pre>
+ *
+ * Each reply starts with a status byte, followed by the result or by an
+ * error message. Sign requests from all the connections are queued and
+ * signed in batches by a fixed set of signing threads. {@link Client}
+ * implements the client side of the protocol, and the {@code agent} command
+ * of {@link App} runs an agent.
+ */
+public class SigningAgent
+    implements Closeable
+{
+    static final byte KEYIDS = 1;
+    static final byte SIGN = 2;
+    static final byte PUBLIC = 3;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    /**
+     * Upper bound on the size of a payload to sign, so that a client can't
+     * make the agent allocate arbitrary amounts of memory.
+     */
+    static final int MAX_PAYLOAD = 64 * 1024 * 1024;
+
+    private static final int MAX_BATCH = 64;
+
+    /**
+     * Consecutive failures to accept a connection, e.g., when out of file
+     * descriptors, after which the agent gives up and closes, waiting a bit
+     * longer after each one.
+     */
+    private static final int MAX_ACCEPT_FAILURES = 10;
+
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    private final Map<String, Key> keys = new LinkedHashMap<>();
+    private final Path connectionFile;
+    private final byte[] token;
+    private final ServerSocket serverSocket;
+    private final BlockingQueue<SignRequest> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService connections;
+    private final ExecutorService signers;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    // why the agent stopped or couldn't clean up, if it failed
+    private volatile IOException error;
+
+    private static class SignRequest {
+        final Key key;
+        final byte[] payload;
+        final CompletableFuture<String> signature = new CompletableFuture<>();
+
+        SignRequest(Key key, byte[] payload) {
+            this.key = key;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Starts an agent serving the given keys.
+     *
+     * @param keys the keys to serve, which must hold their private portion
+     * @param connectionFile where to write the port and token of the agent;
+     * it must not exist, and is deleted when the agent is closed
+     * @param signingThreads the number of threads signing queued requests
+     *
+     * @throws java.io.IOException if the agent can't listen or the connection
+     * file can't be written
+     */
+    public SigningAgent(List<? extends Key> keys, Path connectionFile, int signingThreads)
+        throws IOException {
+        if (signingThreads < 1)
+            throw new IllegalArgumentException("signingThreads must be positive");
+        for (Key key : keys) {
+            if (key.getPrivate() == null)
+                throw new IllegalArgumentException("Key " + key.computeKeyId()
+                        + " has no private portion");
+            this.keys.put(key.computeKeyId(), key);
+        }
+
+        this.connectionFile = connectionFile;
+        this.token = new byte[32];
+        new SecureRandom().nextBytes(this.token);
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        try {
+            writeConnectionFile();
+        } catch (IOException e) {
+            this.serverSocket.close();
+            throw e;
+        }
+
+        this.connections = Executors.newCachedThreadPool(daemon("in-toto-agent-connection"));
+        this.signers = Executors.newFixedThreadPool(signingThreads, daemon("in-toto-agent-signer"));
+        for (int i = 0; i < signingThreads; i++)
+            this.signers.execute(this::signBatches);
+        daemon("in-toto-agent").newThread(this::accept).start();
+    }
+
+    public SigningAgent(List<? extends Key> keys, Path connectionFile) throws IOException {
+        this(keys, connectionFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void writeConnectionFile() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("port", Integer.toString(this.serverSocket.getLocalPort()));
+        properties.setProperty("token", Hex.toHexString(this.token));
+
+        // create the file with owner-only permissions before writing the
+        // token, where the file system supports them
+        try {
+            Files.createFile(this.connectionFile, PosixFilePermissions.asFileAttribute(
+                        PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(this.connectionFile);
+        }
+        try (Writer writer = Files.newBufferedWriter(this.connectionFile,
+                    StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING)) {
+            properties.store(writer, "in-toto signing agent");
+        }
+    }
+
+    /**
+     * @return the port the agent listens on
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the keyids of the keys served by the agent
+     */
+    public List<String> getKeyIds() {
+        return Collections.unmodifiableList(new ArrayList<>(this.keys.keySet()));
+    }
+
+    /**
+     * @return the number of open client connections
+     */
+    int getClientCount() {
+        return this.clients.size();
+    }
+
+    private void accept() {
+        int failures = 0;
+        while (!this.closed) {
+            try {
+                Socket socket = this.serverSocket.accept();
+                failures = 0;
+                this.connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (this.closed)
+                    return;
+                if (++failures == MAX_ACCEPT_FAILURES) {
+                    this.error = new IOException("Signing agent stopped accepting connections", e);
+                    close();
+                    return;
+                }
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS * failures);
+                } catch (InterruptedException interrupted) {
+                    close();
+                    return;
+                }
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        this.clients.add(socket);
+        try (Socket connection = socket) {
+            // closed before the connection was registered
+            if (this.closed)
+                return;
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(connection.getOutputStream()));
+
+            byte[] presented = new byte[this.token.length];
+            in.readFully(presented);
+            if (!MessageDigest.isEqual(presented, this.token)) {
+                out.writeByte(ERROR);
+                out.writeUTF("Invalid token");
+                out.flush();
+                return;
+            }
+            out.writeByte(OK);
+            out.flush();
+
+            while (!this.closed) {
+                int op;
+                try {
+                    op = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (!handle(op, in, out))
+                    return;
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away, or the agent was closed
+        } finally {
+            this.clients.remove(socket);
+        }
+    }
+
+    /**
+     * Handles a request and writes its reply
+     *
+     * @return false if the connection must be closed
+     */
+    private boolean handle(int op, DataInputStream in, DataOutputStream out)
+        throws IOException {
+        if (op == KEYIDS) {
+            out.writeByte(OK);
+            out.writeInt(this.keys.size());
+            for (String keyid : this.keys.keySet())
+                out.writeUTF(keyid);
+            return true;
+        }
+
+        if (op == PUBLIC) {
+            Key key = this.keys.get(in.readUTF());
+            if (!(key instanceof RSAKey)) {
+                error(out, key == null ? "Unknown key" : "Unsupported key type");
+                return true;
+            }
+            out.writeByte(OK);
+            writeLongUTF(out, ((RSAKey)key).getPublicPem());
+            return true;
+        }
+
+        if (op == SIGN) {
+            Key key = this.keys.get(in.readUTF());
+            int length = in.readInt();
+            if (length < 0 || length > MAX_PAYLOAD) {
+                // the stream can't be resynchronized
+                error(out, "Invalid payload length " + length);
+                return false;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (key == null) {
+                error(out, "Unknown key");
+                return true;
+            }
+
+            SignRequest request = new SignRequest(key, payload);
+            this.queue.add(request);
+            try {
+                String signature = request.signature.get();
+                out.writeByte(OK);
+                out.writeUTF(signature);
+            } catch (ExecutionException e) {
+                error(out, "Couldn't sign payload: " + e.getCause());
+            } catch (CancellationException e) {
+                // the agent was closed
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
+        }
+
+        error(out, "Unknown request " + op);
+        return false;
+    }
+
+    private static void error(DataOutputStream out, String message) throws IOException {
+        out.writeByte(ERROR);
+        out.writeUTF(message);
+    }
+
+    static void writeLongUTF(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readLongUTF(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD)
+            throw new IOException("Invalid string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Takes the queued requests in batches, so that a burst of requests is
+     * signed back to back by each thread, with its signer already set up,
+     * instead of waking a thread per request.
+     */
+    private void signBatches() {
+        List<SignRequest> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (!this.closed) {
+                batch.add(this.queue.take());
+                this.queue.drainTo(batch, MAX_BATCH - 1);
+                for (SignRequest request : batch) {
+                    try {
+                        String signature = request.key.sign(
+                                out -> out.write(request.payload));
+                        if (signature == null)
+                            throw new IOException("Key can't sign");
+                        request.signature.complete(signature);
+                    } catch (IOException | RuntimeException e) {
+                        request.signature.completeExceptionally(e);
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (SignRequest request : batch)
+                request.signature.cancel(false);
+        }
+    }
+
+    /**
+     * Waits until the agent is closed, e.g., by a shutdown hook
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws java.io.IOException if the agent stopped because it couldn't
+     * accept connections anymore, or couldn't delete its connection file
+     */
+    public void awaitClose() throws InterruptedException, IOException {
+        this.stopped.await();
+        if (this.error != null)
+            throw this.error;
+    }
+
+    /**
+     * Stops the agent and deletes its connection file. Pending requests are
+     * cancelled, and the connections of clients are closed. A failure to
+     * delete the connection file is reported by {@link #awaitClose()}.
+     */
+    @Override
+    public void close() {
+        if (this.closed)
+            return;
+        this.closed = true;
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            // not listening anymore anyway
+        }
+        for (Socket client : this.clients) {
+            try {
+                client.close();
+            } catch (IOException e) {
+                // closed anyway
+            }
+        }
+        this.connections.shutdownNow();
+        this.signers.shutdownNow();
+        List<SignRequest> pending = new ArrayList<>();
+        this.queue.drainTo(pending);
+        for (SignRequest request : pending)
+            request.signature.cancel(false);
+        try {
+            Files.deleteIfExists(this.connectionFile);
+        } catch (IOException e) {
+            IOException failure = new IOException("Couldn't delete " + this.connectionFile, e);
+            if (this.error != null)
+                this.error.addSuppressed(failure);
+            else
+                this.error = failure;
+        }
+        this.stopped.countDown();
+    }
+
+    /**
+     * A connection to a running agent.
+     *
+     * A client holds a single connection, on which requests are sent one at
+     * a time; threads signing concurrently should use a client each.
+     */
+    public static class Client
+        implements Closeable
+    {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Connects to the agent described by a connection file
+         *
+         * @param connectionFile the connection file written by the agent
+         *
+         * @return a connected client
+         *
+         * @throws java.io.IOException if the agent can't be reached or
+         * rejects the token
+         */
+        public static Client connect(Path connectionFile) throws IOException {
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(connectionFile)) {
+                properties.load(in);
+            }
+            String port = properties.getProperty("port");
+            String token = properties.getProperty("token");
+            if (port == null || token == null)
+                throw new IOException("Malformed connection file " + connectionFile);
+
+            Client client;
+            try {
+                client = new Client(new Socket(InetAddress.getLoopbackAddress(),
+                            Integer.parseInt(port)));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed connection file " + connectionFile);
+            }
+            try {
+                client.out.write(Hex.decode(token));
+                client.out.flush();
+                client.readStatus();
+            } catch (IOException | RuntimeException e) {
+                client.close();
+                throw e;
+            }
+            return client;
+        }
+
+        private void readStatus() throws IOException {
+            if (this.in.readUnsignedByte() != OK)
+                throw new IOException("Signing agent: " + this.in.readUTF());
+        }
+
+        /**
+         * @return the keyids of the keys served by the agent
+         *
+         * @throws java.io.IOException if the request fails
+         */
+        public synchronized List<String> getKeyIds() throws IOException {
+            this.out.writeByte(KEYIDS);
+            this.out.flush();
+            readStatus();
+            int count = this.in.readInt();
+            List<String> keyids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                keyids.add(this.in.readUTF());
+            return keyids;
+        }
+
+        /**
+         * @param keyid the key to look up
+         *
+         * @return the PEM-encoded public portion of a key served by the agent
+         *
+         * @throws java.io.IOException if the request fails
+         */
+        public synchronized String getPublicPem(String keyid) throws IOException {
+            this.out.writeByte(PUBLIC);
+            this.out.writeUTF(keyid);
+            this.out.flush();
+            readStatus();
+            return readLongUTF(this.in);
+        }
+
+        /**
+         * Signs a payload with a key served by the agent
+         *
+         * @param keyid the key to sign with
+         * @param payload the bytes to sign
+         *
+         * @return the hex-encoded signature
+         *
+         * @throws java.io.IOException if the request fails
+         */
+        public synchronized String sign(String keyid, byte[] payload) throws IOException {
+            if (payload.length > MAX_PAYLOAD)
+                throw new IOException("Payload too large to sign: " + payload.length);
+            this.out.writeByte(SIGN);
+            this.out.writeUTF(keyid);
+            this.out.writeInt(payload.length);
+            this.out.write(payload);
+            this.out.flush();
+            readStatus();
+            return this.in.readUTF();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.socket.close();
+        }
+    }
+}
@@ -1,14 +1,34 @@
 package io.github.in_toto.models;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
-import java.io.FileInputStream;
 import java.io.Reader;
 import java.io.IOException;
-import java.io.FileNotFoundException;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
-import org.bouncycastle.crypto.digests.SHA256Digest;
+import io.github.in_toto.lib.Blake3Digest;
+import io.github.in_toto.lib.CryptoProvider;
+import io.github.in_toto.lib.Platform;
+
+import org.bouncycastle.crypto.Digest;
 
 import org.bouncycastle.util.encoders.Hex;
 
@@ -20,6 +40,37 @@ import org.bouncycastle.util.encoders.Hex;
  */
 public class Artifact {
 
+    /**
+     * Size of the buffers used to read artifacts.
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Read buffers not in use. A pool rather than a buffer per thread, as
+     * blocking executors may run each task on a new virtual thread.
+     */
+    private static final ConcurrentLinkedQueue<byte[]> READ_BUFFERS =
+        new ConcurrentLinkedQueue<>();
+
+    private static final ThreadLocal<byte[]> RESULT_BUFFER =
+        ThreadLocal.withInitial(() -> new byte[64]);
+
+    /**
+     * Files from this size on are hashed on several cores, when the
+     * algorithm allows it.
+     */
+    private static final long PARALLEL_THRESHOLD = 4L * 1024 * 1024;
+
+    /**
+     * Hashes the segments of large files, see {@link Blake3Digest#digest}.
+     * Its tasks never wait for each other, so that it can be shared by all
+     * the threads recording artifacts.
+     */
+    private static class Blake3Pool {
+        static final ExecutorService executor = Platform.newBlockingExecutor(
+                Runtime.getRuntime().availableProcessors(), "in-toto-blake3");
+    }
+
     /**
      * A URI representing the location of the Artifact
      */
@@ -41,10 +92,22 @@ public class Artifact {
      * record (i.e., hash).
      */
     public Artifact(String filename) {
+        this(filename, ArtifactHash.getDefaultAlgorithms());
+    }
+
+    /**
+     * Hashes the contents of a file with the passed algorithms
+     *
+     * @param filename The filename (relative or absolute) of the Artifact to
+     * record (i.e., hash).
+     * @param algorithms the in-toto names of the hash algorithms, e.g.,
+     * "sha256" or "blake3"
+     */
+    public Artifact(String filename, List<String> algorithms) {
 
         this.URI = filename;
         this.hash = new ArtifactHash();
-        this.hash.collect(filename);
+        this.hash.collect(filename, algorithms);
 
     }
 
@@ -64,36 +127,280 @@ public class Artifact {
      *   "sha512": "..."
      *  }
      * </code>
+     *
+     * A hash object is frozen once added to an {@link ArtifactMap}, after
+     * which any modification throws an UnsupportedOperationException: the
+     * map derives data from its hash objects, such as their canonical
+     * encoding, that must not go stale.
      */
-    public class ArtifactHash
+    public static class ArtifactHash
         extends HashMap<String, String>
     {
+        private transient volatile boolean frozen;
 
-        private void collect(String filename) {
+        public ArtifactHash() {
+            super();
+        }
 
-            FileInputStream file = null;
-            try {
-                file = new FileInputStream(filename);
-            } catch (FileNotFoundException e) {
-                throw new RuntimeException("The file " + filename + " couldn't be recorded");
+        /**
+         * Creates a hash object from a digest computed elsewhere (e.g., by
+         * the build tool that produced the artifact)
+         *
+         * @param algorithm the in-toto name of the hash algorithm
+         * @param digest the hex-encoded digest
+         */
+        public ArtifactHash(String algorithm, String digest) {
+            super();
+            this.put(algorithm, digest);
+        }
+
+        /**
+         * Makes this hash object immutable
+         *
+         * @return this hash object
+         */
+        public ArtifactHash freeze() {
+            this.frozen = true;
+            return this;
+        }
+
+        /**
+         * @return true if this hash object was frozen
+         */
+        public boolean isFrozen() {
+            return this.frozen;
+        }
+
+        private void checkMutable() {
+            if (this.frozen)
+                throw new UnsupportedOperationException("Frozen hash object");
+        }
+
+        @Override
+        public String put(String algorithm, String digest) {
+            checkMutable();
+            return super.put(algorithm, digest);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ? extends String> digests) {
+            checkMutable();
+            super.putAll(digests);
+        }
+
+        @Override
+        public String putIfAbsent(String algorithm, String digest) {
+            checkMutable();
+            return super.putIfAbsent(algorithm, digest);
+        }
+
+        @Override
+        public String remove(Object algorithm) {
+            checkMutable();
+            return super.remove(algorithm);
+        }
+
+        @Override
+        public boolean remove(Object algorithm, Object digest) {
+            checkMutable();
+            return super.remove(algorithm, digest);
+        }
+
+        @Override
+        public void clear() {
+            checkMutable();
+            super.clear();
+        }
+
+        @Override
+        public String replace(String algorithm, String digest) {
+            checkMutable();
+            return super.replace(algorithm, digest);
+        }
+
+        @Override
+        public boolean replace(String algorithm, String oldDigest, String newDigest) {
+            checkMutable();
+            return super.replace(algorithm, oldDigest, newDigest);
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super String, ? super String, ? extends String> function) {
+            checkMutable();
+            super.replaceAll(function);
+        }
+
+        @Override
+        public String computeIfAbsent(String algorithm,
+                Function<? super String, ? extends String> function) {
+            checkMutable();
+            return super.computeIfAbsent(algorithm, function);
+        }
+
+        @Override
+        public String computeIfPresent(String algorithm,
+                BiFunction<? super String, ? super String, ? extends String> function) {
+            checkMutable();
+            return super.computeIfPresent(algorithm, function);
+        }
+
+        @Override
+        public String compute(String algorithm,
+                BiFunction<? super String, ? super String, ? extends String> function) {
+            checkMutable();
+            return super.compute(algorithm, function);
+        }
+
+        @Override
+        public String merge(String algorithm, String digest,
+                BiFunction<? super String, ? super String, ? extends String> function) {
+            checkMutable();
+            return super.merge(algorithm, digest, function);
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return this.frozen ? Collections.unmodifiableSet(super.keySet()) : super.keySet();
+        }
+
+        @Override
+        public Collection<String> values() {
+            return this.frozen ? Collections.unmodifiableCollection(super.values())
+                : super.values();
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            Set<Map.Entry<String, String>> entries = super.entrySet();
+            if (!this.frozen)
+                return entries;
+            // unmodifiableSet would still let the entries be set
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    Iterator<Map.Entry<String, String>> delegate = entries.iterator();
+                    return new Iterator<Map.Entry<String, String>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return delegate.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<String, String> next() {
+                            return new AbstractMap.SimpleImmutableEntry<>(delegate.next());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+
+        private static volatile List<String> defaultAlgorithms = algorithms(
+                System.getProperty("in_toto.artifact.hashes", "sha256").split(","));
+
+        private static List<String> algorithms(String... algorithms) {
+            List<String> result = new ArrayList<>();
+            for (String algorithm : algorithms) {
+                algorithm = algorithm.trim();
+                if (!algorithm.isEmpty())
+                    result.add(algorithm);
             }
+            if (result.isEmpty())
+                throw new IllegalArgumentException("No hash algorithm");
+            return Collections.unmodifiableList(result);
+        }
+
+        /**
+         * @return the in-toto names of the hash algorithms used to record
+         * artifacts, "sha256" unless set by {@link #setDefaultAlgorithms} or
+         * by the comma-separated {@code in_toto.artifact.hashes} system
+         * property
+         */
+        public static List<String> getDefaultAlgorithms() {
+            return defaultAlgorithms;
+        }
 
+        /**
+         * Sets the hash algorithms used to record artifacts
+         *
+         * @param algorithms the in-toto names of the hash algorithms, e.g.,
+         * "sha256", "sha512", "blake2b", "blake2b-256" or "blake3"
+         *
+         * @throws IllegalArgumentException if an algorithm isn't supported
+         */
+        public static void setDefaultAlgorithms(String... algorithms) {
+            List<String> result = algorithms(algorithms);
+            for (String algorithm : result)
+                CryptoProvider.digest(algorithm);
+            defaultAlgorithms = result;
+        }
 
-            SHA256Digest digest =  new SHA256Digest();
-            byte[] result = new byte[digest.getDigestSize()];
-            int length;
-            try {
-                while ((length = file.read(result)) != -1) {
-                    digest.update(result, 0, length);
+        private void collect(String filename, List<String> algorithms) {
+            for (String algorithm : algorithms)
+                this.put(algorithm, digest(filename, algorithm));
+        }
+
+        /**
+         * Hashes the contents of a file
+         *
+         * @param filename the file to hash
+         * @param algorithm the in-toto name of the hash algorithm
+         *
+         * @return the hex-encoded digest of the file
+         */
+        static String digest(String filename, String algorithm) {
+            return digest(filename, algorithm, null);
+        }
+
+        /**
+         * Hashes the contents of a file, reporting each read to a throttle
+         *
+         * @param filename the file to hash
+         * @param algorithm the in-toto name of the hash algorithm
+         * @param throttle called with the size of each block read, e.g., to
+         * limit the read bandwidth; may be null
+         *
+         * @return the hex-encoded digest of the file
+         */
+        static String digest(String filename, String algorithm, IntConsumer throttle) {
+            // BLAKE3 hashes the segments of large files concurrently, which
+            // the throttle can't pace
+            if ("blake3".equals(algorithm) && throttle == null) {
+                try {
+                    Path path = Paths.get(filename);
+                    if (Files.size(path) >= PARALLEL_THRESHOLD)
+                        return Hex.toHexString(Blake3Digest.digest(path, Blake3Pool.executor));
+                } catch (IOException | InvalidPathException e) {
+                    throw new RuntimeException("The file " + filename + " couldn't be recorded");
                 }
-            } catch (IOException e) {
+            }
+
+            // The digest is owned by the current thread and the read buffer
+            // is borrowed from a pool, so hashing many files doesn't
+            // allocate per file
+            Digest digest = CryptoProvider.pooledDigest(algorithm);
+            byte[] result = RESULT_BUFFER.get();
+            byte[] readBuffer = READ_BUFFERS.poll();
+            if (readBuffer == null)
+                readBuffer = new byte[READ_BUFFER_SIZE];
+            try {
+                Platform.readFile(Paths.get(filename), readBuffer, (buffer, length) -> {
+                    digest.update(buffer, 0, length);
+                    if (throttle != null)
+                        throttle.accept(length);
+                });
+            } catch (IOException | InvalidPathException e) {
                 throw new RuntimeException("The file " + filename + " couldn't be recorded");
+            } finally {
+                READ_BUFFERS.offer(readBuffer);
             }
             digest.doFinal(result, 0);
 
-            // We should be able to submit more hashes, but we will do sha256
-            // only for the time being
-            this.put("sha256", Hex.toHexString(result));
+            return Hex.toHexString(result, 0, digest.getDigestSize());
         }
     }
 }
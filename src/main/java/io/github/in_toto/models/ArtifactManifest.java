@@ -0,0 +1,330 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CryptoProvider;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A set of artifact digests computed outside of in-toto, e.g., by the build
+ * tool that produced the artifacts or by an artifact store.
+ *
+ * Importing a manifest into a link (see {@link Link#importMaterials} and
+ * {@link Link#importProducts}) records the artifacts without reading them
+ * again. The digests are trusted as they are, so they should come from a
+ * trusted source; {@link #verifySample} can be used to rehash a random
+ * fraction of the artifacts to detect a manifest that doesn't match the
+ * files on disk.
+ *
+ * Digests are validated when added: the algorithm must be supported by the
+ * current {@link CryptoProvider}, and the digest must be a hex string of the
+ * right length. Conflicting digests for the same artifact are rejected.
+ */
+public class ArtifactManifest
+    implements Iterable<ArtifactManifest.Entry>
+{
+    /**
+     * A single (path, algorithm, digest) triplet.
+     */
+    public static class Entry {
+        private final String path;
+        private final String algorithm;
+        private final String digest;
+
+        public Entry(String path, String algorithm, String digest) {
+            this.path = path;
+            this.algorithm = algorithm;
+            this.digest = digest;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public String getAlgorithm() {
+            return this.algorithm;
+        }
+
+        public String getDigest() {
+            return this.digest;
+        }
+    }
+
+    private final ArtifactMap artifacts = new ArtifactMap();
+
+    /**
+     * Hex lengths of the digests by algorithm, to validate them without
+     * creating a digest instance per entry.
+     */
+    private final HashMap<String, Integer> digestLengths = new HashMap<>();
+
+    /**
+     * Adds a digest to the manifest
+     *
+     * @param path the artifact URI
+     * @param algorithm the in-toto name of the hash algorithm (e.g., "sha256")
+     * @param digest the hex-encoded digest of the artifact
+     *
+     * @return this manifest
+     *
+     * @throws IllegalArgumentException if the entry is invalid, or conflicts
+     * with a digest added before
+     */
+    public ArtifactManifest add(String path, String algorithm, String digest) {
+        if (path == null || path.isEmpty())
+            throw new IllegalArgumentException("Missing artifact path");
+        String normalized = validateDigest(algorithm, digest);
+
+        ArtifactHash previous = this.artifacts.get(path);
+        if (previous == null) {
+            this.artifacts.put(path, new ArtifactHash(algorithm, normalized));
+            return this;
+        }
+
+        String recorded = previous.get(algorithm);
+        if (recorded != null) {
+            if (!recorded.equals(normalized))
+                throw new IllegalArgumentException("Conflicting " + algorithm
+                        + " digests for " + path);
+            return this;
+        }
+
+        // hash objects are never modified once in an ArtifactMap
+        ArtifactHash hash = new ArtifactHash();
+        hash.putAll(previous);
+        hash.put(algorithm, normalized);
+        this.artifacts.put(path, hash);
+        return this;
+    }
+
+    /**
+     * Adds a sequence of digests to the manifest
+     *
+     * @param entries the digests to add
+     *
+     * @return this manifest
+     */
+    public ArtifactManifest addAll(Iterable<Entry> entries) {
+        for (Entry entry : entries)
+            add(entry.getPath(), entry.getAlgorithm(), entry.getDigest());
+        return this;
+    }
+
+    private String validateDigest(String algorithm, String digest) {
+        if (algorithm == null || digest == null)
+            throw new IllegalArgumentException("Missing hash algorithm or digest");
+
+        Integer length = this.digestLengths.get(algorithm);
+        if (length == null) {
+            // throws if the algorithm isn't supported
+            length = CryptoProvider.digest(algorithm).getDigestSize() * 2;
+            this.digestLengths.put(algorithm, length);
+        }
+
+        if (digest.length() != length)
+            throw new IllegalArgumentException("Invalid " + algorithm
+                    + " digest length: " + digest);
+        for (int i = 0; i < digest.length(); i++) {
+            if (Character.digit(digest.charAt(i), 16) == -1)
+                throw new IllegalArgumentException("Invalid hex digest: " + digest);
+        }
+        return digest.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Creates a manifest from a map of paths to digests, such as the output
+     * map of a build tool
+     *
+     * @param digests the hex-encoded digests keyed by artifact URI
+     * @param algorithm the in-toto name of the hash algorithm of the digests
+     *
+     * @return a new manifest
+     */
+    public static ArtifactManifest fromDigests(Map<String, String> digests,
+            String algorithm) {
+        ArtifactManifest manifest = new ArtifactManifest();
+        for (Map.Entry<String, String> entry : digests.entrySet())
+            manifest.add(entry.getKey(), algorithm, entry.getValue());
+        return manifest;
+    }
+
+    /**
+     * Parses a checksum file in the format written by the sha256sum family
+     * of tools, i.e., lines of "{@literal <digest>  <path>}" (or
+     * "{@literal <digest> *<path>}" in binary mode). Paths are recorded as
+     * they appear in the file.
+     *
+     * @param reader the checksum file contents
+     * @param algorithm the in-toto name of the hash algorithm of the digests
+     *
+     * @return a new manifest
+     *
+     * @throws java.io.IOException if the reader fails
+     * @throws IllegalArgumentException if a line is malformed
+     */
+    public static ArtifactManifest readChecksums(Reader reader, String algorithm)
+        throws IOException {
+        ArtifactManifest manifest = new ArtifactManifest();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            if (line.isEmpty())
+                continue;
+
+            // names containing a backslash or a newline are escaped, which
+            // is flagged by a leading backslash
+            boolean escaped = line.charAt(0) == '\\';
+            int start = escaped ? 1 : 0;
+            int separator = line.indexOf(' ', start);
+            if (separator == -1 || separator + 2 > line.length()
+                    || (line.charAt(separator + 1) != ' '
+                        && line.charAt(separator + 1) != '*'))
+                throw new IllegalArgumentException("Malformed checksum line "
+                        + number + ": " + line);
+
+            String digest = line.substring(start, separator);
+            String path = line.substring(separator + 2);
+            if (escaped)
+                path = unescape(path);
+
+            try {
+                manifest.add(path, algorithm, digest);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid checksum line "
+                        + number + ": " + e.getMessage(), e);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Parses a checksum file, see {@link #readChecksums(Reader, String)}
+     *
+     * @param file the checksum file, UTF-8 encoded
+     * @param algorithm the in-toto name of the hash algorithm of the digests
+     *
+     * @return a new manifest
+     *
+     * @throws java.io.IOException if the file can't be read
+     */
+    public static ArtifactManifest readChecksums(Path file, String algorithm)
+        throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readChecksums(reader, algorithm);
+        }
+    }
+
+    private static String unescape(String path) {
+        StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '\\' && i + 1 < path.length()) {
+                char next = path.charAt(++i);
+                result.append(next == 'n' ? '\n' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return the number of artifacts in the manifest
+     */
+    public int size() {
+        return this.artifacts.size();
+    }
+
+    /**
+     * Returns the artifacts of the manifest, in canonical order, e.g., to
+     * construct a Link with them.
+     *
+     * @return a copy of the artifacts of the manifest
+     */
+    public ArtifactMap getArtifacts() {
+        return new ArtifactMap(this.artifacts);
+    }
+
+    /**
+     * Rehashes a random sample of the artifacts and compares them with the
+     * manifest.
+     *
+     * @param baseDirectory the directory the artifact paths are relative to
+     * @param fraction the probability for each artifact to be checked, from
+     * 0 (none) to 1 (all of them)
+     * @param random the source of randomness used to pick artifacts
+     *
+     * @return the paths of the checked artifacts that are missing or don't
+     * match their digests, in canonical order
+     */
+    public List<String> verifySample(Path baseDirectory, double fraction,
+            Random random) {
+        if (fraction < 0 || fraction > 1)
+            throw new IllegalArgumentException("fraction must be between 0 and 1");
+
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, ArtifactHash> artifact : this.artifacts.entrySet()) {
+            if (fraction < 1 && random.nextDouble() >= fraction)
+                continue;
+
+            String file = baseDirectory.resolve(artifact.getKey()).toString();
+            for (Map.Entry<String, String> hash : artifact.getValue().entrySet()) {
+                String actual;
+                try {
+                    actual = ArtifactHash.digest(file, hash.getKey());
+                } catch (RuntimeException e) {
+                    actual = null;
+                }
+                if (!hash.getValue().equals(actual)) {
+                    mismatches.add(artifact.getKey());
+                    break;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        final Iterator<Map.Entry<String, ArtifactHash>> paths =
+            this.artifacts.entrySet().iterator();
+
+        return new Iterator<Entry>() {
+            private String path;
+            private Iterator<Map.Entry<String, String>> hashes;
+
+            @Override
+            public boolean hasNext() {
+                while ((this.hashes == null || !this.hashes.hasNext()) && paths.hasNext()) {
+                    Map.Entry<String, ArtifactHash> artifact = paths.next();
+                    this.path = artifact.getKey();
+                    this.hashes = artifact.getValue().entrySet().iterator();
+                }
+                return this.hashes != null && this.hashes.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Map.Entry<String, String> hash = this.hashes.next();
+                return new Entry(this.path, hash.getKey(), hash.getValue());
+            }
+        };
+    }
+}
@@ -0,0 +1,372 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CanonicalJSONWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.gson.JsonNull;
+
+/**
+ * A map of artifact URIs to their hash objects, kept in canonical order.
+ *
+ * Links hold their materials and products in ArtifactMaps so that they are
+ * always sorted the way the canonical json encoding requires (by unicode
+ * code point), and encoding a link doesn't need to sort its artifacts again.
+ *
+ * An ArtifactMap observes every modification made to it, including those
+ * made through its entry set, key set and values views, so it can keep
+ * derived data (such as its {@link ArtifactMerkleTree}) up to date
+ * incrementally. For this reason, the sub-map views returned by
+ * {@link #subMap}, {@link #headMap} and {@link #tailMap} are read-only, and
+ * hash objects are frozen when they are added (see
+ * {@link ArtifactHash#freeze}).
+ *
+ * An ArtifactMap can be frozen (see {@link #freeze}), after which it rejects
+ * any modification and can be safely shared between threads.
+ */
+public class ArtifactMap
+    extends AbstractMap<String, ArtifactHash>
+    implements SortedMap<String, ArtifactHash>
+{
+    private final TreeMap<String, ArtifactHash> artifacts;
+
+    /**
+     * Lazily built on the first request of a digest, and updated on every
+     * modification from then on.
+     */
+    private transient ArtifactMerkleTree tree;
+
+    /**
+     * The canonical encodings of the members of this map, by path, built the
+     * second time the map is encoded (see {@link #writeCanonical}), so that
+     * maps encoded once don't hold them, and updated on every modification
+     * from then on.
+     */
+    private transient HashMap<String, String> fragments;
+    private transient boolean encoded;
+
+    private transient volatile boolean frozen;
+
+    /**
+     * Incremented on every modification.
+     */
+    private transient int version;
+
+    public ArtifactMap() {
+        this.artifacts = new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+    }
+
+    /**
+     * Creates an ArtifactMap holding the same artifacts as another map
+     *
+     * @param artifacts the artifacts to copy, may be null
+     */
+    public ArtifactMap(Map<String, ArtifactHash> artifacts) {
+        if (artifacts instanceof SortedMap
+                && ((SortedMap<String, ArtifactHash>)artifacts).comparator()
+                    == CanonicalJSONWriter.KEY_ORDER) {
+            // already sorted (e.g., another ArtifactMap or the maps of a
+            // ConcurrentLinkBuilder), copied in linear time
+            this.artifacts = new TreeMap<>((SortedMap<String, ArtifactHash>)artifacts);
+            for (ArtifactHash hash : this.artifacts.values())
+                freeze(hash);
+        } else {
+            this.artifacts = new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+            if (artifacts != null) {
+                for (Map.Entry<String, ArtifactHash> entry : artifacts.entrySet())
+                    this.artifacts.put(entry.getKey(), freeze(entry.getValue()));
+            }
+        }
+    }
+
+    private static ArtifactHash freeze(ArtifactHash hash) {
+        return hash == null ? null : hash.freeze();
+    }
+
+    /**
+     * Returns the Merkle tree over the artifacts in this map, which can be
+     * used to compare artifact sets in constant time and to find their
+     * differences. The tree reflects any later modification of this map.
+     *
+     * @return the Merkle tree of this map
+     */
+    public synchronized ArtifactMerkleTree getMerkleTree() {
+        if (this.tree == null)
+            this.tree = new ArtifactMerkleTree(this.artifacts);
+        return this.tree;
+    }
+
+    /**
+     * Shortcut for {@code getMerkleTree().getRootDigest()}
+     *
+     * @return the hex-encoded root digest of the artifacts in this map
+     */
+    public String getRootDigest() {
+        return getMerkleTree().getRootDigest();
+    }
+
+    /**
+     * Makes this map immutable: any later modification throws an
+     * UnsupportedOperationException.
+     *
+     * @return this map
+     */
+    public ArtifactMap freeze() {
+        this.frozen = true;
+        return this;
+    }
+
+    /**
+     * @return true if this map was frozen
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    private void checkMutable() {
+        if (this.frozen)
+            throw new UnsupportedOperationException("Frozen artifact map");
+    }
+
+    /**
+     * @return a counter incremented on every modification of this map
+     */
+    int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Hook called after the artifact at path was added, replaced or removed.
+     *
+     * @param path the path of the modified artifact
+     */
+    void changed(String path) {
+        this.version++;
+        if (this.fragments != null)
+            this.fragments.remove(path);
+        ArtifactMerkleTree current = this.tree;
+        if (current == null)
+            return;
+        if (this.artifacts.containsKey(path))
+            current.put(path, this.artifacts.get(path));
+        else
+            current.remove(path);
+    }
+
+    /**
+     * Writes the canonical encoding of this map. Once the map was encoded,
+     * the encoding of each member is cached, so that encoding the map again
+     * after a few modifications only encodes the modified members.
+     *
+     * @param json the writer
+     *
+     * @throws IOException if the underlying writer fails
+     */
+    synchronized void writeCanonical(CanonicalJSONWriter json) throws IOException {
+        if (this.fragments == null && this.encoded)
+            this.fragments = new HashMap<>(this.artifacts.size() * 4 / 3 + 1);
+        this.encoded = true;
+
+        StringWriter buffer = new StringWriter();
+        CanonicalJSONWriter member = new CanonicalJSONWriter(buffer);
+        json.beginObject();
+        boolean first = true;
+        for (Map.Entry<String, ArtifactHash> entry : this.artifacts.entrySet()) {
+            if (!first)
+                json.separator();
+            first = false;
+            if (this.fragments == null) {
+                writeMember(json, entry.getKey(), entry.getValue());
+                continue;
+            }
+            String fragment = this.fragments.get(entry.getKey());
+            if (fragment == null) {
+                buffer.getBuffer().setLength(0);
+                writeMember(member, entry.getKey(), entry.getValue());
+                fragment = buffer.toString();
+                this.fragments.put(entry.getKey(), fragment);
+            }
+            json.fragment(fragment);
+        }
+        json.endObject();
+    }
+
+    /**
+     * @return the number of members whose canonical encoding is cached, see
+     * {@link #writeCanonical}
+     */
+    synchronized int getCachedFragmentCount() {
+        return this.fragments == null ? 0 : this.fragments.size();
+    }
+
+    private static void writeMember(CanonicalJSONWriter json, String path, ArtifactHash hash)
+        throws IOException {
+        json.name(path);
+        if (hash == null) {
+            json.write(JsonNull.INSTANCE);
+            return;
+        }
+        TreeMap<String, String> hashes = new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+        hashes.putAll(hash);
+        json.beginObject();
+        boolean first = true;
+        for (Map.Entry<String, String> digest : hashes.entrySet()) {
+            if (!first)
+                json.separator();
+            first = false;
+            json.name(digest.getKey());
+            if (digest.getValue() == null)
+                json.write(JsonNull.INSTANCE);
+            else
+                json.string(digest.getValue());
+        }
+        json.endObject();
+    }
+
+    @Override
+    public ArtifactHash put(String path, ArtifactHash hash) {
+        checkMutable();
+        ArtifactHash previous = this.artifacts.put(path, freeze(hash));
+        changed(path);
+        return previous;
+    }
+
+    @Override
+    public ArtifactHash remove(Object path) {
+        checkMutable();
+        if (!(path instanceof String) || !this.artifacts.containsKey(path))
+            return null;
+        ArtifactHash previous = this.artifacts.remove(path);
+        changed((String)path);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        checkMutable();
+        this.version++;
+        this.artifacts.clear();
+        this.fragments = null;
+        ArtifactMerkleTree current = this.tree;
+        if (current != null)
+            current.clear();
+    }
+
+    @Override
+    public ArtifactHash get(Object path) {
+        return this.artifacts.get(path);
+    }
+
+    @Override
+    public boolean containsKey(Object path) {
+        return this.artifacts.containsKey(path);
+    }
+
+    @Override
+    public int size() {
+        return this.artifacts.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, ArtifactHash>> entrySet() {
+        return new AbstractSet<Map.Entry<String, ArtifactHash>>() {
+            @Override
+            public Iterator<Map.Entry<String, ArtifactHash>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return ArtifactMap.this.artifacts.size();
+            }
+
+            @Override
+            public void clear() {
+                ArtifactMap.this.clear();
+            }
+        };
+    }
+
+    @Override
+    public Comparator<? super String> comparator() {
+        return this.artifacts.comparator();
+    }
+
+    @Override
+    public SortedMap<String, ArtifactHash> subMap(String fromKey, String toKey) {
+        return Collections.unmodifiableSortedMap(this.artifacts.subMap(fromKey, toKey));
+    }
+
+    @Override
+    public SortedMap<String, ArtifactHash> headMap(String toKey) {
+        return Collections.unmodifiableSortedMap(this.artifacts.headMap(toKey));
+    }
+
+    @Override
+    public SortedMap<String, ArtifactHash> tailMap(String fromKey) {
+        return Collections.unmodifiableSortedMap(this.artifacts.tailMap(fromKey));
+    }
+
+    @Override
+    public String firstKey() {
+        return this.artifacts.firstKey();
+    }
+
+    @Override
+    public String lastKey() {
+        return this.artifacts.lastKey();
+    }
+
+    /**
+     * Iterator over the entries that reports removals and value updates back
+     * to the map.
+     */
+    private class EntryIterator
+        implements Iterator<Map.Entry<String, ArtifactHash>>
+    {
+        private final Iterator<Map.Entry<String, ArtifactHash>> delegate =
+            ArtifactMap.this.artifacts.entrySet().iterator();
+        private String last;
+
+        @Override
+        public boolean hasNext() {
+            return this.delegate.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, ArtifactHash> next() {
+            final Map.Entry<String, ArtifactHash> entry = this.delegate.next();
+            this.last = entry.getKey();
+            return new AbstractMap.SimpleEntry<String, ArtifactHash>(entry) {
+                @Override
+                public ArtifactHash setValue(ArtifactHash value) {
+                    checkMutable();
+                    freeze(value);
+                    super.setValue(value);
+                    ArtifactHash previous = entry.setValue(value);
+                    changed(entry.getKey());
+                    return previous;
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            checkMutable();
+            this.delegate.remove();
+            changed(this.last);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CanonicalJSONWriter;
+import io.github.in_toto.lib.CryptoProvider;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * A Merkle tree over a set of artifacts, following their directory
+ * structure.
+ *
+ * Every directory prefix of the recorded paths is a node whose digest covers
+ * all the artifacts below it, so that two artifact sets (e.g., the products
+ * of a step and the materials of the next one) can be compared in constant
+ * time by their root digests, and their differences can be found by only
+ * descending into the subtrees whose digests differ.
+ *
+ * The tree is owned and kept up to date by an {@link ArtifactMap}, see
+ * {@link ArtifactMap#getMerkleTree}. Digests are computed lazily: a
+ * modification only invalidates the nodes on the path to the modified
+ * artifact, which are rehashed on the next digest request.
+ *
+ * Digests are SHA-256, computed as follows:
+ *
+ * <pre>
+ *  leaf = H(0x00 || path || 0x00 || (algorithm || 0x00 || hash || 0x00)*)
+ *  node = H(0x01 || [0x02 || leaf] || (0x03 || name || 0x00 || child)*)
+ * </pre>
+ *
+ * with hash algorithms and children in canonical order.
+ */
+public class ArtifactMerkleTree
+{
+    private static final char SEPARATOR = '/';
+
+    private static class Node {
+        final TreeMap<String, Node> children =
+            new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+
+        /**
+         * Set if an artifact is recorded at exactly this node's path.
+         */
+        boolean isLeaf;
+        String path;
+        ArtifactHash hash;
+        byte[] leafDigest;
+
+        /**
+         * null while this node needs rehashing.
+         */
+        byte[] digest;
+
+        boolean isEmpty() {
+            return !this.isLeaf && this.children.isEmpty();
+        }
+    }
+
+    private final Node root = new Node();
+
+    ArtifactMerkleTree(Map<String, ArtifactHash> artifacts) {
+        for (Map.Entry<String, ArtifactHash> entry : artifacts.entrySet())
+            put(entry.getKey(), entry.getValue());
+    }
+
+    private static String[] split(String path) {
+        List<String> components = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = path.indexOf(SEPARATOR, start)) != -1) {
+            components.add(path.substring(start, end));
+            start = end + 1;
+        }
+        components.add(path.substring(start));
+        return components.toArray(new String[components.size()]);
+    }
+
+    synchronized void put(String path, ArtifactHash hash) {
+        Node node = this.root;
+        node.digest = null;
+        for (String component : split(path)) {
+            Node child = node.children.get(component);
+            if (child == null) {
+                child = new Node();
+                node.children.put(component, child);
+            }
+            node = child;
+            node.digest = null;
+        }
+        node.isLeaf = true;
+        node.path = path;
+        node.hash = hash;
+        node.leafDigest = null;
+    }
+
+    synchronized void remove(String path) {
+        String[] components = split(path);
+        Node[] nodes = new Node[components.length + 1];
+        nodes[0] = this.root;
+        for (int i = 0; i < components.length; i++) {
+            nodes[i + 1] = nodes[i].children.get(components[i]);
+            if (nodes[i + 1] == null)
+                return;
+        }
+
+        Node leaf = nodes[components.length];
+        if (!leaf.isLeaf)
+            return;
+        leaf.isLeaf = false;
+        leaf.path = null;
+        leaf.hash = null;
+        leaf.leafDigest = null;
+
+        // invalidate the path, pruning the nodes that became empty
+        for (int i = components.length; i >= 0; i--) {
+            nodes[i].digest = null;
+            if (i > 0 && nodes[i].isEmpty())
+                nodes[i - 1].children.remove(components[i - 1]);
+        }
+    }
+
+    synchronized void clear() {
+        this.root.children.clear();
+        this.root.isLeaf = false;
+        this.root.digest = null;
+    }
+
+    /**
+     * @return the hex-encoded digest over all artifacts in the tree
+     */
+    public synchronized String getRootDigest() {
+        return Hex.toHexString(digest(this.root));
+    }
+
+    /**
+     * Returns the digest of the subtree holding all the artifacts below a
+     * directory prefix.
+     *
+     * @param prefix a directory prefix of the recorded paths (e.g.,
+     * "src/main"), without trailing separator
+     *
+     * @return the hex-encoded digest of the subtree, or null if no artifact
+     * is recorded under that prefix
+     */
+    public synchronized String getDigest(String prefix) {
+        Node node = find(prefix);
+        if (node == null)
+            return null;
+        return Hex.toHexString(digest(node));
+    }
+
+    private Node find(String prefix) {
+        Node node = this.root;
+        for (String component : split(prefix)) {
+            node = node.children.get(component);
+            if (node == null)
+                return null;
+        }
+        return node;
+    }
+
+    /**
+     * Checks whether this tree and another one cover the same artifacts.
+     *
+     * @param other the tree to compare with
+     *
+     * @return true if both trees have the same root digest
+     */
+    public boolean sameArtifacts(ArtifactMerkleTree other) {
+        return getRootDigest().equals(other.getRootDigest());
+    }
+
+    /**
+     * Lists the artifacts that differ between this tree and another one,
+     * that is, paths only recorded in one of them or recorded with different
+     * hashes. Only the subtrees with different digests are visited.
+     *
+     * @param other the tree to compare with
+     *
+     * @return the sorted set of differing paths
+     */
+    public SortedSet<String> diff(ArtifactMerkleTree other) {
+        SortedSet<String> result = new TreeSet<>(CanonicalJSONWriter.KEY_ORDER);
+        if (other == this)
+            return result;
+
+        // lock both trees in a consistent order to avoid deadlocks
+        ArtifactMerkleTree first = this;
+        ArtifactMerkleTree second = other;
+        if (System.identityHashCode(first) > System.identityHashCode(second)) {
+            first = other;
+            second = this;
+        }
+        synchronized (first) {
+            synchronized (second) {
+                diff(this.root, other.root, result);
+            }
+        }
+        return result;
+    }
+
+    private static void diff(Node a, Node b, SortedSet<String> result) {
+        if (Arrays.equals(digest(a), digest(b)))
+            return;
+
+        if (a.isLeaf && b.isLeaf) {
+            if (!Arrays.equals(leafDigest(a), leafDigest(b)))
+                result.add(a.path);
+        } else if (a.isLeaf) {
+            result.add(a.path);
+        } else if (b.isLeaf) {
+            result.add(b.path);
+        }
+
+        for (Map.Entry<String, Node> child : a.children.entrySet()) {
+            Node counterpart = b.children.get(child.getKey());
+            if (counterpart == null)
+                collect(child.getValue(), result);
+            else
+                diff(child.getValue(), counterpart, result);
+        }
+        for (Map.Entry<String, Node> child : b.children.entrySet()) {
+            if (!a.children.containsKey(child.getKey()))
+                collect(child.getValue(), result);
+        }
+    }
+
+    private static void collect(Node node, SortedSet<String> result) {
+        if (node.isLeaf)
+            result.add(node.path);
+        for (Node child : node.children.values())
+            collect(child, result);
+    }
+
+    private static byte[] leafDigest(Node node) {
+        if (node.leafDigest != null)
+            return node.leafDigest;
+
+        Digest digest = CryptoProvider.pooledDigest("sha256");
+        digest.update((byte)0x00);
+        update(digest, node.path);
+        if (node.hash != null) {
+            TreeMap<String, String> hashes = new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+            hashes.putAll(node.hash);
+            for (Map.Entry<String, String> hash : hashes.entrySet()) {
+                update(digest, hash.getKey());
+                update(digest, hash.getValue());
+            }
+        }
+        node.leafDigest = new byte[digest.getDigestSize()];
+        digest.doFinal(node.leafDigest, 0);
+        return node.leafDigest;
+    }
+
+    private static byte[] digest(Node node) {
+        if (node.digest != null)
+            return node.digest;
+
+        // children (and the leaf) are hashed first, as the pooled digest
+        // can't be shared by nested computations
+        if (node.isLeaf)
+            leafDigest(node);
+        for (Node child : node.children.values())
+            digest(child);
+
+        Digest digest = CryptoProvider.pooledDigest("sha256");
+        digest.update((byte)0x01);
+        if (node.isLeaf) {
+            digest.update((byte)0x02);
+            digest.update(node.leafDigest, 0, node.leafDigest.length);
+        }
+        Iterator<Map.Entry<String, Node>> children = node.children.entrySet().iterator();
+        while (children.hasNext()) {
+            Map.Entry<String, Node> child = children.next();
+            digest.update((byte)0x03);
+            update(digest, child.getKey());
+            byte[] childDigest = child.getValue().digest;
+            digest.update(childDigest, 0, childDigest.length);
+        }
+        node.digest = new byte[digest.getDigestSize()];
+        digest.doFinal(node.digest, 0);
+        return node.digest;
+    }
+
+    private static void update(Digest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update(bytes, 0, bytes.length);
+        digest.update((byte)0x00);
+    }
+}
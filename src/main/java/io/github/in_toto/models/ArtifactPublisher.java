@@ -0,0 +1,292 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Hashes artifacts in the background and publishes each result as soon as
+ * it is available, so that downstream work (e.g., uploading or indexing the
+ * artifacts) overlaps with hashing instead of waiting for the whole tree.
+ *
+ * The protocol follows {@code java.util.concurrent.Flow} (which isn't
+ * available on Java 8): a single {@link Subscriber} requests results through
+ * its {@link Subscription}, and the publisher never hashes more than
+ * {@code maxInFlight} artifacts ahead of the subscriber's demand, so a slow
+ * subscriber bounds both the hashing work and the memory used. Results are
+ * published in completion order, one at a time.
+ *
+ * Sinks (see {@link #addSink}) receive every result right before the
+ * subscriber, from the same thread, e.g., to record the artifacts in a link
+ * as they are published:
+ *
+ * <pre>
+ *  new ArtifactPublisher(paths, null, executor, 16)
+ *      .addSink(link::putMaterial)
+ *      .subscribe(uploader);
+ * </pre>
+ */
+public class ArtifactPublisher
+{
+    /**
+     * Receives the artifacts of an {@link ArtifactPublisher}. Calls are
+     * never concurrent.
+     */
+    public interface Subscriber {
+        /**
+         * Called once, before any other method.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Called with each hashed artifact, at most as many times as
+         * requested. Throwing cancels the subscription.
+         */
+        void onNext(String path, ArtifactHash hash);
+
+        /**
+         * Called if an artifact can't be hashed, or a sink fails; nothing
+         * is published after it.
+         */
+        void onError(Throwable error);
+
+        /**
+         * Called once every artifact has been published.
+         */
+        void onComplete();
+    }
+
+    /**
+     * The link between a publisher and its subscriber.
+     */
+    public interface Subscription {
+        /**
+         * Requests more artifacts. {@code Long.MAX_VALUE} lifts the limit.
+         *
+         * @param n the number of additional artifacts to publish, positive
+         */
+        void request(long n);
+
+        /**
+         * Stops publishing. Artifacts being hashed are discarded.
+         */
+        void cancel();
+    }
+
+    private final List<String> paths;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final List<BiConsumer<String, ArtifactHash>> sinks = new ArrayList<>();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param paths the files to hash
+     * @param pattern the exclude pattern, or null for the default one
+     * @param executor the executor hashing the files
+     * @param maxInFlight the maximum number of artifacts hashed or held
+     * ahead of the subscriber's demand
+     */
+    public ArtifactPublisher(List<String> paths, String pattern, Executor executor,
+            int maxInFlight) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        PathMatcher excludeMatcher = Link.getExcludeMatcher(pattern);
+        this.paths = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            if (!excludeMatcher.matches(Paths.get(path)))
+                this.paths.add(path);
+        }
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Adds a consumer called with every published artifact, e.g.,
+     * {@code link::putMaterial}. Must be called before subscribing.
+     *
+     * @param sink the consumer
+     *
+     * @return this publisher
+     */
+    public ArtifactPublisher addSink(BiConsumer<String, ArtifactHash> sink) {
+        if (this.subscribed.get())
+            throw new IllegalStateException("Sinks must be added before subscribing");
+        this.sinks.add(sink);
+        return this;
+    }
+
+    /**
+     * Starts publishing to a subscriber. A publisher accepts a single
+     * subscriber; further subscribers are notified with an
+     * IllegalStateException.
+     *
+     * @param subscriber the subscriber
+     */
+    public void subscribe(Subscriber subscriber) {
+        if (!this.subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Subscription() {
+                    public void request(long n) {
+                    }
+                    public void cancel() {
+                    }
+                });
+            subscriber.onError(new IllegalStateException("Already subscribed"));
+            return;
+        }
+        ArtifactSubscription subscription = new ArtifactSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private static class Result {
+        final String path;
+        final ArtifactHash hash;
+
+        Result(String path, ArtifactHash hash) {
+            this.path = path;
+            this.hash = hash;
+        }
+    }
+
+    private class ArtifactSubscription
+        implements Subscription
+    {
+        private final Subscriber subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final ConcurrentLinkedQueue<Result> completed = new ConcurrentLinkedQueue<>();
+
+        // artifacts started but not published yet
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        // serializes drain(), see below
+        private final AtomicInteger pending = new AtomicInteger();
+
+        // only accessed from drain()
+        private int next;
+        private boolean done;
+
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        ArtifactSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Non-positive request " + n));
+                return;
+            }
+            long current;
+            do {
+                current = this.demand.get();
+                if (current == Long.MAX_VALUE)
+                    break;
+            } while (!this.demand.compareAndSet(current,
+                        current + n < 0 ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        private void fail(Throwable throwable) {
+            if (this.error == null)
+                this.error = throwable;
+            drain();
+        }
+
+        /**
+         * Publishes the completed results the subscriber asked for, starts
+         * hashing more artifacts if the subscriber caught up, and completes
+         * the subscription when there is nothing left.
+         *
+         * Called from the subscriber (on request) and from the hashing
+         * threads (on completion), but only one thread at a time runs the
+         * loop: the others increment the pending counter, and the running
+         * thread loops again until it has seen every increment.
+         */
+        void drain() {
+            if (this.pending.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            do {
+                if (!this.done && !this.cancelled) {
+                    if (this.error == null) {
+                        publish();
+                        start();
+                    }
+                    // publishing or starting may fail too, e.g., if a sink
+                    // throws on the last artifact
+                    if (this.error != null) {
+                        this.done = true;
+                        this.subscriber.onError(this.error);
+                    } else if (this.next == paths.size() && this.outstanding.get() == 0) {
+                        this.done = true;
+                        this.subscriber.onComplete();
+                    }
+                }
+                missed = this.pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void publish() {
+            Result result;
+            while (!this.cancelled && this.error == null && this.demand.get() > 0
+                    && (result = this.completed.poll()) != null) {
+                if (this.demand.get() != Long.MAX_VALUE)
+                    this.demand.decrementAndGet();
+                this.outstanding.decrementAndGet();
+                try {
+                    for (BiConsumer<String, ArtifactHash> sink : sinks)
+                        sink.accept(result.path, result.hash);
+                } catch (RuntimeException e) {
+                    this.error = e;
+                    return;
+                }
+                try {
+                    this.subscriber.onNext(result.path, result.hash);
+                } catch (RuntimeException e) {
+                    this.cancelled = true;
+                }
+            }
+        }
+
+        private void start() {
+            while (!this.cancelled && this.error == null && this.next < paths.size()
+                    && this.outstanding.get() < maxInFlight) {
+                String path = paths.get(this.next++);
+                this.outstanding.incrementAndGet();
+                try {
+                    executor.execute(() -> hash(path));
+                } catch (RejectedExecutionException e) {
+                    this.error = e;
+                }
+            }
+        }
+
+        private void hash(String path) {
+            if (this.cancelled)
+                return;
+            try {
+                this.completed.add(new Result(path, new Artifact(path).getArtifactHashes()));
+                drain();
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+}
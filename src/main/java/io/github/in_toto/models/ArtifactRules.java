@@ -0,0 +1,247 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * The artifact rules of the in-toto specification, which the materials and
+ * products of a step must satisfy:
+ *
+ * <pre>
+ *  MATCH pattern [IN prefix] WITH (MATERIALS|PRODUCTS) [IN prefix] FROM step
+ *  CREATE pattern
+ *  DELETE pattern
+ *  MODIFY pattern
+ *  ALLOW pattern
+ *  DISALLOW pattern
+ *  REQUIRE path
+ * </pre>
+ *
+ * Rules are applied in order to a queue of the artifacts of the step: each
+ * rule but DISALLOW and REQUIRE consumes the artifacts it matches (MATCH
+ * only those with the same hash in the other step, CREATE only products
+ * that aren't materials, DELETE only materials that aren't products, MODIFY
+ * only artifacts that are both, with another hash), DISALLOW fails if any
+ * artifact left in the queue matches its pattern, and REQUIRE fails if the
+ * path isn't in the queue. Artifacts left in the queue are allowed. Patterns
+ * are matched as by Python's fnmatch, where {@code *} also matches
+ * {@code /}.
+ */
+final class ArtifactRules
+{
+    private ArtifactRules() {
+    }
+
+    /**
+     * Checks the syntax of a rule
+     *
+     * @throws IllegalArgumentException if the rule is malformed
+     */
+    static void check(List<String> rule) {
+        if (rule.isEmpty())
+            throw new IllegalArgumentException("Empty artifact rule");
+        String type = rule.get(0).toUpperCase(Locale.ROOT);
+        switch (type) {
+            case "CREATE":
+            case "DELETE":
+            case "MODIFY":
+            case "ALLOW":
+            case "DISALLOW":
+            case "REQUIRE":
+                if (rule.size() != 2)
+                    throw new IllegalArgumentException("Malformed artifact rule: " + rule);
+                return;
+            case "MATCH":
+                matchArguments(rule);
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown artifact rule: " + rule);
+        }
+    }
+
+    /**
+     * @return the pattern, source prefix, destination type, destination
+     * prefix and destination step of a MATCH rule
+     */
+    private static String[] matchArguments(List<String> rule) {
+        int i = 2;
+        String sourcePrefix = "";
+        if (rule.size() > i + 1 && "IN".equalsIgnoreCase(rule.get(i))) {
+            sourcePrefix = rule.get(i + 1);
+            i += 2;
+        }
+        if (rule.size() < i + 4 || !"WITH".equalsIgnoreCase(rule.get(i)))
+            throw new IllegalArgumentException("Malformed artifact rule: " + rule);
+        String destinationType = rule.get(i + 1).toUpperCase(Locale.ROOT);
+        if (!destinationType.equals("MATERIALS") && !destinationType.equals("PRODUCTS"))
+            throw new IllegalArgumentException("Malformed artifact rule: " + rule);
+        i += 2;
+        String destinationPrefix = "";
+        if (rule.size() > i + 1 && "IN".equalsIgnoreCase(rule.get(i))) {
+            destinationPrefix = rule.get(i + 1);
+            i += 2;
+        }
+        if (rule.size() != i + 2 || !"FROM".equalsIgnoreCase(rule.get(i)))
+            throw new IllegalArgumentException("Malformed artifact rule: " + rule);
+        return new String[] {rule.get(1), sourcePrefix, destinationType,
+            destinationPrefix, rule.get(i + 1)};
+    }
+
+    /**
+     * @return the names of the steps the MATCH rules of a list refer to
+     */
+    static Set<String> referencedSteps(Collection<List<String>> rules) {
+        Set<String> steps = new LinkedHashSet<>();
+        for (List<String> rule : rules) {
+            check(rule);
+            if ("MATCH".equalsIgnoreCase(rule.get(0)))
+                steps.add(matchArguments(rule)[4]);
+        }
+        return steps;
+    }
+
+    /**
+     * Applies rules to the materials or products of a link
+     *
+     * @param rules the rules
+     * @param products true to apply them to the products of the link, false
+     * for its materials
+     * @param link the link of the step
+     * @param links the links of the other steps, by name
+     *
+     * @return null if the artifacts satisfy the rules, or else the first
+     * rule they don't satisfy and why
+     */
+    static String apply(Collection<List<String>> rules, boolean products, Link link,
+            Function<String, Link> links) {
+        Map<String, ArtifactHash> materials = link.getMaterials();
+        Map<String, ArtifactHash> artifacts = products ? link.getProducts() : materials;
+        Map<String, ArtifactHash> others = products ? materials : link.getProducts();
+        Set<String> queue = new LinkedHashSet<>(artifacts.keySet());
+
+        for (List<String> rule : rules) {
+            check(rule);
+            String type = rule.get(0).toUpperCase(Locale.ROOT);
+            if (type.equals("MATCH")) {
+                String[] arguments = matchArguments(rule);
+                Link other = links.apply(arguments[4]);
+                if (other == null)
+                    return rule + ": no link for step " + arguments[4];
+                match(queue, artifacts, arguments, arguments[2].equals("PRODUCTS")
+                        ? other.getProducts() : other.getMaterials()).forEach(queue::remove);
+                continue;
+            }
+
+            Pattern pattern = fnmatch(rule.get(1));
+            List<String> matched = new ArrayList<>();
+            for (String path : queue) {
+                if (pattern.matcher(path).matches())
+                    matched.add(path);
+            }
+            switch (type) {
+                case "CREATE":
+                    // only products that aren't materials
+                    matched.removeIf(path -> !products || others.containsKey(path));
+                    break;
+                case "DELETE":
+                    // only materials that aren't products
+                    matched.removeIf(path -> products || others.containsKey(path));
+                    break;
+                case "MODIFY":
+                    matched.removeIf(path -> !others.containsKey(path)
+                            || others.get(path).equals(artifacts.get(path)));
+                    break;
+                case "ALLOW":
+                    break;
+                case "DISALLOW":
+                    if (!matched.isEmpty())
+                        return rule + ": disallowed artifact " + matched.get(0);
+                    continue;
+                case "REQUIRE":
+                    if (!queue.contains(rule.get(1)))
+                        return rule + ": missing artifact " + rule.get(1);
+                    continue;
+                default:
+                    throw new IllegalStateException(type);
+            }
+            // not removeAll, which may look up each path of the queue in the list
+            matched.forEach(queue::remove);
+        }
+        return null;
+    }
+
+    /**
+     * @return the artifacts of the queue matched by a MATCH rule, i.e., with
+     * the same hash in the other step
+     */
+    private static List<String> match(Set<String> queue, Map<String, ArtifactHash> artifacts,
+            String[] arguments, Map<String, ArtifactHash> destination) {
+        String sourcePrefix = directory(arguments[1]);
+        String destinationPrefix = directory(arguments[3]);
+        Pattern pattern = fnmatch(sourcePrefix + arguments[0]);
+
+        List<String> matched = new ArrayList<>();
+        for (String path : queue) {
+            if (!pattern.matcher(path).matches())
+                continue;
+            String destinationPath = destinationPrefix + path.substring(sourcePrefix.length());
+            ArtifactHash hash = destination.get(destinationPath);
+            if (hash != null && hash.equals(artifacts.get(path)))
+                matched.add(path);
+        }
+        return matched;
+    }
+
+    private static String directory(String prefix) {
+        return prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    /**
+     * Translates a shell pattern to a regular expression, as Python's
+     * fnmatch.translate does
+     */
+    static Pattern fnmatch(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i++);
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                int j = i;
+                if (j < pattern.length() && pattern.charAt(j) == '!')
+                    j++;
+                if (j < pattern.length() && pattern.charAt(j) == ']')
+                    j++;
+                while (j < pattern.length() && pattern.charAt(j) != ']')
+                    j++;
+                if (j >= pattern.length()) {
+                    regex.append("\\[");
+                } else {
+                    String set = pattern.substring(i, j).replace("\\", "\\\\")
+                        .replace("[", "\\[").replace("&", "\\&");
+                    if (set.startsWith("!"))
+                        set = "^" + set.substring(1);
+                    else if (set.startsWith("^"))
+                        set = "\\" + set;
+                    regex.append('[').append(set).append(']');
+                    i = j + 1;
+                }
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+}
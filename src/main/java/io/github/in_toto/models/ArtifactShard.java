@@ -0,0 +1,198 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CryptoProvider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Objects;
+
+import org.bouncycastle.crypto.Digest;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * One shard of an artifact recording split across several processes or
+ * nodes.
+ *
+ * Artifacts are assigned to shards by a deterministic function of their
+ * path (see {@link #shardOf}), so that every node can walk the same tree and
+ * only hash the artifacts it owns, without any coordination. Each shard
+ * writes its artifacts to a partial file, and the partial files of all the
+ * shards are then merged into a single link by
+ * {@link ShardedRecording#merge}, which is signed once.
+ *
+ * Artifacts are spooled like in a {@link SpooledLink}, so memory usage is
+ * bounded. A shard must be closed to remove its spool files.
+ */
+public class ArtifactShard
+    implements Closeable
+{
+    private final int shard;
+    private final int shardCount;
+    private final ArtifactSpool materials;
+    private final ArtifactSpool products;
+
+    private String excludePattern;
+    private PathMatcher excludeMatcher;
+
+    /**
+     * @param shard the index of this shard, from 0 to shardCount - 1
+     * @param shardCount the total number of shards
+     * @param spoolDirectory the directory in which artifacts are spooled
+     * @param maxEntriesInMemory how many artifacts of each kind to keep in
+     * memory before spilling them to disk
+     */
+    public ArtifactShard(int shard, int shardCount, Path spoolDirectory,
+            int maxEntriesInMemory) {
+        if (shardCount < 1 || shard < 0 || shard >= shardCount)
+            throw new IllegalArgumentException("Invalid shard " + shard + "/" + shardCount);
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.materials = new ArtifactSpool(spoolDirectory, maxEntriesInMemory);
+        this.products = new ArtifactSpool(spoolDirectory, maxEntriesInMemory);
+    }
+
+    /**
+     * Returns the shard an artifact belongs to: the first bytes of the
+     * sha256 of its path, modulo the number of shards. This spreads paths
+     * evenly regardless of the layout of the tree, and doesn't depend on the
+     * platform or on the JDK.
+     *
+     * @param path the artifact URI
+     * @param shardCount the total number of shards
+     *
+     * @return the index of the shard owning the artifact
+     */
+    public static int shardOf(String path, int shardCount) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        Digest digest = CryptoProvider.pooledDigest("sha256");
+        digest.update(bytes, 0, bytes.length);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+
+        long value = ((result[0] & 0xffL) << 24) | ((result[1] & 0xffL) << 16)
+            | ((result[2] & 0xffL) << 8) | (result[3] & 0xffL);
+        return (int)(value % shardCount);
+    }
+
+    public int getShard() {
+        return this.shard;
+    }
+
+    public int getShardCount() {
+        return this.shardCount;
+    }
+
+    /**
+     * @param path the artifact URI
+     *
+     * @return true if the artifact belongs to this shard
+     */
+    public boolean owns(String path) {
+        return shardOf(path, this.shardCount) == this.shard;
+    }
+
+    /**
+     * Hashes a file and records it as material if it belongs to this shard
+     * and doesn't match the exclude pattern
+     *
+     * @param filePath the path of the material to track
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void addMaterial(String filePath, String pattern) {
+        if (owns(filePath) && !isExcluded(filePath, pattern))
+            this.materials.put(filePath, new Artifact(filePath).getArtifactHashes());
+    }
+
+    public void addMaterial(String filePath) {
+        addMaterial(filePath, null);
+    }
+
+    /**
+     * Hashes a file and records it as product if it belongs to this shard
+     * and doesn't match the exclude pattern
+     *
+     * @param filePath the path of the product to track
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void addProduct(String filePath, String pattern) {
+        if (owns(filePath) && !isExcluded(filePath, pattern))
+            this.products.put(filePath, new Artifact(filePath).getArtifactHashes());
+    }
+
+    public void addProduct(String filePath) {
+        addProduct(filePath, null);
+    }
+
+    private boolean isExcluded(String filePath, String pattern) {
+        if (this.excludeMatcher == null || !Objects.equals(pattern, this.excludePattern)) {
+            this.excludeMatcher = Link.getExcludeMatcher(pattern);
+            this.excludePattern = pattern;
+        }
+        return this.excludeMatcher.matches(Paths.get(filePath));
+    }
+
+    /**
+     * Writes the artifacts of this shard to a partial file, sorted in
+     * canonical order, as expected by {@link ShardedRecording#merge}.
+     *
+     * @param file the partial file to write
+     *
+     * @throws java.io.IOException if the file can't be written
+     */
+    public void write(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            write(writer);
+        }
+    }
+
+    /**
+     * Writes the artifacts of this shard to a writer, see {@link #write(Path)}
+     *
+     * @param writer the target writer
+     *
+     * @throws java.io.IOException if unable to write to the passed writer.
+     */
+    public void write(Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginObject();
+        json.name("shard").value(this.shard);
+        json.name("shards").value(this.shardCount);
+        json.name("materials");
+        writeArtifacts(json, this.materials);
+        json.name("products");
+        writeArtifacts(json, this.products);
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeArtifacts(JsonWriter json, ArtifactSpool spool)
+        throws IOException {
+        json.beginObject();
+        for (Map.Entry<String, ArtifactHash> entry : spool) {
+            json.name(entry.getKey());
+            json.beginObject();
+            for (Map.Entry<String, String> hash : entry.getValue().entrySet())
+                json.name(hash.getKey()).value(hash.getValue());
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Deletes the spool files of this shard.
+     */
+    @Override
+    public void close() {
+        this.materials.close();
+        this.products.close();
+    }
+}
@@ -0,0 +1,309 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CanonicalJSONWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * A bounded-memory, sorted accumulator of artifacts.
+ *
+ * Artifacts are buffered in memory until a threshold is reached, at which
+ * point the buffer is written out as a sorted run file to a spool directory.
+ * Iterating over the spool performs an external merge of all runs, so that
+ * artifacts are produced sorted by path without ever holding all of them in
+ * memory. Paths are sorted in canonical order (see
+ * {@link CanonicalJSONWriter#KEY_ORDER}).
+ *
+ * Like {@link Link#addMaterial}, the first artifact recorded for a path wins
+ * and later duplicates are dropped.
+ *
+ * A spool is not thread-safe, and it must be closed to delete its run files.
+ */
+public class ArtifactSpool
+    implements Iterable<Map.Entry<String, ArtifactHash>>, Closeable
+{
+    /**
+     * Runs are compacted into a single one when there are this many, so
+     * that merging doesn't exhaust file handles.
+     */
+    static final int MAX_RUNS = 64;
+
+    private final Path directory;
+    private final int maxEntriesInMemory;
+    private TreeMap<String, ArtifactHash> buffer =
+        new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * @param directory the directory where run files are created
+     * @param maxEntriesInMemory how many artifacts to buffer in memory before
+     * spilling to disk
+     */
+    public ArtifactSpool(Path directory, int maxEntriesInMemory) {
+        if (maxEntriesInMemory < 1)
+            throw new IllegalArgumentException("maxEntriesInMemory must be positive");
+        this.directory = directory;
+        this.maxEntriesInMemory = maxEntriesInMemory;
+    }
+
+    /**
+     * Adds an artifact to the spool, unless it was already recorded in the
+     * current in-memory buffer.
+     *
+     * @param path the artifact URI
+     * @param hash the hash object of the artifact
+     */
+    public void put(String path, ArtifactHash hash) {
+        this.buffer.putIfAbsent(path, hash);
+        if (this.buffer.size() >= this.maxEntriesInMemory)
+            spill();
+    }
+
+    /**
+     * @return the number of run files currently on disk
+     */
+    public int getRunCount() {
+        return this.runs.size();
+    }
+
+    /**
+     * Returns an iterator over all the artifacts in the spool, sorted by
+     * path and without duplicates.
+     *
+     * The spool must not be modified while iterating. Each call to this
+     * method starts a new merge, so the spool can be iterated several times
+     * (e.g., once to sign it and once to dump it).
+     *
+     * @return a sorted iterator of (path, hash) entries
+     */
+    @Override
+    public Iterator<Map.Entry<String, ArtifactHash>> iterator() {
+        List<Iterator<Map.Entry<String, ArtifactHash>>> sources = new ArrayList<>();
+        try {
+            for (Path run : this.runs)
+                sources.add(new RunReader(run));
+        } catch (IOException e) {
+            for (Iterator<Map.Entry<String, ArtifactHash>> source : sources)
+                ((RunReader)source).close();
+            throw new UncheckedIOException(e);
+        }
+        // the in-memory buffer holds the newest entries, so it goes last
+        sources.add(this.buffer.entrySet().iterator());
+        return new MergingIterator(sources);
+    }
+
+    /**
+     * Deletes all run files and discards the in-memory buffer.
+     */
+    @Override
+    public void close() {
+        this.buffer.clear();
+        for (Path run : this.runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                // best effort, the file lives in a scratch directory
+            }
+        }
+        this.runs.clear();
+    }
+
+    private void spill() {
+        try {
+            Path run = Files.createTempFile(this.directory, "in-toto-", ".run");
+            writeRun(run, this.buffer.entrySet().iterator());
+            this.runs.add(run);
+            this.buffer = new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+
+            if (this.runs.size() >= MAX_RUNS)
+                compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't spool artifacts", e);
+        }
+    }
+
+    private void compact() throws IOException {
+        List<Path> previous = new ArrayList<>(this.runs);
+        TreeMap<String, ArtifactHash> pending = this.buffer;
+
+        Path merged = Files.createTempFile(this.directory, "in-toto-", ".run");
+        this.buffer = new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+        writeRun(merged, iterator());
+
+        this.buffer = pending;
+        this.runs.clear();
+        this.runs.add(merged);
+        for (Path run : previous)
+            Files.deleteIfExists(run);
+    }
+
+    private static void writeRun(Path run,
+            Iterator<Map.Entry<String, ArtifactHash>> entries) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(run), 64 * 1024))) {
+            while (entries.hasNext()) {
+                Map.Entry<String, ArtifactHash> entry = entries.next();
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<String, String> hash : entry.getValue().entrySet()) {
+                    writeString(out, hash.getKey());
+                    writeString(out, hash.getValue());
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value)
+        throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sequential reader over a single sorted run file.
+     */
+    private static class RunReader
+        implements Iterator<Map.Entry<String, ArtifactHash>>
+    {
+        private final DataInputStream in;
+        private Map.Entry<String, ArtifactHash> next;
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(
+                        Files.newInputStream(run), 64 * 1024));
+            advance();
+        }
+
+        private void advance() {
+            try {
+                String path;
+                try {
+                    path = readString(this.in);
+                } catch (EOFException e) {
+                    this.next = null;
+                    close();
+                    return;
+                }
+                ArtifactHash hash = new ArtifactHash();
+                int count = this.in.readInt();
+                for (int i = 0; i < count; i++)
+                    hash.put(readString(this.in), readString(this.in));
+                this.next = new AbstractMap.SimpleImmutableEntry<>(path, hash);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Couldn't read spooled artifacts", e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<String, ArtifactHash> next() {
+            if (this.next == null)
+                throw new NoSuchElementException();
+            Map.Entry<String, ArtifactHash> result = this.next;
+            advance();
+            return result;
+        }
+
+        void close() {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                // nothing left to read anyway
+            }
+        }
+    }
+
+    /**
+     * K-way merge of sorted sources that drops duplicate paths, keeping the
+     * entry from the earliest source.
+     */
+    private static class MergingIterator
+        implements Iterator<Map.Entry<String, ArtifactHash>>
+    {
+        private static class Head {
+            final Map.Entry<String, ArtifactHash> entry;
+            final int source;
+
+            Head(Map.Entry<String, ArtifactHash> entry, int source) {
+                this.entry = entry;
+                this.source = source;
+            }
+        }
+
+        private final List<Iterator<Map.Entry<String, ArtifactHash>>> sources;
+        private final PriorityQueue<Head> heads;
+        private String last;
+
+        MergingIterator(List<Iterator<Map.Entry<String, ArtifactHash>>> sources) {
+            this.sources = sources;
+            this.heads = new PriorityQueue<>(Math.max(1, sources.size()), (a, b) -> {
+                int result = CanonicalJSONWriter.compareKeys(
+                        a.entry.getKey(), b.entry.getKey());
+                return result != 0 ? result : Integer.compare(a.source, b.source);
+            });
+            for (int i = 0; i < sources.size(); i++)
+                pull(i);
+            skipDuplicates();
+        }
+
+        private void pull(int source) {
+            Iterator<Map.Entry<String, ArtifactHash>> iterator = this.sources.get(source);
+            if (iterator.hasNext())
+                this.heads.add(new Head(iterator.next(), source));
+        }
+
+        private void skipDuplicates() {
+            while (!this.heads.isEmpty() && this.last != null
+                    && this.heads.peek().entry.getKey().equals(this.last)) {
+                pull(this.heads.poll().source);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.heads.isEmpty();
+        }
+
+        @Override
+        public Map.Entry<String, ArtifactHash> next() {
+            if (this.heads.isEmpty())
+                throw new NoSuchElementException();
+            Head head = this.heads.poll();
+            this.last = head.entry.getKey();
+            pull(head.source);
+            skipDuplicates();
+            return head.entry;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CanonicalJSONWriter;
+
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Builds a {@link Link} from artifacts recorded by several threads at once.
+ *
+ * Artifacts are recorded into concurrent sorted maps, so that recorder
+ * threads neither contend on a lock nor need one of their own, and the
+ * artifacts are already in canonical order when the link is built. Like
+ * {@link Link#addMaterial}, the first hash recorded for a path wins.
+ *
+ * {@link #build} takes a frozen snapshot of the recorded artifacts, which can
+ * then be signed and dumped. Artifacts recorded while a snapshot is taken may
+ * or may not be part of it, so callers usually build once all recorders are
+ * done.
+ */
+public class ConcurrentLinkBuilder
+{
+    private final String name;
+    private final ConcurrentSkipListMap<String, ArtifactHash> materials =
+        new ConcurrentSkipListMap<>(CanonicalJSONWriter.KEY_ORDER);
+    private final ConcurrentSkipListMap<String, ArtifactHash> products =
+        new ConcurrentSkipListMap<>(CanonicalJSONWriter.KEY_ORDER);
+
+    private volatile HashMap<String, Object> environment;
+    private volatile ArrayList<String> command;
+    private volatile HashMap<String, Object> byproducts;
+
+    /**
+     * Compiled exclude matchers by pattern, as compiling one for each of
+     * millions of files is costly. Matchers are thread-safe.
+     */
+    private final ConcurrentMap<String, PathMatcher> excludeMatchers =
+        new ConcurrentHashMap<>();
+
+    /**
+     * @param name The name of the step
+     */
+    public ConcurrentLinkBuilder(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public void setEnvironment(HashMap<String, Object> environment) {
+        this.environment = environment;
+    }
+
+    public void setCommand(ArrayList<String> command) {
+        this.command = command;
+    }
+
+    public void setByproducts(HashMap<String, Object> byproducts) {
+        this.byproducts = byproducts;
+    }
+
+    /**
+     * Hashes a file and records it as material, unless it matches the
+     * exclude pattern
+     *
+     * @param filePath the path of the material to track
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void addMaterial(String filePath, String pattern) {
+        if (!isExcluded(filePath, pattern) && !this.materials.containsKey(filePath))
+            putMaterial(filePath, new Artifact(filePath).getArtifactHashes());
+    }
+
+    public void addMaterial(String filePath) {
+        addMaterial(filePath, null);
+    }
+
+    /**
+     * Hashes a file and records it as product, unless it matches the
+     * exclude pattern
+     *
+     * @param filePath the path of the product to track
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void addProduct(String filePath, String pattern) {
+        if (!isExcluded(filePath, pattern) && !this.products.containsKey(filePath))
+            putProduct(filePath, new Artifact(filePath).getArtifactHashes());
+    }
+
+    public void addProduct(String filePath) {
+        addProduct(filePath, null);
+    }
+
+    private boolean isExcluded(String filePath, String pattern) {
+        String key = pattern != null ? pattern : "";
+        PathMatcher matcher = this.excludeMatchers.get(key);
+        if (matcher == null) {
+            matcher = Link.getExcludeMatcher(pattern);
+            this.excludeMatchers.putIfAbsent(key, matcher);
+        }
+        return matcher.matches(Paths.get(filePath));
+    }
+
+    /**
+     * Records an already hashed material
+     *
+     * @param uri the artifact URI
+     * @param hash the hash object of the artifact
+     */
+    public void putMaterial(String uri, ArtifactHash hash) {
+        this.materials.putIfAbsent(uri, hash);
+    }
+
+    /**
+     * Records an already hashed product
+     *
+     * @param uri the artifact URI
+     * @param hash the hash object of the artifact
+     */
+    public void putProduct(String uri, ArtifactHash hash) {
+        this.products.putIfAbsent(uri, hash);
+    }
+
+    /**
+     * Takes a snapshot of the recorded metadata. The builder can keep
+     * recording afterwards, this doesn't affect the returned link.
+     *
+     * @return a new, frozen link
+     */
+    public Link build() {
+        HashMap<String, Object> environment = this.environment;
+        ArrayList<String> command = this.command;
+        HashMap<String, Object> byproducts = this.byproducts;
+
+        // cloned first, as the copy into the link relies on a stable size
+        Link link = new Link(this.materials.clone(), this.products.clone(), this.name,
+                environment == null ? null : new HashMap<>(environment),
+                command == null ? null : new ArrayList<>(command),
+                byproducts == null ? null : new HashMap<>(byproducts));
+        return link.freeze();
+    }
+}
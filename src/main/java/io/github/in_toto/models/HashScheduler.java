@@ -0,0 +1,419 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.lib.Platform;
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Hashes many artifacts concurrently, adapting the number of concurrent
+ * reads to the storage they are read from.
+ *
+ * The right concurrency depends on the storage: a local SSD keeps getting
+ * faster up to dozens of concurrent reads, while a network file system
+ * saturates with a few and then only gets slower, starving the other
+ * workloads. The scheduler starts with a few reads in flight and adjusts the
+ * limit as it observes the throughput and latency of the completed reads
+ * (additive increase while the throughput grows, multiplicative decrease
+ * when the latency grows without any throughput gain).
+ *
+ * Large files are hashed first, so that the last file to complete isn't a
+ * large one started late, and small files are hashed in batches, so that
+ * they don't each pay for a scheduling round trip. The read bandwidth and
+ * the CPU time spent hashing can be capped, to leave room for the build
+ * running next to the recording.
+ */
+public class HashScheduler
+{
+    /**
+     * Files up to this size are hashed in batches.
+     */
+    private static final long SMALL_FILE = 64 * 1024;
+
+    private static final int BATCH_FILES = 64;
+
+    /**
+     * Duration of the windows over which the throughput is measured.
+     */
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * How often the CPU time of a hashing thread is sampled, in bytes read.
+     */
+    private static final int CPU_SAMPLE_BYTES = 1024 * 1024;
+
+    private int minConcurrency = 1;
+    // reads waiting on virtual threads are cheap, leave it to the adjustment
+    private int maxConcurrency = Math.max(Platform.usesVirtualThreads() ? 256 : 4,
+            4 * Runtime.getRuntime().availableProcessors());
+    private int initialConcurrency = Math.min(4, maxConcurrency);
+    private long bandwidthLimit;
+    private double cpuLimit;
+
+    // guards the state of the current run; a lock rather than a monitor, as
+    // waiting on a monitor pins the carrier of a virtual thread on JDK 21
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = this.lock.newCondition();
+
+    // state of the current run
+    private int limit;
+    private int active;
+    private long windowStart;
+    private long windowBytes;
+    private long windowLatency;
+    private int windowTasks;
+    private double lastThroughput;
+    private double lastLatency;
+    private TokenBucket bandwidth;
+    private TokenBucket cpu;
+
+    /**
+     * Sets the bounds of the number of concurrent reads
+     *
+     * @param initial the number of concurrent reads to start with
+     * @param max the maximum number of concurrent reads
+     *
+     * @return this scheduler
+     */
+    public HashScheduler setConcurrency(int initial, int max) {
+        if (initial < 1 || max < initial)
+            throw new IllegalArgumentException("Invalid concurrency " + initial + "/" + max);
+        this.initialConcurrency = initial;
+        this.maxConcurrency = max;
+        return this;
+    }
+
+    /**
+     * Caps the read bandwidth
+     *
+     * @param bytesPerSecond the maximum number of bytes read per second, or
+     * 0 for no limit
+     *
+     * @return this scheduler
+     */
+    public HashScheduler setBandwidthLimit(long bytesPerSecond) {
+        if (bytesPerSecond < 0)
+            throw new IllegalArgumentException("Invalid bandwidth " + bytesPerSecond);
+        this.bandwidthLimit = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Caps the CPU time spent hashing, if the JVM can measure the CPU time
+     * of threads
+     *
+     * @param cores the maximum number of cores kept busy hashing, e.g., 0.5
+     * for half a core, or 0 for no limit
+     *
+     * @return this scheduler
+     */
+    public HashScheduler setCpuLimit(double cores) {
+        if (cores < 0)
+            throw new IllegalArgumentException("Invalid CPU limit " + cores);
+        this.cpuLimit = cores;
+        return this;
+    }
+
+    /**
+     * @return the current limit of concurrent reads, which is adjusted while
+     * hashing
+     */
+    public int getConcurrency() {
+        this.lock.lock();
+        try {
+            return this.limit;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * A unit of work: a large file, or a batch of small ones.
+     */
+    private static class Task {
+        final List<String> paths = new ArrayList<>();
+        long size;
+    }
+
+    /**
+     * Hashes files and passes their hash objects to a sink. The sink is
+     * called with each artifact as soon as it is hashed, one call at a time,
+     * so it may, e.g., be {@code link::putMaterial}. Files are hashed with
+     * the default algorithms (see {@link ArtifactHash#getDefaultAlgorithms}),
+     * like the artifacts a link records.
+     *
+     * @param paths the files to hash
+     * @param sink the consumer of the artifacts
+     *
+     * @throws RuntimeException if a file can't be hashed, in which case
+     * the sink may have received some of the artifacts
+     */
+    public void hashAll(Collection<String> paths, BiConsumer<String, ArtifactHash> sink) {
+        ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>(plan(paths));
+        List<String> algorithms = ArtifactHash.getDefaultAlgorithms();
+        this.lock.lock();
+        try {
+            this.limit = this.initialConcurrency;
+            this.active = 0;
+            this.windowStart = System.nanoTime();
+            this.windowBytes = 0;
+            this.windowLatency = 0;
+            this.windowTasks = 0;
+            this.lastThroughput = 0;
+            this.lastLatency = 0;
+            this.bandwidth = this.bandwidthLimit > 0 ? new TokenBucket(this.bandwidthLimit,
+                    Math.max(this.bandwidthLimit / 10, SMALL_FILE)) : null;
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            this.cpu = this.cpuLimit > 0 && threads.isCurrentThreadCpuTimeSupported()
+                ? new TokenBucket(this.cpuLimit * 1e9, this.cpuLimit * WINDOW_NANOS) : null;
+        } finally {
+            this.lock.unlock();
+        }
+
+        int workers = Math.max(1, Math.min(this.maxConcurrency, tasks.size()));
+        ExecutorService executor = Platform.newBlockingExecutor(workers, "in-toto-hash");
+        List<RuntimeException> errors = Collections.synchronizedList(new ArrayList<>());
+        ReentrantLock sinkLock = new ReentrantLock();
+        try {
+            for (int i = 0; i < workers; i++) {
+                executor.execute(() -> {
+                    Task task;
+                    while (errors.isEmpty() && (task = tasks.poll()) != null) {
+                        try {
+                            run(task, algorithms, sink, sinkLock);
+                        } catch (RuntimeException e) {
+                            errors.add(e);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while hashing artifacts");
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!errors.isEmpty())
+            throw errors.get(0);
+    }
+
+    /**
+     * Hashes files into an artifact map
+     *
+     * @param paths the files to hash
+     *
+     * @return the artifacts, in canonical order
+     */
+    public ArtifactMap hashAll(Collection<String> paths) {
+        ArtifactMap artifacts = new ArtifactMap();
+        hashAll(paths, artifacts::put);
+        return artifacts;
+    }
+
+    /**
+     * Orders the files by decreasing size and groups the small ones into
+     * batches
+     */
+    private static List<Task> plan(Collection<String> paths) {
+        List<Task> large = new ArrayList<>();
+        List<Task> small = new ArrayList<>();
+        Task batch = null;
+        for (String path : paths) {
+            long size;
+            try {
+                size = Files.size(Paths.get(path));
+            } catch (IOException e) {
+                // reported when hashing
+                size = 0;
+            }
+            if (size > SMALL_FILE) {
+                Task task = new Task();
+                task.paths.add(path);
+                task.size = size;
+                large.add(task);
+            } else {
+                if (batch == null || batch.paths.size() == BATCH_FILES) {
+                    batch = new Task();
+                    small.add(batch);
+                }
+                batch.paths.add(path);
+                batch.size += size;
+            }
+        }
+        large.sort((a, b) -> Long.compare(b.size, a.size));
+        large.addAll(small);
+        return large;
+    }
+
+    private void run(Task task, List<String> algorithms,
+            BiConsumer<String, ArtifactHash> sink, ReentrantLock sinkLock)
+        throws InterruptedException {
+        acquire();
+        long start = System.nanoTime();
+        Throttle throttle = new Throttle();
+        try {
+            for (String path : task.paths) {
+                ArtifactHash hash = new ArtifactHash();
+                for (String algorithm : algorithms)
+                    hash.put(algorithm, ArtifactHash.digest(path, algorithm, throttle));
+                sinkLock.lock();
+                try {
+                    sink.accept(path, hash);
+                } finally {
+                    sinkLock.unlock();
+                }
+            }
+        } finally {
+            throttle.sampleCpu();
+            release(task.size, System.nanoTime() - start);
+        }
+    }
+
+    private void acquire() throws InterruptedException {
+        this.lock.lock();
+        try {
+            while (this.active >= this.limit)
+                this.released.await();
+            this.active++;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Records a completed task, and adjusts the limit at the end of each
+     * measurement window.
+     */
+    private void release(long bytes, long latency) {
+        this.lock.lock();
+        try {
+            this.active--;
+            this.windowBytes += bytes;
+            this.windowLatency += latency;
+            this.windowTasks++;
+
+            long now = System.nanoTime();
+            long elapsed = now - this.windowStart;
+            if (elapsed >= WINDOW_NANOS && this.windowTasks >= this.limit) {
+                double throughput = this.windowBytes / (double)elapsed;
+                // latency per byte, so that batches and large files compare
+                double latencyPerByte = this.windowLatency / (double)Math.max(1, this.windowBytes);
+
+                if (this.lastThroughput > 0) {
+                    if (throughput > this.lastThroughput * 1.05) {
+                        this.limit = Math.min(this.maxConcurrency, this.limit + 1);
+                    } else if (throughput < this.lastThroughput * 0.8
+                            || latencyPerByte > this.lastLatency * 1.5) {
+                        this.limit = Math.max(this.minConcurrency, this.limit / 2);
+                    }
+                } else {
+                    this.limit = Math.min(this.maxConcurrency, this.limit + 1);
+                }
+
+                this.lastThroughput = throughput;
+                this.lastLatency = latencyPerByte;
+                this.windowStart = now;
+                this.windowBytes = 0;
+                this.windowLatency = 0;
+                this.windowTasks = 0;
+            }
+            this.released.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the bandwidth and CPU caps to the reads of a hashing thread.
+     */
+    private class Throttle
+        implements IntConsumer
+    {
+        private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        private long unsampled;
+        private long cpuTime = -1;
+
+        @Override
+        public void accept(int bytes) {
+            TokenBucket bandwidth = HashScheduler.this.bandwidth;
+            TokenBucket cpu = HashScheduler.this.cpu;
+            if (bandwidth != null)
+                bandwidth.take(bytes);
+            if (cpu != null) {
+                if (this.cpuTime < 0)
+                    this.cpuTime = this.threads.getCurrentThreadCpuTime();
+                this.unsampled += bytes;
+                if (this.unsampled >= CPU_SAMPLE_BYTES)
+                    sampleCpu();
+            }
+        }
+
+        /**
+         * Charges the CPU time used since the last sample
+         */
+        void sampleCpu() {
+            TokenBucket cpu = HashScheduler.this.cpu;
+            if (cpu == null || this.cpuTime < 0)
+                return;
+            long now = this.threads.getCurrentThreadCpuTime();
+            cpu.take(now - this.cpuTime);
+            this.cpuTime = now;
+            this.unsampled = 0;
+        }
+    }
+
+    /**
+     * A token bucket that lets callers run into debt and then sleeps until
+     * the debt is paid back, so that each caller waits for its own share.
+     */
+    private static class TokenBucket {
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long last = System.nanoTime();
+
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.rate = ratePerSecond / 1e9;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        void take(double amount) {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                this.tokens = Math.min(this.capacity, this.tokens + (now - this.last) * this.rate);
+                this.last = now;
+                this.tokens -= amount;
+                wait = this.tokens < 0 ? (long)(-this.tokens / this.rate) : 0;
+            }
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while throttling reads");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.models.LayoutSignable.KeySpec;
+
+import java.io.StringReader;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * Implementation of the in-toto Layout metadata type: the steps of a supply
+ * chain, the functionaries authorized to carry out each of them, and the
+ * rules their artifacts must satisfy.
+ *
+ * <pre>
+ *  Layout layout = new Layout(Instant.now().plus(365, ChronoUnit.DAYS))
+ *      .addKey(builderKey)
+ *      .addStep(new Step("build").addPubkey(builderKey));
+ *  layout.sign(ownerKey);
+ * </pre>
+ *
+ * The links of a supply chain are verified against a layout with a
+ * {@link LayoutVerifier}. Steps must not be modified once added to a
+ * layout. Inspections aren't supported: layouts that list any are read, but
+ * don't verify.
+ */
+public class Layout extends Metablock<LayoutSignable>
+{
+    /**
+     * @param expires when the layout expires, which is kept to the second
+     */
+    public Layout(Instant expires) {
+        super(null, null);
+        this.signed = new LayoutSignable(
+                expires.truncatedTo(ChronoUnit.SECONDS).toString());
+    }
+
+    private void beforeModification() {
+        // the payload won't match what was read anymore
+        this.signedBytes = null;
+    }
+
+    /**
+     * @return when the layout expires
+     *
+     * @throws JsonParseException if the layout holds a malformed date
+     */
+    public Instant getExpires() {
+        try {
+            return Instant.parse(this.signed.expires);
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new JsonParseException("Malformed expiration date: " + this.signed.expires);
+        }
+    }
+
+    /**
+     * @param now the current time
+     *
+     * @return true if the layout has expired
+     */
+    public boolean isExpired(Instant now) {
+        return !now.isBefore(getExpires());
+    }
+
+    public String getReadme() {
+        return this.signed.readme;
+    }
+
+    public Layout setReadme(String readme) {
+        beforeModification();
+        this.signed.readme = readme;
+        return this;
+    }
+
+    /**
+     * Adds the public portion of a functionary key to the layout, so that
+     * steps can authorize it
+     *
+     * @param key the key
+     *
+     * @return this layout
+     */
+    public Layout addKey(Key key) {
+        // the json form of a key is what its keyid is computed over
+        JsonObject json = getDumpGson().toJsonTree(key).getAsJsonObject();
+        JsonObject keyval = json.getAsJsonObject("keyval");
+        JsonElement pem = keyval != null ? keyval.get("public") : null;
+        if (pem == null)
+            throw new IllegalArgumentException("Key has no public portion: " + key);
+        String[] algorithms = new Gson().fromJson(json.get("keyid_hash_algorithms"),
+                String[].class);
+
+        beforeModification();
+        this.signed.keys.put(key.computeKeyId(), new KeySpec(json.get("keytype").getAsString(),
+                    json.get("scheme").getAsString(), algorithms, pem.getAsString()));
+        return this;
+    }
+
+    /**
+     * @return the functionary keys of the layout, by keyid. Keys whose
+     * keyid doesn't match their public portion, or of an unsupported type,
+     * are left out.
+     */
+    public Map<String, Key> getKeys() {
+        Map<String, Key> keys = new HashMap<>();
+        if (this.signed.keys == null)
+            return keys;
+        for (Map.Entry<String, KeySpec> entry : this.signed.keys.entrySet()) {
+            KeySpec spec = entry.getValue();
+            if (!"rsa".equals(spec.keytype) || spec.keyval == null
+                    || spec.keyval.get("public") == null)
+                continue;
+            Key key;
+            try {
+                key = RSAKey.readPemBuffer(new StringReader(spec.keyval.get("public")));
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (entry.getKey().equals(key.computeKeyId()))
+                keys.put(entry.getKey(), key);
+        }
+        return keys;
+    }
+
+    /**
+     * Adds a step to the layout
+     *
+     * @param step the step
+     *
+     * @return this layout
+     *
+     * @throws IllegalArgumentException if the layout already has a step of
+     * the same name
+     */
+    public Layout addStep(Step step) {
+        if (getStep(step.getName()) != null)
+            throw new IllegalArgumentException("Duplicate step: " + step.getName());
+        beforeModification();
+        this.signed.steps.add(step);
+        return this;
+    }
+
+    public List<Step> getSteps() {
+        if (this.signed.steps == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(this.signed.steps);
+    }
+
+    /**
+     * @return the step of the passed name, or null if there is none
+     */
+    public Step getStep(String name) {
+        for (Step step : getSteps()) {
+            if (step.getName().equals(name))
+                return step;
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of inspections of the layout, which aren't
+     * supported
+     */
+    public int getInspectionCount() {
+        return this.signed.inspect == null ? 0 : this.signed.inspect.size();
+    }
+
+    /**
+     * Reads a layout from its json representation. As for links (see
+     * {@link Link#read}), the canonical encoding of the signed field is
+     * captured to verify signatures.
+     *
+     * @param jsonString the json representation of the layout
+     *
+     * @return the layout
+     *
+     * @throws JsonParseException if the json isn't a layout, or if a step
+     * authorizes a functionary more than once
+     */
+    public static Layout read(String jsonString) {
+        Layout layout = read(ReadGson.gson, jsonString, Layout.class);
+        if (layout == null)
+            return null;
+        if (layout.signed == null || !"layout".equals(layout.signed._type))
+            throw new JsonParseException("Not a layout");
+        for (Step step : layout.getSteps()) {
+            if (new HashSet<>(step.getPubkeys()).size() != step.getPubkeys().size())
+                throw new JsonParseException("Duplicate functionary key in step "
+                        + step.getName());
+        }
+        return layout;
+    }
+
+    private static class ReadGson {
+        static final Gson gson = new Gson();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * package-private class representing the signable payload of the in-toto
+ * layout metadata.
+ */
+package io.github.in_toto.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+
+class LayoutSignable
+    extends Signable {
+
+    /**
+     * The public portion of a key authorized by a layout, in the format of
+     * the reference implementation.
+     */
+    static class KeySpec {
+        String keytype;
+        String scheme;
+        String[] keyid_hash_algorithms;
+        TreeMap<String, String> keyval;
+
+        KeySpec(String keytype, String scheme, String[] keyidHashAlgorithms,
+                String publicPem) {
+            this.keytype = keytype;
+            this.scheme = scheme;
+            this.keyid_hash_algorithms = keyidHashAlgorithms;
+            this.keyval = new TreeMap<>();
+            this.keyval.put("public", publicPem);
+        }
+    }
+
+    String expires;
+    String readme;
+    HashMap<String, KeySpec> keys;
+    ArrayList<Step> steps;
+    // inspections aren't supported, but are kept as read so that the
+    // signature of a layout listing some still verifies
+    ArrayList<Object> inspect;
+
+    LayoutSignable(String expires) {
+
+        super();
+
+        this.expires = expires;
+        this.readme = "";
+        this.keys = new HashMap<>();
+        this.steps = new ArrayList<>();
+        this.inspect = new ArrayList<>();
+    }
+
+    @Override
+    public String getType() {
+        return "layout";
+    }
+}
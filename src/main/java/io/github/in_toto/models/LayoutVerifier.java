@@ -0,0 +1,314 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.lib.Platform;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.google.gson.JsonParseException;
+
+/**
+ * Verifies the links of a supply chain against its {@link Layout}.
+ *
+ * The layout must be signed by every layout key and not have expired.
+ * Then, for each step, the links {@code <step>.<keyid prefix>.link} of the
+ * functionaries authorized by the step are read from the link directory;
+ * at least {@link Step#getThreshold} of them must be signed by their
+ * functionary, and all of those must agree on the artifacts. Finally, the
+ * artifacts of each step must satisfy its rules (see {@link ArtifactRules}).
+ *
+ * The steps are verified concurrently, as a dependency graph: the links of
+ * every step are read and their signatures checked at once, and the rules
+ * of a step are checked as soon as the links of the steps its MATCH rules
+ * refer to are verified. Verifying a supply chain thus takes about as long
+ * as its longest chain of dependent steps, given enough threads. The
+ * verification stops at the first failure.
+ */
+public class LayoutVerifier
+{
+    /**
+     * The outcome of a verification.
+     */
+    public static class Report {
+        private final List<String> failures;
+        private final Map<String, Link> links;
+        private final int verified;
+        private final int steps;
+
+        Report(List<String> failures, Map<String, Link> links, int verified, int steps) {
+            this.failures = failures;
+            this.links = links;
+            this.verified = verified;
+            this.steps = steps;
+        }
+
+        /**
+         * @return true if the supply chain verified
+         */
+        public boolean isVerified() {
+            return this.failures.isEmpty() && this.verified == this.steps;
+        }
+
+        /**
+         * @return the failures found, each prefixed with the step that
+         * failed or "layout". Usually a single one, as the verification
+         * stops at the first failure, but steps verified concurrently may
+         * fail at the same time.
+         */
+        public List<String> getFailures() {
+            return this.failures;
+        }
+
+        /**
+         * @return the verified link of each step, by step name, frozen
+         */
+        public Map<String, Link> getLinks() {
+            return this.links;
+        }
+
+        /**
+         * @return the number of steps that were verified, which is less than
+         * the number of steps if the verification stopped early
+         */
+        public int getVerifiedStepCount() {
+            return this.verified;
+        }
+    }
+
+    /**
+     * A step that doesn't verify
+     */
+    private static class StepFailure extends RuntimeException {
+        StepFailure(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final Layout layout;
+    private final Path linkDirectory;
+    private final int threads;
+    private LinkLimits linkLimits = new LinkLimits();
+
+    /**
+     * @param layout the layout
+     * @param linkDirectory the directory holding the links
+     * @param threads the number of threads links are read and verified on
+     */
+    public LayoutVerifier(Layout layout, Path linkDirectory, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive");
+        this.layout = layout;
+        this.linkDirectory = linkDirectory;
+        this.threads = threads;
+    }
+
+    /**
+     * @param layout the layout
+     * @param linkDirectory the directory holding the links
+     */
+    public LayoutVerifier(Layout layout, Path linkDirectory) {
+        this(layout, linkDirectory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param linkLimits the limits the links are read with, see
+     * {@link LinkLimits}
+     *
+     * @return this verifier
+     */
+    public LayoutVerifier setLinkLimits(LinkLimits linkLimits) {
+        this.linkLimits = linkLimits;
+        return this;
+    }
+
+    /**
+     * Verifies the supply chain
+     *
+     * @param layoutKeys the keys that must have signed the layout
+     *
+     * @return the report of the verification
+     */
+    public Report verify(Collection<Key> layoutKeys) {
+        if (layoutKeys.isEmpty())
+            throw new IllegalArgumentException("expected layout keys");
+        List<Step> steps = this.layout.getSteps();
+
+        for (Key key : layoutKeys) {
+            if (!this.layout.verify(key))
+                return failed("layout: not signed by " + key.computeKeyId());
+        }
+        if (this.layout.isExpired(Instant.now()))
+            return failed("layout: expired on " + this.layout.getExpires());
+        if (this.layout.getInspectionCount() > 0)
+            return failed("layout: inspections aren't supported");
+
+        // the steps whose links the rules of each step are checked against
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        for (Step step : steps) {
+            Set<String> referenced = new LinkedHashSet<>();
+            try {
+                referenced.addAll(ArtifactRules.referencedSteps(step.getExpectedMaterials()));
+                referenced.addAll(ArtifactRules.referencedSteps(step.getExpectedProducts()));
+            } catch (IllegalArgumentException e) {
+                return failed(step.getName() + ": " + e.getMessage());
+            }
+            for (String name : referenced) {
+                if (this.layout.getStep(name) == null)
+                    return failed(step.getName() + ": rule refers to unknown step " + name);
+            }
+            dependencies.put(step.getName(), referenced);
+        }
+
+        return new Run(this.layout.getKeys()).verify(steps, dependencies);
+    }
+
+    private Report failed(String failure) {
+        return new Report(Collections.singletonList(failure),
+                Collections.<String, Link>emptyMap(), 0, this.layout.getSteps().size());
+    }
+
+    /**
+     * The state of a single verification
+     */
+    private class Run {
+        private final Map<String, Key> keys;
+        private final Map<String, Link> links = new ConcurrentHashMap<>();
+        private final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger verified = new AtomicInteger();
+        private final AtomicBoolean stop = new AtomicBoolean();
+        private final CompletableFuture<Void> failed = new CompletableFuture<>();
+
+        Run(Map<String, Key> keys) {
+            this.keys = keys;
+        }
+
+        Report verify(List<Step> steps, Map<String, Set<String>> dependencies) {
+            ExecutorService executor = Platform.newBlockingExecutor(
+                    Math.max(1, Math.min(threads, steps.size())), "in-toto-layout");
+            try {
+                Map<String, CompletableFuture<Link>> loaded = new HashMap<>();
+                for (Step step : steps)
+                    loaded.put(step.getName(), CompletableFuture.supplyAsync(
+                                task(step, () -> loadLink(step)), executor));
+
+                List<CompletableFuture<?>> checked = new ArrayList<>();
+                for (Step step : steps) {
+                    List<CompletableFuture<Link>> inputs = new ArrayList<>();
+                    inputs.add(loaded.get(step.getName()));
+                    for (String name : dependencies.get(step.getName()))
+                        inputs.add(loaded.get(name));
+                    checked.add(CompletableFuture.allOf(inputs.toArray(new CompletableFuture<?>[0]))
+                            .thenApplyAsync(ignored -> task(step, () -> checkRules(step)).get(),
+                                executor));
+                }
+
+                CompletableFuture.anyOf(this.failed,
+                        CompletableFuture.allOf(checked.toArray(new CompletableFuture<?>[0])))
+                    .get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.failures.add("layout: interrupted");
+            } catch (ExecutionException e) {
+                // the failure was recorded by the step
+            } finally {
+                this.stop.set(true);
+                executor.shutdownNow();
+            }
+            return new Report(new ArrayList<>(this.failures),
+                    Collections.unmodifiableMap(new HashMap<>(this.links)),
+                    this.verified.get(), steps.size());
+        }
+
+        /**
+         * Wraps the work on a step, so that it is skipped once the
+         * verification stopped, and that its failure stops it
+         */
+        private <T> Supplier<T> task(Step step, Supplier<T> work) {
+            return () -> {
+                if (this.stop.get())
+                    throw new CancellationException();
+                try {
+                    return work.get();
+                } catch (RuntimeException e) {
+                    if (!this.stop.getAndSet(true) || e instanceof StepFailure)
+                        this.failures.add(step.getName() + ": " + e.getMessage());
+                    this.failed.complete(null);
+                    throw e;
+                }
+            };
+        }
+
+        /**
+         * @return the verified link of a step, after checking the threshold
+         */
+        private Link loadLink(Step step) {
+            List<Link> valid = new ArrayList<>();
+            // each functionary counts once towards the threshold, however
+            // often the step lists it
+            for (String keyid : new LinkedHashSet<>(step.getPubkeys())) {
+                Key key = this.keys.get(keyid);
+                if (key == null)
+                    throw new StepFailure("unknown functionary key " + keyid);
+                Path file = linkDirectory.resolve(step.getName() + "."
+                        + keyid.substring(0, Math.min(8, keyid.length())) + ".link");
+                if (!Files.exists(file))
+                    continue;
+                Link link;
+                try {
+                    link = linkLimits.read(file);
+                } catch (IOException | JsonParseException e) {
+                    // not a valid link, doesn't count towards the threshold
+                    continue;
+                }
+                if (step.getName().equals(link.getName()) && link.verify(key))
+                    valid.add(link);
+            }
+
+            if (valid.size() < step.getThreshold())
+                throw new StepFailure("found " + valid.size() + " valid links, "
+                        + step.getThreshold() + " required");
+            Link link = valid.get(0);
+            for (Link other : valid) {
+                if (!link.getMaterials().equals(other.getMaterials())
+                        || !link.getProducts().equals(other.getProducts()))
+                    throw new StepFailure("the links of the functionaries have different artifacts");
+            }
+            link.freeze();
+            this.links.put(step.getName(), link);
+            return link;
+        }
+
+        private Void checkRules(Step step) {
+            Link link = this.links.get(step.getName());
+            String failure = ArtifactRules.apply(step.getExpectedMaterials(), false,
+                    link, this.links::get);
+            if (failure == null)
+                failure = ArtifactRules.apply(step.getExpectedProducts(), true,
+                        link, this.links::get);
+            if (failure != null)
+                throw new StepFailure(failure);
+            this.verified.incrementAndGet();
+            return null;
+        }
+    }
+}
@@ -4,36 +4,75 @@ import io.github.in_toto.models.Artifact;
 import io.github.in_toto.models.Artifact.ArtifactHash;
 import io.github.in_toto.keys.Signature;
 import io.github.in_toto.models.LinkSignable;
+import io.github.in_toto.lib.CanonicalJSONWriter;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
 
 /**
  * Implementation of the in-toto Link metadata type.
  *
+ * A link can be frozen (see {@link #freeze}) once its payload is complete,
+ * after which the payload can no longer be modified and the link can be
+ * shared between threads.
  */
 public class Link extends Metablock<LinkSignable>
 {
     /**
      * default exclude pattern used to filter out redundant artifacts
      */
-    transient String defaultExcludePattern = "**.{git,link}**";
+    static final String DEFAULT_EXCLUDE_PATTERN = "**.{git,link}**";
+
+    private transient volatile boolean frozen;
+
+    /**
+     * Versions of the artifact maps when the signed bytes were captured, to
+     * detect modifications made through the maps themselves.
+     */
+    private transient int capturedMaterials;
+    private transient int capturedProducts;
+
+    /**
+     * Snapshots of the materials recorded by {@link #addMaterial}, taken
+     * when they were hashed, so that unchanged products can reuse their
+     * hashes. Only kept while recording, not serialized.
+     */
+    private transient HashMap<String, StatSnapshot> materialSnapshots;
+    private transient int reusedProducts;
+    private transient RecordingJournal journal;
+
+    /**
+     * The canonical encodings of the members of the payload up to the
+     * materials, and between the materials and the products, cached once
+     * the link is frozen: until then, the environment, command and
+     * byproducts may be modified through their getters.
+     */
+    private transient volatile String[] fieldFragments;
 
     /**
      * Constuctor method used to populate the signable payload
      *
-     * @param materials a HashMap keyed by artifact URI's and with hash
+     * @param materials a Map keyed by artifact URI's and with hash
      * objects as values represeting the artifacts used as materials in this
-     * step
-     * @param products a HashMap keyed by artifact URI's and with hash objects
+     * step. The artifacts are copied.
+     * @param products a Map keyed by artifact URI's and with hash objects
      * as values representing the artifacts created as products in this step.
+     * The artifacts are copied.
      * @param name The name of this step
      * @param environment a HashMap containing any additional, relevant
      * environment information.
@@ -43,8 +82,8 @@ public class Link extends Metablock<LinkSignable>
      *
      * @see io.github.in_toto.models.Artifact
      */
-    public Link(HashMap<String, ArtifactHash> materials,
-            HashMap<String, ArtifactHash> products, String name,
+    public Link(Map<String, ArtifactHash> materials,
+            Map<String, ArtifactHash> products, String name,
             HashMap<String, Object> environment, ArrayList<String> command,
             HashMap<String, Object> byproducts) {
         super(null, null);
@@ -53,6 +92,140 @@ public class Link extends Metablock<LinkSignable>
         this.signed = signable;
     }
 
+    /**
+     * Makes the payload of this link immutable: its artifacts, name,
+     * environment, command and byproducts can't be modified anymore, and the
+     * corresponding setters and add methods throw an
+     * UnsupportedOperationException. The environment, command and
+     * byproducts getters return copies from then on, including copies of
+     * the objects and arrays nested in them.
+     *
+     * The link can still be signed, as signing doesn't modify the payload.
+     *
+     * @return this link
+     */
+    public Link freeze() {
+        LinkSignable signable = (LinkSignable)this.signed;
+        signable.materials.freeze();
+        signable.products.freeze();
+        this.frozen = true;
+        return this;
+    }
+
+    /**
+     * @return true if the payload of this link was frozen
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    private void beforeModification() {
+        if (this.frozen)
+            throw new UnsupportedOperationException("Frozen link: " + getName());
+        // the payload won't match what was read anymore
+        this.signedBytes = null;
+    }
+
+    @Override
+    void captureSignedBytes(byte[] canonical) {
+        super.captureSignedBytes(canonical);
+        this.capturedMaterials = versionOf(getMaterials());
+        this.capturedProducts = versionOf(getProducts());
+    }
+
+    @Override
+    byte[] capturedSignedBytes() {
+        byte[] captured = super.capturedSignedBytes();
+        if (captured == null
+                || versionOf(getMaterials()) != this.capturedMaterials
+                || versionOf(getProducts()) != this.capturedProducts)
+            return null;
+        return captured;
+    }
+
+    /**
+     * Streams the canonical encoding of the payload, which is the same as
+     * {@code JSONEncodeCanonical()} of the payload. The artifacts are encoded
+     * by their {@link ArtifactMap}s, which cache the encoding of each
+     * artifact once encoded twice: a link that is modified and signed
+     * repeatedly, e.g., by a recorder adding artifacts as they are created,
+     * only encodes the artifacts that changed since the last signature.
+     */
+    @Override
+    void writeCanonicalJSON(Writer writer) throws IOException {
+        LinkSignable signable = (LinkSignable)this.signed;
+        String[] fields = this.fieldFragments;
+        if (fields == null) {
+            fields = encodeFields(signable);
+            if (this.frozen)
+                this.fieldFragments = fields;
+        }
+
+        CanonicalJSONWriter json = new CanonicalJSONWriter(writer);
+        json.fragment(fields[0]);
+        writeCanonicalArtifacts(json, signable.materials);
+        json.fragment(fields[1]);
+        writeCanonicalArtifacts(json, signable.products);
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * @return the canonical encoding of the payload up to the value of the
+     * materials, and from there up to the value of the products, as members
+     * are sorted
+     */
+    private static String[] encodeFields(LinkSignable signable) throws IOException {
+        Gson gson = getCanonicalGson();
+        StringWriter writer = new StringWriter();
+        CanonicalJSONWriter json = new CanonicalJSONWriter(writer);
+        json.beginObject();
+        json.name("_type").write(gson.toJsonTree(signable._type)).separator();
+        json.name("byproducts").write(gson.toJsonTree(signable.byproducts)).separator();
+        json.name("command").write(gson.toJsonTree(signable.command)).separator();
+        json.name("environment").write(gson.toJsonTree(signable.environment)).separator();
+        json.name("materials");
+        String head = writer.toString();
+
+        writer.getBuffer().setLength(0);
+        json.separator();
+        json.name("name").write(gson.toJsonTree(signable.name)).separator();
+        json.name("products");
+        return new String[] {head, writer.toString()};
+    }
+
+    private static void writeCanonicalArtifacts(CanonicalJSONWriter json,
+            ArtifactMap artifacts) throws IOException {
+        if (artifacts == null)
+            json.fragment("null");
+        else
+            artifacts.writeCanonical(json);
+    }
+
+    /**
+     * @param serializeNulls if nulls should be included or not when encoding
+     *
+     * @return the canonical encoding of the payload, see
+     * {@link #writeCanonicalJSON}
+     */
+    @Override
+    public String getCanonicalJSON(boolean serializeNulls) {
+        if (!serializeNulls)
+            return super.getCanonicalJSON(false);
+        StringWriter writer = new StringWriter();
+        try {
+            writeCanonicalJSON(writer);
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new RuntimeException(e.toString());
+        }
+        return writer.toString();
+    }
+
+    private static int versionOf(ArtifactMap artifacts) {
+        return artifacts == null ? 0 : artifacts.getVersion();
+    }
+
     /**
      * convenience method to save the Link metdata file using the name defined by
      * the specification
@@ -83,34 +256,25 @@ public class Link extends Metablock<LinkSignable>
 
     /**
      * exclude artifacts matching the pattern
-     * @param materials the HashMap of artifacts
+     * @param materials the Map of artifacts, which is filtered in place
      * @param pattern the exclude pattern
+     * @return the filtered map
      */
-    public HashMap<String, ArtifactHash>excludeArtifactsByPattern
-        (HashMap<String, ArtifactHash> materials, String pattern)
+    public <M extends Map<String, ArtifactHash>> M excludeArtifactsByPattern
+        (M materials, String pattern)
     {
-        String patternString;
-        HashMap<String, ArtifactHash> filtered_artifacts;
-
-        if ( pattern != null && pattern.length() != 0) {
-            patternString = pattern;
-        } else {
-            patternString = defaultExcludePattern;
-        }
-
-        FileSystem fileSystem = FileSystems.getDefault();
+        M filtered_artifacts;
 
-        PathMatcher pathMatcher =
-            fileSystem.getPathMatcher("glob:" + patternString);
+        PathMatcher pathMatcher = getExcludeMatcher(pattern);
 
         filtered_artifacts = materials;
 
-        Iterator<HashMap.Entry<String, ArtifactHash>> iterator =
+        Iterator<Map.Entry<String, ArtifactHash>> iterator =
             filtered_artifacts.entrySet().iterator();
 
         while(iterator.hasNext()){
 
-            HashMap.Entry<String, ArtifactHash> entry = iterator.next();
+            Map.Entry<String, ArtifactHash> entry = iterator.next();
 
             if (pathMatcher.matches(Paths.get(entry.getKey()))) {
                 iterator.remove();
@@ -120,33 +284,83 @@ public class Link extends Metablock<LinkSignable>
         return filtered_artifacts;
     }
 
-    public void setMaterials(HashMap<String, ArtifactHash> materials, String pattern) {
+    /**
+     * Returns a matcher for the exclude pattern, falling back to the default
+     * pattern if none is passed.
+     *
+     * @param pattern the exclude pattern, may be null
+     *
+     * @return a PathMatcher for the pattern
+     */
+    static PathMatcher getExcludeMatcher(String pattern) {
+        String patternString;
+
+        if ( pattern != null && pattern.length() != 0) {
+            patternString = pattern;
+        } else {
+            patternString = DEFAULT_EXCLUDE_PATTERN;
+        }
+
+        FileSystem fileSystem = FileSystems.getDefault();
+
+        return fileSystem.getPathMatcher("glob:" + patternString);
+    }
+
+    public void setMaterials(Map<String, ArtifactHash> materials, String pattern) {
+        beforeModification();
         ((LinkSignable)this.signed).materials =
-            excludeArtifactsByPattern(materials, pattern);
+            excludeArtifactsByPattern(new ArtifactMap(materials), pattern);
     }
 
-    public void setMaterials(HashMap<String, ArtifactHash> materials) {
+    public void setMaterials(Map<String, ArtifactHash> materials) {
         setMaterials(materials, null);
     }
 
-    public HashMap<String, ArtifactHash>getMaterials() {
+    public ArtifactMap getMaterials() {
         return ((LinkSignable)this.signed).materials;
     }
 
-    public void setProducts(HashMap<String, ArtifactHash> products, String pattern) {
+    public void setProducts(Map<String, ArtifactHash> products, String pattern) {
+        beforeModification();
         ((LinkSignable)this.signed).products =
-            excludeArtifactsByPattern(products, pattern);
+            excludeArtifactsByPattern(new ArtifactMap(products), pattern);
     }
 
-    public void setProducts(HashMap<String, ArtifactHash> products) {
+    public void setProducts(Map<String, ArtifactHash> products) {
         setProducts(products, null);
     }
 
-    public HashMap<String, ArtifactHash>getProducts() {
+    public ArtifactMap getProducts() {
         return ((LinkSignable)this.signed).products;
     }
 
+    /**
+     * Returns the Merkle root digest over the materials of this link. Two
+     * links recorded the same materials if and only if their digests match.
+     *
+     * @return the hex-encoded root digest of the materials
+     *
+     * @see io.github.in_toto.models.ArtifactMerkleTree
+     */
+    public String getMaterialsRootDigest() {
+        return getMaterials().getRootDigest();
+    }
+
+    /**
+     * Returns the Merkle root digest over the products of this link, e.g., to
+     * check in constant time whether they match the materials of the next
+     * step.
+     *
+     * @return the hex-encoded root digest of the products
+     *
+     * @see io.github.in_toto.models.ArtifactMerkleTree
+     */
+    public String getProductsRootDigest() {
+        return getProducts().getRootDigest();
+    }
+
     public void setName(String name) {
+        beforeModification();
         ((LinkSignable)this.signed).name = name;
     }
 
@@ -155,26 +369,70 @@ public class Link extends Metablock<LinkSignable>
     }
 
     public void setEnvironment(HashMap<String, Object> environment) {
+        beforeModification();
         ((LinkSignable)this.signed).environment = environment;
     }
 
     public HashMap<String, Object> getEnvironment() {
+        if (this.frozen)
+            return copyOf(((LinkSignable)this.signed).environment);
+        // the caller may modify it
+        this.signedBytes = null;
         return ((LinkSignable)this.signed).environment;
     }
 
+    /**
+     * Copies a map of the payload of a frozen link, and the maps and lists
+     * nested in it, so that callers can't modify the shared payload
+     */
+    private static HashMap<String, Object> copyOf(Map<String, Object> map) {
+        if (map == null)
+            return null;
+        HashMap<String, Object> copy = new HashMap<>(map.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Object> entry : map.entrySet())
+            copy.put(entry.getKey(), copyOf(entry.getValue()));
+        return copy;
+    }
+
+    private static Object copyOf(Object value) {
+        if (value instanceof Map) {
+            LinkedHashMap<Object, Object> copy = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet())
+                copy.put(entry.getKey(), copyOf(entry.getValue()));
+            return copy;
+        }
+        if (value instanceof List) {
+            ArrayList<Object> copy = new ArrayList<>(((List<?>)value).size());
+            for (Object element : (List<?>)value)
+                copy.add(copyOf(element));
+            return copy;
+        }
+        return value;
+    }
+
     public void setCommand(ArrayList<String> command) {
+        beforeModification();
         ((LinkSignable)this.signed).command = command;
     }
 
     public ArrayList<String> getCommand() {
+        if (this.frozen)
+            return new ArrayList<>(((LinkSignable)this.signed).command);
+        // the caller may modify it
+        this.signedBytes = null;
         return ((LinkSignable)this.signed).command;
     }
 
     public void setByproducts(HashMap<String, Object> byproducts) {
+        beforeModification();
         ((LinkSignable)this.signed).byproducts = byproducts;
     }
 
     public HashMap<String, Object> getByproducts() {
+        if (this.frozen)
+            return copyOf(((LinkSignable)this.signed).byproducts);
+        // the caller may modify it
+        this.signedBytes = null;
         return ((LinkSignable)this.signed).byproducts;
     }
 
@@ -186,14 +444,65 @@ public class Link extends Metablock<LinkSignable>
      */
     public void addMaterial(String filePath, String pattern) {
 
-        Artifact a = new Artifact(filePath);
+        beforeModification();
 
-        HashMap<String, ArtifactHash> material = new HashMap<String, ArtifactHash>();
+        if (getExcludeMatcher(pattern).matches(Paths.get(filePath)))
+            return;
+
+        ArtifactMap materials = ((LinkSignable)this.signed).materials;
+        if (materials.containsKey(filePath))
+            return;
+
+        // a file modified while it was hashed gets no snapshot
+        StatSnapshot before = StatSnapshot.take(Paths.get(filePath));
+        ArtifactHash hash = resumedHash(RecordingJournal.MATERIAL, filePath, before);
+        if (hash == null) {
+            hash = new Artifact(filePath).getArtifactHashes();
+            before = journal(RecordingJournal.MATERIAL, filePath, before, hash);
+        }
+
+        putMaterial(filePath, hash, before);
+    }
+
+    private void putMaterial(String filePath, ArtifactHash hash, StatSnapshot before) {
+        ((LinkSignable)this.signed).materials.put(filePath, hash);
+        if (before != null) {
+            if (this.materialSnapshots == null)
+                this.materialSnapshots = new HashMap<>();
+            this.materialSnapshots.put(filePath, before);
+        }
+    }
 
-        material.put(a.getURI(), a.getArtifactHashes());
+    /**
+     * Tracks files as materials like {@link #addMaterial(String, String)},
+     * hashing the files that aren't resumed from the journal concurrently
+     *
+     * @param filePaths the paths of the materials to track
+     * @param pattern the exclude pattern, or null for the default one
+     * @param scheduler the scheduler hashing the files
+     */
+    public void addMaterials(Collection<String> filePaths, String pattern,
+            HashScheduler scheduler) {
+
+        beforeModification();
+
+        PathMatcher exclude = getExcludeMatcher(pattern);
+        ArtifactMap materials = ((LinkSignable)this.signed).materials;
+        Map<String, StatSnapshot> unhashed = new LinkedHashMap<>();
+        for (String filePath : filePaths) {
+            if (exclude.matches(Paths.get(filePath)) || materials.containsKey(filePath)
+                    || unhashed.containsKey(filePath))
+                continue;
+            StatSnapshot before = StatSnapshot.take(Paths.get(filePath));
+            ArtifactHash hash = resumedHash(RecordingJournal.MATERIAL, filePath, before);
+            if (hash != null)
+                putMaterial(filePath, hash, before);
+            else
+                unhashed.put(filePath, before);
+        }
 
-        excludeArtifactsByPattern(material, pattern)
-            .forEach(((LinkSignable)this.signed).materials::putIfAbsent);
+        scheduler.hashAll(unhashed.keySet(), (filePath, hash) -> putMaterial(filePath, hash,
+                    journal(RecordingJournal.MATERIAL, filePath, unhashed.get(filePath), hash)));
     }
 
     public void addMaterial(String filePath) {
@@ -206,18 +515,136 @@ public class Link extends Metablock<LinkSignable>
      * Convenience method to indicate this link to track an artifact as
      * product
      *
+     * A product that was recorded as a material by {@link #addMaterial} and
+     * whose size, modification time, change time and inode haven't changed
+     * since isn't read again: the hash of the material is reused. The same
+     * goes for the artifacts of a journal (see {@link #setJournal}).
+     *
      * @param filepath the path of the product to track
      */
     public void addProduct(String filePath, String pattern) {
 
-        Artifact a = new Artifact(filePath);
+        beforeModification();
 
-        HashMap<String, ArtifactHash> product = new HashMap<String, ArtifactHash>();
+        if (getExcludeMatcher(pattern).matches(Paths.get(filePath)))
+            return;
 
-        product.put(a.getURI(), a.getArtifactHashes());
+        ArtifactMap products = ((LinkSignable)this.signed).products;
+        if (products.containsKey(filePath))
+            return;
 
-        excludeArtifactsByPattern(product, pattern)
-            .forEach(((LinkSignable)this.signed).products::putIfAbsent);
+        ArtifactHash reused = reusableHash(filePath);
+        if (reused != null) {
+            products.put(filePath, reused);
+            this.reusedProducts++;
+            return;
+        }
+
+        StatSnapshot before = this.journal != null ? StatSnapshot.take(Paths.get(filePath)) : null;
+        ArtifactHash hash = resumedHash(RecordingJournal.PRODUCT, filePath, before);
+        if (hash == null) {
+            hash = new Artifact(filePath).getArtifactHashes();
+            journal(RecordingJournal.PRODUCT, filePath, before, hash);
+        }
+        products.put(filePath, hash);
+    }
+
+    /**
+     * Tracks files as products like {@link #addProduct(String, String)},
+     * hashing the files whose hash isn't reused concurrently
+     *
+     * @param filePaths the paths of the products to track
+     * @param pattern the exclude pattern, or null for the default one
+     * @param scheduler the scheduler hashing the files
+     */
+    public void addProducts(Collection<String> filePaths, String pattern,
+            HashScheduler scheduler) {
+
+        beforeModification();
+
+        PathMatcher exclude = getExcludeMatcher(pattern);
+        ArtifactMap products = ((LinkSignable)this.signed).products;
+        Map<String, StatSnapshot> unhashed = new LinkedHashMap<>();
+        for (String filePath : filePaths) {
+            if (exclude.matches(Paths.get(filePath)) || products.containsKey(filePath)
+                    || unhashed.containsKey(filePath))
+                continue;
+            ArtifactHash hash = reusableHash(filePath);
+            if (hash != null) {
+                products.put(filePath, hash);
+                this.reusedProducts++;
+                continue;
+            }
+            StatSnapshot before = this.journal != null ? StatSnapshot.take(Paths.get(filePath)) : null;
+            hash = resumedHash(RecordingJournal.PRODUCT, filePath, before);
+            if (hash != null)
+                products.put(filePath, hash);
+            else
+                unhashed.put(filePath, before);
+        }
+
+        scheduler.hashAll(unhashed.keySet(), (filePath, hash) -> {
+            journal(RecordingJournal.PRODUCT, filePath, unhashed.get(filePath), hash);
+            products.put(filePath, hash);
+        });
+    }
+
+    /**
+     * Sets a journal the artifacts hashed by {@link #addMaterial} and
+     * {@link #addProduct} are appended to, and whose replayed entries are
+     * reused for unchanged files, so that an interrupted recording can be
+     * resumed. The journal isn't serialized.
+     *
+     * @param journal the journal, or null
+     */
+    public void setJournal(RecordingJournal journal) {
+        this.journal = journal;
+    }
+
+    private ArtifactHash resumedHash(byte kind, String filePath, StatSnapshot current) {
+        return this.journal != null ? this.journal.resume(kind, filePath, current) : null;
+    }
+
+    /**
+     * Checks that a file wasn't modified while it was hashed, and appends it
+     * to the journal if so
+     *
+     * @return the snapshot taken before hashing the file, or null if it was
+     * modified
+     */
+    private StatSnapshot journal(byte kind, String filePath, StatSnapshot before,
+            ArtifactHash hash) {
+        if (before == null || !before.sameAs(StatSnapshot.take(Paths.get(filePath))))
+            return null;
+        if (this.journal != null)
+            this.journal.append(kind, filePath, before, hash);
+        return before;
+    }
+
+    /**
+     * @return a copy of the hash of the material recorded from the same,
+     * unchanged file, or null if the file must be hashed
+     */
+    private ArtifactHash reusableHash(String filePath) {
+        if (this.materialSnapshots == null)
+            return null;
+        StatSnapshot snapshot = this.materialSnapshots.get(filePath);
+        ArtifactHash material = ((LinkSignable)this.signed).materials.get(filePath);
+        if (snapshot == null || material == null
+                || !material.keySet().equals(new HashSet<>(ArtifactHash.getDefaultAlgorithms()))
+                || !snapshot.isUnchanged(StatSnapshot.take(Paths.get(filePath))))
+            return null;
+        ArtifactHash copy = new ArtifactHash();
+        copy.putAll(material);
+        return copy;
+    }
+
+    /**
+     * @return the number of products whose hash was reused from a material,
+     * see {@link #addProduct}
+     */
+    int getReusedProductCount() {
+        return this.reusedProducts;
     }
 
     public void addProduct(String filePath) {
@@ -226,10 +653,95 @@ public class Link extends Metablock<LinkSignable>
 
 	}
 
-    public static Link read(String jsonString) {
-        Gson gson = new Gson();
-        return gson.fromJson(jsonString, Link.class);
+    /**
+     * Records an already hashed material, e.g., one emitted by an
+     * {@link ArtifactPublisher}
+     *
+     * @param uri the artifact URI
+     * @param hash the hash object of the artifact
+     */
+    public void putMaterial(String uri, ArtifactHash hash) {
+        beforeModification();
+        getMaterials().put(uri, hash);
+    }
+
+    /**
+     * Records an already hashed product, e.g., one emitted by an
+     * {@link ArtifactPublisher}
+     *
+     * @param uri the artifact URI
+     * @param hash the hash object of the artifact
+     */
+    public void putProduct(String uri, ArtifactHash hash) {
+        beforeModification();
+        getProducts().put(uri, hash);
+    }
+
+    /**
+     * Records the artifacts of a manifest of precomputed digests as
+     * materials, without reading the files, unless they match the exclude
+     * pattern
+     *
+     * @param manifest the digests to import
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void importMaterials(ArtifactManifest manifest, String pattern) {
+        beforeModification();
+        importArtifacts(getMaterials(), manifest, pattern);
+    }
+
+    public void importMaterials(ArtifactManifest manifest) {
+        importMaterials(manifest, null);
     }
-}
 
+    /**
+     * Records the artifacts of a manifest of precomputed digests as
+     * products, without reading the files, unless they match the exclude
+     * pattern
+     *
+     * @param manifest the digests to import
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void importProducts(ArtifactManifest manifest, String pattern) {
+        beforeModification();
+        importArtifacts(getProducts(), manifest, pattern);
+    }
+
+    public void importProducts(ArtifactManifest manifest) {
+        importProducts(manifest, null);
+    }
 
+    private static void importArtifacts(ArtifactMap artifacts,
+            ArtifactManifest manifest, String pattern) {
+        PathMatcher pathMatcher = getExcludeMatcher(pattern);
+        for (Map.Entry<String, ArtifactHash> entry : manifest.getArtifacts().entrySet()) {
+            if (!pathMatcher.matches(Paths.get(entry.getKey())))
+                artifacts.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a link from its json representation.
+     *
+     * The canonical encoding of the signed field is captured while reading,
+     * and used to verify signatures (see {@link #verify}) as long as the
+     * link isn't modified. Note that the environment, command and byproducts
+     * of a link that isn't frozen may be modified by callers once returned by
+     * their getters, so getting them drops the captured encoding.
+     *
+     * @param jsonString the json representation of the link
+     *
+     * @return the link
+     */
+    public static Link read(String jsonString) {
+        return read(ReadGson.gson, jsonString, Link.class);
+    }
+
+    /**
+     * Shared, as building the reflective type adapters of links is a large
+     * part of the cost of reading the first one.
+     */
+    private static class ReadGson {
+        static final Gson gson = new Gson();
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.lib.CryptoProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.JsonParseException;
+
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.util.encoders.Hex;
+
+/**
+ * A bounded cache of parsed links, keyed by the digest of their raw
+ * contents.
+ *
+ * Loading a link that was already loaded (e.g., the link of an upstream step
+ * shared by many releases) is a memory lookup instead of a full parse. As
+ * entries are keyed by content, a modified file is simply a different entry,
+ * and no invalidation is needed.
+ *
+ * The cache holds at most a number of links and a total weight, which is the
+ * size in bytes of the raw links, evicting the least recently used ones
+ * first. The returned links are frozen (see {@link Link#freeze}) and can't be
+ * signed, so that they can be shared by all callers.
+ *
+ * A LinkCache is thread-safe. Links are parsed outside of the cache lock, so
+ * concurrent misses don't block each other.
+ */
+public class LinkCache
+{
+    private static class Entry {
+        final Link link;
+        final long weight;
+
+        Entry(Link link, long weight) {
+            this.link = link;
+            this.weight = weight;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+
+    // access-ordered, so that iteration starts with the least recently used
+    private final LinkedHashMap<String, Entry> entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private volatile LinkLimits limits;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxEntries the maximum number of links held by the cache
+     * @param maxWeight the maximum total size, in bytes, of the raw links held
+     * by the cache
+     */
+    public LinkCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1)
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Checks the links parsed by this cache against limits, e.g., when
+     * they come from untrusted sources. Cached links aren't checked again.
+     *
+     * @param limits the limits, or null to parse links unchecked
+     *
+     * @return this cache
+     */
+    public LinkCache setLimits(LinkLimits limits) {
+        this.limits = limits;
+        return this;
+    }
+
+    /**
+     * Reads a link file through the cache
+     *
+     * @param path the path of the link file
+     *
+     * @return the frozen link
+     *
+     * @throws java.io.IOException if the file can't be read
+     * @throws JsonParseException if the file isn't a link
+     */
+    public Link read(Path path) throws IOException {
+        return get(Files.readAllBytes(path));
+    }
+
+    /**
+     * Returns the link encoded by the passed contents, parsing it only if it
+     * isn't cached yet.
+     *
+     * @param contents the raw, UTF-8 encoded contents of a link file
+     *
+     * @return the frozen link
+     *
+     * @throws JsonParseException if the contents aren't a link
+     */
+    public Link get(byte[] contents) {
+        String key = digest(contents);
+
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (entry != null) {
+                this.hits++;
+                return entry.link;
+            }
+            this.misses++;
+        }
+
+        String json = new String(contents, StandardCharsets.UTF_8);
+        LinkLimits limits = this.limits;
+        Link link = limits != null ? limits.read(json) : Link.read(json);
+        if (link == null)
+            throw new JsonParseException("Not a link");
+        link.freeze();
+        link.shared = true;
+
+        synchronized (this) {
+            // another thread may have loaded the same link in the meantime
+            Entry entry = this.entries.get(key);
+            if (entry != null)
+                return entry.link;
+
+            // links heavier than the whole cache aren't worth evicting for
+            if (contents.length <= this.maxWeight) {
+                this.entries.put(key, new Entry(link, contents.length));
+                this.weight += contents.length;
+                evict();
+            }
+        }
+        return link;
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (this.entries.size() > this.maxEntries || this.weight > this.maxWeight) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            this.weight -= eldest.weight;
+            this.evictions++;
+        }
+    }
+
+    private static String digest(byte[] contents) {
+        Digest digest = CryptoProvider.pooledDigest("sha256");
+        digest.update(contents, 0, contents.length);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return Hex.toHexString(result);
+    }
+
+    /**
+     * Removes all links from the cache
+     */
+    public synchronized void invalidateAll() {
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    /**
+     * @return the number of links in the cache
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return the total size, in bytes, of the raw links in the cache
+     */
+    public synchronized long getWeight() {
+        return this.weight;
+    }
+
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+}
@@ -0,0 +1,277 @@
+package io.github.in_toto.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Limits on the size and shape of links read from untrusted sources.
+ *
+ * {@link Link#read} trusts its input: a hostile link with deeply nested
+ * byproducts or millions of artifacts may exhaust the heap or the stack of
+ * the process reading it. Reading a link through {@code LinkLimits} first
+ * checks it in a single streaming pass, which rejects the link as soon as a
+ * limit is exceeded, so that the cost of a bad link is bounded by the
+ * limits rather than by its size.
+ *
+ * <pre>
+ *  Link link = new LinkLimits().setMaxArtifacts(100000).read(path);
+ * </pre>
+ *
+ * Violations are reported as {@link JsonParseException}s, as for any other
+ * malformed link. A LinkLimits is thread-safe once configured.
+ */
+public class LinkLimits
+{
+    private long maxBytes = 64L * 1024 * 1024;
+    private int maxDepth = 32;
+    private int maxStringLength = 64 * 1024;
+    private long maxArtifacts = 1000000;
+    private int maxMembers = 100000;
+
+    private static int checkPositive(long value, String what) {
+        if (value < 1)
+            throw new IllegalArgumentException(what + " must be positive");
+        return (int)Math.min(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBytes the maximum size of a link, in bytes of its UTF-8
+     * encoding (default 64 MiB)
+     *
+     * @return these limits
+     */
+    public LinkLimits setMaxBytes(long maxBytes) {
+        checkPositive(maxBytes, "maxBytes");
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * @param maxDepth the maximum nesting of arrays and objects, the
+     * top-level object included (default 32)
+     *
+     * @return these limits
+     */
+    public LinkLimits setMaxDepth(int maxDepth) {
+        this.maxDepth = checkPositive(maxDepth, "maxDepth");
+        return this;
+    }
+
+    /**
+     * @param maxStringLength the maximum length of a string, number or
+     * member name, in chars (default 65536)
+     *
+     * @return these limits
+     */
+    public LinkLimits setMaxStringLength(int maxStringLength) {
+        this.maxStringLength = checkPositive(maxStringLength, "maxStringLength");
+        return this;
+    }
+
+    /**
+     * @param maxArtifacts the maximum number of materials and products,
+     * together (default 1000000)
+     *
+     * @return these limits
+     */
+    public LinkLimits setMaxArtifacts(long maxArtifacts) {
+        checkPositive(maxArtifacts, "maxArtifacts");
+        this.maxArtifacts = maxArtifacts;
+        return this;
+    }
+
+    /**
+     * @param maxMembers the maximum number of elements or members of any
+     * other array or object, e.g., the environment or the byproducts
+     * (default 100000)
+     *
+     * @return these limits
+     */
+    public LinkLimits setMaxMembers(int maxMembers) {
+        this.maxMembers = checkPositive(maxMembers, "maxMembers");
+        return this;
+    }
+
+    /**
+     * Checks a json document against these limits, without building it
+     *
+     * @param json the json document
+     *
+     * @throws JsonParseException if the document is malformed or exceeds a
+     * limit
+     */
+    public void validate(String json) {
+        // a char is encoded with at least one byte
+        if (json.length() > this.maxBytes
+                || json.getBytes(StandardCharsets.UTF_8).length > this.maxBytes)
+            throw new JsonParseException("Link exceeds " + this.maxBytes + " bytes");
+
+        // the number of values read so far in each open container, and
+        // whether it holds artifacts
+        long[] counts = new long[this.maxDepth];
+        boolean[] artifacts = new boolean[this.maxDepth];
+        int depth = 0;
+        long totalArtifacts = 0;
+
+        // "signed" at depth 1, then "materials" or "products" at depth 2
+        boolean inSigned = false;
+        String name = null;
+
+        try {
+            JsonReader reader = new JsonReader(new StringReader(json));
+            do {
+                JsonToken token = reader.peek();
+                if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT) {
+                    if (token == JsonToken.END_ARRAY)
+                        reader.endArray();
+                    else
+                        reader.endObject();
+                    depth--;
+                    if (depth == 1)
+                        inSigned = false;
+                    continue;
+                }
+                if (token == JsonToken.NAME) {
+                    name = reader.nextName();
+                    checkLength(name);
+                    continue;
+                }
+
+                // a value, count it in its container
+                if (depth > 0) {
+                    int parent = depth - 1;
+                    counts[parent]++;
+                    if (artifacts[parent]) {
+                        if (++totalArtifacts > this.maxArtifacts)
+                            throw new JsonParseException("Link has more than "
+                                    + this.maxArtifacts + " artifacts");
+                    } else if (counts[parent] > this.maxMembers) {
+                        throw new JsonParseException("Link has a container with more than "
+                                + this.maxMembers + " values");
+                    }
+                }
+
+                switch (token) {
+                    case BEGIN_ARRAY:
+                    case BEGIN_OBJECT:
+                        if (depth == this.maxDepth)
+                            throw new JsonParseException("Link is nested deeper than "
+                                    + this.maxDepth + " levels");
+                        boolean object = token == JsonToken.BEGIN_OBJECT;
+                        if (object)
+                            reader.beginObject();
+                        else
+                            reader.beginArray();
+                        counts[depth] = 0;
+                        artifacts[depth] = object && inSigned && depth == 2
+                            && ("materials".equals(name) || "products".equals(name));
+                        if (object && depth == 1 && "signed".equals(name))
+                            inSigned = true;
+                        depth++;
+                        break;
+
+                    case STRING:
+                    case NUMBER:
+                        checkLength(reader.nextString());
+                        break;
+
+                    case BOOLEAN:
+                        reader.nextBoolean();
+                        break;
+
+                    case NULL:
+                        reader.nextNull();
+                        break;
+
+                    default:
+                        throw new JsonParseException("Unexpected token: " + token);
+                }
+                name = null;
+            } while (depth > 0);
+
+            if (reader.peek() != JsonToken.END_DOCUMENT)
+                throw new JsonParseException("Unexpected content after the link");
+        } catch (IOException | IllegalStateException e) {
+            throw new JsonParseException("Malformed link: " + e.getMessage(), e);
+        }
+    }
+
+    private void checkLength(String value) {
+        if (value.length() > this.maxStringLength)
+            throw new JsonParseException("Link has a string longer than "
+                    + this.maxStringLength + " chars");
+    }
+
+    /**
+     * Checks a link against these limits, and reads it
+     *
+     * @param json the json encoded link
+     *
+     * @return the link
+     *
+     * @throws JsonParseException if the link is malformed or exceeds a limit
+     */
+    public Link read(String json) {
+        validate(json);
+        return Link.read(json);
+    }
+
+    /**
+     * Reads a link file, checking its size before reading it
+     *
+     * @param path the path of the link file
+     *
+     * @return the link
+     *
+     * @throws IOException if the file can't be read
+     * @throws JsonParseException if the link is malformed or exceeds a limit
+     */
+    public Link read(Path path) throws IOException {
+        if (Files.size(path) > this.maxBytes)
+            throw new JsonParseException(path + " exceeds " + this.maxBytes + " bytes");
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a link from a stream, giving up as soon as it exceeds the size
+     * limit
+     *
+     * @param in the stream, which is left open
+     *
+     * @return the link
+     *
+     * @throws IOException if the stream can't be read
+     * @throws JsonParseException if the link is malformed or exceeds a limit
+     */
+    public Link read(InputStream in) throws IOException {
+        return read(new String(readBounded(in), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a stream up to the size limit
+     *
+     * @throws JsonParseException if the stream holds more
+     */
+    byte[] readBounded(InputStream in) throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (contents.size() + (long)read > this.maxBytes)
+                throw new JsonParseException("Link exceeds " + this.maxBytes + " bytes");
+            contents.write(buffer, 0, read);
+        }
+        return contents.toByteArray();
+    }
+}
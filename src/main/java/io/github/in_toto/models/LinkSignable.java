@@ -10,13 +10,15 @@ import io.github.in_toto.keys.Signature;
 import io.github.in_toto.models.LinkSignable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 
 class LinkSignable
     extends Signable {
 
-    HashMap<String, ArtifactHash> materials;
-    HashMap<String, ArtifactHash> products;
+    // Artifacts are kept in canonical order, see ArtifactMap
+    ArtifactMap materials;
+    ArtifactMap products;
     // NOTE: Caution when dealing with numeric values!
     // Since gson does not know the type of the target, it will
     // store any numeric value as `Double`, e.g.:
@@ -28,19 +30,13 @@ class LinkSignable
     ArrayList<String> command;
     String name;
 
-    LinkSignable(HashMap<String, ArtifactHash> materials,
-            HashMap<String, ArtifactHash> products, String name,
+    LinkSignable(Map<String, ArtifactHash> materials,
+            Map<String, ArtifactHash> products, String name,
             HashMap<String, Object> environment, ArrayList<String> command,
             HashMap<String, Object> byproducts) {
 
         super();
 
-        if (materials == null)
-            materials = new HashMap<String, ArtifactHash>();
-
-        if (products == null)
-            products = new HashMap<String, ArtifactHash>();
-
         //FIXME: probably warn about this would be a good idea
         if (name == null)
            name = "step";
@@ -54,8 +50,8 @@ class LinkSignable
         if (byproducts == null)
             byproducts = new HashMap<String, Object>();
 
-        this.materials = materials;
-        this.products = products;
+        this.materials = new ArtifactMap(materials);
+        this.products = new ArtifactMap(products);
         this.name = name;
         this.environment = environment;
         this.command = command;
@@ -1,10 +1,18 @@
 package io.github.in_toto.models;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.io.Writer;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 import io.github.in_toto.keys.Key;
 import io.github.in_toto.keys.Signature;
@@ -13,11 +21,17 @@ import io.github.in_toto.lib.NumericJSONSerializer;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
 
 import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.util.encoders.DecoderException;
 import org.bouncycastle.util.encoders.Hex;
 import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
-import org.bouncycastle.crypto.CryptoException;
+import org.bouncycastle.crypto.io.SignerOutputStream;
 
 /**
  * A metablock class that contains two elements
@@ -30,6 +44,18 @@ abstract class Metablock<S extends Signable>
     S signed;
     ArrayList<Signature> signatures;
 
+    /**
+     * Set on instances shared between callers (see LinkCache), which must not
+     * be signed as that would modify them for everyone.
+     */
+    transient volatile boolean shared;
+
+    /**
+     * Canonical encoding of the signed field as it was read, see
+     * {@link #read}.
+     */
+    transient volatile byte[] signedBytes;
+
     /**
      * Base constructor.
      *
@@ -43,6 +69,14 @@ abstract class Metablock<S extends Signable>
         this.signatures = signatures;
     }
 
+    /**
+     * @return the signatures on this metadata, e.g., to look up the keys
+     * that made them
+     */
+    public List<Signature> getSignatures() {
+        return Collections.unmodifiableList(this.signatures);
+    }
+
     /**
      * Serialize the current metadata into a JSON file
      *
@@ -81,51 +115,179 @@ abstract class Metablock<S extends Signable>
      * @return a JSON string representation of the metadata instance
      */
     public String dumpString() {
-        Gson gson = new GsonBuilder()
+        return DumpGson.gson.toJson(this);
+    }
+
+    /**
+     * The Gson instance used to dump metadata, created on first use. Gson
+     * instances are thread-safe and cache the type adapters they build
+     * reflectively, so a single instance is shared by all dumps.
+     */
+    private static class DumpGson {
+        static final Gson gson = new GsonBuilder()
                 .serializeNulls()
                 // Use custom serializer to enforce non-floating point numbers
                 .registerTypeAdapter(Double.class, new NumericJSONSerializer())
                 .setPrettyPrinting()
                 .create();
-        return gson.toJson(this);
+    }
+
+    static Gson getDumpGson() {
+        return DumpGson.gson;
+    }
+
+    /**
+     * The Gson instance used to build the json trees of the members of a
+     * payload that are canonically encoded piece by piece (see
+     * {@link #writeCanonicalJSON}), configured as
+     * {@link io.github.in_toto.lib.JSONEncoder#JSONEncodeCanonical()}.
+     */
+    private static class CanonicalGson {
+        static final Gson gson = new GsonBuilder()
+                .serializeNulls()
+                .disableHtmlEscaping()
+                .create();
+    }
+
+    static Gson getCanonicalGson() {
+        return CanonicalGson.gson;
     }
 
     /**
      * Signs the current signed payload using the key provided
      *
      * @param privateKey the key used to sign the payload.
+     *
+     * @throws UncheckedIOException if the key fails to sign, e.g., if the
+     * signing agent holding it can't be reached
      */
     public void sign(Key privateKey) {
 
+        if (this.shared)
+            throw new UnsupportedOperationException("Can't sign shared metadata");
+
         String sig;
         String keyid;
-        byte[] payload;
-        AsymmetricKeyParameter keyParameters;
 
         try {
-            keyParameters = privateKey.getPrivate();
-            if (keyParameters == null || keyParameters.isPrivate() == false) {
-                System.out.println("Can't sign with a public key!"); return; }
+            sig = privateKey.sign(this::writeSignedPayload);
         } catch (IOException e) {
-            System.out.println("Can't sign with this key!");
+            throw new UncheckedIOException("Couldn't sign payload", e);
+        }
+        if (sig == null) {
+            System.out.println("Can't sign with a public key!");
             return;
         }
 
         keyid = privateKey.computeKeyId();
-        payload = this.signed.JSONEncodeCanonical().getBytes();
 
-        Signer signer = privateKey.getSigner();
-        signer.init(true, keyParameters);
-        signer.update(payload, 0, payload.length);
+        this.signatures.add(new Signature(keyid, sig));
+
+    }
+
+    /**
+     * Verifies the signature(s) made by a key over the signed payload.
+     *
+     * If the metadata was read from a file, the payload is checked against
+     * the canonical encoding of the signed field captured while reading,
+     * so it isn't encoded again from the parsed objects.
+     *
+     * @param publicKey the key whose signature is verified
+     *
+     * @return true if a valid signature by the key is present
+     */
+    public boolean verify(Key publicKey) {
+        AsymmetricKeyParameter keyParameters;
         try {
-            sig = Hex.toHexString(signer.generateSignature());
-        } catch (CryptoException e) {
-            System.out.println("Coudln't sign payload!");
+            keyParameters = publicKey.getPublic();
+        } catch (IOException e) {
+            return false;
+        }
+        if (keyParameters == null)
+            return false;
+
+        String keyid = publicKey.computeKeyId();
+        for (Signature signature : this.signatures) {
+            if (!keyid.equals(signature.getKeyId()) || signature.getSig() == null)
+                continue;
+
+            Signer signer = publicKey.getPooledSigner();
+            signer.init(false, keyParameters);
+            try {
+                writeSignedPayload(new SignerOutputStream(signer));
+                if (signer.verifySignature(Hex.decode(signature.getSig())))
+                    return true;
+            } catch (IOException | DecoderException e) {
+                // not a valid signature, try the next one
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the UTF-8 canonical encoding of the signed payload to a stream
+     */
+    private void writeSignedPayload(OutputStream out) throws IOException {
+        byte[] captured = capturedSignedBytes();
+        if (captured != null) {
+            out.write(captured);
             return;
         }
 
-        this.signatures.add(new Signature(keyid, sig));
+        Writer payload = new BufferedWriter(new OutputStreamWriter(
+                    out, StandardCharsets.UTF_8));
+        writeCanonicalJSON(payload);
+        payload.flush();
+    }
 
+    /**
+     * Reads a metablock from its json representation, capturing the
+     * canonical encoding of its signed field in the same pass (see
+     * {@link SignedBytesReader}), so that verifying its signatures doesn't
+     * need to encode the payload again.
+     *
+     * @param gson the Gson instance the metablock is parsed with
+     * @param json the json representation of the metablock
+     * @param type the type of metablock
+     *
+     * @return the metablock, or null if the json is empty
+     *
+     * @throws JsonParseException if the json isn't a valid metablock
+     */
+    static <M extends Metablock<?>> M read(Gson gson, String json, Class<M> type) {
+        SignedBytesReader reader = new SignedBytesReader(new StringReader(json));
+        M metablock = gson.fromJson(reader, type);
+        if (metablock == null)
+            return null;
+        try {
+            if (reader.peek() != JsonToken.END_DOCUMENT)
+                throw new JsonIOException("JSON document was not fully consumed.");
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+        if (metablock.signed == null)
+            throw new JsonParseException("Missing signed field");
+        metablock.captureSignedBytes(reader.getSignedBytes());
+        return metablock;
+    }
+
+    /**
+     * Records the canonical encoding of the signed field as it was read
+     *
+     * @param canonical the encoding, or null if it couldn't be captured
+     */
+    void captureSignedBytes(byte[] canonical) {
+        this.signedBytes = canonical;
+    }
+
+    /**
+     * @return the captured canonical encoding of the signed field, or null
+     * if there is none or if it may not match the payload anymore
+     */
+    byte[] capturedSignedBytes() {
+        return this.signedBytes;
     }
 
     /**
@@ -139,4 +301,19 @@ abstract class Metablock<S extends Signable>
     public String getCanonicalJSON(boolean serializeNulls) {
         return this.signed.JSONEncodeCanonical(serializeNulls);
     }
+
+    /**
+     * Writes the canonical json encoding of the signed field, i.e., the
+     * payload to be signed, to a writer.
+     *
+     * Subclasses that can't hold their payload in memory override this to
+     * stream it instead.
+     *
+     * @param writer the target writer
+     *
+     * @throws java.io.IOException if unable to write to the passed writer.
+     */
+    void writeCanonicalJSON(Writer writer) throws IOException {
+        writer.write(this.signed.JSONEncodeCanonical());
+    }
 }
@@ -0,0 +1,306 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the artifacts hashed while recording a link, so
+ * that a recording interrupted by a crash, e.g., running out of memory or
+ * being killed on a timeout, can be resumed without hashing everything
+ * again.
+ *
+ * Each artifact hashed by a {@link Link} the journal is set on (see
+ * {@link Link#setJournal}) is appended to the journal with a
+ * {@link StatSnapshot} of the file. Entries are written to disk in batches,
+ * and synced every {@code syncEntries} entries or {@code syncMillis}
+ * milliseconds, whichever comes first, so that a crash loses at most the
+ * last batch. When the journal of an interrupted recording is opened again,
+ * its entries are replayed, and a file whose size, times and inode still
+ * match its entry isn't read again.
+ *
+ * <pre>
+ *  try (RecordingJournal journal = RecordingJournal.open(path)) {
+ *      link.setJournal(journal);
+ *      ... record the link ...
+ *  }
+ *  Files.delete(path);
+ * </pre>
+ *
+ * Entries are checksummed, and a truncated or corrupt tail, e.g., a batch
+ * only partially written when the process died, is dropped on replay.
+ * Files that were modified shortly before they were hashed aren't journaled,
+ * since their snapshot can't tell later changes apart (see
+ * {@link StatSnapshot}). A journal is thread-safe.
+ */
+public class RecordingJournal
+    implements Closeable
+{
+    private static final int MAGIC = 0x696e746a; // "intj"
+    private static final int VERSION = 1;
+
+    static final byte MATERIAL = 0;
+    static final byte PRODUCT = 1;
+
+    /**
+     * Entries larger than this are considered corrupt, a path and a few
+     * hashes take much less.
+     */
+    private static final int MAX_ENTRY_LENGTH = 1024 * 1024;
+
+    private static final class Entry {
+        final StatSnapshot snapshot;
+        final ArtifactHash hash;
+
+        Entry(StatSnapshot snapshot, ArtifactHash hash) {
+            this.snapshot = snapshot;
+            this.hash = hash;
+        }
+    }
+
+    private final FileChannel channel;
+    private final int syncEntries;
+    private final long syncMillis;
+
+    // the replayed entries, by kind and path
+    private final HashMap<String, Entry> materials = new HashMap<>();
+    private final HashMap<String, Entry> products = new HashMap<>();
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int pendingEntries;
+    private long lastSync = System.currentTimeMillis();
+    private int resumed;
+
+    private RecordingJournal(FileChannel channel, int syncEntries, long syncMillis) {
+        this.channel = channel;
+        this.syncEntries = syncEntries;
+        this.syncMillis = syncMillis;
+    }
+
+    /**
+     * Opens a journal, syncing every 1024 entries or every second
+     *
+     * @see #open(Path, int, long)
+     */
+    public static RecordingJournal open(Path path) throws IOException {
+        return open(path, 1024, 1000);
+    }
+
+    /**
+     * Opens a journal, creating it if it doesn't exist, or else replaying
+     * its entries
+     *
+     * @param path the journal file
+     * @param syncEntries the maximum number of entries appended between
+     * syncs
+     * @param syncMillis the maximum time between syncs, in milliseconds
+     *
+     * @return the journal, which must be closed
+     *
+     * @throws IOException if the journal can't be opened, or isn't a journal
+     */
+    public static RecordingJournal open(Path path, int syncEntries, long syncMillis)
+        throws IOException {
+        if (syncEntries < 1)
+            throw new IllegalArgumentException("syncEntries must be positive");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            RecordingJournal journal = new RecordingJournal(channel, syncEntries, syncMillis);
+            journal.replay(path);
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the entries of the journal, and truncates it after the last
+     * valid one, or writes the header of an empty journal
+     */
+    private void replay(Path path) throws IOException {
+        if (this.channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            while (header.hasRemaining())
+                this.channel.write(header);
+            this.channel.force(true);
+            return;
+        }
+
+        this.channel.position(0);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(this.channel), 65536));
+        long valid;
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(path + " is not a recording journal");
+            valid = 8;
+        } catch (EOFException e) {
+            throw new IOException(path + " is not a recording journal");
+        }
+
+        CRC32 crc = new CRC32();
+        byte[] entry = new byte[256];
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+                if (length < 1 || length > MAX_ENTRY_LENGTH)
+                    break;
+                if (entry.length < length)
+                    entry = new byte[Math.max(length, entry.length * 2)];
+                in.readFully(entry, 0, length);
+                crc.reset();
+                crc.update(entry, 0, length);
+                if (in.readInt() != (int)crc.getValue())
+                    break;
+            } catch (EOFException e) {
+                break;
+            }
+            readEntry(new DataInputStream(new ByteArrayInputStream(entry, 0, length)));
+            valid += 8 + length;
+        }
+
+        // drop a torn tail, and append after the last valid entry
+        this.channel.truncate(valid);
+        this.channel.position(valid);
+    }
+
+    private void readEntry(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        String path = in.readUTF();
+        StatSnapshot snapshot = StatSnapshot.read(in);
+        int count = in.readInt();
+        ArtifactHash hash = new ArtifactHash();
+        for (int i = 0; i < count; i++)
+            hash.put(in.readUTF(), in.readUTF());
+        (kind == PRODUCT ? this.products : this.materials).put(path, new Entry(snapshot, hash));
+    }
+
+    /**
+     * @param kind {@link #MATERIAL} or {@link #PRODUCT}
+     * @param path the artifact path
+     * @param current a snapshot of the file taken now
+     *
+     * @return a copy of the hash journaled for the same, unchanged file with
+     * the default algorithms, or null if the file must be hashed
+     */
+    synchronized ArtifactHash resume(byte kind, String path, StatSnapshot current) {
+        Entry entry = (kind == PRODUCT ? this.products : this.materials).get(path);
+        if (entry == null || current == null || !entry.snapshot.isUnchanged(current)
+                || !entry.hash.keySet().equals(
+                    new HashSet<>(ArtifactHash.getDefaultAlgorithms())))
+            return null;
+        this.resumed++;
+        ArtifactHash copy = new ArtifactHash();
+        copy.putAll(entry.hash);
+        return copy;
+    }
+
+    /**
+     * Appends a hashed artifact to the journal, unless its snapshot is racy
+     *
+     * @param kind {@link #MATERIAL} or {@link #PRODUCT}
+     * @param path the artifact path
+     * @param snapshot the snapshot of the file, taken before hashing it
+     * @param hash its hash object
+     *
+     * @throws UncheckedIOException if the journal can't be written
+     */
+    synchronized void append(byte kind, String path, StatSnapshot snapshot, ArtifactHash hash) {
+        if (snapshot.isRacy())
+            return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(kind);
+            out.writeUTF(path);
+            snapshot.write(out);
+            out.writeInt(hash.size());
+            for (Map.Entry<String, String> digest : hash.entrySet()) {
+                out.writeUTF(digest.getKey());
+                out.writeUTF(digest.getValue());
+            }
+            byte[] entry = bytes.toByteArray();
+            if (entry.length > MAX_ENTRY_LENGTH)
+                return;
+
+            CRC32 crc = new CRC32();
+            crc.update(entry, 0, entry.length);
+            DataOutputStream framed = new DataOutputStream(this.pending);
+            framed.writeInt(entry.length);
+            framed.write(entry);
+            framed.writeInt((int)crc.getValue());
+
+            if (++this.pendingEntries >= this.syncEntries
+                    || System.currentTimeMillis() - this.lastSync >= this.syncMillis)
+                sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the pending entries to the journal, and syncs it to disk
+     *
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void sync() throws IOException {
+        if (this.pendingEntries > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(this.pending.toByteArray());
+            while (buffer.hasRemaining())
+                this.channel.write(buffer);
+            this.pending.reset();
+            this.pendingEntries = 0;
+            this.channel.force(false);
+        }
+        this.lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the number of entries replayed when the journal was opened
+     */
+    public synchronized int getReplayedCount() {
+        return this.materials.size() + this.products.size();
+    }
+
+    /**
+     * @return the number of artifacts whose hash was taken from a replayed
+     * entry instead of hashing the file
+     */
+    public synchronized int getResumedCount() {
+        return this.resumed;
+    }
+
+    /**
+     * Syncs the pending entries and closes the journal, which is kept: it's
+     * up to the caller to delete it once the link is written.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
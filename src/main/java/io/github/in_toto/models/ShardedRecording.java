@@ -0,0 +1,207 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CanonicalJSONWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Merges the partial artifact files written by the {@link ArtifactShard}s of
+ * a sharded recording into a single link.
+ *
+ * The partials are merged in a single streaming pass (a k-way merge of the
+ * sorted partials), so that neither the partials nor the resulting link have
+ * to fit in memory. The merge checks that the partials form a complete and
+ * consistent recording: all the shards of the same split must be present
+ * exactly once, each artifact must be recorded by the shard that owns it, and
+ * no artifact may be recorded twice, which rules out conflicting entries.
+ *
+ * The shard and merge commands of {@link io.github.in_toto.lib.App} record
+ * a shard and merge the partials from the command line.
+ */
+public class ShardedRecording
+{
+    private ShardedRecording() {
+    }
+
+    /**
+     * Merges partial artifact files into a link. If the merge fails, the
+     * link may hold some of the artifacts and should be discarded.
+     *
+     * @param partials the partial files written by every shard
+     * @param link the link the artifacts are recorded into
+     *
+     * @throws java.io.IOException if a partial can't be read
+     * @throws IllegalArgumentException if the partials are malformed,
+     * incomplete, or hold duplicate or conflicting artifacts
+     */
+    public static void merge(List<Path> partials, SpooledLink link) throws IOException {
+        if (partials.isEmpty())
+            throw new IllegalArgumentException("No partials to merge");
+
+        List<Partial> readers = new ArrayList<>();
+        try {
+            for (Path partial : partials)
+                readers.add(new Partial(partial));
+
+            int shardCount = readers.get(0).shardCount;
+            Partial[] shards = new Partial[shardCount];
+            for (Partial reader : readers) {
+                if (reader.shardCount != shardCount)
+                    throw new IllegalArgumentException(reader.file
+                            + " belongs to a split in " + reader.shardCount
+                            + " shards, expected " + shardCount);
+                if (shards[reader.shard] != null)
+                    throw new IllegalArgumentException("Shard " + reader.shard
+                            + " recorded twice: " + shards[reader.shard].file
+                            + ", " + reader.file);
+                shards[reader.shard] = reader;
+            }
+            for (int i = 0; i < shardCount; i++) {
+                if (shards[i] == null)
+                    throw new IllegalArgumentException("Missing shard " + i
+                            + " of " + shardCount);
+            }
+
+            mergeSection(readers, "materials", link::putMaterial);
+            mergeSection(readers, "products", link::putProduct);
+        } finally {
+            for (Partial reader : readers)
+                reader.close();
+        }
+    }
+
+    private static void mergeSection(List<Partial> readers, String section,
+            BiConsumer<String, ArtifactHash> sink) throws IOException {
+        PriorityQueue<Partial> heads = new PriorityQueue<>(readers.size(),
+                (a, b) -> CanonicalJSONWriter.compareKeys(a.path, b.path));
+        for (Partial reader : readers) {
+            reader.beginSection(section);
+            if (reader.advance())
+                heads.add(reader);
+        }
+
+        // as every artifact is owned by a single shard, and each partial is
+        // checked to be sorted, the merged stream holds no duplicates
+        while (!heads.isEmpty()) {
+            Partial head = heads.poll();
+            sink.accept(head.path, head.hash);
+            if (head.advance())
+                heads.add(head);
+        }
+
+        for (Partial reader : readers)
+            reader.endSection();
+    }
+
+    /**
+     * Streaming reader over a partial file.
+     */
+    private static class Partial
+        implements Closeable
+    {
+        final Path file;
+        final JsonReader reader;
+        int shard = -1;
+        int shardCount = -1;
+
+        // current entry of the current section
+        String path;
+        ArtifactHash hash;
+
+        Partial(Path file) throws IOException {
+            this.file = file;
+            this.reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+            try {
+                this.reader.beginObject();
+                for (int i = 0; i < 2; i++) {
+                    String name = this.reader.nextName();
+                    if (name.equals("shard"))
+                        this.shard = this.reader.nextInt();
+                    else if (name.equals("shards"))
+                        this.shardCount = this.reader.nextInt();
+                }
+            } catch (IOException | IllegalStateException | NumberFormatException e) {
+                close();
+                throw new IllegalArgumentException("Malformed partial " + file, e);
+            }
+            if (this.shardCount < 1 || this.shard < 0 || this.shard >= this.shardCount) {
+                close();
+                throw new IllegalArgumentException("Invalid shard in " + file);
+            }
+        }
+
+        void beginSection(String section) throws IOException {
+            try {
+                if (!this.reader.nextName().equals(section))
+                    throw new IllegalArgumentException("Expected " + section + " in " + this.file);
+                this.reader.beginObject();
+            } catch (IllegalStateException e) {
+                throw new IllegalArgumentException("Malformed partial " + this.file, e);
+            }
+            this.path = null;
+        }
+
+        /**
+         * Reads the next entry of the current section, checking that it is
+         * sorted and owned by this shard.
+         *
+         * @return false at the end of the section
+         */
+        boolean advance() throws IOException {
+            try {
+                if (!this.reader.hasNext())
+                    return false;
+
+                String next = this.reader.nextName();
+                if (this.path != null && CanonicalJSONWriter.compareKeys(this.path, next) >= 0)
+                    throw new IllegalArgumentException("Unsorted or duplicate entry "
+                            + next + " in " + this.file);
+                if (ArtifactShard.shardOf(next, this.shardCount) != this.shard)
+                    throw new IllegalArgumentException(next + " doesn't belong to shard "
+                            + this.shard + " in " + this.file);
+
+                ArtifactHash hash = new ArtifactHash();
+                this.reader.beginObject();
+                while (this.reader.hasNext()) {
+                    String algorithm = this.reader.nextName();
+                    if (this.reader.peek() != JsonToken.STRING)
+                        throw new IllegalArgumentException("Malformed hash for "
+                                + next + " in " + this.file);
+                    hash.put(algorithm, this.reader.nextString());
+                }
+                this.reader.endObject();
+
+                this.path = next;
+                this.hash = hash;
+                return true;
+            } catch (IllegalStateException e) {
+                throw new IllegalArgumentException("Malformed partial " + this.file, e);
+            }
+        }
+
+        void endSection() throws IOException {
+            this.reader.endObject();
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.reader.close();
+            } catch (IOException e) {
+                // nothing left to read anyway
+            }
+        }
+    }
+}
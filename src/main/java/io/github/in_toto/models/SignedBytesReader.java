@@ -0,0 +1,243 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.lib.CanonicalJSONWriter;
+import io.github.in_toto.lib.CanonicalJSONWriter.TokenSink;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * A JsonReader that canonicalizes the signed field of a metablock while Gson
+ * parses it, so that the signed bytes are captured in the same pass (see
+ * {@link Metablock#read}).
+ *
+ * Each token Gson consumes within the signed field is passed on to a
+ * {@link TokenSink} as read: numbers keep their literal, whatever type Gson
+ * converts them to, and fields that Gson skips are still encoded.
+ */
+class SignedBytesReader extends JsonReader
+{
+    private int depth;
+    private StringWriter canonical;
+    private TokenSink sink;
+    private byte[] signedBytes;
+
+    SignedBytesReader(Reader in) {
+        super(in);
+    }
+
+    /**
+     * @return the canonical encoding of the signed field, or null if there
+     * was none or if it can't be canonicalized (e.g., it holds a number with
+     * a fraction)
+     */
+    byte[] getSignedBytes() {
+        return this.signedBytes;
+    }
+
+    /**
+     * A token passed on to the sink
+     */
+    private interface Token {
+        void write(TokenSink sink) throws IOException;
+    }
+
+    private void capture(Token token) throws IOException {
+        if (this.sink == null)
+            return;
+        try {
+            token.write(this.sink);
+        } catch (JsonParseException | IllegalStateException e) {
+            // not canonicalizable as read, the payload is encoded instead
+            this.sink = null;
+            return;
+        }
+        if (this.sink.isComplete()) {
+            this.sink = null;
+            this.signedBytes = this.canonical.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Captures a string, which may be a name Gson read as a value (e.g., the
+     * keys of a map)
+     */
+    private void captureString(JsonToken token, String value) throws IOException {
+        if (this.sink != null && this.sink.expectsName())
+            capture(sink -> sink.name(value));
+        else if (token == JsonToken.NUMBER)
+            capture(sink -> sink.number(value));
+        else
+            capture(sink -> sink.value(value));
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        super.beginObject();
+        this.depth++;
+        capture(TokenSink::beginObject);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        super.endObject();
+        this.depth--;
+        capture(TokenSink::endObject);
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        super.beginArray();
+        this.depth++;
+        capture(TokenSink::beginArray);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        super.endArray();
+        this.depth--;
+        capture(TokenSink::endArray);
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        String name = super.nextName();
+        if (this.sink != null) {
+            capture(sink -> sink.name(name));
+        } else if (this.depth == 1 && name.equals("signed")) {
+            // as parsed, the last signed field counts
+            this.signedBytes = null;
+            this.canonical = new StringWriter();
+            this.sink = new CanonicalJSONWriter(this.canonical).tokens();
+        }
+        return name;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        String value = super.nextString();
+        captureString(token, value);
+        return value;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        boolean value = super.nextBoolean();
+        capture(sink -> sink.value(value));
+        return value;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        super.nextNull();
+        capture(TokenSink::nullValue);
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        if (this.sink == null)
+            return super.nextDouble();
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+            return super.nextDouble();
+        String literal = super.nextString();
+        double value = Double.parseDouble(literal);
+        captureString(token, literal);
+        return value;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        if (this.sink == null)
+            return super.nextLong();
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+            return super.nextLong();
+        String literal = super.nextString();
+        long value;
+        try {
+            value = Long.parseLong(literal);
+        } catch (NumberFormatException e) {
+            double asDouble = Double.parseDouble(literal);
+            value = (long)asDouble;
+            if (value != asDouble)
+                throw new NumberFormatException("Expected a long but was " + literal);
+        }
+        captureString(token, literal);
+        return value;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        if (this.sink == null)
+            return super.nextInt();
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+            return super.nextInt();
+        String literal = super.nextString();
+        int value;
+        try {
+            value = Integer.parseInt(literal);
+        } catch (NumberFormatException e) {
+            double asDouble = Double.parseDouble(literal);
+            value = (int)asDouble;
+            if (value != asDouble)
+                throw new NumberFormatException("Expected an int but was " + literal);
+        }
+        captureString(token, literal);
+        return value;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        if (this.sink == null) {
+            super.skipValue();
+            return;
+        }
+        // read through, as skipped fields are part of the payload
+        int open = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    open++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    open--;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    open++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    open--;
+                    break;
+                case NAME:
+                    nextName();
+                    break;
+                case STRING:
+                case NUMBER:
+                    nextString();
+                    break;
+                case BOOLEAN:
+                    nextBoolean();
+                    break;
+                case NULL:
+                    nextNull();
+                    break;
+                default:
+                    super.skipValue();
+                    return;
+            }
+        } while (open > 0);
+    }
+}
@@ -0,0 +1,276 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CanonicalJSONWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A Link whose materials and products are spooled to disk.
+ *
+ * Recorded artifacts are accumulated in {@link ArtifactSpool}s, so that
+ * memory usage stays bounded regardless of how many files a step records.
+ * The sorted artifact streams are fed directly into the canonical encoder
+ * when signing and into the json writer when dumping, so the full document
+ * is never held in memory.
+ *
+ * The metadata written by {@link #dump} is a regular link that can be read
+ * back using {@link Link#read}. A SpooledLink must be closed to remove its
+ * spool files.
+ */
+public class SpooledLink
+    extends Metablock<LinkSignable>
+    implements Closeable
+{
+    private final transient ArtifactSpool materials;
+    private final transient ArtifactSpool products;
+
+    /**
+     * The last exclude matcher used, as compiling it for each of millions
+     * of files is costly.
+     */
+    private transient String excludePattern;
+    private transient PathMatcher excludeMatcher;
+
+    /**
+     * @param name The name of this step
+     * @param spoolDirectory the directory in which artifacts are spooled
+     * @param maxEntriesInMemory how many artifacts of each kind to keep in
+     * memory before spilling them to disk
+     */
+    public SpooledLink(String name, Path spoolDirectory, int maxEntriesInMemory) {
+        super(new LinkSignable(null, null, name, null, null, null), null);
+        this.materials = new ArtifactSpool(spoolDirectory, maxEntriesInMemory);
+        this.products = new ArtifactSpool(spoolDirectory, maxEntriesInMemory);
+    }
+
+    public String getName() {
+        return this.signed.name;
+    }
+
+    public void setEnvironment(HashMap<String, Object> environment) {
+        this.signed.environment = environment;
+    }
+
+    public void setCommand(ArrayList<String> command) {
+        this.signed.command = command;
+    }
+
+    public void setByproducts(HashMap<String, Object> byproducts) {
+        this.signed.byproducts = byproducts;
+    }
+
+    /**
+     * @return the spooled materials, iterable in sorted order
+     */
+    public ArtifactSpool getMaterials() {
+        return this.materials;
+    }
+
+    /**
+     * @return the spooled products, iterable in sorted order
+     */
+    public ArtifactSpool getProducts() {
+        return this.products;
+    }
+
+    /**
+     * Hashes a file and records it as material, unless it matches the
+     * exclude pattern
+     *
+     * @param filePath the path of the material to track
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void addMaterial(String filePath, String pattern) {
+        if (!isExcluded(filePath, pattern))
+            putMaterial(filePath, new Artifact(filePath).getArtifactHashes());
+    }
+
+    public void addMaterial(String filePath) {
+        addMaterial(filePath, null);
+    }
+
+    /**
+     * Hashes a file and records it as product, unless it matches the
+     * exclude pattern
+     *
+     * @param filePath the path of the product to track
+     * @param pattern the exclude pattern, or null for the default one
+     */
+    public void addProduct(String filePath, String pattern) {
+        if (!isExcluded(filePath, pattern))
+            putProduct(filePath, new Artifact(filePath).getArtifactHashes());
+    }
+
+    public void addProduct(String filePath) {
+        addProduct(filePath, null);
+    }
+
+    private boolean isExcluded(String filePath, String pattern) {
+        if (this.excludeMatcher == null || !Objects.equals(pattern, this.excludePattern)) {
+            this.excludeMatcher = Link.getExcludeMatcher(pattern);
+            this.excludePattern = pattern;
+        }
+        return this.excludeMatcher.matches(Paths.get(filePath));
+    }
+
+    /**
+     * Records an already hashed material
+     *
+     * @param uri the artifact URI
+     * @param hash the hash object of the artifact
+     */
+    public void putMaterial(String uri, ArtifactHash hash) {
+        this.materials.put(uri, hash);
+    }
+
+    /**
+     * Records an already hashed product
+     *
+     * @param uri the artifact URI
+     * @param hash the hash object of the artifact
+     */
+    public void putProduct(String uri, ArtifactHash hash) {
+        this.products.put(uri, hash);
+    }
+
+    /**
+     * Streams the canonical encoding of the signed payload. The output is
+     * identical to the one of a {@link Link} holding the same artifacts.
+     */
+    @Override
+    void writeCanonicalJSON(Writer writer) throws IOException {
+        Gson gson = getCanonicalGson();
+        CanonicalJSONWriter json = new CanonicalJSONWriter(writer);
+
+        // members in canonical order
+        json.beginObject();
+        json.name("_type").string(this.signed._type).separator();
+        json.name("byproducts").write(gson.toJsonTree(this.signed.byproducts)).separator();
+        json.name("command").write(gson.toJsonTree(this.signed.command)).separator();
+        json.name("environment").write(gson.toJsonTree(this.signed.environment)).separator();
+        json.name("materials");
+        writeCanonicalArtifacts(json, this.materials);
+        json.separator();
+        json.name("name").write(gson.toJsonTree(this.signed.name)).separator();
+        json.name("products");
+        writeCanonicalArtifacts(json, this.products);
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeCanonicalArtifacts(CanonicalJSONWriter json,
+            ArtifactSpool spool) throws IOException {
+        json.beginObject();
+        boolean first = true;
+        for (Map.Entry<String, ArtifactHash> entry : spool) {
+            if (!first)
+                json.separator();
+            json.name(entry.getKey());
+
+            json.beginObject();
+            boolean firstHash = true;
+            TreeMap<String, String> hashes =
+                new TreeMap<>(CanonicalJSONWriter.KEY_ORDER);
+            hashes.putAll(entry.getValue());
+            for (Map.Entry<String, String> hash : hashes.entrySet()) {
+                if (!firstHash)
+                    json.separator();
+                json.name(hash.getKey()).string(hash.getValue());
+                firstHash = false;
+            }
+            json.endObject();
+            first = false;
+        }
+        json.endObject();
+    }
+
+    @Override
+    public String getCanonicalJSON(boolean serializeNulls) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeCanonicalJSON(writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e.toString());
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Streams the metadata as json to a writer, using the same layout as
+     * {@link Link#dump}.
+     */
+    @Override
+    public void dump(Writer writer) throws IOException {
+        Gson gson = getDumpGson();
+        JsonWriter json = gson.newJsonWriter(writer);
+
+        json.beginObject();
+        json.name("signed");
+        json.beginObject();
+        json.name("materials");
+        writeArtifacts(json, this.materials);
+        json.name("products");
+        writeArtifacts(json, this.products);
+        json.name("byproducts");
+        gson.toJson(this.signed.byproducts, HashMap.class, json);
+        json.name("environment");
+        gson.toJson(this.signed.environment, HashMap.class, json);
+        json.name("command");
+        gson.toJson(this.signed.command, ArrayList.class, json);
+        json.name("name").value(this.signed.name);
+        json.name("_type").value(this.signed._type);
+        json.endObject();
+        json.name("signatures");
+        gson.toJson(this.signatures, ArrayList.class, json);
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeArtifacts(JsonWriter json, ArtifactSpool spool)
+        throws IOException {
+        json.beginObject();
+        for (Map.Entry<String, ArtifactHash> entry : spool) {
+            json.name(entry.getKey());
+            json.beginObject();
+            for (Map.Entry<String, String> hash : entry.getValue().entrySet())
+                json.name(hash.getKey()).value(hash.getValue());
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    @Override
+    public String dumpString() {
+        StringWriter writer = new StringWriter();
+        try {
+            dump(writer);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't serialize object: " + e.toString());
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Deletes the spool files of this link.
+     */
+    @Override
+    public void close() {
+        this.materials.close();
+        this.products.close();
+    }
+}
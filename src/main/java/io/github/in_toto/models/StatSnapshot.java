@@ -0,0 +1,151 @@
+package io.github.in_toto.models;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The metadata of a file when it was hashed, used to tell whether it may
+ * have changed since without reading it again.
+ *
+ * A file is considered unchanged if its size, modification time, change
+ * time and inode (or the file key, where there are no inodes) are all the
+ * same. The change time is updated by the kernel on every write and can't
+ * be set by tools restoring the modification time (e.g., {@code touch -r}),
+ * and the inode changes when a file is replaced by renaming another one
+ * over it.
+ *
+ * As in git's "racy clean" check, a file modified or changed shortly before
+ * it was hashed may still be modified within the same timestamp tick without
+ * any visible change, so a snapshot of such a file is never considered
+ * unchanged.
+ */
+final class StatSnapshot
+{
+    /**
+     * Files modified or changed less than this before they were hashed are
+     * racy: this covers the timestamp granularity of common file systems
+     * (2s on FAT), and a small skew between the clocks of a network file
+     * system and of this host.
+     */
+    static final long RACY_WINDOW_MILLIS = 3000;
+
+    /**
+     * The time snapshots are taken at, which tests set to tell racy files
+     * apart without waiting for the racy window to pass.
+     */
+    static volatile LongSupplier clock = System::currentTimeMillis;
+
+    private final long size;
+    private final FileTime modified;
+    private final FileTime changed;
+    private final Object inode;
+    private final boolean racy;
+
+    private StatSnapshot(long size, FileTime modified, FileTime changed, Object inode,
+            long takenMillis) {
+        this.size = size;
+        this.modified = modified;
+        this.changed = changed;
+        this.inode = inode;
+        // the change time too, as a modification time set into the past
+        // doesn't make a write within the same tick any less invisible
+        long latest = modified.toMillis();
+        if (changed != null)
+            latest = Math.max(latest, changed.toMillis());
+        this.racy = latest > takenMillis - RACY_WINDOW_MILLIS;
+    }
+
+    /**
+     * Takes a snapshot of a file
+     *
+     * @param path the file
+     *
+     * @return the snapshot, or null if the file can't be read
+     */
+    static StatSnapshot take(Path path) {
+        long now = clock.getAsLong();
+        try {
+            try {
+                Map<String, Object> unix = Files.readAttributes(path,
+                        "unix:size,lastModifiedTime,ctime,ino,dev");
+                return new StatSnapshot((Long)unix.get("size"),
+                        (FileTime)unix.get("lastModifiedTime"), (FileTime)unix.get("ctime"),
+                        unix.get("dev") + ":" + unix.get("ino"), now);
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                // not a unix file system, e.g., on windows
+                BasicFileAttributes basic = Files.readAttributes(path,
+                        BasicFileAttributes.class);
+                return new StatSnapshot(basic.size(), basic.lastModifiedTime(), null,
+                        basic.fileKey(), now);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the file was modified or changed shortly before the
+     * snapshot was taken, so that the snapshot can't tell later changes apart
+     */
+    boolean isRacy() {
+        return this.racy;
+    }
+
+    /**
+     * Writes this snapshot, e.g., to a {@link RecordingJournal}. Only
+     * snapshots that aren't racy are written, and the file key of file
+     * systems without unix attributes isn't: it is opaque, and read back as
+     * null.
+     */
+    void write(DataOutput out) throws IOException {
+        if (this.racy)
+            throw new IllegalStateException("Racy snapshots can't be written");
+        out.writeLong(this.size);
+        out.writeLong(this.modified.to(TimeUnit.NANOSECONDS));
+        out.writeLong(this.changed != null ? this.changed.to(TimeUnit.NANOSECONDS) : Long.MIN_VALUE);
+        out.writeUTF(this.inode instanceof String ? (String)this.inode : "");
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write}
+     */
+    static StatSnapshot read(DataInput in) throws IOException {
+        long size = in.readLong();
+        FileTime modified = FileTime.from(in.readLong(), TimeUnit.NANOSECONDS);
+        long changed = in.readLong();
+        String inode = in.readUTF();
+        return new StatSnapshot(size, modified,
+                changed != Long.MIN_VALUE ? FileTime.from(changed, TimeUnit.NANOSECONDS) : null,
+                inode.isEmpty() ? null : inode, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param current a later snapshot of the same file
+     *
+     * @return true if the file is known not to have changed between the two
+     * snapshots
+     */
+    boolean isUnchanged(StatSnapshot current) {
+        return !this.racy && sameAs(current);
+    }
+
+    /**
+     * @return true if this snapshot and another one, e.g., taken before and
+     * after hashing a file, are the same
+     */
+    boolean sameAs(StatSnapshot other) {
+        return other != null && this.size == other.size
+            && this.modified.equals(other.modified)
+            && Objects.equals(this.changed, other.changed)
+            && Objects.equals(this.inode, other.inode);
+    }
+}
@@ -0,0 +1,163 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.keys.Key;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A step of a {@link Layout}: who is authorized to carry it out, how many of
+ * them must agree, and which artifacts it may consume and produce.
+ *
+ * The expected materials and products are artifact rules, e.g.,
+ * {@code MATCH *.c WITH PRODUCTS FROM checkout} or {@code DISALLOW *}, as
+ * in the in-toto specification (see {@link ArtifactRules}).
+ *
+ * <pre>
+ *  Step build = new Step("build")
+ *      .addPubkey(builderKey)
+ *      .addExpectedMaterial("MATCH", "*", "WITH", "PRODUCTS", "FROM", "checkout")
+ *      .addExpectedMaterial("DISALLOW", "*")
+ *      .addExpectedProduct("CREATE", "app");
+ * </pre>
+ */
+public class Step
+    extends Signable
+{
+    private String name;
+    private ArrayList<ArrayList<String>> expected_materials;
+    private ArrayList<ArrayList<String>> expected_products;
+    private ArrayList<String> pubkeys;
+    private ArrayList<String> expected_command;
+    private int threshold;
+
+    /**
+     * @param name the name of the step, which is also the name of its links
+     */
+    public Step(String name) {
+        super();
+        this.name = name;
+        this.expected_materials = new ArrayList<>();
+        this.expected_products = new ArrayList<>();
+        this.pubkeys = new ArrayList<>();
+        this.expected_command = new ArrayList<>();
+        this.threshold = 1;
+    }
+
+    @Override
+    public String getType() {
+        return "step";
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Adds a rule the materials of the step must satisfy
+     *
+     * @param rule the rule, e.g., {@code "ALLOW", "*.c"}
+     *
+     * @return this step
+     *
+     * @throws IllegalArgumentException if the rule is malformed
+     */
+    public Step addExpectedMaterial(String... rule) {
+        ArtifactRules.check(Arrays.asList(rule));
+        this.expected_materials.add(new ArrayList<>(Arrays.asList(rule)));
+        return this;
+    }
+
+    /**
+     * Adds a rule the products of the step must satisfy
+     *
+     * @param rule the rule, e.g., {@code "CREATE", "app"}
+     *
+     * @return this step
+     *
+     * @throws IllegalArgumentException if the rule is malformed
+     */
+    public Step addExpectedProduct(String... rule) {
+        ArtifactRules.check(Arrays.asList(rule));
+        this.expected_products.add(new ArrayList<>(Arrays.asList(rule)));
+        return this;
+    }
+
+    public List<List<String>> getExpectedMaterials() {
+        if (this.expected_materials == null)
+            return Collections.emptyList();
+        return Collections.<List<String>>unmodifiableList(this.expected_materials);
+    }
+
+    public List<List<String>> getExpectedProducts() {
+        if (this.expected_products == null)
+            return Collections.emptyList();
+        return Collections.<List<String>>unmodifiableList(this.expected_products);
+    }
+
+    /**
+     * Authorizes a functionary to carry out this step. The key must also be
+     * added to the layout, see {@link Layout#addKey}.
+     *
+     * @param key the key of the functionary
+     *
+     * @return this step
+     *
+     * @throws IllegalArgumentException if the functionary is already
+     * authorized, as a link counts once towards the threshold
+     */
+    public Step addPubkey(Key key) {
+        String keyid = key.computeKeyId();
+        if (this.pubkeys.contains(keyid))
+            throw new IllegalArgumentException("Duplicate functionary key: " + keyid);
+        this.pubkeys.add(keyid);
+        return this;
+    }
+
+    /**
+     * @return the keyids of the functionaries authorized to carry out this
+     * step
+     */
+    public List<String> getPubkeys() {
+        if (this.pubkeys == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(this.pubkeys);
+    }
+
+    /**
+     * @param command the command the step is expected to run; a different
+     * command doesn't fail verification, as in the reference implementation
+     *
+     * @return this step
+     */
+    public Step setExpectedCommand(List<String> command) {
+        this.expected_command = new ArrayList<>(command);
+        return this;
+    }
+
+    public List<String> getExpectedCommand() {
+        if (this.expected_command == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(this.expected_command);
+    }
+
+    /**
+     * @param threshold the number of authorized functionaries that must
+     * have carried out the step, with the same artifacts (default 1)
+     *
+     * @return this step
+     */
+    public Step setThreshold(int threshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold must be positive");
+        this.threshold = threshold;
+        return this;
+    }
+
+    public int getThreshold() {
+        // a layout read without a threshold requires one link
+        return Math.max(1, this.threshold);
+    }
+}
@@ -0,0 +1,260 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.lib.CanonicalJSONWriter;
+import io.github.in_toto.lib.Platform;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the files in a workspace still match the artifacts recorded
+ * by a link, e.g., {@code link.getProducts()} before promoting them.
+ *
+ * Files are checked in parallel. Each file is first stat'ed, which catches
+ * missing files and, if the expected sizes are known (see
+ * {@link #setExpectedSizes}), files of the wrong size without reading them.
+ * The remaining files are rehashed with every algorithm of their recorded
+ * hash object.
+ *
+ * In {@link Mode#FAIL_FAST} mode, the check stops at the first discrepancy,
+ * while {@link Mode#FULL_REPORT} mode checks every artifact and reports all
+ * of them.
+ */
+public class WorkspaceVerifier
+{
+    public enum Mode {
+        FAIL_FAST,
+        FULL_REPORT
+    }
+
+    /**
+     * A file that doesn't match its recorded artifact.
+     */
+    public static class Discrepancy {
+        public enum Kind {
+            /** the file doesn't exist or isn't a regular file */
+            MISSING,
+            /** the file doesn't have the expected size */
+            SIZE,
+            /** the file doesn't have the recorded hash */
+            HASH,
+            /** the file couldn't be read or hashed */
+            ERROR
+        }
+
+        private final String path;
+        private final Kind kind;
+        private final String detail;
+
+        Discrepancy(String path, Kind kind, String detail) {
+            this.path = path;
+            this.kind = kind;
+            this.detail = detail;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public Kind getKind() {
+            return this.kind;
+        }
+
+        /**
+         * @return a human readable description of the discrepancy
+         */
+        public String getDetail() {
+            return this.detail;
+        }
+
+        @Override
+        public String toString() {
+            return this.kind + " " + this.path + ": " + this.detail;
+        }
+    }
+
+    /**
+     * The outcome of a workspace check.
+     */
+    public static class Report {
+        private final List<Discrepancy> discrepancies;
+        private final int checked;
+        private final boolean complete;
+
+        Report(List<Discrepancy> discrepancies, int checked, boolean complete) {
+            this.discrepancies = discrepancies;
+            this.checked = checked;
+            this.complete = complete;
+        }
+
+        /**
+         * @return true if every checked file matched its artifact
+         */
+        public boolean isClean() {
+            return this.discrepancies.isEmpty();
+        }
+
+        /**
+         * @return the discrepancies found, sorted by path
+         */
+        public List<Discrepancy> getDiscrepancies() {
+            return this.discrepancies;
+        }
+
+        /**
+         * @return the number of artifacts that were checked
+         */
+        public int getCheckedCount() {
+            return this.checked;
+        }
+
+        /**
+         * @return false if the check stopped early, in fail-fast mode
+         */
+        public boolean isComplete() {
+            return this.complete;
+        }
+    }
+
+    private final Path baseDirectory;
+    private final int threads;
+    private Map<String, Long> expectedSizes = Collections.emptyMap();
+
+    /**
+     * @param baseDirectory the directory the artifact paths are relative to
+     * @param threads the number of files checked concurrently
+     */
+    public WorkspaceVerifier(Path baseDirectory, int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive");
+        this.baseDirectory = baseDirectory;
+        this.threads = threads;
+    }
+
+    /**
+     * @param baseDirectory the directory the artifact paths are relative to
+     */
+    public WorkspaceVerifier(Path baseDirectory) {
+        this(baseDirectory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Sets the expected file sizes, when known from another source (e.g.,
+     * an artifact store), so that files of the wrong size are reported
+     * without being hashed. In-toto hash objects don't record sizes.
+     *
+     * @param expectedSizes sizes in bytes keyed by artifact URI
+     *
+     * @return this verifier
+     */
+    public WorkspaceVerifier setExpectedSizes(Map<String, Long> expectedSizes) {
+        this.expectedSizes = expectedSizes == null
+            ? Collections.<String, Long>emptyMap() : expectedSizes;
+        return this;
+    }
+
+    /**
+     * Checks the workspace against recorded artifacts
+     *
+     * @param artifacts the recorded artifacts, e.g., the products of a link
+     * @param mode whether to stop at the first discrepancy
+     *
+     * @return the report of the check
+     */
+    public Report verify(Map<String, ArtifactHash> artifacts, Mode mode) {
+        final List<Map.Entry<String, ArtifactHash>> entries =
+            new ArrayList<>(artifacts.entrySet());
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger checked = new AtomicInteger();
+        final AtomicBoolean stop = new AtomicBoolean();
+        final ConcurrentLinkedQueue<Discrepancy> found = new ConcurrentLinkedQueue<>();
+
+        // workers pull the next artifact from a shared cursor, which keeps
+        // memory usage flat for hundreds of thousands of files
+        Runnable worker = () -> {
+            int index;
+            while (!stop.get() && (index = next.getAndIncrement()) < entries.size()) {
+                Map.Entry<String, ArtifactHash> entry = entries.get(index);
+                Discrepancy discrepancy = check(entry.getKey(), entry.getValue());
+                checked.incrementAndGet();
+                if (discrepancy != null) {
+                    found.add(discrepancy);
+                    if (mode == Mode.FAIL_FAST)
+                        stop.set(true);
+                }
+            }
+        };
+
+        int workers = Math.max(1, Math.min(this.threads, entries.size()));
+        ExecutorService executor = Platform.newBlockingExecutor(workers, "in-toto-verify");
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < workers; i++)
+                results.add(executor.submit(worker));
+            for (Future<?> result : results)
+                result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop.set(true);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Couldn't verify workspace: " + e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Discrepancy> discrepancies = new ArrayList<>(found);
+        discrepancies.sort((a, b) -> CanonicalJSONWriter.compareKeys(a.getPath(), b.getPath()));
+        return new Report(Collections.unmodifiableList(discrepancies),
+                checked.get(), checked.get() == entries.size());
+    }
+
+    private Discrepancy check(String uri, ArtifactHash hash) {
+        Path file = this.baseDirectory.resolve(uri);
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return new Discrepancy(uri, Discrepancy.Kind.MISSING, "no such file");
+        } catch (IOException e) {
+            return new Discrepancy(uri, Discrepancy.Kind.ERROR, e.toString());
+        }
+        if (!attributes.isRegularFile())
+            return new Discrepancy(uri, Discrepancy.Kind.MISSING, "not a regular file");
+
+        Long size = this.expectedSizes.get(uri);
+        if (size != null && size != attributes.size())
+            return new Discrepancy(uri, Discrepancy.Kind.SIZE,
+                    "expected " + size + " bytes, found " + attributes.size());
+
+        if (hash == null || hash.isEmpty())
+            return new Discrepancy(uri, Discrepancy.Kind.ERROR, "no recorded hash");
+        for (Map.Entry<String, String> recorded : hash.entrySet()) {
+            String actual;
+            try {
+                actual = ArtifactHash.digest(file.toString(), recorded.getKey());
+            } catch (RuntimeException e) {
+                return new Discrepancy(uri, Discrepancy.Kind.ERROR, e.getMessage());
+            }
+            if (!actual.equalsIgnoreCase(recorded.getValue()))
+                return new Discrepancy(uri, Discrepancy.Kind.HASH, "expected "
+                        + recorded.getKey() + " " + recorded.getValue()
+                        + ", found " + actual);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.in_toto.lib;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Runtime-specific implementations of the blocking I/O primitives.
+ *
+ * This is the Java 21 implementation, packaged under META-INF/versions/21
+ * of the multi-release jar: blocking tasks run on virtual threads, so that
+ * a task waiting for the file system doesn't hold a platform thread.
+ */
+public final class Platform
+{
+    private Platform() {
+    }
+
+    /**
+     * @return true if the executors of {@link #newBlockingExecutor} run
+     * their tasks on virtual threads, in which case blocked tasks don't hold
+     * a platform thread and many more of them may be run concurrently
+     */
+    public static boolean usesVirtualThreads() {
+        return true;
+    }
+
+    /**
+     * Creates an executor for tasks that mostly block on file I/O, e.g.,
+     * hashing artifacts or loading links. Each task runs on a new virtual
+     * thread, and a semaphore bounds the number of tasks running at once.
+     *
+     * @param threads the maximum number of tasks run concurrently
+     * @param name the prefix of the thread names
+     *
+     * @return the executor, which must be shut down by the caller
+     */
+    public static ExecutorService newBlockingExecutor(int threads, String name) {
+        ThreadFactory factory = Thread.ofVirtual().name(name + "-", 1).factory();
+        return new BoundedExecutor(Executors.newThreadPerTaskExecutor(factory), threads);
+    }
+
+    /**
+     * Runs each task on a thread of its own once it acquires a permit.
+     * Tasks wait for their permit on their own (virtual) thread, so that
+     * submitting never blocks.
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService
+    {
+        private final ExecutorService threads;
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService threads, int permits) {
+            this.threads = threads;
+            this.permits = new Semaphore(permits);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            this.threads.execute(() -> {
+                try {
+                    this.permits.acquire();
+                } catch (InterruptedException e) {
+                    // shut down while waiting, the task never runs
+                    if (task instanceof Future)
+                        ((Future<?>)task).cancel(false);
+                    return;
+                }
+                try {
+                    task.run();
+                } finally {
+                    this.permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            this.threads.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return this.threads.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.threads.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.threads.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+            return this.threads.awaitTermination(timeout, unit);
+        }
+    }
+
+    /**
+     * Reads a file block by block
+     *
+     * @param file the file to read
+     * @param buffer the buffer the blocks are read into
+     * @param block called with the buffer and the length of each block,
+     * which starts at offset 0
+     *
+     * @throws IOException if the file can't be read, or is truncated while
+     * being read
+     */
+    public static void readFile(Path file, byte[] buffer, ObjIntConsumer<byte[]> block)
+        throws IOException {
+        FileReads.readFile(file, buffer, block);
+    }
+}
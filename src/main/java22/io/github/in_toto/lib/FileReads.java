@@ -0,0 +1,61 @@
+package io.github.in_toto.lib;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Runtime-specific implementation of {@link Platform#readFile}.
+ *
+ * This is the Java 22 implementation, packaged under META-INF/versions/22
+ * of the multi-release jar. It reads large files through memory mappings,
+ * which are unmapped as soon as the file is read (unlike the mapped byte
+ * buffers of earlier versions, which stay mapped until collected).
+ */
+final class FileReads
+{
+    /**
+     * Files from this size on are mapped rather than read, smaller ones
+     * aren't worth the cost of setting up a mapping.
+     */
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private FileReads() {
+    }
+
+    static void readFile(Path file, byte[] buffer, ObjIntConsumer<byte[]> block)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                try (Arena arena = Arena.ofConfined()) {
+                    MemorySegment contents = channel.map(FileChannel.MapMode.READ_ONLY,
+                            0, size, arena);
+                    for (long offset = 0; offset < size; offset += buffer.length) {
+                        int length = (int)Math.min(buffer.length, size - offset);
+                        MemorySegment.copy(contents, ValueLayout.JAVA_BYTE, offset,
+                                buffer, 0, length);
+                        // what was copied from past the end of a file
+                        // truncated meanwhile isn't its contents
+                        if (channel.size() < offset + length)
+                            throw new IOException("The file " + file
+                                    + " was truncated while being read");
+                        block.accept(buffer, length);
+                    }
+                }
+                return;
+            }
+
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            int length;
+            while ((length = channel.read(wrapped.clear())) != -1)
+                block.accept(buffer, length);
+        }
+    }
+}
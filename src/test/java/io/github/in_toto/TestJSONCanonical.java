@@ -1,4 +1,10 @@
+import io.github.in_toto.lib.CanonicalJSONWriter;
+import io.github.in_toto.lib.JSONEncoder;
 import io.github.in_toto.models.Link;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import java.io.*;
 import java.nio.file.*;
 import org.bouncycastle.util.encoders.Hex;
@@ -32,4 +38,70 @@ class TestJSONCanonical {
         assertEquals(Hex.toHexString(link.getCanonicalJSON(true).getBytes()),
                 referenceCanonicalLinkHex);
     }
+
+    @Test
+    public void testCanonicalJSONKeyOrder () throws IOException {
+        // Keys are sorted by code point, regardless of insertion order and
+        // of whether the object was already sorted
+        JsonObject sorted = new JsonObject();
+        sorted.addProperty("a", 1);
+        sorted.addProperty("b", 2);
+        sorted.addProperty("\uE000", 3);
+        sorted.addProperty("\uD83D\uDE00", 4);
+
+        JsonObject unsorted = new JsonObject();
+        unsorted.addProperty("\uD83D\uDE00", 4);
+        unsorted.addProperty("b", 2);
+        unsorted.addProperty("\uE000", 3);
+        unsorted.addProperty("a", 1);
+
+        String expected = "{\"a\":1,\"b\":2,\"\uE000\":3,\"\uD83D\uDE00\":4}";
+        assertEquals(expected, JSONEncoder.canonicalize(sorted));
+        assertEquals(expected, JSONEncoder.canonicalize(unsorted));
+
+        // Streamed, objects out of order are reordered wherever they are
+        // nested, along with the objects they hold
+        String json = "{\"z\":[{\"d\":{\"y\":1,\"x\":[{\"b\":2,\"a\":null}]},\"c\":true},"
+            + "{\"a\":{\"c\":\"\\\"\",\"b\":[]}}],\"m\":{\"b\":{},\"a\":1},\"a\":{\"a\":{}}}";
+        StringWriter streamed = new StringWriter();
+        new CanonicalJSONWriter(streamed).write(new JsonReader(new StringReader(json)));
+        assertEquals(JSONEncoder.canonicalize(new JsonParser().parse(json)), streamed.toString());
+        assertEquals("{\"a\":{\"a\":{}},\"m\":{\"a\":1,\"b\":{}},\"z\":[{\"c\":true,"
+            + "\"d\":{\"x\":[{\"a\":null,\"b\":2}],\"y\":1}},{\"a\":{\"b\":[],\"c\":\"\\\"\"}}]}",
+            streamed.toString());
+    }
+
+    @Test
+    public void testCanonicalJSONDeepNesting () throws IOException {
+        // Nesting is tracked on the heap, and objects out of order at every
+        // level are still reordered in linear time
+        int depth = 10000;
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            json.append("{\"b\":1,\"a\":[");
+        for (int i = 0; i < depth; i++)
+            json.append("]}");
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            expected.append("{\"a\":[");
+        for (int i = 0; i < depth; i++)
+            expected.append("],\"b\":1}");
+
+        StringWriter streamed = new StringWriter();
+        new CanonicalJSONWriter(streamed).write(
+                new JsonReader(new StringReader(json.toString())));
+        assertEquals(expected.toString(), streamed.toString());
+
+        JsonArray nested = new JsonArray();
+        JsonArray innermost = nested;
+        for (int i = 1; i < depth; i++) {
+            JsonArray array = new JsonArray();
+            innermost.add(array);
+            innermost = array;
+        }
+        String canonical = JSONEncoder.canonicalize(nested);
+        assertEquals(2 * depth, canonical.length());
+        assertEquals("[[", canonical.substring(0, 2));
+    }
 }
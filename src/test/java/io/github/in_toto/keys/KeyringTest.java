@@ -0,0 +1,174 @@
+package io.github.in_toto.keys;
+
+import io.github.in_toto.models.Link;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * Keyring tests
+ */
+@DisplayName("Keyring tests")
+@EnableRuleMigrationSupport
+class KeyringTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String generatePublicPem() throws IOException, NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair pair = generator.generateKeyPair();
+        StringWriter out = new StringWriter();
+        try (JcaPEMWriter writer = new JcaPEMWriter(out)) {
+            writer.writeObject(pair.getPublic());
+        }
+        return out.toString();
+    }
+
+    private static String generateCertificatePem() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair pair = generator.generateKeyPair();
+        X500Name name = new X500Name("CN=keyring");
+        Date now = new Date();
+        StringWriter out = new StringWriter();
+        try (JcaPEMWriter writer = new JcaPEMWriter(out)) {
+            writer.writeObject(new JcaX509v3CertificateBuilder(name, BigInteger.ONE, now, now,
+                        name, pair.getPublic())
+                    .build(new JcaContentSignerBuilder("SHA256withRSA").build(pair.getPrivate())));
+        }
+        return out.toString();
+    }
+
+    private Path createKeyDirectory() throws Exception {
+        Path directory = temporaryFolder.newFolder("keys").toPath();
+        Files.copy(Paths.get("src/test/resources/somekey.pem"), directory.resolve("somekey.pem"));
+        // a bundle of two public keys
+        try (Writer writer = Files.newBufferedWriter(directory.resolve("bundle.pub"),
+                    StandardCharsets.US_ASCII)) {
+            writer.write(generatePublicPem());
+            writer.write(generatePublicPem());
+        }
+        Files.write(directory.resolve("README"), "not a key".getBytes(StandardCharsets.UTF_8));
+        return directory;
+    }
+
+    @Test
+    @DisplayName("Keys are found by keyid and by keyid prefix")
+    public void testLookup() throws Exception
+    {
+        Path directory = createKeyDirectory();
+        Keyring keyring = Keyring.load(directory);
+        // files are parsed as keys are looked up
+        assertEquals(0, keyring.getLoadedCount());
+        assertEquals(3, keyring.size());
+
+        Key key = RSAKey.read("src/test/resources/somekey.pem");
+        String keyid = key.computeKeyId();
+        assertEquals(keyid, keyring.get(keyid).computeKeyId());
+        assertSame(keyring.get(keyid), keyring.find(keyid.substring(0, 12)));
+        assertNull(keyring.get("0000"));
+        assertNull(keyring.find("xyz"));
+        assertThrows(IllegalArgumentException.class, () -> keyring.find(""));
+
+        Link link = new Link(null, null, "keyring", null, null, null);
+        link.sign(key);
+        Link read = Link.read(link.dumpString());
+        assertTrue(read.verify(keyring.get(read.getSignatures().get(0))));
+    }
+
+    @Test
+    @DisplayName("An index avoids parsing unchanged keys on load")
+    public void testIndex() throws Exception
+    {
+        Path directory = createKeyDirectory();
+        Files.write(directory.resolve("empty.pem"), new byte[0]);
+        Path index = temporaryFolder.getRoot().toPath().resolve("keyring.index");
+
+        Keyring first = Keyring.load(directory, index);
+        assertTrue(Files.exists(index));
+        assertEquals(3, first.getLoadedCount());
+
+        // an up to date index, including the file without keys, isn't
+        // written again
+        FileTime written = FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+        Files.setLastModifiedTime(index, written);
+
+        Keyring second = Keyring.load(directory, index);
+        assertEquals(written, Files.getLastModifiedTime(index));
+        assertEquals(first.getKeyIds(), second.getKeyIds());
+        assertEquals(0, second.getLoadedCount());
+        for (String keyid : second.getKeyIds())
+            assertEquals(keyid, second.get(keyid).computeKeyId());
+        assertEquals(3, second.getLoadedCount());
+
+        // a modified file is parsed again, the others aren't
+        String added = generatePublicPem();
+        Files.write(directory.resolve("added.pub"), added.getBytes(StandardCharsets.US_ASCII));
+        Files.delete(directory.resolve("somekey.pem"));
+        Keyring third = Keyring.load(directory, index);
+        assertEquals(3, third.size());
+        assertEquals(1, third.getLoadedCount());
+        assertEquals(third.getKeyIds(), Keyring.load(directory).getKeyIds());
+    }
+
+    @Test
+    @DisplayName("Files that aren't keys are reported, and don't hide the others")
+    public void testUnsupportedFiles() throws Exception
+    {
+        Path directory = createKeyDirectory();
+        Files.write(directory.resolve("cert.pem"),
+                generateCertificatePem().getBytes(StandardCharsets.US_ASCII));
+        Files.write(directory.resolve("garbled.pem"),
+                "-----BEGIN PUBLIC KEY-----\n!!\n-----END PUBLIC KEY-----\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        String keyid = RSAKey.read("src/test/resources/somekey.pem").computeKeyId();
+
+        // looking up a key that is in a later file parses past the others
+        Keyring keyring = Keyring.load(directory);
+        assertEquals(keyid, keyring.get(keyid).computeKeyId());
+        assertNull(keyring.get("0000"));
+        assertEquals(3, keyring.size());
+        assertEquals(2, keyring.getErrors().size());
+        assertTrue(keyring.getErrors().get("cert.pem").contains("X509CertificateHolder"));
+        assertTrue(keyring.getErrors().containsKey("garbled.pem"));
+
+        // the errors are indexed, and reported by later loads too
+        Path index = temporaryFolder.getRoot().toPath().resolve("keyring.index");
+        Keyring indexed = Keyring.load(directory, index);
+        assertEquals(3, indexed.size());
+        assertEquals(keyring.getErrors(), indexed.getErrors());
+        Keyring reloaded = Keyring.load(directory, index);
+        assertEquals(0, reloaded.getLoadedCount());
+        assertEquals(keyring.getErrors(), reloaded.getErrors());
+        assertEquals(keyid, reloaded.get(keyid).computeKeyId());
+    }
+}
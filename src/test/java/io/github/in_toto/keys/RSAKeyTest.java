@@ -6,6 +6,8 @@ import java.io.File;
 import java.io.IOException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
@@ -100,4 +102,12 @@ class RSAKeyTest
         assertEquals(key2.computeKeyId(), "0b70eafb5d4d7c0f36a21442fcf066903d09cf5050ad0c8443b18f1f232c7dd7");
         keyfile2.delete();
     }
+
+    @Test
+    @DisplayName("Signers are fresh, unless pooled for immediate use")
+    public void testSigners() {
+        Key key = RSAKey.read("src/test/resources/somekey.pem");
+        assertNotSame(key.getSigner(), key.getSigner());
+        assertSame(key.getPooledSigner(), key.getPooledSigner());
+    }
 }
@@ -1 +1,176 @@
 package io.github.in_toto.lib;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.models.Link;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * Command line tests
+ */
+@DisplayName("Command line tests")
+@EnableRuleMigrationSupport
+class AppTest
+{
+    private static final String KEY = "src/test/resources/somekey.pem";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final App app = new App(new PrintStream(out, true),
+            new PrintStream(new ByteArrayOutputStream(), true));
+
+    private String output() {
+        return new String(this.out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Record, sign, dump and verify a link")
+    public void testCommands() throws IOException
+    {
+        File root = temporaryFolder.getRoot();
+        File material = temporaryFolder.newFile("material");
+        Files.write(material.toPath(), "material".getBytes(StandardCharsets.UTF_8));
+        String unsigned = new File(root, "unsigned.link").getPath();
+        String signed = new File(root, "signed.link").getPath();
+
+        assertEquals(App.OK, app.run(new String[] {"record", "step",
+                    "--materials", material.getPath(), "--output", unsigned}));
+        assertEquals(App.FAILED, app.run(new String[] {"verify", unsigned, "--key", KEY}));
+        assertEquals(App.OK, app.run(new String[] {"sign", unsigned, "--key", KEY,
+                    "--output", signed}));
+        assertEquals(App.OK, app.run(new String[] {"verify", signed, "--key", KEY}));
+        assertEquals(App.OK, app.run(new String[] {"verify", signed,
+                    "--keyring", "src/test/resources"}));
+
+        out.reset();
+        assertEquals(App.OK, app.run(new String[] {"dump", signed}));
+        assertTrue(output().contains("\"step\""));
+        assertTrue(output().contains(material.getPath()));
+
+        assertEquals(App.USAGE, app.run(new String[] {"frobnicate"}));
+        assertEquals(App.USAGE, app.run(new String[] {"sign", signed}));
+    }
+
+    @Test
+    @DisplayName("Commands close their connection to the signing agent")
+    public void testAgentConnections() throws Exception
+    {
+        Path connection = temporaryFolder.getRoot().toPath().resolve("agent");
+        String link = temporaryFolder.getRoot().toPath().resolve("agent.link").toString();
+        try (SigningAgent agent = new SigningAgent(
+                    Collections.singletonList(RSAKey.read(KEY)), connection, 1)) {
+            assertEquals(App.OK, app.run(new String[] {"record", "step",
+                        "--agent", connection.toString(), "--output", link}));
+            assertEquals(App.OK, app.run(new String[] {"sign", link,
+                        "--agent", connection.toString()}));
+            assertEquals(2, App.readLink(link).getSignatures().size());
+
+            // the agent sees the connections close asynchronously
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (agent.getClientCount() > 0 && System.nanoTime() < deadline)
+                Thread.sleep(10);
+            assertEquals(0, agent.getClientCount());
+        }
+    }
+
+    @Test
+    @DisplayName("A batch manifest runs its jobs with shared keys")
+    public void testBatch() throws IOException
+    {
+        Path root = temporaryFolder.getRoot().toPath();
+        StringBuilder jobs = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            Path material = root.resolve("material" + i);
+            Files.write(material, ("material " + i).getBytes(StandardCharsets.UTF_8));
+            if (i > 0)
+                jobs.append(",");
+            jobs.append("{\"op\":\"record\",\"name\":\"step").append(i)
+                .append("\",\"key\":\"builder\",\"materials\":[\"")
+                .append(material.toString().replace('\\', '/'))
+                .append("\"],\"output\":\"")
+                .append(root.resolve("step" + i + ".link").toString().replace('\\', '/'))
+                .append("\"}");
+        }
+        jobs.append(",{\"op\":\"verify\",\"link\":\"")
+            .append(root.resolve("missing.link").toString().replace('\\', '/'))
+            .append("\"}");
+
+        Path manifest = root.resolve("manifest.json");
+        String json = "{\"keys\":{\"builder\":{\"path\":\"" + KEY + "\"}},"
+            + "\"keyring\":\"src/test/resources\",\"jobs\":[" + jobs + "]}";
+        Files.write(manifest, json.getBytes(StandardCharsets.UTF_8));
+
+        // the missing link fails the batch, but not the other jobs
+        assertEquals(App.FAILED, app.run(new String[] {"batch", manifest.toString(),
+                    "--threads", "4"}));
+        assertTrue(output().contains("FAILED verify"));
+
+        Key key = RSAKey.read(KEY);
+        for (int i = 0; i < 20; i++) {
+            Link link = App.readLink(root.resolve("step" + i + ".link").toString());
+            assertEquals("step" + i, link.getName());
+            assertEquals(1, link.getMaterials().size());
+            assertTrue(link.verify(key));
+        }
+
+        Files.write(manifest, "{\"jobs\":[{\"op\":\"verify\",\"link\":\"x\"}]}"
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(App.FAILED, app.run(new String[] {"batch", manifest.toString()}));
+
+        // sign jobs need a key, rather than rewriting the link unsigned
+        Path signed = root.resolve("step0.link");
+        byte[] contents = Files.readAllBytes(signed);
+        Files.write(manifest, ("{\"jobs\":[{\"op\":\"sign\",\"link\":\""
+                    + signed.toString().replace('\\', '/') + "\",\"output\":\""
+                    + root.resolve("unsigned.link").toString().replace('\\', '/') + "\"}]}")
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(App.FAILED, app.run(new String[] {"batch", manifest.toString()}));
+        assertTrue(Files.notExists(root.resolve("unsigned.link")));
+        assertArrayEquals(contents, Files.readAllBytes(signed));
+
+        // verify jobs need keys, and keys need a path or an agent
+        Files.write(manifest, "{\"jobs\":[{\"op\":\"verify\",\"link\":\"x\",\"keys\":[]}]}"
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(App.FAILED, app.run(new String[] {"batch", manifest.toString()}));
+        Files.write(manifest, "{\"keys\":{\"k\":{\"path\":{}}},\"jobs\":[]}"
+                .getBytes(StandardCharsets.UTF_8));
+        assertEquals(App.FAILED, app.run(new String[] {"batch", manifest.toString()}));
+    }
+
+    @Test
+    @DisplayName("Only malformed command lines are usage errors")
+    public void testUsageErrors() throws IOException
+    {
+        Path root = temporaryFolder.getRoot().toPath();
+        Path partial = root.resolve("partial");
+        Files.write(partial, "not a partial".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(App.USAGE, app.run(new String[] {"shard", "3", "2", partial.toString()}));
+        assertEquals(App.USAGE, app.run(new String[] {"merge", "step", "link"}));
+        assertEquals(App.USAGE, app.run(new String[] {"verify", "link", "--key", "missing.pem"}));
+        assertEquals(App.FAILED, app.run(new String[] {"merge", "step",
+                    root.resolve("step.link").toString(), partial.toString()}));
+        assertTrue(Files.notExists(root.resolve("step.link")));
+    }
+}
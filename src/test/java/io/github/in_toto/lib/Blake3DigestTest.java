@@ -0,0 +1,88 @@
+package io.github.in_toto.lib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * BLAKE3 tests
+ */
+@DisplayName("BLAKE3 tests")
+@EnableRuleMigrationSupport
+class Blake3DigestTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static String hash(byte[] data, int step) {
+        Blake3Digest digest = new Blake3Digest();
+        for (int i = 0; i < data.length; i += step)
+            digest.update(data, i, Math.min(step, data.length - i));
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return Hex.toHexString(result);
+    }
+
+    @Test
+    @DisplayName("Digests match the reference test vectors")
+    public void testVectors()
+    {
+        // from the BLAKE3 test vectors, the input being i % 251 for each
+        // byte i
+        String[][] vectors = {
+            {"0", "af1349b9f5f9a1a6a0404dea36dcc9499bcb25c9adc112b7cc9a93cae41f3262"},
+            {"1", "2d3adedff11b61f14c886e35afa036736dcd87a74d27b5c1510225d0f592e213"},
+            {"1023", "10108970eeda3eb932baac1428c7a2163b0e924c9a9e25b35bba72b28f70bd11"},
+            {"1024", "42214739f095a406f3fc83deb889744ac00df831c10daa55189b5d121c855af7"},
+            {"1025", "d00278ae47eb27b34faecf67b4fe263f82d5412916c1ffd97c8cb7fb814b8444"},
+            {"2048", "e776b6028c7cd22a4d0ba182a8bf62205d2ef576467e838ed6f2529b85fba24a"},
+            {"2049", "5f4d72f40d7a5f82b15ca2b2e44b1de3c2ef86c426c95c1af0b6879522563030"},
+            {"3072", "b98cb0ff3623be03326b373de6b9095218513e64f1ee2edd2525c7ad1e5cffd2"},
+            {"8192", "aae792484c8efe4f19e2ca7d371d8c467ffb10748d8a5a1ae579948f718a2a63"},
+            {"102400", "bc3e3d41a1146b069abffad3c0d44860cf664390afce4d9661f7902e7943e085"},
+        };
+        for (String[] vector : vectors) {
+            byte[] data = new byte[Integer.parseInt(vector[0])];
+            for (int i = 0; i < data.length; i++)
+                data[i] = (byte)(i % 251);
+            for (int step : new int[] {1, 63, 64, 1000, 1 << 20})
+                assertEquals(vector[1], hash(data, step), vector[0] + " bytes by " + step);
+        }
+    }
+
+    @Test
+    @DisplayName("Large files hashed concurrently have the sequential digest")
+    public void testParallelFile() throws IOException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        Random random = new Random(42);
+        try {
+            int segment = Blake3Digest.SEGMENT_LEN;
+            for (int size : new int[] {100, 2 * segment, 2 * segment + 1, 5 * segment + 1234,
+                        8 * segment}) {
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                File file = temporaryFolder.newFile("file" + size);
+                Files.write(file.toPath(), data);
+
+                assertEquals(hash(data, 8192),
+                        Hex.toHexString(Blake3Digest.digest(file.toPath(), executor)),
+                        size + " bytes");
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
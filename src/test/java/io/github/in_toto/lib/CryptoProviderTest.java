@@ -0,0 +1,154 @@
+package io.github.in_toto.lib;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bouncycastle.crypto.CryptoException;
+import org.bouncycastle.crypto.Digest;
+import org.bouncycastle.crypto.Signer;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests ensuring that the crypto backends are interchangeable
+ */
+class CryptoProviderTest
+{
+    private final CryptoProvider bc = CryptoProvider.forName(CryptoProvider.BOUNCYCASTLE);
+    private final CryptoProvider jca = CryptoProvider.forName(CryptoProvider.JCA);
+    private final Key key = RSAKey.read("src/test/resources/somekey.pem");
+
+    private static String hash(CryptoProvider provider, String algorithm, byte[] data) {
+        Digest digest = provider.getDigest(algorithm);
+        // feed the data in uneven pieces to exercise the update paths
+        int half = data.length / 3;
+        digest.update(data, 0, half);
+        for (int i = half; i < data.length; i++)
+            digest.update(data[i]);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return Hex.toHexString(result);
+    }
+
+    private static byte[] sign(CryptoProvider provider, Key key, byte[] payload)
+        throws IOException, CryptoException {
+        Signer signer = provider.getSigner("rsassa-pss-sha256");
+        signer.init(true, key.getPrivate());
+        signer.update(payload, 0, payload.length);
+        return signer.generateSignature();
+    }
+
+    private static boolean verify(CryptoProvider provider, Key key,
+            byte[] payload, byte[] sig) throws IOException {
+        Signer signer = provider.getSigner("rsassa-pss-sha256");
+        signer.init(false, key.getPublic());
+        signer.update(payload, 0, payload.length);
+        return signer.verifySignature(sig);
+    }
+
+    @Test
+    @DisplayName("Digests are identical across providers")
+    public void testDigestsMatch()
+    {
+        byte[] data = new byte[100003];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte)(i * 31 + 7);
+
+        for (String algorithm : new String[] {"sha256", "sha512", "blake2b", "blake2b-256",
+                    "blake3"}) {
+            assertEquals(hash(bc, algorithm, new byte[0]),
+                    hash(jca, algorithm, new byte[0]));
+            assertEquals(hash(bc, algorithm, data), hash(jca, algorithm, data));
+        }
+
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                hash(jca, "sha256", new byte[0]));
+        assertEquals("ba80a53f981c4d0d6a2797b69f12f6e94c212f14685ac4b74b12bb6fdbffa2d1"
+                + "7d87c5392aab792dc252d5de4533cc9518d38aa8dbf1925ab92386edd4009923",
+                hash(bc, "blake2b", "abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("Signatures verify across providers")
+    public void testSignaturesCrossVerify() throws Exception
+    {
+        byte[] payload = "{\"_type\":\"link\"}".getBytes(StandardCharsets.UTF_8);
+        byte[] tampered = "{\"_type\":\"lInk\"}".getBytes(StandardCharsets.UTF_8);
+
+        byte[] bcSig = sign(bc, key, payload);
+        byte[] jcaSig = sign(jca, key, payload);
+
+        assertTrue(verify(jca, key, payload, bcSig));
+        assertTrue(verify(bc, key, payload, jcaSig));
+        assertTrue(verify(bc, key, payload, bcSig));
+        assertTrue(verify(jca, key, payload, jcaSig));
+
+        assertFalse(verify(jca, key, tampered, bcSig));
+        assertFalse(verify(bc, key, tampered, jcaSig));
+    }
+
+    @Test
+    @DisplayName("Keyids don't depend on the digest provider")
+    public void testKeyIdProviderIndependent()
+    {
+        CryptoProvider previous = CryptoProvider.getDigestProvider();
+        try {
+            // keyids are cached, so use a fresh key for each provider
+            CryptoProvider.setDigestProvider(bc);
+            String bcKeyId = RSAKey.read("src/test/resources/somekey.pem").computeKeyId();
+            CryptoProvider.setDigestProvider(jca);
+            assertEquals(bcKeyId, RSAKey.read("src/test/resources/somekey.pem").computeKeyId());
+        } finally {
+            CryptoProvider.setDigestProvider(previous);
+        }
+    }
+
+    @Test
+    @DisplayName("Pooled instances are reused per thread and reset")
+    public void testPooling() throws Exception
+    {
+        Digest digest = jca.getPooledDigest("sha256");
+        digest.update((byte)1);
+        Digest again = jca.getPooledDigest("sha256");
+        assertSame(digest, again);
+        assertEquals(hash(jca, "sha256", new byte[0]),
+                hash(again, new byte[0]));
+
+        Digest[] other = new Digest[1];
+        Thread thread = new Thread(() -> other[0] = jca.getPooledDigest("sha256"));
+        thread.start();
+        thread.join();
+        assertNotSame(digest, other[0]);
+
+        assertSame(bc.getPooledSigner("rsassa-pss-sha256"),
+                bc.getPooledSigner("rsassa-pss-sha256"));
+    }
+
+    private static String hash(Digest digest, byte[] data) {
+        digest.update(data, 0, data.length);
+        byte[] result = new byte[digest.getDigestSize()];
+        digest.doFinal(result, 0);
+        return Hex.toHexString(result);
+    }
+
+    @Test
+    @DisplayName("Unknown algorithms are rejected")
+    public void testUnsupported()
+    {
+        assertThrows(IllegalArgumentException.class, () -> bc.getDigest("md5"));
+        assertThrows(IllegalArgumentException.class, () -> jca.getDigest("md5"));
+        assertThrows(IllegalArgumentException.class, () -> jca.getSigner("ed25519"));
+        assertThrows(IllegalArgumentException.class, () -> CryptoProvider.forName("foo"));
+    }
+}
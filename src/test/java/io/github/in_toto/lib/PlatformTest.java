@@ -0,0 +1,75 @@
+package io.github.in_toto.lib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * Platform tests, run against the implementation of the JDK building it
+ */
+@DisplayName("Platform tests")
+@EnableRuleMigrationSupport
+class PlatformTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    @DisplayName("Files are read block by block, whatever their size")
+    public void testReadFile() throws IOException
+    {
+        Random random = new Random(42);
+        for (int size : new int[] {0, 100, 3 * 1024 * 1024 + 17}) {
+            byte[] contents = new byte[size];
+            random.nextBytes(contents);
+            File file = temporaryFolder.newFile("file" + size);
+            Files.write(file.toPath(), contents);
+
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            Platform.readFile(file.toPath(), new byte[64 * 1024],
+                    (buffer, length) -> read.write(buffer, 0, length));
+            assertArrayEquals(contents, read.toByteArray());
+        }
+    }
+
+    @Test
+    @DisplayName("Blocking executors bound the number of concurrent tasks")
+    public void testBlockingExecutor() throws Exception
+    {
+        ExecutorService executor = Platform.newBlockingExecutor(3, "test");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                results.add(executor.submit(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                    return null;
+                }));
+            }
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(peak.get() <= 3, "peak of " + peak.get() + " tasks");
+    }
+}
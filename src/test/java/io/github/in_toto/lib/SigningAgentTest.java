@@ -0,0 +1,128 @@
+package io.github.in_toto.lib;
+
+import io.github.in_toto.keys.AgentKey;
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.models.Link;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * SigningAgent tests
+ */
+@DisplayName("SigningAgent tests")
+@EnableRuleMigrationSupport
+class SigningAgentTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Key key = RSAKey.read("src/test/resources/somekey.pem");
+
+    @Test
+    @DisplayName("Links signed through the agent verify with the key")
+    public void testSignThroughAgent() throws Exception
+    {
+        Path connection = temporaryFolder.getRoot().toPath().resolve("agent");
+        AgentKey stale;
+        try (SigningAgent agent = new SigningAgent(Collections.singletonList(key), connection, 2)) {
+            assertEquals(Arrays.asList(key.computeKeyId()), agent.getKeyIds());
+            stale = AgentKey.connect(connection, null);
+
+            // concurrent requests from several clients are queued and batched
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final int client = i;
+                results.add(executor.submit(() -> {
+                    AgentKey agentKey = AgentKey.connect(connection, null);
+                    try {
+                        for (int j = 0; j < 5; j++) {
+                            Link link = new Link(null, null, "step" + client + "-" + j,
+                                    null, null, null);
+                            link.sign(agentKey);
+                            if (!Link.read(link.dumpString()).verify(key))
+                                return false;
+                        }
+                        return agentKey.computeKeyId().equals(key.computeKeyId());
+                    } finally {
+                        agentKey.close();
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results)
+                assertTrue(result.get());
+            executor.shutdown();
+
+            AgentKey prefixed = AgentKey.connect(connection, key.computeKeyId().substring(0, 8));
+            assertEquals(key.computeKeyId(), prefixed.computeKeyId());
+            prefixed.close();
+            assertThrows(IllegalArgumentException.class,
+                    () -> AgentKey.connect(connection, "not-a-keyid"));
+        }
+        assertFalse(Files.exists(connection));
+
+        // closing the agent closes the connections of its clients, and
+        // signing through them fails
+        Link link = new Link(null, null, "stale", null, null, null);
+        assertThrows(UncheckedIOException.class, () -> link.sign(stale));
+        assertTrue(link.getSignatures().isEmpty());
+        stale.close();
+    }
+
+    @Test
+    @DisplayName("Clients without the token are rejected")
+    public void testInvalidToken() throws IOException
+    {
+        Path connection = temporaryFolder.getRoot().toPath().resolve("agent");
+        try (SigningAgent agent = new SigningAgent(Collections.singletonList(key), connection, 1)) {
+            Path forged = temporaryFolder.getRoot().toPath().resolve("forged");
+            try (Writer writer = Files.newBufferedWriter(forged, StandardCharsets.UTF_8)) {
+                writer.write("port=" + agent.getPort() + "\ntoken=" + String.format("%064d", 0) + "\n");
+            }
+            assertThrows(IOException.class, () -> AgentKey.connect(forged, null));
+
+            // the agent can't be started twice on the same connection file
+            assertThrows(IOException.class,
+                    () -> new SigningAgent(Collections.singletonList(key), connection, 1));
+        }
+    }
+
+    @Test
+    @DisplayName("Failures to clean up are reported to the caller")
+    public void testCloseFailure() throws Exception
+    {
+        Path connection = temporaryFolder.getRoot().toPath().resolve("agent");
+        SigningAgent agent = new SigningAgent(Collections.singletonList(key), connection, 1);
+        // replaced by something that can't be deleted
+        Files.delete(connection);
+        Files.createDirectories(connection.resolve("busy"));
+        agent.close();
+
+        IOException e = assertThrows(IOException.class, agent::awaitClose);
+        assertTrue(e.getMessage().contains(connection.toString()));
+    }
+}
@@ -0,0 +1,130 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * ArtifactManifest tests
+ */
+@DisplayName("ArtifactManifest tests")
+@EnableRuleMigrationSupport
+class ArtifactManifestTest
+{
+    // sha256 of "foo\n" and of the empty string
+    private static final String FOO =
+        "b5bb9d8014a0f9b1d61e21e796d78dccdf1352f23cd32812f4850b878ae4944c";
+    private static final String EMPTY =
+        "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    @DisplayName("Imported digests match hashed artifacts")
+    public void testImport() throws IOException
+    {
+        File foo = temporaryFolder.newFile("foo");
+        Files.write(foo.toPath(), "foo\n".getBytes(StandardCharsets.UTF_8));
+        File empty = temporaryFolder.newFile("empty");
+        File ignored = temporaryFolder.newFile("ignored.link");
+
+        Link hashed = new Link(null, null, "step", null, null, null);
+        hashed.addProduct(foo.getPath());
+        hashed.addProduct(empty.getPath());
+        hashed.addProduct(ignored.getPath());
+
+        String checksums = FOO.toUpperCase() + "  " + foo.getPath() + "\n"
+            + EMPTY + " *" + empty.getPath() + "\n\n"
+            + EMPTY + "  " + ignored.getPath() + "\n";
+        ArtifactManifest manifest = ArtifactManifest.readChecksums(
+                new StringReader(checksums), "sha256");
+        assertEquals(3, manifest.size());
+
+        Link imported = new Link(null, null, "step", null, null, null);
+        imported.importProducts(manifest);
+        assertEquals(hashed.getCanonicalJSON(true), imported.getCanonicalJSON(true));
+
+        HashMap<String, String> digests = new HashMap<>();
+        digests.put(foo.getPath(), FOO);
+        digests.put(empty.getPath(), EMPTY);
+        Link fromMap = new Link(null, null, "step", null, null, null);
+        fromMap.importProducts(ArtifactManifest.fromDigests(digests, "sha256"));
+        assertEquals(hashed.getProductsRootDigest(), fromMap.getProductsRootDigest());
+
+        assertEquals(Collections.emptyList(), manifest.verifySample(
+                    temporaryFolder.getRoot().toPath(), 1, new Random(0)));
+    }
+
+    @Test
+    @DisplayName("Entries are validated and iterated per algorithm")
+    public void testEntries() throws IOException
+    {
+        ArtifactManifest manifest = new ArtifactManifest();
+        manifest.add("a", "sha256", EMPTY);
+        manifest.add("a", "sha256", EMPTY.toUpperCase());
+        manifest.add("a", "sha512", String.join("", Collections.nCopies(128, "0")));
+        manifest.add("b", "sha256", FOO);
+
+        int count = 0;
+        for (ArtifactManifest.Entry entry : manifest)
+            count++;
+        assertEquals(3, count);
+        assertEquals(2, new ArtifactManifest().addAll(manifest).getArtifacts().get("a").size());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> manifest.add("a", "sha256", FOO));
+        assertThrows(IllegalArgumentException.class,
+                () -> manifest.add("c", "sha256", "abc"));
+        assertThrows(IllegalArgumentException.class,
+                () -> manifest.add("c", "sha256", FOO.replace('b', 'g')));
+        assertThrows(IllegalArgumentException.class,
+                () -> manifest.add("c", "md5", "d41d8cd98f00b204e9800998ecf8427e"));
+        assertThrows(IllegalArgumentException.class,
+                () -> ArtifactManifest.readChecksums(
+                    new StringReader(EMPTY + " a\n"), "sha256"));
+
+        ArtifactManifest escaped = ArtifactManifest.readChecksums(
+                new StringReader("\\" + EMPTY + "  dir\\\\new\\nline\n"), "sha256");
+        assertEquals("dir\\new\nline", escaped.iterator().next().getPath());
+    }
+
+    @Test
+    @DisplayName("Sampled verification reports mismatching artifacts")
+    public void testVerifySample() throws IOException
+    {
+        temporaryFolder.newFile("good");
+        File bad = temporaryFolder.newFile("bad");
+        Files.write(bad.toPath(), "tampered".getBytes(StandardCharsets.UTF_8));
+
+        ArtifactManifest manifest = new ArtifactManifest()
+            .add("good", "sha256", EMPTY)
+            .add("bad", "sha256", EMPTY)
+            .add("missing", "sha256", EMPTY);
+
+        assertEquals(Arrays.asList("bad", "missing"), manifest.verifySample(
+                    temporaryFolder.getRoot().toPath(), 1, new Random(0)));
+        assertTrue(manifest.verifySample(
+                    temporaryFolder.getRoot().toPath(), 0, new Random(0)).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> manifest.verifySample(
+                    temporaryFolder.getRoot().toPath(), 2, new Random(0)));
+    }
+}
@@ -0,0 +1,115 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * ArtifactMap and ArtifactMerkleTree tests
+ */
+@DisplayName("ArtifactMap tests")
+class ArtifactMapTest
+{
+    private static ArtifactMap sample() {
+        ArtifactMap map = new ArtifactMap();
+        map.put("src/main/App.java", TestFiles.hashOf("1"));
+        map.put("src/main/Lib.java", TestFiles.hashOf("2"));
+        map.put("src/test/AppTest.java", TestFiles.hashOf("3"));
+        map.put("README.md", TestFiles.hashOf("4"));
+        map.put("src", TestFiles.hashOf("5"));
+        return map;
+    }
+
+    @Test
+    @DisplayName("Equal artifact sets have equal root digests")
+    public void testRootDigest()
+    {
+        ArtifactMap a = sample();
+        ArtifactMap b = new ArtifactMap();
+        // insertion order doesn't matter
+        HashMap<String, ArtifactHash> unordered = new HashMap<>(sample());
+        b.putAll(unordered);
+
+        assertEquals(a.getRootDigest(), b.getRootDigest());
+        assertTrue(a.getMerkleTree().sameArtifacts(b.getMerkleTree()));
+        assertTrue(a.getMerkleTree().diff(b.getMerkleTree()).isEmpty());
+        assertEquals(a.getMerkleTree().getDigest("src/main"),
+                b.getMerkleTree().getDigest("src/main"));
+        assertNull(a.getMerkleTree().getDigest("doc"));
+
+        assertNotEquals(new ArtifactMap().getRootDigest(), a.getRootDigest());
+    }
+
+    @Test
+    @DisplayName("Root digests follow modifications incrementally")
+    public void testIncrementalUpdates()
+    {
+        ArtifactMap a = sample();
+        ArtifactMap b = sample();
+        String initial = a.getRootDigest();
+        String mainDigest = a.getMerkleTree().getDigest("src/main");
+        String testDigest = a.getMerkleTree().getDigest("src/test");
+
+        a.put("src/main/Lib.java", TestFiles.hashOf("changed"));
+        assertNotEquals(initial, a.getRootDigest());
+        assertNotEquals(mainDigest, a.getMerkleTree().getDigest("src/main"));
+        assertEquals(testDigest, a.getMerkleTree().getDigest("src/test"));
+        assertEquals(new TreeSet<>(Arrays.asList("src/main/Lib.java")),
+                a.getMerkleTree().diff(b.getMerkleTree()));
+
+        a.put("src/main/Lib.java", TestFiles.hashOf("2"));
+        assertEquals(initial, a.getRootDigest());
+
+        a.put("src/main/New.java", TestFiles.hashOf("6"));
+        b.remove("README.md");
+        assertEquals(new TreeSet<>(Arrays.asList("README.md", "src/main/New.java")),
+                a.getMerkleTree().diff(b.getMerkleTree()));
+
+        // removals through every view are observed
+        a.remove("src/main/New.java");
+        Iterator<String> keys = a.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().equals("README.md"))
+                keys.remove();
+        }
+        assertEquals(b.getRootDigest(), a.getRootDigest());
+
+        for (Map.Entry<String, ArtifactHash> entry : a.entrySet())
+            entry.setValue(TestFiles.hashOf("same"));
+        b.replaceAll((path, hash) -> TestFiles.hashOf("same"));
+        assertEquals(b.getRootDigest(), a.getRootDigest());
+        assertEquals(TestFiles.hashOf("same"), a.get("src"));
+
+        a.values().removeIf(hash -> true);
+        assertTrue(a.isEmpty());
+        assertEquals(new ArtifactMap().getRootDigest(), a.getRootDigest());
+
+        b.clear();
+        assertEquals(a.getRootDigest(), b.getRootDigest());
+    }
+
+    @Test
+    @DisplayName("Sub-map views are read-only")
+    public void testReadOnlyViews()
+    {
+        ArtifactMap map = sample();
+        assertEquals("README.md", map.firstKey());
+        assertFalse(map.headMap("src").isEmpty());
+        assertThrows(UnsupportedOperationException.class,
+                () -> map.tailMap("src").clear());
+    }
+}
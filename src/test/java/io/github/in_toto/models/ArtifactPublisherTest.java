@@ -0,0 +1,140 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * ArtifactPublisher tests
+ */
+@DisplayName("ArtifactPublisher tests")
+@EnableRuleMigrationSupport
+class ArtifactPublisherTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Requests one artifact at a time, checking the publisher never exceeds
+     * the demand.
+     */
+    private static class OneByOne
+        implements ArtifactPublisher.Subscriber
+    {
+        final CompletableFuture<Throwable> done = new CompletableFuture<>();
+        final List<String> received = new ArrayList<>();
+        final AtomicInteger requested = new AtomicInteger();
+        volatile boolean overrun;
+        ArtifactPublisher.Subscription subscription;
+        int cancelAfter = -1;
+
+        public void onSubscribe(ArtifactPublisher.Subscription subscription) {
+            this.subscription = subscription;
+            this.requested.incrementAndGet();
+            subscription.request(1);
+        }
+
+        public void onNext(String path, ArtifactHash hash) {
+            if (this.requested.decrementAndGet() < 0)
+                this.overrun = true;
+            this.received.add(path);
+            if (this.received.size() == this.cancelAfter) {
+                this.subscription.cancel();
+                this.done.complete(null);
+                return;
+            }
+            this.requested.incrementAndGet();
+            this.subscription.request(1);
+        }
+
+        public void onError(Throwable error) {
+            this.done.complete(error);
+        }
+
+        public void onComplete() {
+            this.done.complete(null);
+        }
+    }
+
+    @Test
+    @DisplayName("Artifacts are published on demand and recorded in a link")
+    public void testPublish() throws Exception
+    {
+        List<String> paths = TestFiles.createFiles(temporaryFolder, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Link link = new Link(null, null, "published", null, null, null);
+            OneByOne subscriber = new OneByOne();
+            new ArtifactPublisher(paths, null, executor, 8)
+                .addSink(link::putMaterial)
+                .subscribe(subscriber);
+
+            assertEquals(null, subscriber.done.get(30, TimeUnit.SECONDS));
+            assertFalse(subscriber.overrun);
+            assertEquals(100, subscriber.received.size());
+
+            Link expected = new Link(null, null, "published", null, null, null);
+            for (String path : paths)
+                expected.addMaterial(path);
+            assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Cancelling and hashing errors stop the publication")
+    public void testCancelAndError() throws Exception
+    {
+        List<String> paths = TestFiles.createFiles(temporaryFolder, 50);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            OneByOne cancelling = new OneByOne();
+            cancelling.cancelAfter = 10;
+            new ArtifactPublisher(paths, null, executor, 4).subscribe(cancelling);
+            assertEquals(null, cancelling.done.get(30, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(10, cancelling.received.size());
+
+            List<String> missing = new ArrayList<>(paths);
+            missing.add(25, new File(temporaryFolder.getRoot(), "missing").getPath());
+            OneByOne failing = new OneByOne();
+            new ArtifactPublisher(missing, null, executor, 4).subscribe(failing);
+            assertTrue(failing.done.get(30, TimeUnit.SECONDS) instanceof RuntimeException);
+            assertTrue(failing.received.size() < missing.size());
+
+            // a sink failing on the last artifact fails the subscription
+            AtomicInteger sunk = new AtomicInteger();
+            OneByOne failingSink = new OneByOne();
+            new ArtifactPublisher(paths, null, executor, 4)
+                .addSink((path, hash) -> {
+                    if (sunk.incrementAndGet() == paths.size())
+                        throw new IllegalStateException("sink failed");
+                })
+                .subscribe(failingSink);
+            Throwable error = failingSink.done.get(30, TimeUnit.SECONDS);
+            assertTrue(error instanceof IllegalStateException, String.valueOf(error));
+            assertEquals(paths.size() - 1, failingSink.received.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
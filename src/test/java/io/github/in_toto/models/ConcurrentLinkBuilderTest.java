@@ -0,0 +1,107 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.keys.RSAKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * ConcurrentLinkBuilder tests
+ */
+@DisplayName("ConcurrentLinkBuilder tests")
+@EnableRuleMigrationSupport
+class ConcurrentLinkBuilderTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    @DisplayName("Artifacts recorded by several threads match a sequential link")
+    public void testConcurrentRecording() throws Exception
+    {
+        final int threads = 8;
+        final int artifacts = 5000;
+        ConcurrentLinkBuilder builder = new ConcurrentLinkBuilder("concurrent");
+        Link expected = new Link(null, null, "concurrent", null, null, null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                // every thread records the same, overlapping paths
+                for (int i = 0; i < artifacts; i++) {
+                    builder.putMaterial("dir" + (i % 10) + "/file" + i, TestFiles.hashOf(Integer.toString(i)));
+                    builder.putProduct("out/" + i, TestFiles.hashOf(Integer.toString(i)));
+                }
+            }));
+        }
+        for (int i = 0; i < artifacts; i++) {
+            expected.getMaterials().put("dir" + (i % 10) + "/file" + i, TestFiles.hashOf(Integer.toString(i)));
+            expected.getProducts().put("out/" + i, TestFiles.hashOf(Integer.toString(i)));
+        }
+        for (Future<?> result : results)
+            result.get();
+        executor.shutdown();
+
+        Link link = builder.build();
+        assertTrue(link.isFrozen());
+        assertEquals(artifacts, link.getMaterials().size());
+        assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+        assertEquals(expected.getProductsRootDigest(), link.getProductsRootDigest());
+
+        // the snapshot doesn't follow the builder, but can be signed
+        builder.putMaterial("late", TestFiles.hashOf("late"));
+        assertEquals(artifacts, link.getMaterials().size());
+        assertThrows(UnsupportedOperationException.class,
+                () -> link.getMaterials().put("late", TestFiles.hashOf("late")));
+        link.sign(RSAKey.read("src/test/resources/somekey.pem"));
+        assertEquals(1, link.signatures.size());
+    }
+
+    @Test
+    @DisplayName("Files are hashed and filtered like with a Link")
+    public void testAddArtifacts() throws IOException
+    {
+        File foo = temporaryFolder.newFile("foo");
+        File bar = temporaryFolder.newFile("bar.link");
+
+        ConcurrentLinkBuilder builder = new ConcurrentLinkBuilder("files");
+        Link expected = new Link(null, null, "files", null, null, null);
+        for (File file : new File[] {foo, bar}) {
+            builder.addMaterial(file.getAbsolutePath());
+            builder.addProduct(file.getAbsolutePath(), "**foo");
+            expected.addMaterial(file.getAbsolutePath());
+            expected.addProduct(file.getAbsolutePath(), "**foo");
+        }
+
+        ArrayList<String> command = new ArrayList<>();
+        command.add("touch");
+        builder.setCommand(command);
+        expected.setCommand(command);
+        HashMap<String, Object> environment = new HashMap<>();
+        environment.put("workdir", "/tmp");
+        builder.setEnvironment(environment);
+        expected.setEnvironment(environment);
+
+        Link link = builder.build();
+        assertEquals(1, link.getMaterials().size());
+        assertEquals(1, link.getProducts().size());
+        assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * HashScheduler tests
+ */
+@DisplayName("HashScheduler tests")
+@EnableRuleMigrationSupport
+class HashSchedulerTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<String> createFiles(int count) throws IOException {
+        Random random = new Random(42);
+        return TestFiles.createFiles(temporaryFolder, count, i -> {
+            // mostly small files, and a few large ones
+            byte[] contents = new byte[i % 10 == 0 ? 200 * 1024 + i : 100 + i];
+            random.nextBytes(contents);
+            return contents;
+        });
+    }
+
+    @Test
+    @DisplayName("Scheduled hashing records the same artifacts, large files first")
+    public void testHashAll() throws IOException
+    {
+        List<String> paths = createFiles(150);
+        Link expected = new Link(null, null, "scheduled", null, null, null);
+        for (String path : paths)
+            expected.addMaterial(path);
+
+        Link link = new Link(null, null, "scheduled", null, null, null);
+        new HashScheduler().setConcurrency(2, 8).hashAll(paths, link::putMaterial);
+        assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+
+        // with a single read in flight, the order is deterministic
+        List<String> order = new ArrayList<>();
+        new HashScheduler().setConcurrency(1, 1).hashAll(paths, (path, hash) -> order.add(path));
+        assertEquals(paths.get(140), order.get(0));
+        assertEquals(paths.get(0), order.get(14));
+        assertEquals(paths.get(1), order.get(15));
+
+        // hashed with the default algorithms, like recorded artifacts
+        List<String> defaults = ArtifactHash.getDefaultAlgorithms();
+        try {
+            ArtifactHash.setDefaultAlgorithms("sha256", "blake2b-256");
+            ArtifactMap artifacts = new HashScheduler().hashAll(paths.subList(0, 3));
+            assertEquals(new Artifact(paths.get(0)).getArtifactHashes(),
+                    artifacts.get(paths.get(0)));
+            assertEquals(2, artifacts.get(paths.get(0)).size());
+        } finally {
+            ArtifactHash.setDefaultAlgorithms(defaults.toArray(new String[0]));
+        }
+
+        paths.add(new File(temporaryFolder.getRoot(), "missing").getPath());
+        assertThrows(RuntimeException.class, () -> new HashScheduler().hashAll(paths));
+    }
+
+    @Test
+    @DisplayName("Links record artifacts through a scheduler")
+    public void testLinkArtifacts() throws IOException
+    {
+        List<String> paths = createFiles(30);
+        paths.add(paths.get(0));
+        Link expected = new Link(null, null, "scheduled", null, null, null);
+        for (String path : paths) {
+            expected.addMaterial(path, "**file1*");
+            expected.addProduct(path, "**file2*");
+        }
+
+        Link link = new Link(null, null, "scheduled", null, null, null);
+        HashScheduler scheduler = new HashScheduler().setConcurrency(2, 8);
+        link.addMaterials(paths, "**file1*", scheduler);
+        link.addProducts(paths, "**file2*", scheduler);
+        assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+        assertEquals(19, link.getMaterials().size());
+    }
+
+    @Test
+    @DisplayName("The read bandwidth is capped")
+    public void testBandwidthLimit() throws IOException
+    {
+        List<String> paths = createFiles(20);
+        long total = 0;
+        for (String path : paths)
+            total += new File(path).length();
+
+        // about 0.4s worth of reads, besides the initial burst
+        long limit = total * 2;
+        long start = System.nanoTime();
+        ArtifactMap artifacts = new HashScheduler().setBandwidthLimit(limit)
+            .setCpuLimit(4).hashAll(paths);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(20, artifacts.size());
+        assertTrue(elapsed > 0.3, "hashing took " + elapsed + "s");
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * Layout and LayoutVerifier tests
+ */
+@DisplayName("LayoutVerifier tests")
+@EnableRuleMigrationSupport
+class LayoutVerifierTest
+{
+    private static final int STEPS = 50;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Key owner = RSAKey.read("src/test/resources/somekey.pem");
+    private final Key functionary = RSAKey.read("src/test/resources/functionarykey.pem");
+    private final List<Key> ownerKeys = Collections.singletonList(owner);
+    private Path links;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        links = temporaryFolder.getRoot().toPath();
+    }
+
+    private static HashMap<String, ArtifactHash> artifact(String path, String digest) {
+        ArtifactHash hash = new ArtifactHash();
+        hash.put("sha256", digest);
+        HashMap<String, ArtifactHash> artifacts = new HashMap<>();
+        artifacts.put(path, hash);
+        return artifacts;
+    }
+
+    private void writeLink(String name, HashMap<String, ArtifactHash> materials,
+            HashMap<String, ArtifactHash> products, Key key) {
+        Link link = new Link(materials, products, name, null, null, null);
+        link.sign(key);
+        assertEquals(1, link.getSignatures().size());
+        link.dump(new File(links.toFile(), link.getFullName()).getPath());
+    }
+
+    /**
+     * A supply chain of a tree of steps, where each step but the first one
+     * consumes the product of its parent
+     */
+    private Layout pipeline() {
+        Layout layout = new Layout(Instant.now().plus(1, ChronoUnit.DAYS)).addKey(functionary);
+        for (int i = 0; i < STEPS; i++) {
+            Step step = new Step("step" + i).addPubkey(functionary);
+            HashMap<String, ArtifactHash> materials = new HashMap<>();
+            if (i > 0) {
+                step.addExpectedMaterial("MATCH", "out" + (i - 1) / 2,
+                        "WITH", "PRODUCTS", "FROM", "step" + (i - 1) / 2);
+                materials = artifact("out" + (i - 1) / 2, "0" + (i - 1) / 2);
+            }
+            step.addExpectedMaterial("DISALLOW", "*")
+                .addExpectedProduct("CREATE", "out" + i)
+                .addExpectedProduct("DISALLOW", "*");
+            layout.addStep(step);
+            writeLink("step" + i, materials, artifact("out" + i, "0" + i), functionary);
+        }
+        layout.sign(owner);
+        return layout;
+    }
+
+    @Test
+    @DisplayName("A supply chain of many steps verifies")
+    public void testPipeline()
+    {
+        Layout layout = pipeline();
+        LayoutVerifier.Report report = new LayoutVerifier(layout, links, 8).verify(ownerKeys);
+        assertTrue(report.isVerified(), report.getFailures().toString());
+        assertEquals(STEPS, report.getVerifiedStepCount());
+        assertTrue(report.getLinks().get("step7").isFrozen());
+
+        // through its json form
+        Layout read = Layout.read(layout.dumpString());
+        assertEquals(STEPS, read.getSteps().size());
+        assertEquals(1, read.getKeys().size());
+        assertEquals(layout.getCanonicalJSON(true), read.getCanonicalJSON(true));
+        assertTrue(new LayoutVerifier(read, links).verify(ownerKeys).isVerified());
+    }
+
+    @Test
+    @DisplayName("Artifacts that don't match their rules fail verification")
+    public void testRules()
+    {
+        Layout layout = pipeline();
+        // step21 consumes the product of step10, which now has another hash
+        writeLink("step10", artifact("out4", "04"), artifact("out10", "ff"), functionary);
+        LayoutVerifier.Report report = new LayoutVerifier(layout, links, 4).verify(ownerKeys);
+        assertFalse(report.isVerified());
+        assertTrue(report.getFailures().get(0).contains("disallowed artifact out10"),
+                report.getFailures().toString());
+        assertTrue(report.getVerifiedStepCount() < STEPS);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new Step("step").addExpectedMaterial("MATCH", "*", "WITH", "SOURCES"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Step("step").addExpectedProduct("CREATE"));
+        assertTrue(ArtifactRules.fnmatch("src/*.[ch]").matcher("src/lib/a.c").matches());
+        assertFalse(ArtifactRules.fnmatch("src/?.[!ch]").matcher("src/a.c").matches());
+    }
+
+    @Test
+    @DisplayName("Steps need a threshold of links with the same artifacts")
+    public void testThreshold()
+    {
+        Layout layout = new Layout(Instant.now().plus(1, ChronoUnit.DAYS))
+            .addKey(owner).addKey(functionary)
+            .addStep(new Step("build").addPubkey(owner).addPubkey(functionary)
+                    .setThreshold(2));
+        layout.sign(owner);
+        LayoutVerifier verifier = new LayoutVerifier(layout, links);
+
+        writeLink("build", null, artifact("app", "aa"), owner);
+        LayoutVerifier.Report report = verifier.verify(ownerKeys);
+        assertEquals(Arrays.asList("build: found 1 valid links, 2 required"),
+                report.getFailures());
+
+        writeLink("build", null, artifact("app", "bb"), functionary);
+        assertFalse(verifier.verify(ownerKeys).isVerified());
+
+        writeLink("build", null, artifact("app", "aa"), functionary);
+        assertTrue(verifier.verify(ownerKeys).isVerified());
+
+        // a functionary listed twice still counts once
+        assertThrows(IllegalArgumentException.class,
+                () -> new Step("build").addPubkey(owner).addPubkey(owner));
+        JsonObject json = new JsonParser().parse(layout.dumpString()).getAsJsonObject();
+        json.getAsJsonObject("signed").getAsJsonArray("steps").get(0).getAsJsonObject()
+            .getAsJsonArray("pubkeys").add(owner.computeKeyId());
+        assertThrows(JsonParseException.class, () -> Layout.read(json.toString()));
+    }
+
+    @Test
+    @DisplayName("CREATE and DELETE only consume new and removed artifacts")
+    public void testCreateDelete()
+    {
+        HashMap<String, ArtifactHash> materials = artifact("old", "aa");
+        materials.putAll(artifact("kept", "bb"));
+        HashMap<String, ArtifactHash> products = artifact("new", "cc");
+        products.putAll(artifact("kept", "bb"));
+        Link link = new Link(materials, products, "step", null, null, null);
+
+        assertNull(ArtifactRules.apply(Arrays.asList(Arrays.asList("CREATE", "*"),
+                    Arrays.asList("DISALLOW", "new")), true, link, name -> null));
+        assertEquals("[DISALLOW, *]: disallowed artifact new",
+                ArtifactRules.apply(Arrays.asList(Arrays.asList("DELETE", "*"),
+                        Arrays.asList("ALLOW", "kept"), Arrays.asList("DISALLOW", "*")), true, link, name -> null));
+        assertNull(ArtifactRules.apply(Arrays.asList(Arrays.asList("DELETE", "*"),
+                    Arrays.asList("DISALLOW", "old")), false, link, name -> null));
+        assertEquals("[DISALLOW, *]: disallowed artifact old",
+                ArtifactRules.apply(Arrays.asList(Arrays.asList("CREATE", "*"),
+                        Arrays.asList("ALLOW", "kept"), Arrays.asList("DISALLOW", "*")), false, link, name -> null));
+    }
+
+    @Test
+    @DisplayName("Layouts must be signed by the layout keys and not have expired")
+    public void testLayoutSignatures()
+    {
+        Layout layout = new Layout(Instant.now().plus(1, ChronoUnit.DAYS));
+        layout.sign(functionary);
+        assertEquals(Arrays.asList("layout: not signed by " + owner.computeKeyId()),
+                new LayoutVerifier(layout, links).verify(ownerKeys).getFailures());
+
+        Layout expired = new Layout(Instant.now().minus(1, ChronoUnit.DAYS));
+        expired.sign(owner);
+        LayoutVerifier.Report report = new LayoutVerifier(expired, links).verify(ownerKeys);
+        assertFalse(report.isVerified());
+        assertTrue(report.getFailures().get(0).startsWith("layout: expired"));
+    }
+}
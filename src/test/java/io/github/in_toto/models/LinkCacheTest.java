@@ -0,0 +1,157 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.keys.Key;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * LinkCache tests
+ */
+@DisplayName("LinkCache tests")
+class LinkCacheTest
+{
+    private static byte[] linkBytes(String name) {
+        HashMap<String, ArtifactHash> materials = new HashMap<>();
+        ArtifactHash hash = new ArtifactHash();
+        hash.put("sha256", "aa");
+        materials.put("foo", hash);
+        Link link = new Link(materials, null, name, null, null, null);
+        return link.dumpString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Repeated loads return the same frozen link")
+    public void testHit() throws IOException
+    {
+        LinkCache cache = new LinkCache(10, 1 << 20);
+        byte[] contents = Files.readAllBytes(Paths.get("src/test/resources/testvalues.link"));
+
+        Link link = cache.get(contents);
+        assertSame(link, cache.get(contents.clone()));
+        assertSame(link, cache.read(Paths.get("src/test/resources/testvalues.link")));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(contents.length, cache.getWeight());
+
+        assertTrue(link.isFrozen());
+        assertTrue(link.getMaterials().isFrozen());
+        assertThrows(UnsupportedOperationException.class,
+                () -> link.setName("other"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> link.getProducts().put("bar", new ArtifactHash()));
+        Key key = RSAKey.read("src/test/resources/somekey.pem");
+        assertThrows(UnsupportedOperationException.class, () -> link.sign(key));
+
+        // copies are handed out, the shared payload is untouched
+        link.getEnvironment().put("a", "modified");
+        assertEquals("WTF", link.getEnvironment().get("a"));
+
+        assertThrows(JsonParseException.class,
+                () -> cache.get("null".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(JsonParseException.class,
+                () -> cache.get("{}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("Nested objects of shared links are copied too")
+    public void testNestedCopies()
+    {
+        HashMap<String, Object> environment = new HashMap<>();
+        HashMap<String, Object> nested = new HashMap<>();
+        nested.put("os", "linux");
+        environment.put("platform", nested);
+        environment.put("paths", new ArrayList<>(Arrays.asList("/bin", "/usr/bin")));
+        Link original = new Link(null, null, "nested", environment, null, null);
+        Link link = new LinkCache(10, 1 << 20)
+            .get(original.dumpString().getBytes(StandardCharsets.UTF_8));
+
+        ((Map<?, ?>)link.getEnvironment().get("platform")).remove("os");
+        ((List<?>)link.getEnvironment().get("paths")).clear();
+        assertEquals("linux", ((Map<?, ?>)link.getEnvironment().get("platform")).get("os"));
+        assertEquals(2, ((List<?>)link.getEnvironment().get("paths")).size());
+        assertEquals(original.getCanonicalJSON(true), link.getCanonicalJSON(true));
+    }
+
+    @Test
+    @DisplayName("Least recently used links are evicted by count and weight")
+    public void testEviction()
+    {
+        byte[] a = linkBytes("a");
+        byte[] b = linkBytes("b");
+        byte[] c = linkBytes("c");
+
+        LinkCache cache = new LinkCache(2, 1 << 20);
+        Link linkA = cache.get(a);
+        cache.get(b);
+        assertSame(linkA, cache.get(a));
+        cache.get(c);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        // b was the least recently used one
+        assertSame(linkA, cache.get(a));
+        assertEquals("b", cache.get(b).getName());
+        assertEquals(2, cache.getEvictionCount());
+
+        LinkCache small = new LinkCache(10, a.length + b.length);
+        small.get(a);
+        small.get(b);
+        small.get(c);
+        assertEquals(2, small.size());
+        assertTrue(small.getWeight() <= a.length + b.length);
+
+        // links heavier than the whole cache are returned but not cached
+        LinkCache tiny = new LinkCache(10, 1);
+        Link link = tiny.get(a);
+        assertEquals("a", link.getName());
+        assertTrue(link.isFrozen());
+        assertEquals(0, tiny.size());
+        assertNotSame(link, tiny.get(a));
+    }
+
+    @Test
+    @DisplayName("Frozen links can still be signed and read back")
+    public void testFreeze()
+    {
+        Link link = Link.read(new String(linkBytes("frozen"), StandardCharsets.UTF_8));
+        String canonical = link.getCanonicalJSON(true);
+        link.freeze();
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> link.addMaterial("foo"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> link.getMaterials().remove("foo"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> link.getMaterials().entrySet().iterator().next().setValue(null));
+        link.getCommand().add("ls");
+        assertEquals(0, link.getCommand().size());
+
+        link.sign(RSAKey.read("src/test/resources/somekey.pem"));
+        assertEquals(1, link.signatures.size());
+        assertEquals(canonical, link.getCanonicalJSON(true));
+
+        Link copy = Link.read(link.dumpString());
+        assertTrue(!copy.isFrozen());
+        copy.setName("thawed");
+    }
+}
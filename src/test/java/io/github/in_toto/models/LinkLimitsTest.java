@@ -0,0 +1,100 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * LinkLimits tests
+ */
+@DisplayName("LinkLimits tests")
+class LinkLimitsTest
+{
+    private static String link(int artifacts) {
+        HashMap<String, ArtifactHash> materials = new HashMap<>();
+        HashMap<String, ArtifactHash> products = new HashMap<>();
+        for (int i = 0; i < artifacts; i++) {
+            ArtifactHash hash = new ArtifactHash();
+            hash.put("sha256", "aa");
+            (i % 2 == 0 ? materials : products).put("file" + i, hash);
+        }
+        return new Link(materials, products, "step", null, null, null).dumpString();
+    }
+
+    private static String nested(int depth) {
+        StringBuilder json = new StringBuilder("{\"signed\":{\"_type\":\"link\","
+                + "\"name\":\"step\",\"byproducts\":{\"deep\":");
+        for (int i = 0; i < depth; i++)
+            json.append('[');
+        for (int i = 0; i < depth; i++)
+            json.append(']');
+        return json.append("}},\"signatures\":[]}").toString();
+    }
+
+    @Test
+    @DisplayName("Links within the limits are read")
+    public void testWithinLimits() throws IOException
+    {
+        Path path = Paths.get("src/test/resources/testvalues.link");
+        Link expected = Link.read(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        Link link = new LinkLimits().read(path);
+        assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+
+        LinkLimits limits = new LinkLimits().setMaxArtifacts(10).setMaxDepth(10);
+        assertEquals(10, limits.read(link(10)).getMaterials().size()
+                + limits.read(link(10)).getProducts().size());
+        assertEquals("step", limits.read(nested(6)).getName());
+    }
+
+    @Test
+    @DisplayName("Links exceeding a limit are rejected")
+    public void testExceedingLimits()
+    {
+        assertThrows(JsonParseException.class,
+                () -> new LinkLimits().setMaxArtifacts(10).read(link(11)));
+        // artifacts aren't subject to the per-container limit
+        new LinkLimits().setMaxMembers(8).validate(link(11));
+
+        // deeper than the stack would allow, rejected at the limit
+        assertThrows(JsonParseException.class, () -> new LinkLimits().read(nested(1000000)));
+        assertThrows(JsonParseException.class,
+                () -> new LinkLimits().setMaxDepth(8).read(nested(6)));
+
+        String longName = link(1).replace("file0", new String(new char[100]).replace('\0', 'x'));
+        assertThrows(JsonParseException.class,
+                () -> new LinkLimits().setMaxStringLength(99).read(longName));
+
+        StringBuilder environment = new StringBuilder();
+        for (int i = 0; i < 20; i++)
+            environment.append(i > 0 ? "," : "").append("\"k").append(i).append("\":1");
+        String wide = "{\"signed\":{\"environment\":{" + environment + "}}}";
+        new LinkLimits().setMaxMembers(20).validate(wide);
+        assertThrows(JsonParseException.class,
+                () -> new LinkLimits().setMaxMembers(19).validate(wide));
+
+        String json = link(4);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        assertThrows(JsonParseException.class,
+                () -> new LinkLimits().setMaxBytes(bytes.length - 1).read(json));
+        assertThrows(JsonParseException.class,
+                () -> new LinkLimits().setMaxBytes(bytes.length - 1)
+                    .read(new ByteArrayInputStream(bytes)));
+
+        assertThrows(JsonParseException.class, () -> new LinkLimits().validate(json + "{}"));
+        assertThrows(JsonParseException.class, () -> new LinkLimits().validate("{\"a\":"));
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * Scale tests, recording, signing and reading links of a synthetic tree of
+ * many files within time and memory envelopes.
+ *
+ * These are excluded from the default build, run them with
+ * {@code mvn -Pscale test}. The number of files is set by the
+ * {@code in_toto.scale.files} system property (10^5 by default, the scale
+ * profile passes {@code -Dscale.files}), and the throughput floors can be
+ * relaxed on slow machines by dividing them by {@code in_toto.scale.slowdown}.
+ * The heap of the test JVM is capped by the profile as well, so that a
+ * regression in the memory used while processing a link fails the build
+ * with an OutOfMemoryError.
+ */
+@DisplayName("Scale tests")
+@Tag("scale")
+@EnableRuleMigrationSupport
+class LinkScaleTest
+{
+    private static final int FILES = Integer.getInteger("in_toto.scale.files", 100000);
+    private static final double SLOWDOWN = Double.parseDouble(
+            System.getProperty("in_toto.scale.slowdown", "1"));
+
+    private static final int FILES_PER_DIRECTORY = 1000;
+
+    /**
+     * The heap retained by a link, per artifact: the path, the hash object
+     * and the map entries.
+     */
+    private static final long RETAINED_BYTES_PER_ARTIFACT = 1024;
+
+    // throughput floors, in artifacts per second
+    private static final double RECORD_FLOOR = 2000;
+    private static final double ENCODE_FLOOR = 20000;
+    private static final double READ_FLOOR = 10000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return this.memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Runs a phase, asserting that it processes at least {@code floor}
+     * artifacts per second
+     */
+    private <T> T envelope(String phase, double floor, Callable<T> callable) throws Exception {
+        long start = System.nanoTime();
+        T result = callable.call();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double rate = FILES / seconds;
+        System.out.printf("scale: %s of %d artifacts in %.2fs (%.0f/s)%n",
+                phase, FILES, seconds, rate);
+        assertTrue(rate >= floor / SLOWDOWN, phase + " ran at " + (long)rate
+                + " artifacts/s, below the floor of " + (long)(floor / SLOWDOWN));
+        return result;
+    }
+
+    private List<String> createTree() throws IOException {
+        Path root = temporaryFolder.getRoot().toPath();
+        List<String> paths = new ArrayList<>(FILES);
+        Path directory = null;
+        for (int i = 0; i < FILES; i++) {
+            if (i % FILES_PER_DIRECTORY == 0)
+                directory = Files.createDirectory(root.resolve("dir" + i / FILES_PER_DIRECTORY));
+            Path file = directory.resolve("file" + i + ".txt");
+            Files.write(file, ("contents of file " + i).getBytes(StandardCharsets.UTF_8));
+            paths.add(file.toString());
+        }
+        return paths;
+    }
+
+    @Test
+    @DisplayName("Record, encode, sign, dump and read a link of the whole tree")
+    public void testLinkLifecycle() throws Exception
+    {
+        List<String> paths = createTree();
+        Key key = RSAKey.read("src/test/resources/somekey.pem");
+        long baseline = usedHeap();
+
+        Link link = envelope("record", RECORD_FLOOR, () -> {
+                Link recorded = new Link(null, null, "scale", null, null, null);
+                new HashScheduler().hashAll(paths, recorded::putMaterial);
+                return recorded;
+            });
+        assertEquals(FILES, link.getMaterials().size());
+
+        long retained = usedHeap() - baseline;
+        System.out.printf("scale: link retains %d bytes per artifact%n", retained / FILES);
+        assertTrue(retained <= RETAINED_BYTES_PER_ARTIFACT * FILES,
+                "link retains " + retained / FILES + " bytes per artifact");
+
+        String canonical = envelope("canonicalize", ENCODE_FLOOR,
+                () -> link.getCanonicalJSON(true));
+        assertTrue(canonical.length() > FILES * 64);
+
+        envelope("sign", ENCODE_FLOOR, () -> {
+                link.sign(key);
+                return null;
+            });
+        assertEquals(1, link.getSignatures().size());
+
+        File file = temporaryFolder.newFile("scale.link");
+        envelope("dump", ENCODE_FLOOR, () -> {
+                link.dump(file.getPath());
+                return null;
+            });
+
+        Link read = envelope("read", READ_FLOOR,
+                () -> new LinkLimits().setMaxArtifacts(FILES).read(file.toPath()));
+        assertEquals(FILES, read.getMaterials().size());
+        assertTrue(envelope("verify", ENCODE_FLOOR, () -> read.verify(key)));
+    }
+
+    @Test
+    @DisplayName("Workspace verification and caching of a large link")
+    public void testWorkspaceVerification() throws Exception
+    {
+        List<String> paths = createTree();
+        Link link = new Link(null, null, "scale", null, null, null);
+        new HashScheduler().hashAll(paths, link::putMaterial);
+        byte[] contents = link.dumpString().getBytes(StandardCharsets.UTF_8);
+
+        WorkspaceVerifier.Report report = envelope("verify workspace", RECORD_FLOOR,
+                () -> new WorkspaceVerifier(temporaryFolder.getRoot().toPath())
+                    .verify(link.getMaterials(), WorkspaceVerifier.Mode.FULL_REPORT));
+        assertTrue(report.isClean());
+        assertEquals(FILES, report.getCheckedCount());
+
+        LinkCache cache = new LinkCache(4, contents.length * 2L);
+        Link cached = envelope("cache miss", READ_FLOOR, () -> cache.get(contents));
+        envelope("cache hit", READ_FLOOR * 10, () -> cache.get(contents));
+        assertEquals(FILES, cached.getMaterials().size());
+
+        long baseline = usedHeap();
+        Link again = envelope("read", READ_FLOOR,
+                () -> Link.read(new String(contents, StandardCharsets.UTF_8)));
+        long retained = usedHeap() - baseline;
+        assertTrue(retained <= RETAINED_BYTES_PER_ARTIFACT * FILES,
+                "read link retains " + retained / FILES + " bytes per artifact");
+        assertEquals(link.getCanonicalJSON(true), again.getCanonicalJSON(true));
+    }
+}
@@ -6,16 +6,26 @@ import io.github.in_toto.keys.RSAKey;
 import io.github.in_toto.keys.Key;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Random;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.DisplayName;
@@ -65,8 +75,8 @@ class LinkTest
         assertTrue(link.getByproducts() instanceof HashMap);
         assertTrue(link.getEnvironment() instanceof HashMap);
         assertTrue(link.getName() instanceof String);
-        assertTrue(link.getProducts() instanceof HashMap);
-        assertTrue(link.getMaterials() instanceof HashMap);
+        assertTrue(link.getProducts() instanceof ArtifactMap);
+        assertTrue(link.getMaterials() instanceof ArtifactMap);
         assertTrue(link.getCommand() instanceof ArrayList);
     }
 
@@ -143,6 +153,78 @@ class LinkTest
         fl.delete();
     }
 
+    @Test
+    @DisplayName("Validate artifacts are kept in canonical order")
+    public void testArtifactOrder()
+    {
+        HashMap<String, ArtifactHash> materials = new HashMap<>();
+        // U+E000 sorts before U+1F600 by code point, but not by UTF-16 unit
+        String[] ordered = {"a", "b/c", "\uE000", "\uD83D\uDE00"};
+        for (int i = ordered.length - 1; i >= 0; i--)
+            materials.put(ordered[i], new ArtifactHash());
+
+        Link testLink = new Link(materials, null, "sometestname",
+                null, null, null);
+        assertArrayEquals(ordered, testLink.getMaterials().keySet().toArray());
+
+        Link newLink = Link.read(testLink.dumpString());
+        assertArrayEquals(ordered, newLink.getMaterials().keySet().toArray());
+        assertEquals(testLink.getCanonicalJSON(true), newLink.getCanonicalJSON(true));
+    }
+
+    @Test
+    @DisplayName("Validate signatures are verified against the bytes read")
+    public void testVerify() throws IOException
+    {
+        // the public portion of key
+        Key publicKey = RSAKey.read("src/test/resources/someotherkey.pem");
+        String json = new String(Files.readAllBytes(
+                    Paths.get("src/test/resources/testvalues.link")),
+                StandardCharsets.UTF_8);
+        Link testLink = Link.read(json);
+        assertArrayEquals(testLink.getCanonicalJSON(true).getBytes(StandardCharsets.UTF_8),
+                testLink.capturedSignedBytes());
+
+        assertFalse(testLink.verify(publicKey));
+        testLink.sign(key);
+        assertTrue(testLink.verify(key));
+        assertTrue(testLink.verify(publicKey));
+
+        String dumped = testLink.dumpString();
+        Link newLink = Link.read(dumped);
+        assertTrue(newLink.capturedSignedBytes() != null);
+        assertTrue(newLink.verify(publicKey));
+
+        String sig = testLink.signatures.get(0).getSig();
+        String forged = sig.substring(0, 10) + (sig.charAt(10) == '0' ? '1' : '0')
+            + sig.substring(11);
+        assertFalse(Link.read(dumped.replace(sig, forged)).verify(publicKey));
+        assertFalse(Link.read(dumped.replace(sig, "not hex")).verify(publicKey));
+        assertFalse(Link.read(dumped.replace("\"test\"", "\"tset\"")).verify(publicKey));
+
+        // the numbers are read as they were written, not as doubles
+        Link numbers = Link.read(json.replace("\"e\": 1", "\"e\": 1.0"));
+        assertArrayEquals(testLink.capturedSignedBytes(), numbers.capturedSignedBytes());
+
+        // fields that aren't parsed are still part of the payload
+        Link extra = Link.read(json.replace("\"name\": \"test\"",
+                    "\"name\": \"test\", \"extra\": [1, {\"y\": 2, \"x\": null}]"));
+        assertTrue(new String(extra.capturedSignedBytes(), StandardCharsets.UTF_8)
+                .contains("\"extra\":[1,{\"x\":null,\"y\":2}],\"materials\""));
+
+        // modifications drop the captured bytes
+        newLink.getMaterials().put("foo", new ArtifactHash());
+        assertEquals(null, newLink.capturedSignedBytes());
+        assertFalse(newLink.verify(key));
+        newLink.getMaterials().remove("foo");
+        assertTrue(newLink.verify(key));
+
+        Link renamed = Link.read(testLink.dumpString());
+        renamed.setName("other");
+        assertEquals(null, renamed.capturedSignedBytes());
+        assertFalse(renamed.verify(key));
+    }
+
     @Test
     @DisplayName("Validate link serialization and de-serialization")
     public void testLinkDeSerialization()
@@ -448,4 +530,168 @@ class LinkTest
         file3.delete();
     }
 
+    @Test
+    @DisplayName("Artifacts can be hashed with BLAKE2b and BLAKE3")
+    public void testArtifactAlgorithms() throws IOException
+    {
+        File small = temporaryFolder.newFile("small");
+        Files.write(small.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+        ArtifactHash hash = new Artifact(small.getPath(),
+                Arrays.asList("sha256", "blake2b", "blake3")).getArtifactHashes();
+        assertEquals(3, hash.size());
+        assertEquals("ba80a53f981c4d0d6a2797b69f12f6e94c212f14685ac4b74b12bb6fdbffa2d1"
+                + "7d87c5392aab792dc252d5de4533cc9518d38aa8dbf1925ab92386edd4009923",
+                hash.get("blake2b"));
+
+        // large enough to be hashed on several cores, or throttled
+        // sequentially
+        byte[] contents = new byte[9 * 1024 * 1024 + 5];
+        new Random(42).nextBytes(contents);
+        File large = temporaryFolder.newFile("large");
+        Files.write(large.toPath(), contents);
+        assertEquals(ArtifactHash.digest(large.getPath(), "blake3", length -> { }),
+                ArtifactHash.digest(large.getPath(), "blake3"));
+
+        List<String> defaults = ArtifactHash.getDefaultAlgorithms();
+        try {
+            ArtifactHash.setDefaultAlgorithms("blake2b-256");
+            assertEquals(64, new Artifact(small.getPath()).getArtifactHashes()
+                    .get("blake2b-256").length());
+        } finally {
+            ArtifactHash.setDefaultAlgorithms(defaults.toArray(new String[0]));
+        }
+    }
+
+    @Test
+    @DisplayName("Products reuse the hashes of unchanged materials")
+    public void testProductsReuseMaterialHashes() throws IOException
+    {
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+        List<File> files = new ArrayList<>();
+        for (String name : new String[] {"untouched", "rewritten", "grown"}) {
+            File file = temporaryFolder.newFile(name);
+            Files.write(file.toPath(), ("contents of " + name).getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file.toPath(), past);
+            files.add(file);
+        }
+        // the change time can't be set into the past: the files changed
+        // until now are snapshotted as if the racy window had passed since
+        long settled = System.currentTimeMillis();
+        // just changed, with a recent modification time, and restored with
+        // an old one
+        for (String name : new String[] {"recent", "restored"}) {
+            File file = temporaryFolder.newFile(name);
+            do {
+                Files.write(file.toPath(), ("contents of " + name).getBytes(StandardCharsets.UTF_8));
+                if (name.equals("restored"))
+                    Files.setLastModifiedTime(file.toPath(), past);
+            } while (((FileTime)Files.getAttribute(file.toPath(), "unix:ctime")).toMillis()
+                    <= settled);
+            files.add(file);
+        }
+
+        Link testLink = new Link(null, null, "reuse", null, null, null);
+        StatSnapshot.clock = () -> settled + StatSnapshot.RACY_WINDOW_MILLIS;
+        try {
+            for (File file : files)
+                testLink.addMaterial(file.getPath());
+
+            // same size and modification time, but a new change time
+            Files.write(files.get(1).toPath(), "contents of REWRITTEN".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(files.get(1).toPath(), past);
+            Files.write(files.get(2).toPath(), "more".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            for (File file : files)
+                testLink.addProduct(file.getPath());
+
+            // only the untouched file, the recent and restored ones being racy
+            assertEquals(1, testLink.getReusedProductCount());
+            for (File file : files)
+                assertEquals(new Artifact(file.getPath()).getArtifactHashes(),
+                        testLink.getProducts().get(file.getPath()));
+            assertNotEquals(testLink.getMaterials().get(files.get(1).getPath()),
+                    testLink.getProducts().get(files.get(1).getPath()));
+
+            // links that weren't recorded here hash their products
+            Link other = new Link(null, null, "other", null, null, null);
+            other.addProduct(files.get(0).getPath());
+            assertEquals(0, other.getReusedProductCount());
+        } finally {
+            StatSnapshot.clock = System::currentTimeMillis;
+        }
+    }
+
+    @Test
+    @DisplayName("The canonical encoding is updated incrementally")
+    public void testIncrementalCanonicalEncoding()
+    {
+        HashMap<String, ArtifactHash> materials = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            ArtifactHash hash = new ArtifactHash();
+            hash.put("sha256", String.format("%064x", i));
+            if (i % 10 == 0)
+                hash.put("sha512", null);
+            materials.put("dir" + i % 7 + "/file \"" + i + "\"", hash);
+        }
+        HashMap<String, Object> byproducts = new HashMap<>();
+        byproducts.put("return-value", 1.0);
+        byproducts.put("stdout", null);
+        Link testLink = new Link(materials, null, "incremental", null,
+                new ArrayList<>(Arrays.asList("make", "\u00e9")), byproducts);
+
+        // encoded twice, to cache the encodings of the artifacts
+        assertEquals(testLink.signed.JSONEncodeCanonical(), testLink.getCanonicalJSON(true));
+        assertEquals(testLink.signed.JSONEncodeCanonical(), testLink.getCanonicalJSON(true));
+        assertEquals(100, testLink.getMaterials().getCachedFragmentCount());
+
+        ArtifactHash hash = new ArtifactHash();
+        hash.put("sha256", "aa");
+        testLink.putMaterial("dir0/new", hash);
+        testLink.putProduct("app", hash);
+        testLink.getMaterials().remove("dir1/file \"1\"");
+        testLink.getMaterials().entrySet().iterator().next().setValue(hash);
+        testLink.getByproducts().put("stderr", "warning");
+        testLink.setName("renamed");
+        assertEquals(98, testLink.getMaterials().getCachedFragmentCount());
+        assertEquals(testLink.signed.JSONEncodeCanonical(), testLink.getCanonicalJSON(true));
+        assertEquals(100, testLink.getMaterials().getCachedFragmentCount());
+
+        // hash objects can't be modified behind the cache once added
+        assertThrows(UnsupportedOperationException.class,
+                () -> testLink.getMaterials().get("dir0/new").put("sha256", "bb"));
+        assertThrows(UnsupportedOperationException.class, () -> hash.put("sha512", "cc"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> hash.entrySet().iterator().next().setValue("bb"));
+
+        testLink.sign(key);
+        assertTrue(Link.read(testLink.dumpString()).verify(key));
+        testLink.getMaterials().clear();
+        testLink.freeze();
+        assertEquals(testLink.signed.JSONEncodeCanonical(), testLink.getCanonicalJSON(true));
+        assertEquals(testLink.signed.JSONEncodeCanonical(), testLink.getCanonicalJSON(true));
+        assertFalse(testLink.verify(key));
+    }
+
+    @Test
+    @DisplayName("Numbers outside the int range are signed as they are dumped")
+    public void testLongByproducts()
+    {
+        HashMap<String, Object> byproducts = new HashMap<>();
+        byproducts.put("ts", 1700000000000L);
+        byproducts.put("return-value", 1.0);
+        HashMap<String, Object> environment = new HashMap<>();
+        environment.put("size", 1.0e12);
+        Link testLink = new Link(null, null, "long", environment,
+                new ArrayList<>(), byproducts);
+        testLink.sign(key);
+
+        Link read = Link.read(testLink.dumpString());
+        assertTrue(read.capturedSignedBytes() != null);
+        assertArrayEquals(testLink.getCanonicalJSON(true).getBytes(StandardCharsets.UTF_8),
+                read.capturedSignedBytes());
+        assertTrue(read.verify(key));
+        assertTrue(testLink.getCanonicalJSON(true).contains("\"ts\":1700000000000"));
+        assertTrue(testLink.getCanonicalJSON(true).contains("\"size\":1000000000000"));
+    }
 }
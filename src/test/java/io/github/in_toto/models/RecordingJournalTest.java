@@ -0,0 +1,117 @@
+package io.github.in_toto.models;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * RecordingJournal tests
+ */
+@DisplayName("RecordingJournal tests")
+@EnableRuleMigrationSupport
+class RecordingJournalTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final FileTime AN_HOUR_AGO =
+        FileTime.fromMillis(System.currentTimeMillis() - 3600 * 1000);
+
+    private List<String> createFiles(int count) throws IOException {
+        List<String> files = TestFiles.createFiles(temporaryFolder, count);
+        for (String file : files)
+            Files.setLastModifiedTime(Paths.get(file), AN_HOUR_AGO);
+        return files;
+    }
+
+    /**
+     * The change time can't be set into the past: the files are snapshotted
+     * as if they were old enough not to be racy.
+     */
+    @BeforeEach
+    public void skipRacyWindow() {
+        StatSnapshot.clock = () -> System.currentTimeMillis() + StatSnapshot.RACY_WINDOW_MILLIS + 100;
+    }
+
+    @AfterEach
+    public void restoreClock() {
+        StatSnapshot.clock = System::currentTimeMillis;
+    }
+
+    @Test
+    @DisplayName("An interrupted recording is resumed from the synced entries")
+    public void testResume() throws IOException
+    {
+        List<String> files = createFiles(10);
+        Path path = temporaryFolder.getRoot().toPath().resolve("record.journal");
+        Path crashed = temporaryFolder.getRoot().toPath().resolve("crashed.journal");
+
+        try (RecordingJournal journal = RecordingJournal.open(path, 4, Long.MAX_VALUE)) {
+            Link link = new Link(null, null, "step", null, null, null);
+            link.setJournal(journal);
+            for (String file : files.subList(0, 6))
+                link.addMaterial(file);
+
+            // the journal as a crash would leave it: the first batch of 4
+            // entries, and a torn write
+            Files.copy(path, crashed);
+            Files.write(crashed, new byte[] {0, 0, 0, 42, 1, 2, 3},
+                    StandardOpenOption.APPEND);
+        }
+
+        // the file is modified after it was journaled
+        Path modified = temporaryFolder.getRoot().toPath().resolve("file1");
+        Files.write(modified, "modified".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(modified, FileTime.fromMillis(AN_HOUR_AGO.toMillis() + 1000));
+
+        Link resumed = new Link(null, null, "step", null, null, null);
+        try (RecordingJournal journal = RecordingJournal.open(crashed)) {
+            assertEquals(4, journal.getReplayedCount());
+            resumed.setJournal(journal);
+            for (String file : files) {
+                resumed.addMaterial(file);
+                resumed.addProduct(file);
+            }
+            assertEquals(3, journal.getResumedCount());
+        }
+
+        Link expected = new Link(null, null, "step", null, null, null);
+        for (String file : files) {
+            expected.addMaterial(file);
+            expected.addProduct(file);
+        }
+        assertEquals(expected.getCanonicalJSON(true), resumed.getCanonicalJSON(true));
+
+        // the torn write was dropped, and the remaining materials appended
+        try (RecordingJournal journal = RecordingJournal.open(crashed)) {
+            assertEquals(10, journal.getReplayedCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Files that aren't journals are rejected")
+    public void testNotAJournal() throws IOException
+    {
+        Path path = temporaryFolder.newFile("not.journal").toPath();
+        Files.write(path, "{\"signed\":{}}".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> RecordingJournal.open(path));
+        assertThrows(IllegalArgumentException.class,
+                () -> RecordingJournal.open(path, 0, 1000));
+    }
+}
@@ -0,0 +1,173 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+import io.github.in_toto.lib.App;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * Sharded recording tests
+ */
+@DisplayName("Sharded recording tests")
+@EnableRuleMigrationSupport
+class ShardedRecordingTest
+{
+    private static final int SHARDS = 3;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private List<String> createTree(File root) throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            File dir = new File(root, "dir" + (i % 4));
+            dir.mkdirs();
+            File file = new File(dir, "file" + i);
+            Files.write(file.toPath(), ("contents " + i).getBytes(StandardCharsets.UTF_8));
+            paths.add(file.getAbsolutePath());
+        }
+        return paths;
+    }
+
+    @Test
+    @DisplayName("Shards recorded by separate processes merge into the same link")
+    public void testMultiProcessRecording() throws Exception
+    {
+        File tree = temporaryFolder.newFolder("tree");
+        List<String> paths = createTree(tree);
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        List<Path> partials = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Path partial = temporaryFolder.getRoot().toPath().resolve("shard" + shard);
+            partials.add(partial);
+            processes.add(new ProcessBuilder(java,
+                        "-cp", System.getProperty("java.class.path"),
+                        App.class.getName(), "shard",
+                        Integer.toString(shard), Integer.toString(SHARDS),
+                        partial.toString(),
+                        "--materials", tree.getAbsolutePath(),
+                        "--products", tree.getAbsolutePath(),
+                        "--spool-entries", "10")
+                    .inheritIO()
+                    .start());
+        }
+        for (Process process : processes) {
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue());
+        }
+
+        Link expected = new Link(null, null, "sharded", null, null, null);
+        for (String path : paths) {
+            expected.addMaterial(path);
+            expected.addProduct(path);
+        }
+
+        // the merge is independent of the order of the partials
+        List<Path> shuffled = new ArrayList<>(partials);
+        Collections.reverse(shuffled);
+        try (SpooledLink link = new SpooledLink("sharded",
+                    temporaryFolder.getRoot().toPath(), 10)) {
+            ShardedRecording.merge(shuffled, link);
+            assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+
+            Key key = RSAKey.read("src/test/resources/somekey.pem");
+            link.sign(key);
+            assertTrue(Link.read(link.dumpString()).verify(key));
+        }
+
+        // merged and signed from the command line
+        Path merged = temporaryFolder.getRoot().toPath().resolve("sharded.link");
+        List<String> command = new ArrayList<>(Arrays.asList(java,
+                    "-cp", System.getProperty("java.class.path"),
+                    App.class.getName(), "merge", "sharded", merged.toString()));
+        for (Path partial : shuffled)
+            command.add(partial.toString());
+        command.addAll(Arrays.asList("--key", "src/test/resources/somekey.pem"));
+        Process merge = new ProcessBuilder(command).inheritIO().start();
+        assertTrue(merge.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, merge.exitValue());
+        Link link = Link.read(new String(Files.readAllBytes(merged), StandardCharsets.UTF_8));
+        assertEquals(expected.getCanonicalJSON(true), link.getCanonicalJSON(true));
+        assertTrue(link.verify(RSAKey.read("src/test/resources/somekey.pem")));
+    }
+
+    @Test
+    @DisplayName("Incomplete or inconsistent partials are rejected")
+    public void testInvalidPartials() throws IOException
+    {
+        File tree = temporaryFolder.newFolder("tree");
+        List<String> paths = createTree(tree);
+
+        List<Path> partials = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            Path partial = temporaryFolder.getRoot().toPath().resolve("shard" + shard);
+            try (ArtifactShard recorder = new ArtifactShard(shard, SHARDS,
+                        temporaryFolder.getRoot().toPath(), 10)) {
+                for (String path : paths)
+                    recorder.addMaterial(path);
+                recorder.write(partial);
+            }
+            partials.add(partial);
+        }
+
+        Path root = temporaryFolder.getRoot().toPath();
+        try (SpooledLink link = new SpooledLink("invalid", root, 10)) {
+            // missing shard
+            assertThrows(IllegalArgumentException.class,
+                    () -> ShardedRecording.merge(partials.subList(0, 2), link));
+            // same shard twice
+            assertThrows(IllegalArgumentException.class, () -> ShardedRecording.merge(
+                        Arrays.asList(partials.get(0), partials.get(0), partials.get(1)), link));
+
+            // an artifact recorded by a shard that doesn't own it
+            String path = paths.get(0);
+            int owner = ArtifactShard.shardOf(path, 2);
+            Path wrong = write(root, "wrong", 1 - owner, 2, "\"" + path + "\":{\"sha256\":\"aa\"}");
+            Path right = write(root, "right", owner, 2, "\"" + path + "\":{\"sha256\":\"bb\"}");
+            assertThrows(IllegalArgumentException.class,
+                    () -> ShardedRecording.merge(Arrays.asList(wrong, right), link));
+
+            // a duplicate entry within a shard
+            Path duplicate = write(root, "duplicate", 0, 1,
+                    "\"a\":{\"sha256\":\"aa\"},\"a\":{\"sha256\":\"bb\"}");
+            assertThrows(IllegalArgumentException.class,
+                    () -> ShardedRecording.merge(Arrays.asList(duplicate), link));
+
+            Path malformed = write(root, "malformed", 0, 1, "\"a\":[]");
+            assertThrows(IllegalArgumentException.class,
+                    () -> ShardedRecording.merge(Arrays.asList(malformed), link));
+        }
+    }
+
+    private static Path write(Path root, String name, int shard, int shards,
+            String materials) throws IOException {
+        Path partial = root.resolve(name);
+        String json = "{\"shard\":" + shard + ",\"shards\":" + shards
+            + ",\"materials\":{" + materials + "},\"products\":{}}";
+        Files.write(partial, json.getBytes(StandardCharsets.UTF_8));
+        return partial;
+    }
+}
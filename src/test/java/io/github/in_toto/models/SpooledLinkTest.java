@@ -0,0 +1,132 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+import io.github.in_toto.keys.Key;
+import io.github.in_toto.keys.RSAKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * SpooledLink and ArtifactSpool tests
+ */
+@DisplayName("SpooledLink tests")
+@EnableRuleMigrationSupport
+class SpooledLinkTest
+{
+    private Key key = RSAKey.read("src/test/resources/somekey.pem");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static ArtifactHash hashOf(String value) {
+        ArtifactHash hash = new ArtifactHash();
+        hash.put("sha256", value);
+        return hash;
+    }
+
+    @Test
+    @DisplayName("Spooled artifacts are merged sorted and without duplicates")
+    public void testSpoolMerge() throws IOException
+    {
+        File spoolDir = temporaryFolder.newFolder("spool");
+        try (ArtifactSpool spool = new ArtifactSpool(spoolDir.toPath(), 3)) {
+            // descending order, so every run is interleaved with the others
+            for (int i = 99; i >= 0; i--)
+                spool.put(String.format("file%03d", i), hashOf("first" + i));
+            // duplicates must not override the first recorded hash
+            spool.put("file042", hashOf("second"));
+            spool.put("file000", hashOf("second"));
+
+            assertTrue(spool.getRunCount() > 1);
+
+            for (int pass = 0; pass < 2; pass++) {
+                Iterator<Map.Entry<String, ArtifactHash>> iterator = spool.iterator();
+                for (int i = 0; i < 100; i++) {
+                    Map.Entry<String, ArtifactHash> entry = iterator.next();
+                    assertEquals(String.format("file%03d", i), entry.getKey());
+                    assertEquals("first" + i, entry.getValue().get("sha256"));
+                }
+                assertFalse(iterator.hasNext());
+            }
+        }
+        assertEquals(0, spoolDir.list().length);
+    }
+
+    @Test
+    @DisplayName("Spool compacts runs when there are too many")
+    public void testSpoolCompaction() throws IOException
+    {
+        File spoolDir = temporaryFolder.newFolder("compact");
+        int count = ArtifactSpool.MAX_RUNS * 2 + 5;
+        try (ArtifactSpool spool = new ArtifactSpool(spoolDir.toPath(), 1)) {
+            for (int i = 0; i < count; i++)
+                spool.put(Integer.toString(i), hashOf(Integer.toString(i)));
+
+            assertTrue(spool.getRunCount() < ArtifactSpool.MAX_RUNS);
+            int seen = 0;
+            for (Map.Entry<String, ArtifactHash> entry : spool) {
+                assertEquals(entry.getKey(), entry.getValue().get("sha256"));
+                seen++;
+            }
+            assertEquals(count, seen);
+        }
+    }
+
+    @Test
+    @DisplayName("SpooledLink encodes, signs and dumps like a Link")
+    public void testSpooledLinkMatchesLink() throws IOException
+    {
+        File spoolDir = temporaryFolder.newFolder("link-spool");
+        Link link = new Link(null, null, "spooled", null, null, null);
+        ArrayList<String> command = new ArrayList<>();
+        command.add("make");
+        link.setCommand(command);
+
+        try (SpooledLink spooled = new SpooledLink("spooled",
+                    spoolDir.toPath(), 4)) {
+            spooled.setCommand(command);
+            for (int i = 0; i < 25; i++) {
+                File file = temporaryFolder.newFile("artifact" + i);
+                Files.write(file.toPath(), ("contents " + i).getBytes(StandardCharsets.UTF_8));
+                String path = file.getAbsolutePath();
+                link.addMaterial(path);
+                spooled.addMaterial(path);
+                if (i % 2 == 0) {
+                    link.addProduct(path);
+                    spooled.addProduct(path);
+                }
+            }
+            File excluded = temporaryFolder.newFile("foo.link");
+            spooled.addMaterial(excluded.getAbsolutePath());
+
+            assertEquals(link.getCanonicalJSON(true), spooled.getCanonicalJSON(true));
+
+            spooled.sign(key);
+            StringWriter dump = new StringWriter();
+            spooled.dump(dump);
+
+            Link read = Link.read(dump.toString());
+            assertEquals(link.getMaterials(), read.getMaterials());
+            assertEquals(link.getProducts(), read.getProducts());
+            assertEquals(link.getCanonicalJSON(true), read.getCanonicalJSON(true));
+            assertEquals(key.computeKeyId(), read.signatures.get(0).getKeyId());
+        }
+    }
+}
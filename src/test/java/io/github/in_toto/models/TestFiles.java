@@ -0,0 +1,59 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.Artifact.ArtifactHash;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Fixtures shared by the artifact tests
+ */
+final class TestFiles
+{
+    private TestFiles() {
+    }
+
+    /**
+     * Creates files named file0, file1, ... in a temporary folder
+     *
+     * @param folder the folder to create the files in
+     * @param count the number of files
+     * @param contents the contents of each file, by index
+     *
+     * @return the paths of the files, in order
+     */
+    static List<String> createFiles(TemporaryFolder folder, int count,
+            IntFunction<byte[]> contents) throws IOException {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = folder.newFile("file" + i);
+            Files.write(file.toPath(), contents.apply(i));
+            paths.add(file.getPath());
+        }
+        return paths;
+    }
+
+    /**
+     * Creates small files, each with different contents
+     */
+    static List<String> createFiles(TemporaryFolder folder, int count) throws IOException {
+        return createFiles(folder, count,
+                i -> ("contents of file " + i).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a hash object with a single, fake sha256 hash
+     */
+    static ArtifactHash hashOf(String value) {
+        ArtifactHash hash = new ArtifactHash();
+        hash.put("sha256", value);
+        return hash;
+    }
+}
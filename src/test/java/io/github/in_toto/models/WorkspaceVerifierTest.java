@@ -0,0 +1,93 @@
+package io.github.in_toto.models;
+
+import io.github.in_toto.models.WorkspaceVerifier.Discrepancy;
+import io.github.in_toto.models.WorkspaceVerifier.Mode;
+import io.github.in_toto.models.WorkspaceVerifier.Report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.migrationsupport.rules.EnableRuleMigrationSupport;
+import org.junit.rules.TemporaryFolder;
+import org.junit.Rule;
+
+/**
+ * WorkspaceVerifier tests
+ */
+@DisplayName("WorkspaceVerifier tests")
+@EnableRuleMigrationSupport
+class WorkspaceVerifierTest
+{
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Link record(Path root, int count) throws IOException {
+        Link link = new Link(null, null, "build", null, null, null);
+        for (int i = 0; i < count; i++) {
+            File file = new File(root.toFile(), "out" + i);
+            Files.write(file.toPath(), ("artifact " + i).getBytes(StandardCharsets.UTF_8));
+            link.addProduct(file.getPath());
+        }
+        return link;
+    }
+
+    @Test
+    @DisplayName("An unchanged workspace is clean")
+    public void testCleanWorkspace() throws IOException
+    {
+        Path root = temporaryFolder.getRoot().toPath();
+        Link link = record(root, 200);
+
+        for (Mode mode : Mode.values()) {
+            Report report = new WorkspaceVerifier(root, 4).verify(link.getProducts(), mode);
+            assertTrue(report.isClean());
+            assertTrue(report.isComplete());
+            assertEquals(200, report.getCheckedCount());
+        }
+    }
+
+    @Test
+    @DisplayName("Discrepancies are reported, or stop the check in fail-fast mode")
+    public void testDiscrepancies() throws IOException
+    {
+        Path root = temporaryFolder.getRoot().toPath();
+        Link link = record(root, 200);
+        String modified = root.resolve("out3").toString();
+        String deleted = root.resolve("out7").toString();
+        String resized = root.resolve("out11").toString();
+        Files.write(root.resolve("out3"), "artifact X".getBytes(StandardCharsets.UTF_8));
+        Files.delete(root.resolve("out7"));
+        Files.write(root.resolve("out11"), "artifact 11 and more".getBytes(StandardCharsets.UTF_8));
+
+        Map<String, Long> sizes = new HashMap<>();
+        sizes.put(resized, (long)"artifact 11".length());
+        WorkspaceVerifier verifier = new WorkspaceVerifier(root, 4).setExpectedSizes(sizes);
+
+        Report report = verifier.verify(link.getProducts(), Mode.FULL_REPORT);
+        assertFalse(report.isClean());
+        assertTrue(report.isComplete());
+        assertEquals(3, report.getDiscrepancies().size());
+        assertEquals(resized, report.getDiscrepancies().get(0).getPath());
+        assertEquals(Discrepancy.Kind.SIZE, report.getDiscrepancies().get(0).getKind());
+        assertEquals(modified, report.getDiscrepancies().get(1).getPath());
+        assertEquals(Discrepancy.Kind.HASH, report.getDiscrepancies().get(1).getKind());
+        assertEquals(deleted, report.getDiscrepancies().get(2).getPath());
+        assertEquals(Discrepancy.Kind.MISSING, report.getDiscrepancies().get(2).getKind());
+
+        Report failFast = new WorkspaceVerifier(root, 1).verify(link.getProducts(), Mode.FAIL_FAST);
+        assertEquals(1, failFast.getDiscrepancies().size());
+        assertFalse(failFast.isComplete());
+        assertTrue(failFast.getCheckedCount() < 200);
+    }
+}